@@ -23,31 +23,64 @@ import com.github.jinahya.simple.file.back.FileBack;
 import com.github.jinahya.simple.file.back.FileBack.FileOperation;
 import com.github.jinahya.simple.file.back.FileBackException;
 import com.github.jinahya.simple.file.back.FileContext;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import static java.lang.invoke.MethodHandles.lookup;
 import java.net.URI;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import static java.util.Collections.singletonMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
 import static java.util.Optional.ofNullable;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.NotSupportedException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -55,17 +88,31 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.client.AsyncInvoker;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Configuration;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.server.CloseableService;
+import org.jvnet.hk2.annotations.Optional;
 import org.slf4j.Logger;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -80,6 +127,221 @@ public abstract class AbstractLocatorsResource {
     public static final String PREFERRED_PATH_VALUE = "locators";
 
 
+    /**
+     * The first segment of the paths of operations other than those on single
+     * files, e.g. {@code _/batch/read}. Locators starting with this segment
+     * are reserved and no file is written with them.
+     *
+     * @see #isReserved(java.lang.String)
+     */
+    public static final String RESERVED_SEGMENT = "_";
+
+
+    private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+
+
+    static final String APPLICATION_X_DELTA
+        = "application/x-simple-file-delta";
+
+
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+
+    /**
+     * Locators being repaired from siblings.
+     */
+    private static final Set<String> REPAIRING = ConcurrentHashMap.newKeySet();
+
+
+    /**
+     * The default number of files read in parallel by a batch read.
+     */
+    public static final int DEFAULT_BATCH_CONCURRENCY = 8;
+
+
+    /**
+     * The default maximum number of locators in a batch request.
+     */
+    public static final int DEFAULT_BATCH_MAXIMUM = 1000;
+
+
+    /**
+     * The default delay, in milliseconds, before another sibling is asked by
+     * a fallback read.
+     */
+    public static final long DEFAULT_READ_HEDGE_DELAY = 50L;
+
+
+    private static final int FALLBACK_READ_TIMEOUT = 2000;
+
+
+    /**
+     * The default minimum size, in bytes, of a file distributed as deltas.
+     */
+    public static final long DEFAULT_DELTA_MINIMUM = 1048576L;
+
+
+    private static final String[] FORWARDED_HEADERS = {
+        HttpHeaders.ACCEPT, HttpHeaders.CONTENT_TYPE, "Range", "If-Range",
+        HttpHeaders.IF_MATCH, HttpHeaders.IF_NONE_MATCH,
+        HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_UNMODIFIED_SINCE};
+
+
+    /**
+     * An operation resuming a suspended response.
+     */
+    @FunctionalInterface
+    interface Operation {
+
+
+        Response operate() throws IOException, FileBackException;
+
+
+    }
+
+
+    /**
+     * Acknowledgements of siblings to a distribution.
+     */
+    private static final class Acknowledgements {
+
+
+        private Acknowledgements(final int expected, final Runnable finisher) {
+
+            super();
+
+            this.expected = expected;
+            this.finisher = finisher;
+        }
+
+
+        private void complete(final boolean acknowledged) {
+
+            final boolean finished;
+            synchronized (this) {
+                completed++;
+                if (acknowledged) {
+                    this.acknowledged++;
+                }
+                notifyAll();
+                finished = completed == expected;
+            }
+            if (finished) {
+                finisher.run();
+            }
+        }
+
+
+        private synchronized int await(final int required,
+                                       final long timeout) {
+
+            final long deadline = System.nanoTime()
+                                  + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (acknowledged < required && completed < expected) {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(
+                    deadline - System.nanoTime());
+                if (remaining <= 0L) {
+                    break; // the rest are handled in background
+                }
+                try {
+                    wait(remaining);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            return acknowledged;
+        }
+
+
+        private final int expected;
+
+
+        private final Runnable finisher;
+
+
+        private int completed;
+
+
+        private int acknowledged;
+
+
+    }
+
+
+    /**
+     * An entry of a batch write.
+     */
+    static final class BatchEntry {
+
+
+        BatchEntry(final String locator, final long size) {
+
+            super();
+
+            this.locator = locator;
+            this.size = size;
+        }
+
+
+        ReadableByteChannel open() throws IOException {
+
+            if (bytes != null) {
+                return Channels.newChannel(new ByteArrayInputStream(bytes));
+            }
+
+            return FileChannel.open(spool, StandardOpenOption.READ);
+        }
+
+
+        final String locator;
+
+
+        final long size;
+
+
+        byte[] bytes;
+
+
+        java.nio.file.Path spool;
+
+
+    }
+
+
+    /**
+     * A part of a batch read.
+     */
+    static final class BatchPart {
+
+
+        BatchPart(final String locator) {
+
+            super();
+
+            this.locator = locator;
+        }
+
+
+        final String locator;
+
+
+        int status = Response.Status.NOT_FOUND.getStatusCode();
+
+
+        String pathName;
+
+
+        java.nio.file.Path spool;
+
+
+        long length;
+
+
+    }
+
+
     protected static ByteBuffer key(final String locator) {
 
         final Logger logger = getLogger(lookup().lookupClass());
@@ -96,25 +358,92 @@ public abstract class AbstractLocatorsResource {
         logger.trace("fileBack: {}", fileBack);
         logger.trace("fileFronts: {}", fileFronts);
         logger.trace("Header.Accept: {}", accept);
+    }
 
-        try {
-            tempPath = Files.createTempFile("prefix", "suffix");
-            logger.trace("temp path created: {}", tempPath);
-        } catch (final IOException ioe) {
-            logger.error("failed to create temp path", ioe);
+
+    /**
+     * Tells whether specified locator is reserved for operations other than
+     * those on single files.
+     *
+     * @param locator the locator to test.
+     *
+     * @return {@code true} if reserved; {@code false} otherwise.
+     *
+     * @see #RESERVED_SEGMENT
+     */
+    public static boolean isReserved(final String locator) {
+
+        return locator.equals(RESERVED_SEGMENT)
+               || locator.startsWith(RESERVED_SEGMENT + "/");
+    }
+
+
+    /**
+     * Checks that a file can be written with specified locator.
+     *
+     * @param locator the locator to check.
+     *
+     * @throws BadRequestException if {@code locator} is reserved.
+     */
+    static void writable(final String locator) {
+
+        if (locator != null && isReserved(locator)) {
+            throw new BadRequestException("reserved locator: " + locator);
         }
     }
 
 
-    @PreDestroy
-    private void destroying() {
+    /**
+     * Returns a buffer for staging a body, from the {@link StagingFiles} if
+     * bound. The buffer is released when the current request completes,
+     * including writing of the response.
+     *
+     * @return a new buffer.
+     */
+    StagingFiles.Buffer buffer() {
 
-        if (tempPath != null) {
-            try {
-                Files.deleteIfExists(tempPath);
-            } catch (final IOException ioe) {
-                logger.error("failed to delete temp path: " + tempPath, ioe);
-            }
+        final StagingFiles.Buffer buffer = stagingFiles == null
+                                           ? StagingFiles.unpooled()
+                                           : stagingFiles.buffer();
+        closeableService.add(buffer::release);
+
+        return buffer;
+    }
+
+
+    /**
+     * Acquires an empty file for spooling, from the {@link StagingFiles} if
+     * bound. The file must be released with
+     * {@link #unspool(java.nio.file.Path)}.
+     *
+     * @param prefix the prefix for a temporary file.
+     *
+     * @return an empty file.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    java.nio.file.Path spool(final String prefix) throws IOException {
+
+        return stagingFiles == null
+               ? Files.createTempFile(prefix, null) : stagingFiles.acquire();
+    }
+
+
+    /**
+     * Releases specified file acquired with {@link #spool(String)}.
+     *
+     * @param spool the file to release.
+     */
+    void unspool(final java.nio.file.Path spool) {
+
+        if (stagingFiles != null) {
+            stagingFiles.release(spool);
+            return;
+        }
+        try {
+            Files.deleteIfExists(spool);
+        } catch (final IOException ioe) {
+            logger.error("failed to delete spool: " + spool, ioe);
         }
     }
 
@@ -128,6 +457,9 @@ public abstract class AbstractLocatorsResource {
         logger.trace("copySingle({}, {}, {}, {})", fileContext, sourceLocator,
                      targetLocator, distributeFlag);
 
+        final List<URI> siblings = siblings(targetLocator);
+        final int required = required(consistency, siblings.size() + 1);
+
         fileContext.fileOperationSupplier(() -> FileOperation.COPY);
 
         fileContext.sourceKeySupplier(
@@ -185,48 +517,17 @@ public abstract class AbstractLocatorsResource {
             throw new WebApplicationException(message, e);
         }
 
-        if (distributeFlag) {
-            final URI baseUri = uriInfo.getBaseUri();
-            logger.trace("uriInfo.baseUri: {}", baseUri);
-            final String path = uriInfo.getPath();
-            logger.trace("uriInfo.path: {}", path);
-            final List<Future<Response>> futures = new ArrayList<>();
-            for (final URI fileFront : fileFronts) {
-                logger.trace("fileFront: {}", fileFront);
-                if (baseUri.equals(fileFront)) {
-                    logger.trace("skipping self: " + fileFront);
-                    continue;
-                }
-                if (!fileFront.isAbsolute()) {
-                    logger.warn("not an absolute uri: {}", fileFront);
-                    continue;
-                }
-                final Client client = ClientBuilder.newClient()
-                    .property(ClientProperties.CONNECT_TIMEOUT, 1000)
-                    .property(ClientProperties.READ_TIMEOUT, 1000);
-                final WebTarget target = client.target(fileFront).path(path)
-                    .queryParam("locator", targetLocator)
-                    .queryParam("distribute", Boolean.FALSE.toString());
-                logger.trace("target.uri: {}", target.getUri().toString());
-                final Future<Response> future
-                    = target.request().async().method("POST");
-                logger.trace("future: {}", future);
-                futures.add(future);
-            }
-            logger.trace("futures: {}", futures);
-            futures.forEach(future -> {
-                try {
-                    final Response response = future.get();
-                    logger.trace("response: {}", response);
-                    logger.trace("response.statusInfo: {}",
-                                 response.getStatusInfo());
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("fail to get response", e);
-                }
-            });
-        }
+        invalidate(targetLocator);
+        copied(sourceLocator, targetLocator);
+
+        final Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put("locator", targetLocator);
+        queryParameters.put("distribute", Boolean.FALSE.toString());
+        final int acknowledged = replicate(
+            distributeFlag, required, "POST", queryParameters, siblings, null,
+            1000);
 
-        return Response.noContent()
+        return acknowledged(required, acknowledged)
             .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
             .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
             .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
@@ -234,20 +535,53 @@ public abstract class AbstractLocatorsResource {
     }
 
 
+    /**
+     * Copies a file on the {@link BackingExecutor}, if bound, and resumes
+     * specified response with the result of
+     * {@link #copySingle(java.lang.String, java.lang.String, boolean)}.
+     *
+     * @param sourceLocator the source file locator.
+     * @param targetLocator the target file locator.
+     * @param distribute distribute flag.
+     * @param asyncResponse the response to resume.
+     */
     @POST
     @Path("/{locator: .+}/copy")
-    public Response copySingle(
+    public void copySingle(
         @PathParam("locator") final String sourceLocator,
         @QueryParam("locator") final String targetLocator,
         @QueryParam("distribute") @DefaultValue("true")
-        final boolean distribute)
+        final boolean distribute,
+        @Suspended final AsyncResponse asyncResponse) {
+
+        resume(asyncResponse,
+               () -> copySingle(sourceLocator, targetLocator, distribute));
+    }
+
+
+    public Response copySingle(final String sourceLocator,
+                               final String targetLocator,
+                               final boolean distribute)
         throws IOException, FileBackException {
 
         logger.trace("copySingle({}, {}, {})", sourceLocator, targetLocator,
                      distribute);
 
+        writable(targetLocator);
+
+        final Response routed = partition(targetLocator, null);
+        if (routed != null) {
+            return routed;
+        }
+        if (!owns(sourceLocator)) {
+            return copyFromOwner(sourceLocator, targetLocator, distribute);
+        }
+
         final FileContext fileContext = new DefaultFileContext();
 
+        final List<URI> siblings = siblings(targetLocator);
+        final int required = required(consistency, siblings.size() + 1);
+
         fileContext.fileOperationSupplier(() -> FileOperation.COPY);
 
         fileContext.sourceKeySupplier(() -> ByteBuffer.wrap(
@@ -273,7 +607,7 @@ public abstract class AbstractLocatorsResource {
             targetObject_[0] = targetObject;
         });
 
-        final Long[] targetCopied_ = new Long[0];
+        final Long[] targetCopied_ = new Long[1];
         fileContext.targetCopiedConsumer(targetCopied -> {
             logger.trace("target copied: {}", targetCopied);
             targetCopied_[0] = targetCopied;
@@ -287,53 +621,17 @@ public abstract class AbstractLocatorsResource {
 
         fileBack.operate(fileContext); // ------------------------------ OPERATE
 
-        if (distribute) {
-            final URI baseUri = uriInfo.getBaseUri();
-            logger.trace("uriInfo.baseUri: {}", baseUri);
-            final String path = uriInfo.getPath();
-            logger.trace("uriInfo.path: {}", path);
-            final List<Future<Response>> futures = new ArrayList<>();
-            for (final URI fileFront : fileFronts) {
-                logger.trace("fileFront: {}", fileFront);
-                if (baseUri.equals(fileFront)) {
-                    logger.trace("skipping self: " + fileFront);
-                    continue;
-                }
-                if (!fileFront.isAbsolute()) {
-                    logger.warn("not an absolute uri: {}", fileFront);
-                    continue;
-                }
-                final Client client = ClientBuilder.newClient()
-                    .property(ClientProperties.CONNECT_TIMEOUT, 1000)
-                    .property(ClientProperties.READ_TIMEOUT, 1000);
-                final WebTarget target = client.target(fileFront).path(path)
-                    .queryParam("source_locator", sourceLocator)
-                    .queryParam("target_locator", targetLocator)
-                    .queryParam("distribute", Boolean.FALSE.toString());
-                logger.trace("target.uri: {}", target.getUri().toString());
-                try {
-                    final Future<Response> future
-                        = target.request().async().method("POST");
-                    logger.trace("future: {}", future);
-                    futures.add(future);
-                } catch (final ProcessingException pe) {
-                    logger.error("failed to distribute to " + fileFront, pe);
-                }
-            }
-            logger.trace("futures: {}", futures);
-            futures.forEach(future -> {
-                try {
-                    final Response response = future.get();
-                    logger.trace("response: {}", response);
-                    logger.trace("response.statusInfo: {}",
-                                 response.getStatusInfo());
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("fail to get response", e);
-                }
-            });
-        }
+        invalidate(targetLocator);
+        copied(sourceLocator, targetLocator);
 
-        return Response.noContent()
+        final Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put("locator", targetLocator);
+        queryParameters.put("distribute", Boolean.FALSE.toString());
+        final int acknowledged = replicate(
+            distribute, required, "POST", queryParameters, siblings, null,
+            1000);
+
+        return acknowledged(required, acknowledged)
             .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
             .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
             .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
@@ -342,27 +640,113 @@ public abstract class AbstractLocatorsResource {
 
 
     /**
+     * Returns the resource storing files as references to contents held by
+     * other files.
      *
-     * @param locator
-     * @param distribute
+     * @return a new resource.
+     */
+    @Path("/_/reference")
+    public ReferenceResource referenceResource() {
+
+        return new ReferenceResource(this);
+    }
+
+
+    /**
+     * Returns the resource reading block signatures of files.
      *
-     * @return
+     * @return a new resource.
+     */
+    @Path("/_/signatures")
+    public SignaturesResource signaturesResource() {
+
+        return new SignaturesResource(this);
+    }
+
+
+    /**
+     * Returns the resource updating files with deltas.
      *
-     * @throws IOException if an I/O error occurs.
-     * @throws FileBackException if a file back error occurs.
-     * @see FileBack#operate(com.github.jinahya.simple.file.back.FileContext)
+     * @return a new resource.
+     */
+    @Path("/_/delta")
+    public DeltaResource deltaResource() {
+
+        return new DeltaResource(this);
+    }
+
+
+    /**
+     * Returns the resource operating on multiple files.
+     *
+     * @return a new resource.
+     */
+    @Path("/_/batch")
+    public BatchResource batchResource() {
+
+        return new BatchResource(this);
+    }
+
+
+    /**
+     * Returns the resource exposing the anti-entropy tree.
+     *
+     * @return a new resource.
+     */
+    @Path("/_/sync")
+    public SyncResource syncResource() {
+
+        return new SyncResource(this);
+    }
+
+
+    /**
+     * Deletes a file on the {@link BackingExecutor}, if bound, and resumes
+     * specified response with the result of
+     * {@link #deleteSingle(java.lang.String, boolean)}.
+     *
+     * @param locator the file locator.
+     * @param distribute distribute flag.
+     * @param asyncResponse the response to resume.
      */
     @DELETE
     @Path("{locator: .+}")
-    public Response deleteSingle(
+    public void deleteSingle(
         @PathParam("locator") final String locator,
         @QueryParam("distribute") @DefaultValue("true")
-        final boolean distribute)
-        throws IOException, FileBackException {
+        final boolean distribute,
+        @Suspended final AsyncResponse asyncResponse) {
 
-        logger.trace("deleteSingle({}, {})", locator, distribute);
+        resume(asyncResponse, () -> deleteSingle(locator, distribute));
+    }
 
-        final FileContext fileContext = new DefaultFileContext();
+
+    /**
+     *
+     * @param locator
+     * @param distribute
+     *
+     * @return
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     * @see FileBack#operate(com.github.jinahya.simple.file.back.FileContext)
+     */
+    public Response deleteSingle(final String locator,
+                                 final boolean distribute)
+        throws IOException, FileBackException {
+
+        logger.trace("deleteSingle({}, {})", locator, distribute);
+
+        final Response routed = partition(locator, null);
+        if (routed != null) {
+            return routed;
+        }
+
+        final List<URI> siblings = siblings(locator);
+        final int required = required(consistency, siblings.size() + 1);
+
+        final FileContext fileContext = new DefaultFileContext();
 
         fileContext.fileOperationSupplier(() -> FileOperation.DELETE);
 
@@ -401,63 +785,574 @@ public abstract class AbstractLocatorsResource {
 
         fileBack.operate(fileContext); // ------------------------------ OPERATE
 
-        if (distribute) {
-            final URI baseUri = uriInfo.getBaseUri();
-            logger.trace("uriInfo.baseUri: {}", baseUri);
-            final String path = uriInfo.getPath();
-            logger.trace("uriInfo.path: {}", path);
-            final List<Future<Response>> futures = new ArrayList<>();
-            for (final URI fileFront : fileFronts) {
-                logger.trace("fileFront: {}", fileFront);
-                if (baseUri.equals(fileFront)) {
-                    logger.trace("skipping self: " + fileFront);
-                    continue;
+        invalidate(locator);
+        introduce();
+        deleted(locator);
+
+        final int acknowledged = replicate(
+            distribute, required, "DELETE",
+            singletonMap("distribute", Boolean.FALSE.toString()), siblings,
+            null, 1000);
+
+        return acknowledged(required, acknowledged)
+            .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
+            .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
+            .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
+            .build();
+    }
+
+
+    protected Response readSingle(final FileContext fileContext,
+                                  final String sourceLocator)
+        throws IOException, FileBackException {
+
+        logger.trace("readSingle({}, {})", fileContext, sourceLocator);
+
+        final FileValidators.Validator validator = validator(sourceLocator);
+        logger.trace("validator: {}", validator);
+        if (validator != null) {
+            final Response.ResponseBuilder precondition
+                = request.evaluatePreconditions(validator.getLastModified(),
+                                                validator.getEntityTag());
+            if (precondition != null) { // the file back is not touched
+                return precondition.build();
+            }
+        }
+
+        String encoding = contentEncodings == null || range != null
+                          ? null : ContentEncodings.negotiate(acceptEncoding);
+        ContentEncodings.Variant variant = encoding == null
+                                           ? null : contentEncodings.acquire(
+                                               key(sourceLocator), encoding);
+        if (variant != null && !variant.isEncoded()) {
+            contentEncodings.release(variant);
+            variant = null;
+            encoding = null;
+        }
+        logger.trace("encoding: {}, variant: {}", encoding, variant);
+
+        Response response = null;
+        try {
+            if (variant != null) {
+                response = readSingleEncoded(variant);
+            } else if (range != null) {
+                response = readRanges(fileContext, sourceLocator);
+            } else if (fileCache != null) {
+                response = readSingleCached(sourceLocator);
+            }
+            if (response == null && range == null && fileMappings != null) {
+                response = readSingleMapped(sourceLocator);
+            }
+            if (response == null && range == null && readCoalescer != null) {
+                response = readSingleCoalesced(sourceLocator);
+            }
+            if (response == null) {
+                response = FileFrontProperties.getBoolean(
+                    configuration, FileFrontProperties.STREAMING_READ, false)
+                           ? readSingleStreaming(fileContext, sourceLocator)
+                           : readSingleStaged(fileContext, sourceLocator);
+            }
+        } catch (final NotFoundException nfe) {
+            if (!FileFrontProperties.getBoolean(
+                    configuration, FileFrontProperties.READ_FALLBACK, false)
+                || FileFrontProperties.getString(
+                    configuration, FileFrontProperties.SIBLING_SECRET, null)
+                   == null
+                || forwarded()) {
+                throw nfe;
+            }
+            return readSingleFallback(sourceLocator); // ranges not honored
+        }
+
+        if (contentEncodings != null) {
+            response = encoded(response, sourceLocator,
+                               variant == null ? encoding : null);
+        }
+
+        if (validator != null) {
+            final boolean identity
+                = response.getHeaderString(HttpHeaders.CONTENT_ENCODING)
+                  == null;
+            final EntityTag entityTag = validator.getEntityTag();
+            final Response.ResponseBuilder builder
+                = Response.fromResponse(response)
+                .tag(identity
+                     ? entityTag : new EntityTag(entityTag.getValue(), true))
+                .lastModified(validator.getLastModified());
+            if (identity && validator.getChecksum() != null
+                && response.getStatus() == Response.Status.OK.getStatusCode()) {
+                builder.header(FileFrontConstants.HEADER_DIGEST, null)
+                    .header(FileFrontConstants.HEADER_DIGEST,
+                            FileDigests.format(validator.getChecksum(),
+                                               validator.getDigest()));
+            }
+            response = builder.build();
+        }
+
+        return response;
+    }
+
+
+    /**
+     * Serves the encoded variant of a file.
+     *
+     * @param variant the variant acquired.
+     *
+     * @return a response.
+     */
+    private Response readSingleEncoded(
+        final ContentEncodings.Variant variant) {
+
+        return Response
+            .ok((StreamingOutput) output -> {
+                try {
+                    contentEncodings.write(variant, output);
+                } finally {
+                    contentEncodings.release(variant);
+                }
+            })
+            .header(HttpHeaders.CONTENT_ENCODING, variant.getEncoding())
+            .header(HttpHeaders.CONTENT_LENGTH, variant.getLength())
+            .build();
+    }
+
+
+    /**
+     * Marks a successful response as varying by {@code Accept-Encoding} and,
+     * if an encoding is given, encodes its entity while spooling the encoded
+     * variant. A response whose length is known to be smaller than the
+     * minimum is not encoded. Encoded responses advertise no ranges which
+     * apply to the file as it is.
+     *
+     * @param response the response.
+     * @param sourceLocator the source locator.
+     * @param encoding the content coding; {@code null} for none.
+     *
+     * @return a response.
+     */
+    private Response encoded(final Response response,
+                             final String sourceLocator,
+                             final String encoding) {
+
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            return response;
+        }
+
+        final Response.ResponseBuilder builder = Response.fromResponse(response)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        final String length
+            = response.getHeaderString(HttpHeaders.CONTENT_LENGTH);
+        if (encoding != null
+            && response.getEntity() instanceof StreamingOutput
+            && (length == null
+                || contentEncodings.isWorth(Long.parseLong(length)))) {
+            builder.entity(contentEncodings.encode(
+                key(sourceLocator), encoding,
+                (StreamingOutput) response.getEntity()))
+                .header(HttpHeaders.CONTENT_ENCODING, encoding)
+                .header(HttpHeaders.CONTENT_LENGTH, null)
+                .header(FileFrontConstants.HEADER_DIGEST, null)
+                .header(HEADER_ACCEPT_RANGES, null);
+        }
+
+        return builder.build();
+    }
+
+
+    /**
+     * Reads a file from siblings after a local miss. A sibling is asked at
+     * first and another one each time the hedge delay elapses or a sibling
+     * fails. The first successful response is streamed back while being
+     * spooled, and the spool is written into the local back in background
+     * once fully read.
+     *
+     * @param sourceLocator the source locator.
+     *
+     * @return a response.
+     *
+     * @throws NotFoundException if no sibling has the file.
+     */
+    private Response readSingleFallback(final String sourceLocator) {
+
+        final List<URI> siblings = siblings((List<URI>) null);
+        Collections.shuffle(siblings); // spreads the load
+        final List<URI> owners = owners(sourceLocator);
+        if (owners != null) { // owners first; others may hold it from before
+            siblings.sort(Comparator.comparing(
+                sibling -> owners.contains(sibling) ? 0 : 1));
+        }
+        logger.trace("falling back to {}", siblings);
+
+        final long hedgeDelay = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.READ_HEDGE_DELAY,
+            DEFAULT_READ_HEDGE_DELAY);
+        final String path = uriInfo.getPath();
+
+        final Client[] fallback_ = new Client[1];
+        final BlockingQueue<Response> arrivals = new LinkedBlockingQueue<>();
+        final AtomicBoolean settled = new AtomicBoolean();
+        final InvocationCallback<Response> callback
+            = new InvocationCallback<Response>() {
+
+                @Override
+                public void completed(final Response response) {
+                    arrivals.offer(response);
+                    if (settled.get()) { // lost the race
+                        for (Response r; (r = arrivals.poll()) != null;) {
+                            r.close();
+                        }
+                    }
+                }
+
+
+                @Override
+                public void failed(final Throwable throwable) {
+                    logger.debug("failed to fall back", throwable);
+                    completed(Response.status(Response.Status.BAD_GATEWAY)
+                        .build());
+                }
+
+            };
+
+        Response winner = null;
+        int started = 0;
+        int arrived = 0;
+        try {
+            while (winner == null) {
+                if (started == arrived && started < siblings.size()) {
+                    hedge(siblings.get(started++), path, callback, fallback_);
+                }
+                if (arrived == started) {
+                    break;
                 }
-                if (!fileFront.isAbsolute()) {
-                    logger.warn("not an absolute uri: {}", fileFront);
+                final Response response = arrivals.poll(
+                    started < siblings.size() ? hedgeDelay
+                    : FALLBACK_READ_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (response == null) {
+                    if (started == siblings.size()) {
+                        break;
+                    }
+                    logger.trace("hedging");
+                    hedge(siblings.get(started++), path, callback, fallback_);
                     continue;
                 }
-                final Client client = ClientBuilder.newClient()
-                    .property(ClientProperties.CONNECT_TIMEOUT, 1000)
-                    .property(ClientProperties.READ_TIMEOUT, 1000);
-                final WebTarget target = client.target(fileFront).path(path)
-                    .queryParam("distribute", Boolean.FALSE.toString());
-                logger.trace("target: {}", target.getUri().toString());
-                try {
-                    final Future<Response> future
-                        = target.request().async().delete();
-                    logger.trace("future: {}", future);
-                    futures.add(future);
-                } catch (final ProcessingException pe) {
-                    logger.error("failed to distribute to " + fileFront, pe);
+                arrived++;
+                logger.trace("fallback status: {}", response.getStatus());
+                if (response.getStatusInfo().getFamily()
+                    == Response.Status.Family.SUCCESSFUL) {
+                    winner = response;
+                } else {
+                    response.close();
+                }
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            settled.set(true);
+            for (Response r; (r = arrivals.poll()) != null;) {
+                r.close();
+            }
+        }
+
+        if (winner == null) {
+            ofNullable(fallback_[0]).ifPresent(Client::close);
+            throw new NotFoundException(
+                "no file for locator: " + sourceLocator);
+        }
+
+        java.nio.file.Path spool = null;
+        try {
+            spool = spool("repairing");
+        } catch (final IOException ioe) {
+            logger.error("failed to create spool; not repairing", ioe);
+        }
+        final java.nio.file.Path spool_ = spool;
+
+        final Response sibling = winner;
+        final StreamingOutput entity = output -> {
+            long copied = 0L;
+            boolean completed = false;
+            try (InputStream input = sibling.readEntity(InputStream.class);
+                 OutputStream tee = spool_ == null
+                                    ? null : Files.newOutputStream(spool_)) {
+                final byte[] buffer
+                    = new byte[FileFrontChannels.BUFFER_CAPACITY];
+                for (int read; (read = input.read(buffer)) != -1;) {
+                    output.write(buffer, 0, read);
+                    if (tee != null) {
+                        tee.write(buffer, 0, read);
+                    }
+                    copied += read;
+                }
+                completed = sibling.getLength() == -1
+                            || sibling.getLength() == copied;
+            } finally {
+                sibling.close();
+                ofNullable(fallback_[0]).ifPresent(Client::close);
+                if (spool_ != null) {
+                    if (completed) {
+                        repair(sourceLocator, spool_, copied);
+                    } else {
+                        unspool(spool_);
+                    }
+                }
+            }
+        };
+
+        final Response.ResponseBuilder builder = Response.ok(entity)
+            .type(sibling.getMediaType())
+            .tag(sibling.getEntityTag());
+        if (sibling.getLength() != -1) {
+            builder.header(HttpHeaders.CONTENT_LENGTH, sibling.getLength());
+        }
+
+        return builder.build();
+    }
+
+
+    private void hedge(final URI fileFront, final String path,
+                       final InvocationCallback<Response> callback,
+                       final Client[] fallback_) {
+
+        logger.trace("asking {}", fileFront);
+
+        try {
+            client(fileFront, fallback_).target(fileFront).path(path)
+                .property(ClientProperties.READ_TIMEOUT, FALLBACK_READ_TIMEOUT)
+                .request().async().get(callback);
+        } catch (final ProcessingException pe) {
+            callback.failed(pe);
+        }
+    }
+
+
+    /**
+     * Writes a file read from a sibling into the local back on the
+     * {@link BackingExecutor}, or in place if not bound. The repair is
+     * skipped if the file is written meanwhile, if the same locator is being
+     * repaired already or if the executor is saturated.
+     *
+     * @param locator the file locator.
+     * @param spool the spooled file which is released once written.
+     * @param size the size of the file.
+     */
+    private void repair(final String locator, final java.nio.file.Path spool,
+                        final long size) {
+
+        final BatchEntry batchEntry = new BatchEntry(locator, size);
+        batchEntry.spool = spool;
+
+        if (!REPAIRING.add(locator)) {
+            logger.debug("not repairing {}; in progress", locator);
+            unstage(batchEntry);
+            return;
+        }
+
+        final Runnable repairing = () -> {
+            try {
+                if (validator(locator) != null) {
+                    logger.debug("not repairing {}; written", locator);
+                    return;
                 }
+                final int status = writeEntry(batchEntry);
+                logger.info("repaired {} from a sibling: {}", locator, status);
+            } finally {
+                unstage(batchEntry);
+                REPAIRING.remove(locator);
             }
-            logger.trace("futures: {}", futures);
-            futures.forEach(future -> {
+        };
+
+        if (backingExecutor == null) {
+            repairing.run();
+            return;
+        }
+
+        try {
+            backingExecutor.execute(repairing);
+        } catch (final RejectedExecutionException ree) {
+            logger.warn("not repairing {}; backing executor saturated",
+                        locator);
+            unstage(batchEntry);
+            REPAIRING.remove(locator);
+        }
+    }
+
+
+    /**
+     * Serves a file from the cache.
+     *
+     * @param sourceLocator the source locator.
+     *
+     * @return a response or {@code null} if not cached.
+     */
+    private Response readSingleCached(final String sourceLocator) {
+
+        final FileCache.Entry entry = fileCache.acquire(key(sourceLocator));
+        logger.trace("cached entry: {}", entry);
+        if (entry == null) {
+            return null;
+        }
+
+        return Response
+            .ok((StreamingOutput) output -> {
                 try {
-                    final Response response = future.get();
-                    logger.trace("response: {}", response);
-                    logger.trace("response.statusInfo: {}",
-                                 response.getStatusInfo());
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("fail to get from future", e);
+                    fileCache.write(entry, output);
+                } finally {
+                    fileCache.release(entry);
+                }
+            })
+            .header(HEADER_ACCEPT_RANGES, ByteRanges.BYTES_UNIT)
+            .header(HttpHeaders.CONTENT_LENGTH, entry.getLength())
+            .build();
+    }
+
+
+    /**
+     * Serves a file from an existing mapping.
+     *
+     * @param sourceLocator the source locator.
+     *
+     * @return a response or {@code null} if not mapped.
+     */
+    private Response readSingleMapped(final String sourceLocator) {
+
+        final FileMappings.Mapping mapping
+            = fileMappings.acquire(key(sourceLocator));
+        logger.trace("mapping: {}", mapping);
+        if (mapping == null) {
+            return null;
+        }
+
+        return mapped(mapping).build();
+    }
+
+
+    /**
+     * Reads a file through a flight shared with concurrent reads of the same
+     * locator. The fetched file is offered to the cache and to the mappings,
+     * if any.
+     *
+     * @param sourceLocator the source locator.
+     *
+     * @return a response.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private Response readSingleCoalesced(final String sourceLocator)
+        throws IOException {
+
+        final long generation
+            = fileCache == null ? 0L : fileCache.generation();
+        final long mappingGeneration
+            = fileMappings == null ? 0L : fileMappings.generation();
+
+        final ReadCoalescer.Flight flight = readCoalescer.join(
+            key(sourceLocator), f -> {
+                final FileContext fileContext = new DefaultFileContext();
+                fileContext.fileOperationSupplier(() -> FileOperation.READ);
+                fileContext.sourceKeySupplier(() -> key(sourceLocator));
+                fileContext.pathNameConsumer(f::setPathName);
+                final boolean[] found_ = new boolean[1];
+                fileContext.sourceChannelConsumer(sourceChannel -> {
+                    logger.trace("consuming source channel: {}",
+                                 sourceChannel);
+                    try {
+                        f.write(sourceChannel);
+                        found_[0] = true;
+                    } catch (final IOException ioe) {
+                        final String message
+                            = "failed from source channel to spool";
+                        logger.error(message, ioe);
+                        throw new WebApplicationException(message, ioe);
+                    }
+                });
+                fileBack.operate(fileContext);
+                if (found_[0] && fileCache != null) {
+                    fileCache.put(key(sourceLocator), f.getSpool(),
+                                  generation);
+                }
+                if (found_[0] && fileMappings != null) {
+                    try (FileChannel spool = FileChannel.open(
+                        f.getSpool(), StandardOpenOption.READ)) {
+                        final FileMappings.Mapping mapping = fileMappings.map(
+                            key(sourceLocator), spool, mappingGeneration);
+                        if (mapping != null) { // for following reads
+                            fileMappings.release(mapping);
+                        }
+                    } catch (final IOException ioe) {
+                        logger.warn("failed to map spool", ioe);
+                    }
                 }
             });
+
+        final boolean found;
+        try {
+            found = flight.await();
+        } catch (final IOException ioe) {
+            flight.release();
+            final String message = "failed to read through flight";
+            logger.error(message, ioe);
+            throw new WebApplicationException(message, ioe);
+        }
+        if (!found) {
+            flight.release();
+            throw new NotFoundException(
+                "no file for locator: " + sourceLocator);
         }
 
-        return Response.noContent()
-            .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
-            .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
-            .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
-            .build();
+        final Response.ResponseBuilder builder = Response
+            .ok((StreamingOutput) output -> {
+                try {
+                    flight.transfer(output);
+                } finally {
+                    flight.release();
+                }
+            })
+            .header(HEADER_ACCEPT_RANGES, ByteRanges.BYTES_UNIT)
+            .header(FileFrontConstants.HEADER_PATH_NAME, flight.getPathName());
+        if (flight.getLength() != -1L) {
+            builder.header(HttpHeaders.CONTENT_LENGTH, flight.getLength());
+        }
+
+        return builder.build();
     }
 
 
-    protected Response readSingle(final FileContext fileContext,
-                                  final String sourceLocator)
+    private Response.ResponseBuilder mapped(
+        final FileMappings.Mapping mapping) {
+
+        return Response
+            .ok((StreamingOutput) output -> {
+                try {
+                    fileMappings.write(mapping, output);
+                } finally {
+                    fileMappings.release(mapping);
+                }
+            })
+            .header(HEADER_ACCEPT_RANGES, ByteRanges.BYTES_UNIT)
+            .header(HttpHeaders.CONTENT_LENGTH, mapping.getSize());
+    }
+
+
+    /**
+     * Reads a file by staging it in the temporary file. The staged file is
+     * offered to the cache, if any. A snapshot of a large file on a file
+     * channel is mapped instead of being staged when mappings are enabled,
+     * and the file is streamed if invalidated while being mapped.
+     *
+     * @param fileContext the file context.
+     * @param sourceLocator the source locator.
+     *
+     * @return a response.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    private Response readSingleStaged(final FileContext fileContext,
+                                      final String sourceLocator)
         throws IOException, FileBackException {
 
-        logger.trace("readSingle({}, {})", fileContext, sourceLocator);
+        logger.trace("readSingleStaged({}, {})", fileContext, sourceLocator);
 
         fileContext.fileOperationSupplier(() -> FileOperation.READ);
 
@@ -493,36 +1388,48 @@ public abstract class AbstractLocatorsResource {
             pathName_[0] = pathName;
         });
 
+        final FileValidators.Validator validator = validator(sourceLocator);
+        final Checksum checksum = FileDigests.newChecksum();
+        final boolean[] checked_ = new boolean[1];
+
+        final long mappingGeneration
+            = fileMappings == null ? 0L : fileMappings.generation();
+        final FileMappings.Mapping[] mapping_ = new FileMappings.Mapping[1];
+        final StagingFiles.Buffer[] staged_ = new StagingFiles.Buffer[1];
         fileContext.sourceChannelConsumer(sourceChannel -> {
             logger.trace("consuming source channel : {}", sourceChannel);
-            try {
-                final long sourceCopied = Files.copy(
-                    Channels.newInputStream(sourceChannel), tempPath,
-                    StandardCopyOption.REPLACE_EXISTING);
+            if (fileMappings != null && sourceChannel instanceof FileChannel) {
+                try {
+                    mapping_[0] = fileMappings.map(
+                        key(sourceLocator), (FileChannel) sourceChannel,
+                        mappingGeneration);
+                    logger.trace("mapping: {}", mapping_[0]);
+                } catch (final IOException ioe) {
+                    logger.warn("failed to map source channel", ioe);
+                }
+                if (mapping_[0] != null) {
+                    sourceCopied_[0] = mapping_[0].getSize();
+                    return;
+                }
+            }
+            staged_[0] = buffer();
+            try (StagingFiles.Buffer staged = staged_[0]) {
+                final long sourceCopied = FileFrontChannels.copy(
+                    Channels.newChannel(new CheckedInputStream(
+                        Channels.newInputStream(sourceChannel), checksum)),
+                    staged);
                 sourceCopied_[0] = sourceCopied;
+                checked_[0] = true;
             } catch (final IOException ioe) {
                 final String message
-                    = "failed from source channel to temp path";
+                    = "failed from source channel to staging buffer";
                 logger.error(message, ioe);
                 throw new WebApplicationException(message, ioe);
             }
         });
 
-        final FileChannel[] targetChannel_ = new FileChannel[1];
-        fileContext.targetChannelSupplier(true ? null : () -> { // _not_usd_!!!
-            try {
-                targetChannel_[0] = FileChannel.open(
-                    tempPath, StandardOpenOption.CREATE_NEW,
-                    StandardOpenOption.WRITE);
-                logger.trace("target channel: {}", targetChannel_[0]);
-                return targetChannel_[0];
-            } catch (final IOException ioe) {
-                final String message
-                    = "failed to open temp path for writing";
-                logger.error(message, ioe);
-                throw new WebApplicationException(message, ioe);
-            }
-        });
+        final long generation
+            = fileCache == null ? 0L : fileCache.generation();
 
         fileBack.operate(fileContext);
 
@@ -531,8 +1438,45 @@ public abstract class AbstractLocatorsResource {
                 "no file for locator: " + sourceLocator);
         }
 
+        if (mapping_[0] != null) {
+            if (!fileMappings.isCurrent(mapping_[0])) { // written meanwhile
+                fileMappings.release(mapping_[0]);
+                return readSingleStreaming(fileContext, sourceLocator);
+            }
+            return mapped(mapping_[0])
+                .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
+                .header(FileFrontConstants.HEADER_SOURCE_COPIED,
+                        sourceCopied_[0])
+                .header(FileFrontConstants.HEADER_TARGET_COPIED,
+                        targetCopied_[0])
+                .build();
+        }
+
+        if (checked_[0] && validator != null
+            && validator.getChecksum() != null
+            && validator.getChecksum() != checksum.getValue()
+            && validator == validator(sourceLocator)) { // not rewritten
+            final String message = "checksum mismatched: " + sourceLocator;
+            logger.error(message);
+            throw new WebApplicationException(message);
+        }
+
+        final StagingFiles.Buffer staged = staged_[0];
+        if (fileCache != null) {
+            try (InputStream replayed = staged.newInputStream()) {
+                fileCache.put(key(sourceLocator),
+                              Channels.newChannel(replayed),
+                              staged.getLength(), generation);
+            }
+        }
+
         return Response
-            .ok((StreamingOutput) output -> Files.copy(tempPath, output))
+            .ok((StreamingOutput) staged::writeTo)
+            .header(HttpHeaders.CONTENT_LENGTH, staged.getLength())
+            .header(FileFrontConstants.HEADER_DIGEST,
+                    checked_[0]
+                    ? FileDigests.format(checksum.getValue(), null) : null)
+            .header(HEADER_ACCEPT_RANGES, ByteRanges.BYTES_UNIT)
             .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
             .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
             .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
@@ -541,50 +1485,424 @@ public abstract class AbstractLocatorsResource {
 
 
     /**
+     * Serves the byte ranges requested with the {@code Range} header. The
+     * length of the file is taken and the ranges are copied, with positional
+     * reads, within a single operation of the file back so that both come
+     * from the same version of the file. Only the requested ranges are
+     * staged.
      *
-     * @param locator the file locator.
+     * @param fileContext the file context.
+     * @param sourceLocator the source locator.
      *
-     * @return a response.
+     * @return a partial content response, a range not satisfiable response,
+     * or {@code null} if the full file should be served instead.
      *
      * @throws IOException if an I/O error occurs.
      * @throws FileBackException if a file back error occurs.
      */
-    @Produces(MediaType.WILDCARD)
-    @GET
-    @Path("{locator: .+}")
-    public Response readSingle(@PathParam("locator") final String locator)
+    protected Response readRanges(final FileContext fileContext,
+                                  final String sourceLocator)
         throws IOException, FileBackException {
 
-        logger.trace("readSingle({})", locator);
-
-        final FileContext fileContext = new DefaultFileContext();
-
-        return readSingle(fileContext, locator);
-    }
-
-
-    protected Response updateSingle(final FileContext fileContext,
-                                    final String targetLocator,
-                                    final InputStream sourceStream,
-                                    final boolean distributeFlag) {
-
-        logger.trace("updateSingle({}, {}, {}, {})", fileContext, targetLocator,
-                     sourceStream, distributeFlag);
+        logger.trace("readRanges({}, {})", fileContext, sourceLocator);
 
-        try {
-            Files.copy(sourceStream, tempPath,
-                       StandardCopyOption.REPLACE_EXISTING);
-            logger.trace("source stream copied to temp path");
-        } catch (final IOException ioe) {
-            logger.error("failed to copy source stream to temp path", ioe);
-            throw new WebApplicationException(ioe);
+        if (ifRange != null
+            && !matchesIfRange(validator(sourceLocator), ifRange)) {
+            logger.trace("ignoring ranges for If-Range: {}", ifRange);
+            return null;
         }
 
-        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
-
-        fileContext.targetKeySupplier(() -> key(targetLocator));
+        final String partType = MediaType.APPLICATION_OCTET_STREAM;
+        final StagingFiles.Buffer staged = buffer();
+        final Long[] length_ = new Long[1];
+        final List<List<long[]>> ranges_ = new ArrayList<>(1);
+        final String[] boundary_ = new String[1];
 
-        final Object[] sourceObject_ = new Object[1];
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+        fileContext.sourceKeySupplier(() -> key(sourceLocator));
+        fileContext.sourceChannelConsumer(sourceChannel -> {
+            logger.trace("consuming source channel: {}", sourceChannel);
+            try {
+                if (!(sourceChannel instanceof SeekableByteChannel)) {
+                    length_[0] = -1L;
+                    return;
+                }
+                final SeekableByteChannel seekable
+                    = (SeekableByteChannel) sourceChannel;
+                final long length = seekable.size();
+                length_[0] = length;
+                final List<long[]> ranges = ByteRanges.parse(range, length);
+                ranges_.add(ranges);
+                if (ranges == null || ranges.isEmpty()) {
+                    return;
+                }
+                final WritableByteChannel target = Channels.newChannel(staged);
+                final ByteRanges.RangeWriter writer
+                    = (first, last, o) -> FileFrontChannels.copy(
+                        seekable, first, last - first + 1L, target);
+                if (ranges.size() == 1) {
+                    final long[] only = ranges.get(0);
+                    writer.write(only[0], only[1], staged);
+                } else {
+                    boundary_[0] = ByteRanges.boundary();
+                    ByteRanges.writeMultipart(ranges, length, boundary_[0],
+                                              partType, writer, staged);
+                }
+                staged.close();
+            } catch (final IOException ioe) {
+                final String message = "failed from source channel to staged";
+                logger.error(message, ioe);
+                throw new WebApplicationException(message, ioe);
+            }
+        });
+        fileBack.operate(fileContext);
+        logger.trace("length: {}", length_[0]);
+        if (length_[0] == null) {
+            throw new NotFoundException(
+                "no file for locator: " + sourceLocator);
+        }
+        final long length = length_[0];
+        if (length < 0L) { // not seekable
+            return null;
+        }
+
+        final List<long[]> ranges = ranges_.get(0);
+        if (ranges == null) {
+            logger.trace("ignoring invalid range: {}", range);
+            return null;
+        }
+        if (ranges.isEmpty()) {
+            return Response.status(416) // Requested Range Not Satisfiable
+                .header(HEADER_CONTENT_RANGE,
+                        ByteRanges.contentRange(length))
+                .build();
+        }
+
+        final Response.ResponseBuilder builder
+            = Response.status(206) // Partial Content
+            .entity((StreamingOutput) staged::writeTo)
+            .header(HEADER_ACCEPT_RANGES, ByteRanges.BYTES_UNIT)
+            .header(HttpHeaders.CONTENT_LENGTH, staged.getLength());
+        if (boundary_[0] == null) {
+            final long[] only = ranges.get(0);
+            builder.header(HEADER_CONTENT_RANGE,
+                           ByteRanges.contentRange(only[0], only[1], length));
+        } else {
+            builder.type("multipart/byteranges; boundary=" + boundary_[0]);
+        }
+
+        return builder.build();
+    }
+
+
+    /**
+     * Reads a file by piping the source channel directly into the response.
+     * The file back is operated on a thread handed off by the
+     * {@link BackingExecutor}, which holds the source channel open until the
+     * entity has been written, so nothing is staged and the first byte goes
+     * out as soon as the file back supplies its source channel. A miss is
+     * known before the response is built. The file is staged if no
+     * {@link BackingExecutor} is bound.
+     *
+     * @param fileContext the file context.
+     * @param sourceLocator the source locator.
+     *
+     * @return a response.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     * @throws NotFoundException if the file back supplies no source channel.
+     * @throws ServiceUnavailableException if the executor is saturated.
+     */
+    protected Response readSingleStreaming(final FileContext fileContext,
+                                           final String sourceLocator)
+        throws IOException, FileBackException {
+
+        logger.trace("readSingleStreaming({}, {})", fileContext,
+                     sourceLocator);
+
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+
+        fileContext.sourceKeySupplier(() -> key(sourceLocator));
+
+        fileContext.sourceObjectConsumer(
+            ofNullable(fileContext.sourceObjectConsumer()).orElse(
+                sourceObject -> {
+                    logger.trace("consuming source object: {}", sourceObject);
+                }));
+
+        fileContext.sourceCopiedConsumer(
+            ofNullable(fileContext.sourceCopiedConsumer()).orElse(
+                sourceCopied -> {
+                    logger.trace("consuming source copied: {}", sourceCopied);
+                }));
+
+        fileContext.pathNameConsumer(
+            ofNullable(fileContext.pathNameConsumer()).orElse(
+                pathName -> {
+                    logger.trace("consuming path name: {}", pathName);
+                }));
+
+        if (backingExecutor == null) { // nothing to hand the operation off to
+            return readSingleStaged(fileContext, sourceLocator);
+        }
+
+        final StreamingRead read;
+        try {
+            read = StreamingRead.open(fileBack, fileContext, backingExecutor);
+        } catch (final RejectedExecutionException ree) {
+            logger.warn("backing executor saturated", ree);
+            throw new ServiceUnavailableException(1L, ree);
+        }
+        if (read == null) {
+            throw new NotFoundException(
+                "no file for locator: " + sourceLocator);
+        }
+        if (HttpMethod.HEAD.equals(request.getMethod())) {
+            read.release(); // the entity is never written
+        }
+
+        return Response.ok(read.entity())
+            .header(HEADER_ACCEPT_RANGES, ByteRanges.BYTES_UNIT)
+            .header(HttpHeaders.CONTENT_LENGTH, read.getLength())
+            .build();
+    }
+
+
+    /**
+     * Reads a file on the {@link BackingExecutor}, if bound, and resumes
+     * specified response with the result of
+     * {@link #readSingle(java.lang.String)}.
+     *
+     * @param locator the file locator.
+     * @param asyncResponse the response to resume.
+     */
+    @Produces(MediaType.WILDCARD)
+    @GET
+    @Path("{locator: .+}")
+    public void readSingle(@PathParam("locator") final String locator,
+                           @Suspended final AsyncResponse asyncResponse) {
+
+        resume(asyncResponse, () -> readSingle(locator));
+    }
+
+
+    /**
+     *
+     * @param locator the file locator.
+     *
+     * @return a response.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    public Response readSingle(final String locator)
+        throws IOException, FileBackException {
+
+        logger.trace("readSingle({})", locator);
+
+        final Response routed = partition(locator, null);
+        if (routed != null) {
+            return routed;
+        }
+
+        final FileContext fileContext = new DefaultFileContext();
+
+        return readSingle(fileContext, locator);
+    }
+
+
+    BatchPart readPart(final String locator) throws IOException {
+
+        logger.trace("readPart({})", locator);
+
+        final BatchPart part = new BatchPart(locator);
+        part.spool = spool("batch");
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+        fileContext.sourceKeySupplier(() -> key(locator));
+        fileContext.pathNameConsumer(pathName -> {
+            logger.trace("consuming path name: {}", pathName);
+            part.pathName = pathName;
+        });
+        fileContext.sourceChannelConsumer(sourceChannel -> {
+            logger.trace("consuming source channel: {}", sourceChannel);
+            try (FileChannel spool = FileChannel.open(
+                part.spool, StandardOpenOption.WRITE)) {
+                part.length = FileFrontChannels.copy(sourceChannel, spool);
+                part.status = Response.Status.OK.getStatusCode();
+            } catch (final IOException ioe) {
+                final String message = "failed from source channel to spool";
+                logger.error(message, ioe);
+                throw new WebApplicationException(message, ioe);
+            }
+        });
+
+        try {
+            fileBack.operate(fileContext);
+        } catch (IOException | FileBackException | RuntimeException e) {
+            logger.error("failed to read " + locator, e);
+            part.status = Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+        }
+
+        if (part.status != Response.Status.OK.getStatusCode()) {
+            deletePart(part);
+            part.length = 0L;
+        }
+
+        return part;
+    }
+
+
+    void deletePart(final BatchPart part) {
+
+        if (part.spool == null) {
+            return;
+        }
+        unspool(part.spool);
+        part.spool = null;
+    }
+
+
+    void unstage(final BatchEntry batchEntry) {
+
+        batchEntry.bytes = null;
+        if (batchEntry.spool == null) {
+            return;
+        }
+        unspool(batchEntry.spool);
+        batchEntry.spool = null;
+    }
+
+
+    int writeEntry(final BatchEntry batchEntry) {
+
+        logger.trace("writeEntry({})", batchEntry.locator);
+
+        final String locator = batchEntry.locator;
+        final MessageDigest digest
+            = fileValidators == null && antiEntropy == null
+              && contentIndex == null ? null : FileValidators.newDigest();
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        fileContext.targetKeySupplier(() -> key(locator));
+        final Long[] targetCopied_ = new Long[1];
+        fileContext.targetChannelConsumer(targetChannel -> {
+            logger.trace("consuming target channel: {}", targetChannel);
+            try (ReadableByteChannel source = batchEntry.open()) {
+                targetCopied_[0] = FileFrontChannels.copy(
+                    digest == null
+                    ? source
+                    : Channels.newChannel(new DigestInputStream(
+                        Channels.newInputStream(source), digest)),
+                    targetChannel);
+            } catch (final IOException ioe) {
+                final String message
+                    = "failed to copy from entry to target channel";
+                logger.error(message, ioe);
+                throw new WebApplicationException(message, ioe);
+            }
+        });
+
+        invalidate(locator);
+        try {
+            fileBack.operate(fileContext);
+        } catch (IOException | FileBackException | RuntimeException e) {
+            logger.error("failed to write " + locator, e);
+            return Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+        }
+        invalidate(locator); // reads raced with this write
+
+        if (targetCopied_[0] == null) {
+            return Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+        }
+        if (digest != null) {
+            written(locator, digest.digest());
+        }
+
+        return Response.Status.NO_CONTENT.getStatusCode();
+    }
+
+
+    protected Response updateSingle(final FileContext fileContext,
+                                    final String targetLocator,
+                                    final InputStream sourceStream,
+                                    final boolean distributeFlag) {
+
+        logger.trace("updateSingle({}, {}, {}, {})", fileContext, targetLocator,
+                     sourceStream, distributeFlag);
+
+        final List<URI> siblings = siblings(targetLocator);
+        final int required = required(consistency, siblings.size() + 1);
+
+        final Map<String, byte[]> claimed;
+        try {
+            claimed = FileDigests.parse(instanceDigest);
+        } catch (final IllegalArgumentException iae) {
+            throw new BadRequestException(iae.getMessage());
+        }
+        logger.trace("claimed: {}", claimed.keySet());
+
+        // claimed digests are verified before the target is touched
+        final boolean directIngest = claimed.isEmpty()
+                                     && FileFrontProperties.getBoolean(
+                                         configuration,
+                                         FileFrontProperties.DIRECT_INGEST,
+                                         false);
+        logger.trace("directIngest: {}", directIngest);
+
+        final boolean replay = distributeFlag && fileFronts.stream().anyMatch(
+            fileFront -> fileFront.isAbsolute()
+                         && !uriInfo.getBaseUri().equals(fileFront));
+        logger.trace("replay: {}", replay);
+
+        final MessageDigest digest
+            = fileValidators == null && antiEntropy == null
+              && contentIndex == null
+              && !claimed.containsKey(FileDigests.SHA_256)
+              && !FileFrontProperties.getBoolean(
+                  configuration, FileFrontProperties.DIGEST_SHA256, false)
+              ? null : FileValidators.newDigest();
+        final Checksum checksum = FileDigests.newChecksum();
+        final InputStream entityStream = new CheckedInputStream(
+            digest == null
+            ? sourceStream : new DigestInputStream(sourceStream, digest),
+            checksum);
+
+        // staged only when spooled or replayed to siblings
+        final StagingFiles.Buffer staged
+            = !directIngest || replay ? buffer() : null;
+        long spooled = -1L;
+        if (!directIngest) {
+            try (StagingFiles.Buffer buffer = staged) {
+                spooled = FileFrontChannels.copy(
+                    Channels.newChannel(entityStream), buffer);
+                logger.trace("source stream copied to staging buffer");
+            } catch (final IOException ioe) {
+                logger.error("failed to copy source stream to staging buffer",
+                             ioe);
+                throw new WebApplicationException(ioe);
+            }
+        }
+        // known before writing only when spooled
+        final byte[] digested = directIngest || digest == null
+                                ? null : digest.digest();
+        if (!directIngest) {
+            final String mismatched = FileDigests.mismatched(
+                claimed, checksum.getValue(), digested);
+            if (mismatched != null) {
+                throw new BadRequestException(
+                    "digest mismatched: " + mismatched);
+            }
+        }
+
+        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+
+        fileContext.targetKeySupplier(() -> key(targetLocator));
+
+        final Object[] sourceObject_ = new Object[1];
         fileContext.sourceObjectConsumer(
             ofNullable(fileContext.sourceObjectConsumer()).orElse(
                 sourceObject -> {
@@ -624,113 +1942,140 @@ public abstract class AbstractLocatorsResource {
                     pathName_[0] = pathName;
                 }));
 
+        final boolean[] ingested_ = new boolean[1];
+        final boolean[] truncated_ = new boolean[1];
         fileContext.targetChannelConsumer(targetChannel -> {
             logger.trace("consuming target channel : {}", targetChannel);
+            if (directIngest) {
+                try (WritableByteChannel branch = replay
+                                                  ? Channels.newChannel(staged)
+                                                  : null) {
+                    final long targetCopied = FileFrontChannels.copy(
+                        Channels.newChannel(entityStream), targetChannel,
+                        branch);
+                    logger.trace("target copied: {}", targetCopied);
+                    targetCopied_[0] = targetCopied;
+                    ingested_[0] = true;
+                } catch (final IOException ioe) {
+                    truncated_[0] = true;
+                    final String message
+                        = "failed to copy from source stream to target channel";
+                    logger.error(message, ioe);
+                    throw new WebApplicationException(message, ioe);
+                }
+                return;
+            }
             try {
-                final long targetCopied = Files.copy(
-                    tempPath, Channels.newOutputStream(targetChannel));
+                final long targetCopied = staged.writeTo(
+                    Channels.newOutputStream(targetChannel));
                 logger.trace("target copied: {}", targetCopied);
                 targetCopied_[0] = targetCopied;
             } catch (final IOException ioe) {
                 final String message
-                    = "failed to copy from temp path to target channel";
+                    = "failed to copy from staging buffer to target channel";
                 logger.error(message, ioe);
                 throw new WebApplicationException(message, ioe);
             }
         });
 
-        final FileChannel[] sourceChannel_ = new FileChannel[1];
-        fileContext.sourceChannelSupplier(true ? null : () -> { // _not_usd_!!!
+        final String holder = digested == null || contentIndex == null
+                              ? null : contentIndex.holder(digested);
+        logger.trace("holder: {}", holder);
+        if (holder != null && !holder.equals(targetLocator)
+            && reference(holder, targetLocator, digested)) {
+            logger.debug("{} referenced {}", targetLocator, holder);
+            targetCopied_[0] = spooled;
+        } else {
+            invalidate(targetLocator);
             try {
-                sourceChannel_[0] = FileChannel.open(
-                    tempPath, StandardOpenOption.READ);
-                logger.trace("suppling source channel: {}", sourceChannel_[0]);
-                return sourceChannel_[0];
-            } catch (final IOException ioe) {
-                final String message
-                    = "failed to open temp path for reading";
-                logger.error(message, ioe);
-                throw new WebApplicationException(message, ioe);
+                fileBack.operate(fileContext);
+            } catch (IOException | FileBackException e) {
+                final String message = "failed to operate file back";
+                logger.error(message, e);
+                throw new WebApplicationException(message, e);
+            } finally {
+                if (truncated_[0]) { // never leaves a partial file
+                    discard(targetLocator);
+                }
             }
-        });
+        }
 
-        try {
-            fileBack.operate(fileContext);
-        } catch (IOException | FileBackException e) {
-            final String message = "failed to operate file back";
-            logger.error(message, e);
-            throw new WebApplicationException(message, e);
+        if (fileCache != null) { // reads raced with this write
+            fileCache.invalidate(key(targetLocator));
+        }
+        if (fileMappings != null) {
+            fileMappings.invalidate(key(targetLocator));
+        }
+        if (contentEncodings != null) {
+            contentEncodings.invalidate(key(targetLocator));
         }
 
-        ofNullable(sourceChannel_[0]).ifPresent(fileChannel -> {
-            try {
-                fileChannel.close();
-                logger.trace("file channel closed: {}", fileChannel);
+        if (directIngest && replay) {
+            try (StagingFiles.Buffer buffer = staged) {
+                if (!ingested_[0]) { // digested as spooled, as if ingested
+                    FileFrontChannels.copy(
+                        Channels.newChannel(entityStream), buffer);
+                    logger.trace("source stream copied to staging buffer");
+                }
             } catch (final IOException ioe) {
-                final String message
-                    = "failed to close file channel: " + fileChannel;
-                logger.error(message, ioe);
-                throw new WebApplicationException(message, ioe);
+                logger.error("failed to copy source stream to staging buffer",
+                             ioe);
+                throw new WebApplicationException(ioe);
             }
-        });
+        }
 
-        if (distributeFlag) {
-            logger.trace("distributing...");
-            final URI baseUri = uriInfo.getBaseUri();
-            logger.trace("uriInfo.baseUri: {}", baseUri);
-            final String path = uriInfo.getPath();
-            logger.trace("uriInfo.path: {}", path);
-            final List<Future<Response>> futures = new ArrayList<>();
-            logger.trace("fileFronts: {}", fileFronts);
-            for (final URI fileFront : fileFronts) {
-                logger.trace("fileFront: {}", fileFront);
-                if (!fileFront.isAbsolute()) {
-                    logger.warn("not an absolute uri: {}", fileFront);
-                    continue;
-                }
-                if (baseUri.equals(fileFront)) {
-                    logger.trace("skipping self: " + fileFront);
-                    continue;
-                }
-                final Client client = ClientBuilder.newClient()
-                    .property(ClientProperties.CONNECT_TIMEOUT, 2000)
-                    .property(ClientProperties.READ_TIMEOUT, 2000);
-                final WebTarget target = client.target(fileFront).path(path)
-                    .queryParam("distribute", Boolean.FALSE.toString());
-                logger.trace("target: {}", target.getUri().toString());
-//            try {
-//                final Response response = target.request().put(
-//                    Entity.entity(tempPath.toFile(), contentType));
-//                logger.trace("response: {}", response);
-//                logger.trace("response.status: {}", response.getStatusInfo());
-//            } catch (final ProcessingException pe) {
-//                logger.error("failed to distribute to " + fileFront, pe);
-//            }
-                final Future<Response> future = target.request().async().put(
-                    Entity.entity(tempPath.toFile(), contentType));
-                logger.trace("future: {}", future);
-                futures.add(future);
-            }
-            logger.trace("futures: {}", futures);
-            futures.forEach(future -> {
-                try {
-                    final Response response = future.get();
-                    logger.trace("response: {}", response);
-                    logger.trace("response.status: {}", response.getStatus());
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("fail to get response", e);
-                }
-            });
+        final byte[] computed = digested == null && digest != null
+                                ? digest.digest() : digested;
+
+        if (computed != null && targetCopied_[0] != null) {
+            introduce();
+            written(targetLocator, computed, checksum.getValue());
         }
 
-        return Response.noContent()
+        // known by now unless directly ingested by nothing
+        final String digests
+            = directIngest && !ingested_[0] && !replay
+              ? null : FileDigests.format(checksum.getValue(), computed);
+        final int acknowledged = !distributeFlag ? 1 : 1 + distribute(
+            "PUT", singletonMap("distribute", Boolean.FALSE.toString()),
+            siblings, staged, contentIndex == null || digests == null
+                              ? null : computed, digests, 2000,
+            required == 0 ? Integer.MAX_VALUE : required - 1);
+
+        return acknowledged(required, acknowledged)
             .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
             .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
             .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
+            .header(FileFrontConstants.HEADER_DIGEST, digests)
             .build();
     }
 
 
+    /**
+     * Updates a file on the {@link BackingExecutor}, if bound, and resumes
+     * specified response with the result of
+     * {@link #updateSingle(java.lang.String, boolean, java.io.InputStream)}.
+     *
+     * @param locator the file locator.
+     * @param distribute distribute flag.
+     * @param entity the entity to update.
+     * @param asyncResponse the response to resume.
+     */
+    @Consumes(MediaType.WILDCARD)
+    @PUT
+    @Path("{locator: .+}")
+    public void updateSingle(
+        @PathParam("locator") final String locator,
+        @QueryParam("distribute") @DefaultValue("true")
+        final boolean distribute,
+        final InputStream entity,
+        @Suspended final AsyncResponse asyncResponse) {
+
+        resume(asyncResponse,
+               () -> updateSingle(locator, distribute, entity));
+    }
+
+
     /**
      *
      * @param locator file locator
@@ -743,322 +2088,1251 @@ public abstract class AbstractLocatorsResource {
      * @throws FileBackException if a file back error occusr.
      * @see FileBack#operate(com.github.jinahya.simple.file.back.FileContext)
      */
-    @Consumes(MediaType.WILDCARD)
-    @PUT
-    @Path("{locator: .+}")
-    public Response updateSingle(
-        @PathParam("locator") final String locator,
-        @QueryParam("distribute") @DefaultValue("true")
-        final boolean distribute,
-        final InputStream entity)
+    public Response updateSingle(final String locator,
+                                 final boolean distribute,
+                                 final InputStream entity)
         throws IOException, FileBackException {
 
         logger.trace("updateSingle({}, {}, {})", locator, distribute, entity);
 
-        if (true) {
-            return updateSingle(new DefaultFileContext(), locator, entity,
-                                distribute);
-        }
+        writable(locator);
 
+        final InputStream decoded;
         try {
-            Files.copy(entity, tempPath, StandardCopyOption.REPLACE_EXISTING);
-            logger.trace("entity copied to temp path");
+            decoded = ContentEncodings.decoder(contentEncoding, entity);
+        } catch (final IllegalArgumentException iae) {
+            throw new NotSupportedException(iae.getMessage());
         } catch (final IOException ioe) {
-            logger.error("failed to copy entity to temp path", ioe);
-            throw new WebApplicationException(ioe);
+            final String message = "failed to decode entity";
+            logger.error(message, ioe);
+            throw new BadRequestException(message, ioe);
         }
 
-        final FileContext fileContext = new DefaultFileContext();
+        final Response routed = partition(locator, decoded);
+        if (routed != null) {
+            return routed;
+        }
 
-        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        return updateSingle(new DefaultFileContext(), locator, decoded,
+                            distribute);
+    }
 
-        fileContext.targetKeySupplier(
-            () -> ByteBuffer.wrap(locator.getBytes(StandardCharsets.UTF_8)));
 
-        final Object[] sourceObject_ = new Object[1];
-        fileContext.sourceObjectConsumer(sourceObject -> {
-            logger.trace("source object: {}", sourceObject);
-            sourceObject_[0] = sourceObject;
-        });
+    /**
+     * Parses specified consistency level.
+     *
+     * @param consistency the consistency level; one of {@code ONE},
+     * {@code QUORUM}, {@code ALL} or a number of replicas. May be
+     * {@code null}.
+     * @param replicas the number of replicas including the local one.
+     *
+     * @return the number of replicas, including the local one, required to
+     * acknowledge; {@code 0} if {@code consistency} is {@code null}.
+     *
+     * @throws BadRequestException if {@code consistency} is invalid.
+     */
+    static int required(final String consistency, final int replicas) {
 
-        final Long[] sourceCopied_ = new Long[1];
-        fileContext.sourceCopiedConsumer(sourceCopied -> {
-            logger.trace("source copied: {}", sourceCopied);
-            sourceCopied_[0] = sourceCopied;
+        if (consistency == null) {
+            return 0;
+        }
+
+        switch (consistency.trim().toUpperCase(Locale.ENGLISH)) {
+            case "ONE":
+                return 1;
+            case "QUORUM":
+                return replicas / 2 + 1;
+            case "ALL":
+                return replicas;
+            default:
+                break;
+        }
+
+        final int required;
+        try {
+            required = Integer.parseInt(consistency.trim());
+        } catch (final NumberFormatException nfe) {
+            throw new BadRequestException(
+                "invalid consistency: " + consistency);
+        }
+        if (required < 1 || required > replicas) {
+            throw new BadRequestException(
+                "consistency out of range: " + consistency);
+        }
+
+        return required;
+    }
+
+
+    /**
+     * Sends the current request to each sibling. When the replication queue
+     * is bound, the request is journaled for each sibling before being sent,
+     * this method returns without waiting and the request for a sibling
+     * failing is delivered by the queue. Otherwise this method waits for all
+     * responses.
+     *
+     * @param method the HTTP method.
+     * @param queryParameters query parameters to send.
+     * @param entity a file whose content is the request entity; {@code null}
+     * for no entity.
+     * @param readTimeout the read timeout in milliseconds.
+     */
+    protected void distribute(final String method,
+                              final Map<String, String> queryParameters,
+                              final java.nio.file.Path entity,
+                              final int readTimeout) {
+
+        distribute(method, queryParameters, entity, readTimeout,
+                   Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Sends the current request to each sibling and waits until specified
+     * number of siblings acknowledged, every sibling responded or the read
+     * timeout elapsed. When the replication queue is bound, the request is
+     * journaled for each sibling before anything is sent, removed from the
+     * journal when the sibling acknowledges and delivered by the queue when
+     * the sibling fails, so that the request outlives a crash of this front.
+     * The rest of the responses are awaited in background. A sibling with
+     * requests pending in the queue gets the request delivered behind them
+     * rather than sent directly. When {@code required} is
+     * {@link Integer#MAX_VALUE} and the replication queue is bound, this
+     * method does not wait at all. An updated content
+     * indexed by the {@link ContentIndex} is offered to each sibling as a
+     * reference before being sent.
+     *
+     * @param method the HTTP method.
+     * @param queryParameters query parameters to send.
+     * @param entity a file whose content is the request entity; {@code null}
+     * for no entity.
+     * @param readTimeout the read timeout in milliseconds.
+     * @param required the number of siblings to wait for.
+     *
+     * @return the number of siblings acknowledged with a successful status.
+     */
+    protected int distribute(final String method,
+                             final Map<String, String> queryParameters,
+                             final java.nio.file.Path entity,
+                             final int readTimeout, final int required) {
+
+        final String locator
+            = uriInfo.getPathParameters().getFirst("locator");
+
+        return distribute(method, queryParameters, siblings(locator),
+                          entity == null ? null : StagingFiles.of(entity),
+                          null, null, readTimeout, required);
+    }
+
+
+    /**
+     * Sends the current request to specified siblings with specified staged
+     * entity replayed for each of them.
+     *
+     * @param method the HTTP method.
+     * @param queryParameters query parameters to send.
+     * @param siblings the siblings to send to.
+     * @param entity the request entity; {@code null} for no entity.
+     * @param entityDigest the content digest of the entity to offer as a
+     * reference; {@code null} for none.
+     * @param payloadDigest the instance digests of the entity for siblings to
+     * check; {@code null} if not known.
+     * @param readTimeout the read timeout in milliseconds.
+     * @param required the number of siblings to wait for.
+     *
+     * @return the number of siblings acknowledged with a successful status.
+     *
+     * @see #distribute(String, Map, java.nio.file.Path, int, int)
+     */
+    int distribute(final String method,
+                   final Map<String, String> queryParameters,
+                   final List<URI> siblings,
+                   final StagingFiles.Buffer entity,
+                   final byte[] entityDigest,
+                   final String payloadDigest,
+                   final int readTimeout, final int required) {
+
+        final URI baseUri = uriInfo.getBaseUri();
+        logger.trace("uriInfo.baseUri: {}", baseUri);
+        final String path = uriInfo.getPath();
+        logger.trace("uriInfo.path: {}", path);
+
+        // everything is journaled; no need to wait for everyone
+        final int awaited = replicationQueue != null
+                            && required == Integer.MAX_VALUE ? 0 : required;
+
+        logger.trace("siblings: {}", siblings);
+        if (siblings.isEmpty()) {
+            return 0;
+        }
+
+        final boolean delta = deltaApplies(method, entity);
+        final String signaturesPath = delta ? reserved("signatures") : null;
+        final String deltaPath = delta ? reserved("delta") : null;
+        // orders this request against those journaled for each sibling
+        final long ticket = replicationQueue == null
+                            ? 0L : replicationQueue.ticket();
+        if (replicationQueue != null) {
+            try { // before anything is sent; survives a crash from now on
+                replicationQueue.hold(siblings, method, path, queryParameters,
+                                      entity == null ? null : entity.spill(),
+                                      contentType, ticket);
+            } catch (final IOException ioe) {
+                final String message = "failed to append to replication queue";
+                logger.error(message, ioe);
+                throw new WebApplicationException(message, ioe);
+            }
+        }
+
+        // siblings answering after we return must not lose the entity
+        final boolean retained = entity != null && awaited < siblings.size();
+        final StagingFiles.Buffer payload = retained ? retain(entity) : entity;
+        final MediaType payloadType = contentType;
+        final String digests = payload == null ? null : payloadDigest;
+        // encoded once for all siblings; the queue keeps the file as it is
+        final java.nio.file.Path encoded = compressed(method, payload);
+
+        final Client[] fallback_ = new Client[1];
+        final Acknowledgements acknowledgements = new Acknowledgements(
+            siblings.size(), () -> {
+                ofNullable(fallback_[0]).ifPresent(Client::close);
+                if (retained) {
+                    payload.release();
+                }
+                if (encoded != null) {
+                    try {
+                        Files.deleteIfExists(encoded);
+                    } catch (final IOException ioe) {
+                        logger.error("failed to delete " + encoded, ioe);
+                    }
+                }
+            });
+        for (final URI fileFront : siblings) {
+            logger.trace("fileFront: {}", fileFront);
+            final Consumer<Response> responded = response -> {
+                final boolean acknowledged = response != null
+                                             && response.getStatusInfo()
+                    .getFamily() == Response.Status.Family.SUCCESSFUL;
+                try {
+                    if (response != null) {
+                        logger.trace("response.statusInfo: {}",
+                                     response.getStatusInfo());
+                        response.close(); // returns the connection
+                    }
+                    if (replicationQueue != null && acknowledged) {
+                        replicationQueue.delivered(fileFront, path, ticket);
+                    } else if (replicationQueue != null) {
+                        replicationQueue.release(fileFront, path, ticket);
+                    }
+                } catch (final RuntimeException e) {
+                    logger.error("failed to release to replication queue", e);
+                } finally {
+                    acknowledgements.complete(acknowledged);
+                }
+            };
+            if (replicationQueue != null
+                && replicationQueue.isPending(fileFront)) {
+                // must not overtake what is journaled for the sibling
+                logger.debug("releasing behind pending: {}", fileFront);
+                responded.accept(null);
+                continue;
+            }
+            WebTarget target = client(fileFront, fallback_)
+                .target(fileFront).path(path)
+                .property(ClientProperties.READ_TIMEOUT, readTimeout);
+            for (final Entry<String, String> queryParameter
+                 : queryParameters.entrySet()) {
+                target = target.queryParam(queryParameter.getKey(),
+                                           queryParameter.getValue());
+            }
+            logger.trace("target.uri: {}", target.getUri().toString());
+            // siblings holding the content need no bytes
+            final WebTarget reference = payload == null || entityDigest == null
+                                        ? null : client(fileFront, fallback_)
+                                            .target(fileFront)
+                                            .path(reserved("reference"))
+                                            .queryParam("digest",
+                                                        FileValidators.hex(
+                                                            entityDigest))
+                                            .property(
+                                                ClientProperties.READ_TIMEOUT,
+                                                readTimeout);
+            // siblings holding an older copy need changed blocks only
+            final WebTarget sibling = delta
+                                      ? client(fileFront, fallback_)
+                                          .target(fileFront)
+                                          .property(
+                                              ClientProperties.READ_TIMEOUT,
+                                              readTimeout)
+                                      : null;
+            try {
+                final Entity<?> requestEntity
+                    = payload == null ? null
+                      : encoded != null
+                        ? Entity.entity(encoded.toFile(), new Variant(
+                            payloadType, (Locale) null,
+                            ContentEncodings.GZIP))
+                        : payload.isSpilled()
+                          ? Entity.entity(payload.getPath().toFile(),
+                                          payloadType)
+                          : Entity.entity((StreamingOutput) payload::writeTo,
+                                          payloadType);
+                if (backingExecutor != null && backingExecutor.isVirtual()) {
+                    final Invocation.Builder builder = target.request()
+                        .header(FileFrontConstants.HEADER_DIGEST, digests);
+                    final Invocation invocation = requestEntity == null
+                                                  ? builder.build(method)
+                                                  : builder.build(
+                                                      method, requestEntity);
+                    backingExecutor.fork(() -> {
+                        Response response = null;
+                        try {
+                            if (reference != null) {
+                                response = successful(
+                                    reference.request().post(null));
+                            }
+                            if (response == null && sibling != null) {
+                                response = sendDelta(
+                                    sibling.path(deltaPath),
+                                    sibling.path(signaturesPath).request()
+                                    .get(), payload);
+                            }
+                            if (response == null) {
+                                response = invocation.invoke();
+                            }
+                        } catch (final ProcessingException pe) {
+                            logger.error(
+                                "failed to distribute to " + fileFront, pe);
+                        }
+                        responded.accept(response);
+                        return null;
+                    });
+                    continue;
+                }
+                final InvocationCallback<Response> callback
+                    = new InvocationCallback<Response>() {
+
+                        @Override
+                        public void completed(final Response response) {
+                            responded.accept(response);
+                        }
+
+
+                        @Override
+                        public void failed(final Throwable throwable) {
+                            logger.error("failed to distribute to "
+                                         + fileFront, throwable);
+                            responded.accept(null);
+                        }
+
+                    };
+                final AsyncInvoker invoker = target.request()
+                    .header(FileFrontConstants.HEADER_DIGEST, digests)
+                    .async();
+                final Runnable send = () -> {
+                    if (requestEntity == null) {
+                        invoker.method(method, callback);
+                    } else {
+                        invoker.method(method, requestEntity, callback);
+                    }
+                };
+                final Runnable offer = sibling == null ? send : () -> sibling
+                    .path(signaturesPath).request().async().get(
+                        new InvocationCallback<Response>() {
+
+                            @Override
+                            public void completed(final Response signatures) {
+                                final Response response = sendDelta(
+                                    sibling.path(deltaPath), signatures,
+                                    payload);
+                                if (response != null) {
+                                    callback.completed(response);
+                                    return;
+                                }
+                                attempt(send, callback);
+                            }
+
+
+                            @Override
+                            public void failed(final Throwable throwable) {
+                                attempt(send, callback);
+                            }
+
+                        });
+                if (reference == null) {
+                    offer.run();
+                    continue;
+                }
+                reference.request().async().post(
+                    null, new InvocationCallback<Response>() {
+
+                        @Override
+                        public void completed(final Response response) {
+                            if (successful(response) != null) {
+                                callback.completed(response);
+                                return;
+                            }
+                            attempt(offer, callback);
+                        }
+
+
+                        @Override
+                        public void failed(final Throwable throwable) {
+                            callback.failed(throwable);
+                        }
+
+                    });
+            } catch (final ProcessingException
+                           | RejectedExecutionException e) {
+                logger.error("failed to distribute to " + fileFront, e);
+                responded.accept(null);
+            }
+        }
+
+        final int acknowledged = acknowledgements.await(awaited,
+                                                        readTimeout);
+        logger.trace("acknowledged: {}", acknowledged);
+
+        return acknowledged;
+    }
+
+
+    /**
+     * Sends specified payload to a sibling as a delta against the copy of
+     * specified signatures.
+     *
+     * @param sibling the target of the delta on the sibling.
+     * @param signatures the response of the sibling for signatures; closed.
+     * @param payload the payload.
+     *
+     * @return a successful response of the sibling; {@code null} if the
+     * content should be sent in full.
+     */
+    private Response sendDelta(final WebTarget sibling,
+                               final Response signatures,
+                               final StagingFiles.Buffer payload) {
+
+        java.nio.file.Path delta = null;
+        try {
+            if (signatures.getStatus() != Response.Status.OK.getStatusCode()) {
+                logger.trace("no signatures: {}", signatures.getStatus());
+                return null;
+            }
+            final BlockDelta.Signatures parsed = BlockDelta.readSignatures(
+                signatures.readEntity(InputStream.class));
+            delta = spool("delta");
+            final long literals;
+            try (InputStream source = payload.newInputStream();
+                 OutputStream output = new BufferedOutputStream(
+                     Files.newOutputStream(delta))) {
+                literals = BlockDelta.delta(source, parsed, output);
+            }
+            logger.debug("delta to {}: {} literal bytes, {} bytes sent",
+                         sibling.getUri(), literals, Files.size(delta));
+            if (Files.size(delta) >= payload.getLength()) {
+                return null;
+            }
+            return successful(sibling.request().post(
+                Entity.entity(delta.toFile(), APPLICATION_X_DELTA)));
+        } catch (final IOException | ProcessingException e) {
+            logger.warn("failed to send delta to {}: {}", sibling.getUri(),
+                        e.toString());
+            return null;
+        } finally {
+            signatures.close();
+            if (delta != null) {
+                unspool(delta);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the path of specified operation on the file of the current
+     * request, e.g. {@code locators/_/delta/some/file} for
+     * {@code locators/some/file}.
+     *
+     * @param operation the name of the operation.
+     *
+     * @return the path of the operation.
+     *
+     * @see #RESERVED_SEGMENT
+     */
+    private String reserved(final String operation) {
+
+        final String path = uriInfo.getPath();
+        final String locator = uriInfo.getPathParameters().getFirst("locator");
+
+        return path.substring(0, path.length() - locator.length())
+               + RESERVED_SEGMENT + "/" + operation + "/" + locator;
+    }
+
+
+    /**
+     * Checks whether specified request entity is to be distributed as deltas.
+     *
+     * @param method the method of the distribution.
+     * @param entity the request entity to distribute; may be {@code null}.
+     *
+     * @return {@code true} if the entity is to be sent as deltas;
+     * {@code false} otherwise.
+     */
+    private boolean deltaApplies(final String method,
+                                 final StagingFiles.Buffer entity) {
+
+        return entity != null && HttpMethod.PUT.equals(method)
+               && FileFrontProperties.getBoolean(
+                   configuration, FileFrontProperties.REPLICATION_DELTA, false)
+               && entity.getLength() >= FileFrontProperties.getLong(
+                   configuration, FileFrontProperties.REPLICATION_DELTA_MINIMUM,
+                   DEFAULT_DELTA_MINIMUM);
+    }
+
+
+    /**
+     * Compresses specified request entity to be distributed, if enabled.
+     *
+     * @return the compressed entity or {@code null} if not compressed.
+     */
+    private java.nio.file.Path compressed(final String method,
+                                          final StagingFiles.Buffer entity) {
+
+        if (entity == null || !HttpMethod.PUT.equals(method)
+            || !FileFrontProperties.getBoolean(
+                configuration, FileFrontProperties.REPLICATION_COMPRESSION,
+                false)) {
+            return null;
+        }
+
+        try {
+            final java.nio.file.Path encoded = ContentEncodings.encode(
+                entity.spill(), ContentEncodings.GZIP);
+            logger.trace("encoded: {}", encoded);
+            return encoded;
+        } catch (final IOException ioe) {
+            logger.warn("failed to compress entity", ioe);
+            return null; // sent as it is
+        }
+    }
+
+
+    /**
+     * Returns specified response if successful; closes it and returns
+     * {@code null} otherwise.
+     */
+    private static Response successful(final Response response) {
+
+        if (response.getStatusInfo().getFamily()
+            == Response.Status.Family.SUCCESSFUL) {
+            return response;
+        }
+        response.close();
+
+        return null;
+    }
+
+
+    private static void attempt(final Runnable invocation,
+                                final InvocationCallback<Response> callback) {
+
+        try {
+            invocation.run();
+        } catch (final ProcessingException | RejectedExecutionException e) {
+            callback.failed(e);
+        }
+    }
+
+
+    /**
+     * Distributes the current request to specified siblings, if specified,
+     * and returns the number of replicas acknowledged.
+     *
+     * @return the number of replicas acknowledged including the local one.
+     */
+    private int replicate(final boolean distribute, final int required,
+                          final String method,
+                          final Map<String, String> queryParameters,
+                          final List<URI> siblings,
+                          final StagingFiles.Buffer entity,
+                          final int readTimeout) {
+
+        if (!distribute) {
+            return 1;
+        }
+
+        return 1 + distribute(
+            method, queryParameters, siblings, entity, null, null,
+            readTimeout, required == 0 ? Integer.MAX_VALUE : required - 1);
+    }
+
+
+    /**
+     * Returns a response builder for a write acknowledged by specified number
+     * of replicas. The status is {@code 503} when fewer replicas than required
+     * acknowledged.
+     */
+    private static Response.ResponseBuilder acknowledged(
+        final int required, final int acknowledged) {
+
+        final Response.ResponseBuilder builder
+            = acknowledged < required
+              ? Response.status(Response.Status.SERVICE_UNAVAILABLE)
+              : Response.noContent();
+
+        return builder.header(FileFrontConstants.HEADER_ACKNOWLEDGED,
+                              acknowledged);
+    }
+
+
+    /**
+     * Returns siblings to distribute specified locator to; the other owners
+     * of the locator in the partitioned mode.
+     */
+    private List<URI> siblings(final String locator) {
+
+        return siblings(owners(locator));
+    }
+
+
+    /**
+     * Returns the fronts owning specified locator in the partitioned mode.
+     *
+     * @return the owners; {@code null} if not partitioned.
+     */
+    List<URI> owners(final String locator) {
+
+        if (partitioner == null || locator == null) {
+            return null;
+        }
+
+        return partitioner.owners(key(locator), fileFronts);
+    }
+
+
+    List<URI> siblings(final List<URI> owners) {
+
+        final URI baseUri = uriInfo.getBaseUri();
+        final List<URI> siblings = new ArrayList<>();
+        for (final URI fileFront : fileFronts) {
+            if (!fileFront.isAbsolute()) {
+                logger.warn("not an absolute uri: {}", fileFront);
+                continue;
+            }
+            if (baseUri.equals(fileFront)) {
+                continue;
+            }
+            if (owners != null && !owners.contains(fileFront)) {
+                continue;
+            }
+            siblings.add(fileFront);
+        }
+
+        return siblings;
+    }
+
+
+    /**
+     * Retains specified entity to outlive the current request. A staging
+     * buffer is retained as it is and any other file is linked, or copied, to
+     * a new temporary file. The file is not acquired from the
+     * {@link StagingFiles}, whose release truncates the file, and so the
+     * linked entity, for reuse.
+     */
+    private StagingFiles.Buffer retain(final StagingFiles.Buffer entity) {
+
+        if (entity.isOwned()) {
+            return entity.retain();
+        }
+
+        final java.nio.file.Path path = entity.getPath();
+        try {
+            final java.nio.file.Path retained = Files.createTempFile(
+                path.getParent(), "distributing", null);
+            try {
+                Files.delete(retained);
+                Files.createLink(retained, path);
+            } catch (final UnsupportedOperationException | IOException e) {
+                Files.copy(path, retained,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            return StagingFiles.owning(retained);
+        } catch (final IOException ioe) {
+            final String message = "failed to retain entity to distribute";
+            logger.error(message, ioe);
+            throw new WebApplicationException(message, ioe);
+        }
+    }
+
+
+    /**
+     * Returns the injected backing.
+     *
+     * @return the injected backing.
+     */
+    protected FileBack getFileBack() {
+
+        return fileBack;
+    }
+
+
+    private FileValidators.Validator validator(final String locator) {
+
+        if (fileValidators == null) {
+            return null;
+        }
+
+        return fileValidators.get(key(locator));
+    }
+
+
+    /**
+     * Routes the current request for specified locator in the partitioned
+     * mode. The request is served locally, with distributions limited to the
+     * owners of the locator, when the current front owns the locator or when
+     * the request has already been forwarded.
+     *
+     * @param locator the locator to route by.
+     * @param entity the request entity to forward; {@code null} for none.
+     *
+     * @return a redirecting or a forwarded response; {@code null} if the
+     * request should be served locally.
+     */
+    Response partition(final String locator,
+                       final InputStream entity) {
+
+        if (partitioner == null) {
+            return null;
+        }
+
+        final List<URI> owners = partitioner.owners(key(locator), fileFronts);
+        logger.trace("owners: {}", owners);
+        if (owners.isEmpty() || forwarded()
+            || owners.contains(uriInfo.getBaseUri())) {
+            return null;
+        }
+
+        if (partitioner.isRedirect()) {
+            return Response.temporaryRedirect(relocate(owners.get(0)))
+                .build();
+        }
+
+        return forward(owners, entity);
+    }
+
+
+    /**
+     * Forwards the current request to the first of specified owners
+     * responding. An entity is sent to the first owner only.
+     */
+    private Response forward(final List<URI> owners,
+                             final InputStream entity) {
+
+        final Client[] fallback_ = new Client[1];
+        for (final URI owner : owners) {
+            final URI uri = relocate(owner);
+            logger.trace("forwarding to {}", uri);
+            final Invocation.Builder builder = client(owner, fallback_)
+                .target(uri).request();
+            for (final String name : FORWARDED_HEADERS) {
+                final List<String> values = httpHeaders.getRequestHeader(name);
+                if (values != null) {
+                    values.forEach(value -> builder.header(name, value));
+                }
+            }
+            final Response response;
+            try {
+                response = entity == null
+                           ? builder.method(request.getMethod())
+                           : builder.method(request.getMethod(),
+                                            Entity.entity(entity, contentType));
+            } catch (final ProcessingException pe) {
+                logger.error("failed to forward to " + owner, pe);
+                if (entity != null) {
+                    break;
+                }
+                continue;
+            }
+            if (entity == null && response.getStatusInfo().getFamily()
+                                  == Response.Status.Family.SERVER_ERROR) {
+                logger.warn("{} responded {}", owner, response.getStatus());
+                response.close();
+                continue;
+            }
+            return relay(response, fallback_[0]);
+        }
+
+        ofNullable(fallback_[0]).ifPresent(Client::close);
+        final String message = "no owner available";
+        logger.error(message);
+        throw new WebApplicationException(
+            message, Response.Status.BAD_GATEWAY);
+    }
+
+
+    /**
+     * Relays specified response from a sibling.
+     */
+    private Response relay(final Response response, final Client client) {
+
+        final Response.ResponseBuilder builder
+            = Response.status(response.getStatus());
+        response.getStringHeaders().forEach((name, values) -> {
+            if (!HttpHeaders.DATE.equalsIgnoreCase(name)
+                && !"Connection".equalsIgnoreCase(name)
+                && !"Transfer-Encoding".equalsIgnoreCase(name)) {
+                values.forEach(value -> builder.header(name, value));
+            }
         });
 
-        final Object[] targetObject_ = new Object[1];
-        fileContext.targetObjectConsumer(targetObject -> {
-            logger.trace("target object: {}", targetObject);
-            targetObject_[0] = targetObject;
-        });
+        if (!response.hasEntity()) {
+            response.close();
+            ofNullable(client).ifPresent(Client::close);
+            return builder.build();
+        }
+
+        return builder.entity((StreamingOutput) output -> {
+            try (InputStream input = response.readEntity(InputStream.class)) {
+                final byte[] buffer
+                    = new byte[FileFrontChannels.BUFFER_CAPACITY];
+                for (int read; (read = input.read(buffer)) != -1;) {
+                    output.write(buffer, 0, read);
+                }
+            } finally {
+                response.close();
+                ofNullable(client).ifPresent(Client::close);
+            }
+        }).build();
+    }
+
+
+    /**
+     * Returns the URI of the current request on specified front.
+     */
+    private URI relocate(final URI fileFront) {
+
+        return UriBuilder.fromUri(fileFront).path(uriInfo.getPath(false))
+            .replaceQuery(uriInfo.getRequestUri().getRawQuery()).build();
+    }
+
+
+    /**
+     * Checks whether the current front owns specified locator.
+     */
+    private boolean owns(final String locator) {
+
+        return partitioner == null
+               || partitioner.owners(key(locator), fileFronts)
+            .contains(uriInfo.getBaseUri());
+    }
+
+
+    /**
+     * Copies a file owned by others by reading it from an owner and writing
+     * it as the target.
+     */
+    private Response copyFromOwner(final String sourceLocator,
+                                   final String targetLocator,
+                                   final boolean distribute) {
+
+        final String path = uriInfo.getPath(false); // .../{source}/copy
+        final String sourcePath = path.substring(0, path.lastIndexOf('/'));
+
+        final Client[] fallback_ = new Client[1];
+        try {
+            for (final URI owner
+                 : partitioner.owners(key(sourceLocator), fileFronts)) {
+                final Response response;
+                try {
+                    response = client(owner, fallback_).target(owner)
+                        .path(sourcePath)
+                        .request().get();
+                } catch (final ProcessingException pe) {
+                    logger.error("failed to read from " + owner, pe);
+                    continue;
+                }
+                try {
+                    if (response.getStatusInfo().getFamily()
+                        != Response.Status.Family.SUCCESSFUL) {
+                        logger.debug("{} responded {}", owner,
+                                     response.getStatus());
+                        continue;
+                    }
+                    return updateSingle(
+                        new DefaultFileContext(), targetLocator,
+                        response.readEntity(InputStream.class), distribute);
+                } finally {
+                    response.close();
+                }
+            }
+        } finally {
+            ofNullable(fallback_[0]).ifPresent(Client::close);
+        }
+
+        throw new NotFoundException("no file for locator: " + sourceLocator);
+    }
+
+
+    /**
+     * Returns a client for specified sibling; a fallback client, closed by
+     * the caller, is created if no {@link SiblingClients} is bound.
+     */
+    Client client(final URI fileFront, final Client[] fallback_) {
+
+        if (siblingClients != null) {
+            return siblingClients.client(fileFront);
+        }
+
+        if (fallback_[0] == null) {
+            fallback_[0] = ClientBuilder.newClient()
+                .property(ClientProperties.CONNECT_TIMEOUT,
+                          (int) FileFrontProperties.getLong(
+                              configuration,
+                              FileFrontProperties.SIBLING_CONNECT_TIMEOUT,
+                              SiblingClients.DEFAULT_CONNECT_TIMEOUT));
+            final SiblingSigner signer = SiblingSigner.of(configuration);
+            if (signer != null) {
+                fallback_[0].register(signer);
+            }
+        }
+
+        return fallback_[0];
+    }
+
+
+    /**
+     * Checks whether the current request is from a sibling; i.e. whether it
+     * carries a {@value FileFrontConstants#HEADER_FORWARDED} header signed
+     * with the configured {@link FileFrontProperties#SIBLING_SECRET}.
+     *
+     * @return {@code true} if the request is from a sibling; {@code false}
+     * otherwise.
+     */
+    boolean forwarded() {
+
+        if (forwarded == null) {
+            return false;
+        }
+
+        final SiblingSigner signer = SiblingSigner.of(configuration);
+        if (signer == null
+            || !signer.verify(forwarded, request.getMethod(),
+                              uriInfo.getRequestUri().getRawPath())) {
+            logger.warn("untrusted {}: {}",
+                        FileFrontConstants.HEADER_FORWARDED, forwarded);
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Runs specified part of a batch on the {@link BackingExecutor}, or in
+     * place if not bound. A part rejected by a saturated executor runs in
+     * place as well.
+     *
+     * @param part the part to run.
+     *
+     * @return a future of the result.
+     */
+    <T> Future<T> batch(final Callable<T> part) {
+
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Runnable runnable = () -> {
+            try {
+                future.complete(part.call());
+            } catch (final Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+
+        if (backingExecutor != null) {
+            try {
+                backingExecutor.execute(runnable);
+                return future;
+            } catch (final RejectedExecutionException ree) {
+                logger.debug("running in place: {}", ree.toString());
+            }
+        }
+
+        runnable.run();
+
+        return future;
+    }
+
+
+    /**
+     * Runs specified operation on the {@link BackingExecutor}, or in place if
+     * not bound, and resumes specified response with the result. The response
+     * is resumed with {@code 503} if the executor is saturated.
+     *
+     * @param asyncResponse the response to resume.
+     * @param operation the operation.
+     */
+    void resume(final AsyncResponse asyncResponse,
+                final Operation operation) {
+
+        final Runnable runnable = () -> {
+            try {
+                asyncResponse.resume(operation.operate());
+            } catch (final Throwable t) {
+                asyncResponse.resume(t);
+            }
+        };
+
+        if (backingExecutor == null) {
+            runnable.run();
+            return;
+        }
+
+        try {
+            backingExecutor.execute(runnable);
+        } catch (final RejectedExecutionException ree) {
+            logger.warn("backing executor saturated", ree);
+            asyncResponse.resume(new ServiceUnavailableException(1L, ree));
+        }
+    }
+
+
+    void invalidate(final String locator) {
+
+        if (fileValidators != null) {
+            fileValidators.invalidate(key(locator));
+        }
+        if (fileCache != null) {
+            fileCache.invalidate(key(locator));
+        }
+        if (fileMappings != null) {
+            fileMappings.invalidate(key(locator));
+        }
+        if (contentEncodings != null) {
+            contentEncodings.invalidate(key(locator));
+        }
+    }
+
+
+    /**
+     * Records a file written with specified digest of its content.
+     */
+    void written(final String locator, final byte[] bytes) {
+
+        written(locator, bytes, null);
+    }
+
+
+    /**
+     * Records a file written with specified digest and CRC-32C, if known, of
+     * its content.
+     */
+    private void written(final String locator, final byte[] bytes,
+                         final Long checksum) {
+
+        if (fileValidators != null) {
+            final FileValidators.Validator validator
+                = new FileValidators.Validator(
+                    bytes, checksum, System.currentTimeMillis());
+            logger.trace("validator: {}", validator);
+            fileValidators.put(key(locator), validator);
+        }
+        if (antiEntropy != null) {
+            antiEntropy.written(locator, bytes);
+        }
+        if (contentIndex != null) {
+            contentIndex.put(locator, bytes);
+        }
+    }
+
 
+    private void copied(final String sourceLocator,
+                        final String targetLocator) {
+
+        final byte[] digest = contentIndex == null
+                              ? null : contentIndex.digest(sourceLocator);
+        if (contentIndex != null) {
+            if (digest == null) {
+                contentIndex.remove(targetLocator);
+            } else {
+                contentIndex.put(targetLocator, digest);
+            }
+        }
+        if (antiEntropy == null) {
+            return;
+        }
+        final byte[] recorded = digest == null
+                                ? antiEntropy.digest(sourceLocator) : digest;
+        if (recorded != null) {
+            antiEntropy.written(targetLocator, recorded);
+        }
+    }
+
+
+    void deleted(final String locator) {
+
+        if (antiEntropy != null) {
+            antiEntropy.deleted(locator);
+        }
+        if (contentIndex != null) {
+            contentIndex.remove(locator);
+        }
+    }
+
+
+    /**
+     * Copies specified source to specified target in the file back. The copy
+     * takes as much space as the source unless the file back implements it as
+     * a reference. The source may be overwritten between its lookup in the
+     * content index and the copy, so the copied target is read back and
+     * deleted unless it has specified digest.
+     *
+     * @return {@code true} if copied with specified digest; {@code false}
+     * otherwise.
+     */
+    boolean reference(final String sourceLocator,
+                      final String targetLocator,
+                      final byte[] digest) {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.COPY);
+        fileContext.sourceKeySupplier(() -> key(sourceLocator));
+        fileContext.targetKeySupplier(() -> key(targetLocator));
         final Long[] targetCopied_ = new Long[1];
         fileContext.targetCopiedConsumer(targetCopied -> {
-            logger.trace("target copied: {}", targetCopied);
+            logger.trace("consuming target copied: {}", targetCopied);
             targetCopied_[0] = targetCopied;
         });
 
-        final String[] pathName_ = new String[1];
-        fileContext.pathNameConsumer(pathName -> {
-            logger.trace("path name: {}", pathName);
-            pathName_[0] = pathName;
-        });
+        invalidate(targetLocator);
+        try {
+            fileBack.operate(fileContext);
+        } catch (IOException | FileBackException | RuntimeException e) {
+            logger.error("failed to reference " + sourceLocator, e);
+            return false;
+        }
+        invalidate(targetLocator); // reads raced with this copy
+        if (targetCopied_[0] == null) { // no source to copy
+            return false;
+        }
 
-        fileContext.targetChannelConsumer(targetChannel -> {
-            logger.trace("target channel : {}", targetChannel);
-            try {
-                final long targetCopied = Files.copy(
-                    tempPath, Channels.newOutputStream(targetChannel));
-                logger.trace("target copied: {}", targetCopied);
-                targetCopied_[0] = targetCopied;
-            } catch (final IOException ioe) {
-                final String message
-                    = "failed to copy from temp path to target channel";
-                logger.error(message, ioe);
-                throw new WebApplicationException(message, ioe);
-            }
-        });
+        final byte[] copied = digest(targetLocator);
+        if (Arrays.equals(copied, digest)) {
+            return true;
+        }
+        logger.debug("{} changed while referenced by {}", sourceLocator,
+                     targetLocator);
+        if (copied != null) {
+            discard(targetLocator);
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Deletes specified file left with a partial or an unexpected content.
+     * The deletion is neither distributed nor recorded as a deletion.
+     */
+    private void discard(final String locator) {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.DELETE);
+        fileContext.targetKeySupplier(() -> key(locator));
+        try {
+            fileBack.operate(fileContext);
+        } catch (IOException | FileBackException | RuntimeException e) {
+            logger.error("failed to discard " + locator, e);
+        }
+        invalidate(locator);
+        if (contentIndex != null) {
+            contentIndex.remove(locator);
+        }
+    }
+
+
+    /**
+     * Reads the content of specified file and returns its digest.
+     *
+     * @return the digest; {@code null} if no file or on failure.
+     */
+    private byte[] digest(final String locator) {
 
-        final FileChannel[] sourceChannel_ = new FileChannel[1];
-        fileContext.sourceChannelSupplier(true ? null : () -> { // _not_usd_!!!
+        final MessageDigest digest = FileValidators.newDigest();
+        final boolean[] read_ = new boolean[1];
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+        fileContext.sourceKeySupplier(() -> key(locator));
+        fileContext.sourceChannelConsumer(sourceChannel -> {
+            final ByteBuffer buffer = ByteBuffer.allocate(8192);
             try {
-                sourceChannel_[0] = FileChannel.open(
-                    tempPath, StandardOpenOption.READ);
-                logger.trace("source channel: {}", sourceChannel_[0]);
-                return sourceChannel_[0];
+                while (sourceChannel.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
             } catch (final IOException ioe) {
-                final String message
-                    = "failed to open temp path for reading";
-                logger.error(message, ioe);
-                throw new WebApplicationException(message, ioe);
+                throw new UncheckedIOException(ioe);
             }
+            read_[0] = true;
         });
+        try {
+            fileBack.operate(fileContext);
+        } catch (IOException | FileBackException | RuntimeException e) {
+            logger.error("failed to read " + locator, e);
+            return null;
+        }
 
-        fileBack.operate(fileContext);
+        return read_[0] ? digest.digest() : null;
+    }
 
-        // @todo: check fielback outputs
-
-        if (distribute) {
-            logger.trace("distributing...");
-            final URI baseUri = uriInfo.getBaseUri();
-            logger.trace("uriInfo.baseUri: {}", baseUri);
-            final String path = uriInfo.getPath();
-            logger.trace("uriInfo.path: {}", path);
-            final List<Future<Response>> futures = new ArrayList<>();
-            logger.trace("fileFronts: {}", fileFronts);
-            for (final URI fileFront : fileFronts) {
-                logger.trace("fileFront: {}", fileFront);
-                if (!fileFront.isAbsolute()) {
-                    logger.warn("not an absolute uri: {}", fileFront);
-                    continue;
-                }
-                if (baseUri.equals(fileFront)) {
-                    logger.trace("skipping self: " + fileFront);
-                    continue;
-                }
-                final Client client = ClientBuilder.newClient()
-                    .property(ClientProperties.CONNECT_TIMEOUT, 2000)
-                    .property(ClientProperties.READ_TIMEOUT, 2000);
-                final WebTarget target = client.target(fileFront).path(path)
-                    .queryParam("distribute", Boolean.FALSE.toString());
-                logger.trace("target: {}", target.getUri().toString());
-//            try {
-//                final Response response = target.request().put(
-//                    Entity.entity(tempPath.toFile(), contentType));
-//                logger.trace("response: {}", response);
-//                logger.trace("response.status: {}", response.getStatusInfo());
-//            } catch (final ProcessingException pe) {
-//                logger.error("failed to distribute to " + fileFront, pe);
-//            }
-                final Future<Response> future = target.request().async().put(
-                    Entity.entity(tempPath.toFile(), contentType));
-                logger.trace("future: {]", future);
-                futures.add(future);
-            }
-            logger.trace("futures: {}", futures);
-            futures.forEach(future -> {
-                try {
-                    final Response response = future.get();
-                    logger.trace("response: {}", response);
-                    logger.trace("response.status: {}", response.getStatus());
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("fail to get response", e);
-                } catch (final Exception e) {
-                    logger.error("unhandled", e);
-                }
-            });
-        }
 
-        return Response.noContent()
-            .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
-            .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
-            .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
-            .build();
+    /**
+     * Lets the anti-entropy process, if bound, know where the current front
+     * serves files. Call on request threads only.
+     */
+    void introduce() {
+
+        if (antiEntropy == null) {
+            return;
+        }
+        final List<String> matched = uriInfo.getMatchedURIs(false);
+        antiEntropy.introduce(uriInfo.getBaseUri(),
+                              matched.get(matched.size() - 1));
     }
 
 
-//    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-//    @POST
-//    @Path("/urlencoded/update")
-//    public Response updateSingleUrlencoded(
-//        @FormParam("locator") final String locator,
-//        @FormParam("distribute") @DefaultValue("true") final boolean distribute,
-//        @FormParam("entity") final InputStream entity)
-//        throws IOException, FileBackException {
-//
-//        logger.trace("updateSingleUrlencoded({}, {}, {})", locator, distribute,
-//                     entity);
-//
-//        if (true) {
-//            return updateSingle(new DefaultFileContext(), locator, entity,
-//                                distribute);
-//        }
-//
-//        try {
-//            Files.copy(entity, tempPath, StandardCopyOption.REPLACE_EXISTING);
-//            logger.trace("entity copied to temp path");
-//        } catch (final IOException ioe) {
-//            logger.error("failed to copy entity to temp path", ioe);
-//            throw new WebApplicationException(ioe);
-//        }
-//
-//        final FileContext fileContext = new DefaultFileContext();
-//
-//        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
-//
-//        fileContext.targetKeySupplier(
-//            () -> ByteBuffer.wrap(locator.getBytes(StandardCharsets.UTF_8)));
-//
-//        final Object[] sourceObject_ = new Object[1];
-//        fileContext.sourceObjectConsumer(sourceObject -> {
-//            logger.trace("source object: {}", sourceObject);
-//            sourceObject_[0] = sourceObject;
-//        });
-//
-//        final Long[] sourceCopied_ = new Long[1];
-//        fileContext.sourceCopiedConsumer(sourceCopied -> {
-//            logger.trace("source copied: {}", sourceCopied);
-//            sourceCopied_[0] = sourceCopied;
-//        });
-//
-//        final Object[] targetObject_ = new Object[1];
-//        fileContext.targetObjectConsumer(targetObject -> {
-//            logger.trace("target object: {}", targetObject);
-//            targetObject_[0] = targetObject;
-//        });
-//
-//        final Long[] targetCopied_ = new Long[1];
-//        fileContext.targetCopiedConsumer(targetCopied -> {
-//            logger.trace("target copied: {}", targetCopied);
-//            targetCopied_[0] = targetCopied;
-//        });
-//
-//        final String[] pathName_ = new String[1];
-//        fileContext.pathNameConsumer(pathName -> {
-//            logger.trace("path name: {}", pathName);
-//            pathName_[0] = pathName;
-//        });
-//
-//        fileContext.targetChannelConsumer(targetChannel -> {
-//            logger.trace("target channel : {}", targetChannel);
-//            try {
-//                final long targetCopied = Files.copy(
-//                    tempPath, Channels.newOutputStream(targetChannel));
-//                logger.trace("target copied: {}", targetCopied);
-//                targetCopied_[0] = targetCopied;
-//            } catch (final IOException ioe) {
-//                final String message
-//                    = "failed to copy from temp path to target channel";
-//                logger.error(message, ioe);
-//                throw new WebApplicationException(message, ioe);
-//            }
-//        });
-//
-//        final FileChannel[] sourceChannel_ = new FileChannel[1];
-//        fileContext.sourceChannelSupplier(true ? null : () -> { // _not_usd_!!!
-//            try {
-//                sourceChannel_[0] = FileChannel.open(
-//                    tempPath, StandardOpenOption.READ);
-//                logger.trace("source channel: {}", sourceChannel_[0]);
-//                return sourceChannel_[0];
-//            } catch (final IOException ioe) {
-//                final String message
-//                    = "failed to open temp path for reading";
-//                logger.error(message, ioe);
-//                throw new WebApplicationException(message, ioe);
-//            }
-//        });
-//
-//        fileBack.operate(fileContext);
-//
-//        // @todo: check fielback outputs
-//
-//        if (distribute) {
-//            logger.trace("distributing...");
-//            final URI baseUri = uriInfo.getBaseUri();
-//            logger.trace("uriInfo.baseUri: {}", baseUri);
-//            final String path = uriInfo.getPath();
-//            logger.trace("uriInfo.path: {}", path);
-//            final List<Future<Response>> futures = new ArrayList<>();
-//            logger.trace("fileFronts: {}", fileFronts);
-//            for (final URI fileFront : fileFronts) {
-//                logger.trace("fileFront: {}", fileFront);
-//                if (!fileFront.isAbsolute()) {
-//                    logger.warn("not an absolute uri: {}", fileFront);
-//                    continue;
-//                }
-//                if (baseUri.equals(fileFront)) {
-//                    logger.trace("skipping self: " + fileFront);
-//                    continue;
-//                }
-//                final Client client = ClientBuilder.newClient()
-//                    .property(ClientProperties.CONNECT_TIMEOUT, 2000)
-//                    .property(ClientProperties.READ_TIMEOUT, 2000);
-//                final WebTarget target = client.target(fileFront).path(path)
-//                    .queryParam("distribute", Boolean.FALSE.toString());
-//                logger.trace("target: {}", target.getUri().toString());
-////            try {
-////                final Response response = target.request().put(
-////                    Entity.entity(tempPath.toFile(), contentType));
-////                logger.trace("response: {}", response);
-////                logger.trace("response.status: {}", response.getStatusInfo());
-////            } catch (final ProcessingException pe) {
-////                logger.error("failed to distribute to " + fileFront, pe);
-////            }
-//                final Future<Response> future = target.request().async().put(
-//                    Entity.entity(tempPath.toFile(), contentType));
-//                logger.trace("future: {]", future);
-//                futures.add(future);
-//            }
-//            logger.trace("futures: {}", futures);
-//            futures.forEach(future -> {
-//                try {
-//                    final Response response = future.get();
-//                    logger.trace("response: {}", response);
-//                    logger.trace("response.status: {}", response.getStatus());
-//                } catch (InterruptedException | ExecutionException e) {
-//                    logger.error("fail to get response", e);
-//                } catch (final Exception e) {
-//                    logger.error("unhandled", e);
-//                }
-//            });
-//        }
-//
-//        return Response.noContent()
-//            .header(FileFrontConstants.HEADER_PATH_NAME, pathName_[0])
-//            .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
-//            .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
-//            .build();
-//    }
     /**
-     * Returns the injected backing.
+     * Checks whether specified {@code If-Range} header value matches current
+     * validators. An entity tag matches with the strong comparison and a date
+     * matches only when equal to the last modified date.
      *
-     * @return the injected backing.
+     * @param validator the validator; may be {@code null}.
+     * @param ifRange the header value.
+     *
+     * @return {@code true} if ranges should be served; {@code false} if the
+     * full file should be served.
      */
-    protected FileBack getFileBack() {
+    private static boolean matchesIfRange(
+        final FileValidators.Validator validator, final String ifRange) {
 
-        return fileBack;
+        if (validator == null) {
+            return false;
+        }
+
+        final String value = ifRange.trim();
+        if (value.startsWith("\"")) {
+            return value.equals(
+                "\"" + validator.getEntityTag().getValue() + "\"");
+        }
+        if (value.startsWith("W/")) {
+            return false; // weak tags never match
+        }
+        try {
+            return ZonedDateTime.parse(
+                value, DateTimeFormatter.RFC_1123_DATE_TIME)
+                .toInstant().toEpochMilli()
+                   == validator.getLastModified().getTime();
+        } catch (final DateTimeParseException dtpe) {
+            return false;
+        }
     }
 
 
@@ -1073,10 +3347,51 @@ public abstract class AbstractLocatorsResource {
     }
 
 
-    private transient final Logger logger = getLogger(lookup().lookupClass());
+    /**
+     * Returns the injected anti-entropy.
+     *
+     * @return the injected anti-entropy; {@code null} if not bound.
+     */
+    AntiEntropy getAntiEntropy() {
+
+        return antiEntropy;
+    }
+
+
+    /**
+     * Returns the injected content index.
+     *
+     * @return the injected content index; {@code null} if not bound.
+     */
+    ContentIndex getContentIndex() {
+
+        return contentIndex;
+    }
+
+
+    /**
+     * Returns the configuration of the application.
+     *
+     * @return the configuration of the application.
+     */
+    Configuration getConfiguration() {
+
+        return configuration;
+    }
+
+
+    /**
+     * Returns the information of the current request URI.
+     *
+     * @return the information of the current request URI.
+     */
+    UriInfo getUriInfo() {
+
+        return uriInfo;
+    }
 
 
-    private transient java.nio.file.Path tempPath;
+    private transient final Logger logger = getLogger(lookup().lookupClass());
 
 
     /**
@@ -1095,10 +3410,134 @@ public abstract class AbstractLocatorsResource {
     private List<URI> fileFronts;
 
 
+    /**
+     * Pooled clients for siblings. A short-lived client is used for each
+     * request when no instance is bound.
+     */
+    @Inject
+    @Optional
+    private SiblingClients siblingClients;
+
+
+    /**
+     * A durable queue for distributing in background. Distribution blocks
+     * until all siblings respond when no instance is bound.
+     */
+    @Inject
+    @Optional
+    private ReplicationQueue replicationQueue;
+
+
+    /**
+     * Validators computed when files are written. No validator is served when
+     * no instance is bound.
+     */
+    @Inject
+    @Optional
+    private FileValidators fileValidators;
+
+
+    /**
+     * A cache of hot files. Every read operates the file back when no instance
+     * is bound.
+     */
+    @Inject
+    @Optional
+    private FileCache fileCache;
+
+
+    /**
+     * Mappings of large files. Files are always copied when no instance is
+     * bound.
+     */
+    @Inject
+    @Optional
+    private FileMappings fileMappings;
+
+
+    /**
+     * A coalescer sharing fetches among concurrent reads. Each read operates
+     * the file back when no instance is bound.
+     */
+    @Inject
+    @Optional
+    private ReadCoalescer readCoalescer;
+
+
+    /**
+     * An executor for suspended requests. Operations run on container threads
+     * if not bound.
+     */
+    @Inject
+    @Optional
+    private BackingExecutor backingExecutor;
+
+
+    /**
+     * A partitioner placing each locator on some of the fronts. Every front
+     * stores every file if not bound.
+     */
+    @Inject
+    @Optional
+    private Partitioner partitioner;
+
+
+    /**
+     * An anti-entropy process repairing siblings. Drifted siblings are not
+     * repaired if not bound.
+     */
+    @Inject
+    @Optional
+    private AntiEntropy antiEntropy;
+
+
+    /**
+     * An index of contents for deduplication. Every file is written, and
+     * distributed, in full if not bound.
+     */
+    @Inject
+    @Optional
+    private ContentIndex contentIndex;
+
+
+    /**
+     * Encoded variants of files. Files are always served as they are if not
+     * bound.
+     */
+    @Inject
+    @Optional
+    private ContentEncodings contentEncodings;
+
+
+    /**
+     * Files for staging bodies. Temporary files are created, and deleted, for
+     * each request if not bound.
+     */
+    @Inject
+    @Optional
+    private StagingFiles stagingFiles;
+
+
     @Context
     private UriInfo uriInfo;
 
 
+    @Context
+    private Request request;
+
+
+    @Context
+    private HttpHeaders httpHeaders;
+
+
+    @Context
+    private Configuration configuration;
+
+
+    @Context
+    private CloseableService closeableService;
+
+
     @HeaderParam("Content-Type")
     private MediaType contentType = MediaType.WILDCARD_TYPE;
 
@@ -1107,5 +3546,45 @@ public abstract class AbstractLocatorsResource {
     private String accept;
 
 
+    @HeaderParam("Accept-Encoding")
+    private String acceptEncoding;
+
+
+    @HeaderParam("Content-Encoding")
+    private String contentEncoding;
+
+
+    @HeaderParam("Range")
+    private String range;
+
+
+    @HeaderParam("If-Range")
+    private String ifRange;
+
+
+    /**
+     * The consistency level of a distributed write; one of {@code ONE},
+     * {@code QUORUM}, {@code ALL} or a number of replicas.
+     */
+    @QueryParam("consistency")
+    private String consistency;
+
+
+    /**
+     * The signature of a request from a sibling; trusted only once verified
+     * by {@link #forwarded()}.
+     */
+    @HeaderParam(FileFrontConstants.HEADER_FORWARDED)
+    private String forwarded;
+
+
+    /**
+     * The instance digests claimed by the client; checked against those
+     * computed while the entity is copied.
+     */
+    @HeaderParam(FileFrontConstants.HEADER_DIGEST)
+    private String instanceDigest;
+
+
 }
 
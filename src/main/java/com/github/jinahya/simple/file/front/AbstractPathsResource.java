@@ -25,14 +25,8 @@ import com.github.jinahya.simple.file.back.FileBackException;
 import com.github.jinahya.simple.file.back.FileContext;
 import java.io.IOException;
 import static java.lang.invoke.MethodHandles.lookup;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
-import static java.util.Optional.ofNullable;
+import java.util.concurrent.RejectedExecutionException;
 import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
@@ -40,12 +34,17 @@ import javax.ws.rs.NotFoundException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.ServiceUnavailableException;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Configuration;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import org.glassfish.jersey.server.CloseableService;
+import org.jvnet.hk2.annotations.Optional;
 import org.slf4j.Logger;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -66,17 +65,20 @@ public abstract class AbstractPathsResource {
     }
 
 
-    @PreDestroy
-    private void destroying() {
+    /**
+     * Returns a buffer for staging a body, from the {@link StagingFiles} if
+     * bound. The buffer is released when the current request completes.
+     *
+     * @return a new buffer.
+     */
+    private StagingFiles.Buffer buffer() {
 
-        if (tempPath != null) {
-            try {
-                final boolean deleted = Files.deleteIfExists(tempPath);
-                logger.trace("temp path deleted: {}", deleted);
-            } catch (final IOException ioe) {
-                logger.error("failed to delete temp path: " + tempPath, ioe);
-            }
-        }
+        final StagingFiles.Buffer buffer = stagingFiles == null
+                                           ? StagingFiles.unpooled()
+                                           : stagingFiles.buffer();
+        closeableService.add(buffer::release);
+
+        return buffer;
     }
 
 
@@ -88,7 +90,12 @@ public abstract class AbstractPathsResource {
 
         logger.trace("path: {}", path);
 
-        tempPath = Files.createTempFile("prefix", "suffix");
+        if (backingExecutor != null && FileFrontProperties.getBoolean(
+            configuration, FileFrontProperties.STREAMING_READ, false)) {
+            return readSingleStreaming(path);
+        }
+
+        final StagingFiles.Buffer staged = buffer();
 
         final FileContext fileContext = new DefaultFileContext();
 
@@ -116,31 +123,14 @@ public abstract class AbstractPathsResource {
 
         fileContext.sourceChannelConsumer(sourceChannel -> {
             logger.trace("consuming source channel : {}", sourceChannel);
-            try {
-                final long sourceCopied = Files.copy(
-                    Channels.newInputStream(sourceChannel), tempPath,
-                    StandardCopyOption.REPLACE_EXISTING);
+            try (StagingFiles.Buffer target = staged) {
+                final long sourceCopied
+                    = FileFrontChannels.copy(sourceChannel, target);
                 logger.trace("source copied: {}", sourceCopied);
                 sourceCopied_[0] = sourceCopied;
             } catch (final IOException ioe) {
                 final String message
-                    = "failed from source channel to temp path";
-                logger.error(message, ioe);
-                throw new WebApplicationException(message, ioe);
-            }
-        });
-
-        final FileChannel[] targetChannel_ = new FileChannel[1];
-        fileContext.targetChannelSupplier(true ? null : () -> { // _not_usd_!!!
-            try {
-                targetChannel_[0] = FileChannel.open(
-                    tempPath, StandardOpenOption.CREATE_NEW,
-                    StandardOpenOption.WRITE);
-                logger.trace("suppling target channel: {}", targetChannel_[0]);
-                return targetChannel_[0];
-            } catch (final IOException ioe) {
-                final String message
-                    = "failed to open temp path for writing";
+                    = "failed from source channel to staging buffer";
                 logger.error(message, ioe);
                 throw new WebApplicationException(message, ioe);
             }
@@ -148,30 +138,65 @@ public abstract class AbstractPathsResource {
 
         fileBack.operate(fileContext);
 
-        ofNullable(targetChannel_[0]).ifPresent(v -> {
-            try {
-                v.close();
-            } catch (final IOException ioe) {
-                logger.error("failed to close target channel", ioe);
-            }
-        });
-
         if (sourceCopied_[0] == null && targetCopied_[0] == null) {
             throw new NotFoundException("no file for path: " + path);
         }
 
         return Response
-            .ok((StreamingOutput) output -> Files.copy(tempPath, output))
+            .ok((StreamingOutput) staged::writeTo)
             .header(FileFrontConstants.HEADER_SOURCE_COPIED, sourceCopied_[0])
             .header(FileFrontConstants.HEADER_TARGET_COPIED, targetCopied_[0])
             .build();
     }
 
 
-    private transient final Logger logger = getLogger(lookup().lookupClass());
+    /**
+     * Reads a file by piping the source channel directly into the response.
+     * A miss is known before the response is built.
+     *
+     * @param path the path name.
+     *
+     * @return a response.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     * @throws NotFoundException if the file back supplies no source channel.
+     * @throws ServiceUnavailableException if the executor is saturated.
+     * @see StreamingRead
+     */
+    protected Response readSingleStreaming(final String path)
+        throws IOException, FileBackException {
+
+        logger.trace("readSingleStreaming({})", path);
+
+        final FileContext fileContext = new DefaultFileContext();
+
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+
+        fileContext.pathNameSupplier(() -> path);
 
+        fileContext.sourceCopiedConsumer(sourceCopied -> {
+            logger.trace("consuming source copied: {}", sourceCopied);
+        });
 
-    private transient java.nio.file.Path tempPath;
+        final StreamingRead read;
+        try {
+            read = StreamingRead.open(fileBack, fileContext, backingExecutor);
+        } catch (final RejectedExecutionException ree) {
+            logger.warn("backing executor saturated", ree);
+            throw new ServiceUnavailableException(1L, ree);
+        }
+        if (read == null) {
+            throw new NotFoundException("no file for path: " + path);
+        }
+
+        return Response.ok(read.entity())
+            .header(HttpHeaders.CONTENT_LENGTH, read.getLength())
+            .build();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
 
 
     /**
@@ -182,10 +207,36 @@ public abstract class AbstractPathsResource {
     private FileBack fileBack;
 
 
+    /**
+     * Files for staging bodies. Temporary files are created, and deleted, for
+     * each request if not bound.
+     */
+    @Inject
+    @Optional
+    private StagingFiles stagingFiles;
+
+
+    /**
+     * The executor streaming reads are handed off to. Reads are staged if not
+     * bound.
+     */
+    @Inject
+    @Optional
+    private BackingExecutor backingExecutor;
+
+
     @Context
     private UriInfo uriInfo;
 
 
+    @Context
+    private Configuration configuration;
+
+
+    @Context
+    private CloseableService closeableService;
+
+
     @HeaderParam("Content-Type")
     private MediaType contentType;
 
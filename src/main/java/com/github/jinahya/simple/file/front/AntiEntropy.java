@@ -0,0 +1,737 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import org.glassfish.jersey.client.ClientProperties;
+import org.jvnet.hk2.annotations.Optional;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * An anti-entropy process repairing siblings drifted apart. Each write and
+ * delete is recorded, with the content digest or a tombstone, in an on-disk
+ * index whose locators are hashed into {@value #BUCKETS} buckets under a
+ * Merkle tree of three levels. A background task periodically compares the
+ * tree with each sibling from the root down and, for buckets differing only,
+ * pulls the entries the sibling changed more recently by writing, or
+ * deleting, them through the current front. Each front pulls for itself so
+ * divergences are repaired in both directions. Files written before this
+ * class is bound are not indexed. Bind this class as a singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#ANTI_ENTROPY_DIRECTORY
+ * @see FileFrontProperties#ANTI_ENTROPY_INTERVAL
+ */
+@Singleton
+public class AntiEntropy {
+
+
+    /**
+     * The default interval between synchronizations in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL = 60000L;
+
+
+    /**
+     * The number of children of each inner node.
+     */
+    static final int FANOUT = 64;
+
+
+    /**
+     * The number of buckets, the leaves of the tree.
+     */
+    static final int BUCKETS = FANOUT * FANOUT;
+
+
+    private static final String INDEX = "index";
+
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+
+    private static final String TOMBSTONE = "-";
+
+
+    private static final long TOMBSTONE_RETENTION = TimeUnit.DAYS.toMillis(7L);
+
+
+    /**
+     * Returns the bucket of specified locator.
+     *
+     * @param locator the locator.
+     *
+     * @return the bucket between {@code 0} and {@value #BUCKETS} exclusive.
+     */
+    static int bucket(final String locator) {
+
+        final byte[] hash = FileValidators.newDigest().digest(
+            locator.getBytes(StandardCharsets.UTF_8));
+
+        return ((hash[0] & 0xFF) << 4 | (hash[1] & 0xFF) >> 4) % BUCKETS;
+    }
+
+
+    /**
+     * Hashes specified entries of a bucket. Modification times are not
+     * hashed so that fronts holding the same contents agree.
+     *
+     * @param entries the entries sorted by locators.
+     *
+     * @return the hash.
+     */
+    static byte[] hash(final Map<String, Record> entries) {
+
+        final MessageDigest digest = FileValidators.newDigest();
+        final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        entries.forEach((locator, record) -> {
+            final byte[] bytes = locator.getBytes(StandardCharsets.UTF_8);
+            length.clear();
+            digest.update(length.putInt(bytes.length).array());
+            digest.update(bytes);
+            if (record.digest == null) {
+                digest.update((byte) 0);
+            } else {
+                digest.update((byte) 1);
+                digest.update(record.digest);
+            }
+        });
+
+        return digest.digest();
+    }
+
+
+    static byte[] unhex(final String hex) {
+
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(
+                hex.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        return bytes;
+    }
+
+
+    @PostConstruct
+    private void constructed() {
+
+        directory = Paths.get(FileFrontProperties.getString(
+            configuration, FileFrontProperties.ANTI_ENTROPY_DIRECTORY,
+            Paths.get(System.getProperty("java.io.tmpdir"), "simple-file-front",
+                      "index").toString()));
+        logger.debug("index directory: {}", directory);
+
+        final long interval = Math.max(1L, FileFrontProperties.getLong(
+            configuration, FileFrontProperties.ANTI_ENTROPY_INTERVAL,
+            DEFAULT_INTERVAL));
+        logger.debug("interval: {}", interval);
+
+        if (siblingClients == null) {
+            client = ClientBuilder.newClient()
+                .property(ClientProperties.CONNECT_TIMEOUT,
+                          (int) FileFrontProperties.getLong(
+                              configuration,
+                              FileFrontProperties.SIBLING_CONNECT_TIMEOUT,
+                              SiblingClients.DEFAULT_CONNECT_TIMEOUT))
+                .property(ClientProperties.READ_TIMEOUT, 10000);
+            final SiblingSigner signer = SiblingSigner.of(configuration);
+            if (signer != null) {
+                client.register(signer);
+            }
+        }
+
+        try {
+            Files.createDirectories(directory);
+            load();
+        } catch (final IOException ioe) {
+            logger.error("failed to load index: " + directory, ioe);
+        }
+
+        scheduler.scheduleWithFixedDelay(this::synchronize, interval,
+                                         interval, TimeUnit.MILLISECONDS);
+    }
+
+
+    @PreDestroy
+    private void destroying() {
+
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(10L, TimeUnit.SECONDS);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException ioe) {
+                    logger.error("failed to close index", ioe);
+                }
+                writer = null;
+            }
+        }
+
+        if (client != null) {
+            client.close();
+        }
+    }
+
+
+    /**
+     * Reads and compacts the index, dropping expired tombstones.
+     */
+    private synchronized void load() throws IOException {
+
+        final Path index = directory.resolve(INDEX);
+        if (Files.exists(index)) {
+            try (BufferedReader reader
+                = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+                for (String line; (line = reader.readLine()) != null;) {
+                    try {
+                        final String[] fields = line.split(" ");
+                        final String locator = decode(fields[0]);
+                        buckets.get(bucket(locator)).put(locator, new Record(
+                            TOMBSTONE.equals(fields[1])
+                            ? null : unhex(fields[1]),
+                            Long.parseLong(fields[2])));
+                    } catch (final RuntimeException re) {
+                        logger.warn("skipping a broken line: {}", line);
+                    }
+                }
+            }
+        }
+
+        final long expired = System.currentTimeMillis() - TOMBSTONE_RETENTION;
+        final Path temp = directory.resolve(INDEX + TEMP_SUFFIX);
+        try (BufferedWriter compacted = Files.newBufferedWriter(
+            temp, StandardCharsets.UTF_8)) {
+            for (final Map<String, Record> bucket : buckets) {
+                bucket.values().removeIf(
+                    record -> record.digest == null
+                              && record.modified < expired);
+                for (final Map.Entry<String, Record> entry
+                     : bucket.entrySet()) {
+                    compacted.write(line(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+
+        writer = Files.newBufferedWriter(
+            index, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+
+    /**
+     * Sets the base URI of the current front and the path of the resource
+     * files are served under. Nothing is synchronized until introduced.
+     *
+     * @param baseUri the base URI of the current front.
+     * @param path the resource path relative to {@code baseUri}.
+     */
+    public void introduce(final URI baseUri, final String path) {
+
+        this.baseUri = baseUri;
+        this.path = path;
+    }
+
+
+    /**
+     * Records that a file is written.
+     *
+     * @param locator the file locator.
+     * @param digest the content digest.
+     */
+    public void written(final String locator, final byte[] digest) {
+
+        record(locator, new Record(digest, System.currentTimeMillis()));
+    }
+
+
+    /**
+     * Records that a file is deleted.
+     *
+     * @param locator the file locator.
+     */
+    public void deleted(final String locator) {
+
+        record(locator, new Record(null, System.currentTimeMillis()));
+    }
+
+
+    /**
+     * Returns the recorded content digest of specified file.
+     *
+     * @param locator the file locator.
+     *
+     * @return the digest; {@code null} if unknown or deleted.
+     */
+    public synchronized byte[] digest(final String locator) {
+
+        final Record record = buckets.get(bucket(locator)).get(locator);
+
+        return record == null ? null : record.digest;
+    }
+
+
+    private synchronized void record(final String locator,
+                                     final Record record) {
+
+        final int bucket = bucket(locator);
+        buckets.get(bucket).put(locator, record);
+        leaves[bucket] = null;
+
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(line(locator, record));
+            writer.flush();
+        } catch (final IOException ioe) {
+            logger.error("failed to record " + locator, ioe);
+        }
+    }
+
+
+    /**
+     * Returns the hashes of a level of the tree, one hexadecimal line each.
+     * Level {@code 0} is the root, level {@code 1} the inner nodes and level
+     * {@code 2} the buckets under inner node {@code node}.
+     *
+     * @param level the level.
+     * @param node the inner node for level {@code 2}.
+     *
+     * @return the hashes.
+     *
+     * @throws IllegalArgumentException if {@code level} or {@code node} is
+     * out of range.
+     */
+    public String tree(final int level, final int node) {
+
+        final StringBuilder builder = new StringBuilder();
+        switch (level) {
+            case 0:
+                builder.append(FileValidators.hex(root())).append('\n');
+                break;
+            case 1:
+                for (int i = 0; i < FANOUT; i++) {
+                    builder.append(FileValidators.hex(inner(i))).append('\n');
+                }
+                break;
+            case 2:
+                if (node < 0 || node >= FANOUT) {
+                    throw new IllegalArgumentException("node: " + node);
+                }
+                for (int i = 0; i < FANOUT; i++) {
+                    builder.append(FileValidators.hex(leaf(node * FANOUT + i)))
+                        .append('\n');
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("level: " + level);
+        }
+
+        return builder.toString();
+    }
+
+
+    /**
+     * Returns the entries of specified bucket, one
+     * {@code <locator> <digest> <modified>} line each. The locator is URL
+     * encoded and the digest of a deleted file is {@code -}.
+     *
+     * @param bucket the bucket.
+     *
+     * @return the entries.
+     *
+     * @throws IllegalArgumentException if {@code bucket} is out of range.
+     */
+    public synchronized String bucket(final int bucket) {
+
+        if (bucket < 0 || bucket >= BUCKETS) {
+            throw new IllegalArgumentException("bucket: " + bucket);
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        buckets.get(bucket).forEach(
+            (locator, record) -> builder.append(line(locator, record)));
+
+        return builder.toString();
+    }
+
+
+    private synchronized byte[] leaf(final int bucket) {
+
+        if (leaves[bucket] == null) {
+            leaves[bucket] = hash(buckets.get(bucket));
+        }
+
+        return leaves[bucket];
+    }
+
+
+    private synchronized byte[] inner(final int node) {
+
+        final MessageDigest digest = FileValidators.newDigest();
+        for (int i = 0; i < FANOUT; i++) {
+            digest.update(leaf(node * FANOUT + i));
+        }
+
+        return digest.digest();
+    }
+
+
+    private synchronized byte[] root() {
+
+        final MessageDigest digest = FileValidators.newDigest();
+        for (int i = 0; i < FANOUT; i++) {
+            digest.update(inner(i));
+        }
+
+        return digest.digest();
+    }
+
+
+    /**
+     * Synchronizes with each sibling once.
+     */
+    void synchronize() {
+
+        final URI baseUri_ = baseUri;
+        if (baseUri_ == null) {
+            logger.trace("not introduced yet");
+            return;
+        }
+
+        for (final URI fileFront : fileFronts) {
+            if (!fileFront.isAbsolute() || fileFront.equals(baseUri_)) {
+                continue;
+            }
+            try {
+                synchronize(fileFront);
+            } catch (final IOException | RuntimeException e) {
+                logger.warn("failed to synchronize with {}: {}", fileFront,
+                            e.toString());
+            }
+        }
+    }
+
+
+    private void synchronize(final URI fileFront) throws IOException {
+
+        final WebTarget sync = client(fileFront).target(fileFront).path(path)
+            .path(AbstractLocatorsResource.RESERVED_SEGMENT).path("sync");
+
+        final String root = get(sync.path("tree")).trim();
+        if (root.equals(FileValidators.hex(root()))) {
+            logger.trace("in sync with {}", fileFront);
+            return;
+        }
+
+        final String[] inners = get(sync.path("tree").queryParam("level", 1))
+            .split("\n");
+        for (int i = 0; i < FANOUT && i < inners.length; i++) {
+            if (inners[i].equals(FileValidators.hex(inner(i)))) {
+                continue;
+            }
+            final String[] leaves_ = get(sync.path("tree")
+                .queryParam("level", 2).queryParam("node", i)).split("\n");
+            for (int j = 0; j < FANOUT && j < leaves_.length; j++) {
+                final int bucket = i * FANOUT + j;
+                if (leaves_[j].equals(FileValidators.hex(leaf(bucket)))) {
+                    continue;
+                }
+                logger.debug("bucket {} differs from {}", bucket, fileFront);
+                reconcile(fileFront,
+                          get(sync.path("bucket").path(
+                              Integer.toString(bucket))));
+            }
+        }
+    }
+
+
+    /**
+     * Pulls the entries of a sibling bucket which are newer than, and
+     * different from, the local ones.
+     */
+    private void reconcile(final URI fileFront, final String entries)
+        throws IOException {
+
+        for (final String line : entries.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final String[] fields = line.split(" ");
+            final String locator = decode(fields[0]);
+            final byte[] digest = TOMBSTONE.equals(fields[1])
+                                  ? null : unhex(fields[1]);
+            final long modified = Long.parseLong(fields[2]);
+            final Record local;
+            synchronized (this) {
+                local = buckets.get(bucket(locator)).get(locator);
+            }
+            if (local != null && (Arrays.equals(local.digest, digest)
+                                  || local.modified >= modified)) {
+                continue;
+            }
+            if (local == null && digest == null) { // nothing to delete
+                record(locator, new Record(null, modified));
+                continue;
+            }
+            if (partitioner != null && !partitioner.owners(
+                ByteBuffer.wrap(locator.getBytes(StandardCharsets.UTF_8)),
+                fileFronts).contains(baseUri)) {
+                continue;
+            }
+            if (pull(fileFront, locator, digest == null)) {
+                pulled.incrementAndGet();
+            }
+        }
+    }
+
+
+    private boolean pull(final URI fileFront, final String locator,
+                         final boolean deleted) {
+
+        logger.debug("pulling {} from {}; deleted: {}", locator, fileFront,
+                     deleted);
+
+        final WebTarget local = client(baseUri).target(baseUri).path(path)
+            .path(locator).queryParam("distribute", Boolean.FALSE.toString());
+        if (deleted) {
+            final Response response = local.request().delete();
+            response.close();
+            return response.getStatusInfo().getFamily()
+                   == Response.Status.Family.SUCCESSFUL;
+        }
+
+        final Response remote = client(fileFront).target(fileFront).path(path)
+            .path(locator).request().get();
+        try {
+            if (remote.getStatus() != Response.Status.OK.getStatusCode()) {
+                logger.debug("{} responded {}", fileFront, remote.getStatus());
+                return false;
+            }
+            final Response response = local.request().put(
+                Entity.entity(remote.readEntity(InputStream.class),
+                              remote.getMediaType()));
+            response.close();
+            return response.getStatusInfo().getFamily()
+                   == Response.Status.Family.SUCCESSFUL;
+        } finally {
+            remote.close();
+        }
+    }
+
+
+    private String get(final WebTarget target) throws IOException {
+
+        final Response response = target.request().get();
+        try {
+            if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                throw new IOException(
+                    target.getUri() + " responded " + response.getStatus());
+            }
+            return response.readEntity(String.class);
+        } finally {
+            response.close();
+        }
+    }
+
+
+    private Client client(final URI fileFront) {
+
+        return siblingClients != null
+               ? siblingClients.client(fileFront) : client;
+    }
+
+
+    /**
+     * Returns the number of files pulled from siblings.
+     *
+     * @return the number of files pulled.
+     */
+    public long getPulled() {
+
+        return pulled.get();
+    }
+
+
+    private static String line(final String locator, final Record record) {
+
+        return encode(locator) + ' '
+               + (record.digest == null
+                  ? TOMBSTONE : FileValidators.hex(record.digest))
+               + ' ' + record.modified + '\n';
+    }
+
+
+    private static String encode(final String locator) {
+
+        try {
+            return URLEncoder.encode(locator, "UTF-8");
+        } catch (final UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee); // mandatory charset
+        }
+    }
+
+
+    private static String decode(final String encoded) {
+
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        } catch (final UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee); // mandatory charset
+        }
+    }
+
+
+    /**
+     * A recorded state of a file.
+     */
+    static final class Record {
+
+
+        Record(final byte[] digest, final long modified) {
+
+            super();
+
+            this.digest = digest;
+            this.modified = modified;
+        }
+
+
+        /**
+         * The content digest; {@code null} for a deleted file.
+         */
+        final byte[] digest;
+
+
+        final long modified;
+
+
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final List<Map<String, Record>> buckets
+        = new ArrayList<>(BUCKETS);
+
+
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.add(new TreeMap<>());
+        }
+    }
+
+
+    private final byte[][] leaves = new byte[BUCKETS][];
+
+
+    private final ScheduledExecutorService scheduler
+        = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "anti-entropy");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+
+    private final AtomicLong pulled = new AtomicLong();
+
+
+    private Path directory;
+
+
+    private BufferedWriter writer;
+
+
+    private Client client;
+
+
+    private volatile URI baseUri;
+
+
+    private volatile String path;
+
+
+    @Inject
+    @Siblings
+    private List<URI> fileFronts;
+
+
+    @Inject
+    @Optional
+    private SiblingClients siblingClients;
+
+
+    @Inject
+    @Optional
+    private Partitioner partitioner;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static java.lang.invoke.MethodHandles.lookup;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A bounded executor running file back operations of suspended requests so
+ * that container threads are not blocked on storage or siblings. Bind this
+ * class as a singleton.
+ * <p>
+ * In the virtual mode, available on runtimes with virtual threads, each
+ * operation and each sibling call of a distribution runs on its own virtual
+ * thread. The number of threads is not configured then and the queue
+ * capacity bounds the operations in progress instead.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#BACKING_THREADS
+ * @see FileFrontProperties#BACKING_QUEUE
+ * @see FileFrontProperties#BACKING_VIRTUAL
+ */
+@Singleton
+public class BackingExecutor {
+
+
+    /**
+     * The default maximum number of threads.
+     */
+    public static final int DEFAULT_THREADS = 32;
+
+
+    /**
+     * The default capacity of the queue of waiting operations.
+     */
+    public static final int DEFAULT_QUEUE = 1024;
+
+
+    /**
+     * Creates a new executor on virtual threads.
+     *
+     * @return a new executor or {@code null} if the runtime has no virtual
+     * threads.
+     */
+    static ExecutorService newVirtualExecutor() {
+
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException roe) {
+            getLogger(BackingExecutor.class).debug(
+                "no virtual threads: {}", roe.toString());
+            return null;
+        }
+    }
+
+
+    @PostConstruct
+    private void constructed() {
+
+        final int threads = (int) Math.max(1L, FileFrontProperties.getLong(
+            configuration, FileFrontProperties.BACKING_THREADS,
+            DEFAULT_THREADS));
+        final int queue = (int) Math.max(1L, FileFrontProperties.getLong(
+            configuration, FileFrontProperties.BACKING_QUEUE, DEFAULT_QUEUE));
+        final boolean virtual = FileFrontProperties.getBoolean(
+            configuration, FileFrontProperties.BACKING_VIRTUAL, false);
+        logger.trace("threads: {}, queue: {}, virtual: {}", threads, queue,
+                     virtual);
+
+        start(threads, queue, virtual);
+    }
+
+
+    @PreDestroy
+    private void destroying() {
+
+        stop();
+    }
+
+
+    void start(final int threads, final int queue, final boolean virtual) {
+
+        if (virtual) {
+            executor = newVirtualExecutor();
+            if (executor != null) {
+                permits = new Semaphore(queue);
+                return;
+            }
+            logger.warn("virtual threads not available; using platform"
+                        + " threads");
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queue), runnable -> {
+                final Thread thread = new Thread(
+                    runnable, "backing-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+
+        final AtomicInteger handOffCount = new AtomicInteger();
+        handOffs = new ThreadPoolExecutor(
+            0, threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            runnable -> {
+                final Thread thread = new Thread(
+                    runnable, "hand-off-" + handOffCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+
+    void stop() {
+
+        executor.shutdownNow();
+        if (handOffs != null) {
+            handOffs.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Executes specified operation.
+     *
+     * @param operation the operation.
+     *
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    public void execute(final Runnable operation) {
+
+        if (permits == null) {
+            executor.execute(operation);
+            return;
+        }
+
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("too many operations");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    operation.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (final RejectedExecutionException ree) {
+            permits.release();
+            throw ree;
+        }
+    }
+
+
+    /**
+     * Returns whether operations run on virtual threads.
+     *
+     * @return {@code true} if in the virtual mode; {@code false} otherwise.
+     */
+    public boolean isVirtual() {
+
+        return permits != null;
+    }
+
+
+    /**
+     * Starts specified task, a part of an operation in progress, on a new
+     * virtual thread. Forked tasks are not bounded by the queue capacity so
+     * that an operation never waits for a permit held by itself.
+     *
+     * @param <T> result type parameter
+     * @param task the task.
+     *
+     * @return a future of the result.
+     *
+     * @throws IllegalStateException if not in the virtual mode.
+     */
+    public <T> Future<T> fork(final Callable<T> task) {
+
+        if (!isVirtual()) {
+            throw new IllegalStateException("not in the virtual mode");
+        }
+
+        return executor.submit(task);
+    }
+
+
+    /**
+     * Runs specified operation, a part of an operation in progress which
+     * waits for it, on a thread of its own so that it never queues behind
+     * the operation waiting for it. The operation is forked in the virtual
+     * mode; otherwise it runs on a separate pool of at most the number of
+     * threads and is rejected, rather than queued, while all of them are
+     * busy.
+     *
+     * @param operation the operation.
+     *
+     * @throws RejectedExecutionException if no thread is available.
+     */
+    public void handOff(final Runnable operation) {
+
+        if (isVirtual()) {
+            executor.execute(operation);
+            return;
+        }
+
+        handOffs.execute(operation);
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private ExecutorService executor;
+
+
+    private Semaphore permits;
+
+
+    private ExecutorService handOffs;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
@@ -0,0 +1,709 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.DefaultFileContext;
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import com.github.jinahya.simple.file.back.FileBackException;
+import com.github.jinahya.simple.file.back.FileContext;
+import com.github.jinahya.simple.file.front.AbstractLocatorsResource.BatchEntry;
+import com.github.jinahya.simple.file.front.AbstractLocatorsResource.BatchPart;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import static java.util.Collections.singletonMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import static java.util.Optional.ofNullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Operates on multiple files in single requests, under {@code _/batch} of a
+ * {@link AbstractLocatorsResource}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see AbstractLocatorsResource#batchResource()
+ */
+public class BatchResource {
+
+
+    private static final String MULTIPART_MIXED = "multipart/mixed";
+
+
+    private static final String APPLICATION_X_TAR = "application/x-tar";
+
+
+    /**
+     * The maximum size of an archive entry held in memory by a batch write.
+     * Larger entries are spooled.
+     */
+    private static final int BATCH_MEMORY_ENTRY = 1048576;
+
+
+    /**
+     * Parses a list of locators, one per line.
+     *
+     * @param locators the locators.
+     * @param maximum the maximum number of locators.
+     *
+     * @return a list of locators.
+     */
+    static List<String> locators(final String locators, final long maximum) {
+
+        final List<String> list = new ArrayList<>();
+        if (locators == null) {
+            return list;
+        }
+        for (final String line : locators.split("\\r?\\n")) {
+            final String locator = line.trim();
+            if (locator.isEmpty()) {
+                continue;
+            }
+            if (list.size() == maximum) {
+                throw new BadRequestException(
+                    "too many locators; maximum: " + maximum);
+            }
+            list.add(locator);
+        }
+
+        return list;
+    }
+
+
+    BatchResource(final AbstractLocatorsResource resource) {
+
+        super();
+
+        this.resource = resource;
+    }
+
+
+    /**
+     * Returns the maximum number of locators in a batch request.
+     *
+     * @see FileFrontProperties#BATCH_MAXIMUM
+     */
+    private long maximum() {
+
+        return FileFrontProperties.getLong(
+            resource.getConfiguration(), FileFrontProperties.BATCH_MAXIMUM,
+            AbstractLocatorsResource.DEFAULT_BATCH_MAXIMUM);
+    }
+
+
+    /**
+     * Returns the number of files operated in parallel by a batch request.
+     *
+     * @see FileFrontProperties#BATCH_CONCURRENCY
+     */
+    private long concurrency() {
+
+        return FileFrontProperties.getLong(
+            resource.getConfiguration(), FileFrontProperties.BATCH_CONCURRENCY,
+            AbstractLocatorsResource.DEFAULT_BATCH_CONCURRENCY);
+    }
+
+
+    /**
+     * Deletes multiple files. The request entity lists locators, one per line.
+     * Files are deleted in parallel, on the {@link BackingExecutor} if bound,
+     * and a {@code <status> <locator>} line is streamed for each locator in
+     * request order. Deletes run to completion even if the client goes away.
+     * The locators deleted here are then forwarded to each sibling in a
+     * single request. In the partitioned mode, each file owned by others is
+     * deleted on its owners and the others are forwarded to their owners
+     * only.
+     *
+     * @param locators the locators, one per line.
+     * @param distribute distribute flag
+     *
+     * @return a response.
+     *
+     * @see FileFrontProperties#BATCH_CONCURRENCY
+     * @see FileFrontProperties#BATCH_MAXIMUM
+     */
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.TEXT_PLAIN)
+    @POST
+    @Path("delete")
+    public Response deleteMultiple(
+        final String locators,
+        @QueryParam("distribute") @DefaultValue("true")
+        final boolean distribute) {
+
+        logger.trace("deleteMultiple({}, {})", locators, distribute);
+
+        final List<String> list = locators(locators, maximum());
+        final int concurrency
+            = (int) Math.max(1L, Math.min(list.size(), concurrency()));
+        logger.trace("concurrency: {}", concurrency);
+
+        final StreamingOutput entity = output -> {
+            // locators deleted here, grouped by their owners
+            final Map<List<URI>, List<String>> groups = new LinkedHashMap<>();
+            final List<Future<Integer>> statuses = new ArrayList<>();
+            try {
+                while (statuses.size() < concurrency
+                       && statuses.size() < list.size()) {
+                    statuses.add(deletePart(list.get(statuses.size()),
+                                            distribute, groups));
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    int status;
+                    try {
+                        status = statuses.get(i).get();
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    } catch (final ExecutionException ee) {
+                        status = Response.Status.INTERNAL_SERVER_ERROR
+                            .getStatusCode();
+                    }
+                    if (statuses.size() < list.size()) {
+                        statuses.add(deletePart(list.get(statuses.size()),
+                                                distribute, groups));
+                    }
+                    output.write((status + " " + list.get(i) + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                    if (i + 1 < list.size() && !statuses.get(i + 1).isDone()) {
+                        output.flush();
+                    }
+                }
+            } finally {
+                while (statuses.size() < list.size()) { // the client is gone
+                    statuses.add(deletePart(list.get(statuses.size()),
+                                            distribute, groups));
+                }
+                statuses.forEach(BatchResource::awaitQuietly);
+                if (distribute) {
+                    for (final Entry<List<URI>, List<String>> group
+                         : groups.entrySet()) {
+                        final StagingFiles.Buffer listed = resource.buffer();
+                        for (final String locator : group.getValue()) {
+                            listed.write((locator + "\n")
+                                .getBytes(StandardCharsets.UTF_8));
+                        }
+                        listed.close();
+                        resource.distribute(
+                            "POST", singletonMap(
+                                "distribute", Boolean.FALSE.toString()),
+                            resource.siblings(group.getKey()), listed, null,
+                            null, (int) Math.min(
+                                Integer.MAX_VALUE,
+                                1000L + 10L * group.getValue().size()),
+                            Integer.MAX_VALUE);
+                    }
+                }
+            }
+        };
+
+        return Response.ok(entity).build();
+    }
+
+
+    /**
+     * Deletes a file of a batch. In the partitioned mode, a file owned by
+     * others is deleted on the first of its owners responding, which
+     * distributes the delete itself; any other file is deleted here and its
+     * locator is added to specified groups under its owners.
+     *
+     * @param locator the locator of the file.
+     * @param distribute distribute flag for the owners.
+     * @param groups the locators deleted here by their owners.
+     *
+     * @return a future of the status.
+     */
+    private Future<Integer> deletePart(
+        final String locator, final boolean distribute,
+        final Map<List<URI>, List<String>> groups) {
+
+        final List<URI> owners = resource.owners(locator);
+        logger.trace("owners: {}", owners);
+        if (owners != null && !owners.isEmpty() && !resource.forwarded()
+            && !owners.contains(resource.getUriInfo().getBaseUri())) {
+            return resource.batch(
+                () -> deleteOwned(owners, locator, distribute));
+        }
+
+        groups.computeIfAbsent(owners, k -> new ArrayList<>()).add(locator);
+
+        return resource.batch(() -> deleteLocal(locator));
+    }
+
+
+    /**
+     * Deletes a file owned by others on the first of specified owners
+     * responding.
+     *
+     * @return the status of the owner; {@code 502} if none responded.
+     */
+    private int deleteOwned(final List<URI> owners, final String locator,
+                            final boolean distribute) {
+
+        // .../_/batch/delete
+        final String path = resource.getUriInfo().getPath(false);
+        final String prefix = path.substring(0, path.length() - (
+            AbstractLocatorsResource.RESERVED_SEGMENT + "/batch/delete")
+            .length());
+
+        final Client[] fallback_ = new Client[1];
+        try {
+            for (final URI owner : owners) {
+                final Response response;
+                try {
+                    response = resource.client(owner, fallback_).target(owner)
+                        .path(prefix + locator)
+                        .queryParam("distribute", distribute)
+                        .request().delete();
+                } catch (final ProcessingException pe) {
+                    logger.error("failed to delete on " + owner, pe);
+                    continue;
+                }
+                response.close();
+                if (response.getStatusInfo().getFamily()
+                    == Response.Status.Family.SERVER_ERROR) {
+                    logger.warn("{} responded {}", owner, response.getStatus());
+                    continue;
+                }
+                return response.getStatus();
+            }
+        } finally {
+            ofNullable(fallback_[0]).ifPresent(Client::close);
+        }
+
+        logger.error("no owner available for {}", locator);
+
+        return Response.Status.BAD_GATEWAY.getStatusCode();
+    }
+
+
+    private int deleteLocal(final String locator) {
+
+        logger.trace("deleteLocal({})", locator);
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.DELETE);
+        fileContext.targetKeySupplier(
+            () -> AbstractLocatorsResource.key(locator));
+
+        try {
+            resource.getFileBack().operate(fileContext);
+        } catch (IOException | FileBackException | RuntimeException e) {
+            logger.error("failed to delete " + locator, e);
+            return Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+        }
+
+        resource.invalidate(locator);
+        resource.deleted(locator);
+
+        return Response.Status.NO_CONTENT.getStatusCode();
+    }
+
+
+    /**
+     * Reads multiple files in a single {@code multipart/mixed} response. The
+     * request entity lists locators, one per line. Files are read in parallel
+     * with bounded concurrency and written in order, each part carrying
+     * {@value FileFrontConstants#HEADER_LOCATOR},
+     * {@value FileFrontConstants#HEADER_STATUS} and, if found,
+     * {@value FileFrontConstants#HEADER_PATH_NAME} and {@code Content-Length}.
+     * Files are read on the {@link BackingExecutor}, if bound, or in place
+     * otherwise. At most the concurrency plus one files are staged at any
+     * time.
+     *
+     * @param locators the locators, one per line.
+     *
+     * @return a response.
+     *
+     * @see FileFrontProperties#BATCH_CONCURRENCY
+     * @see FileFrontProperties#BATCH_MAXIMUM
+     */
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MULTIPART_MIXED)
+    @POST
+    @Path("read")
+    public Response readMultiple(final String locators) {
+
+        logger.trace("readMultiple({})", locators);
+
+        final List<String> list = locators(locators, maximum());
+        final int concurrency
+            = (int) Math.max(1L, Math.min(list.size(), concurrency()));
+        logger.trace("concurrency: {}", concurrency);
+        final String boundary = ByteRanges.boundary();
+
+        final StreamingOutput entity = output -> {
+            final List<Future<BatchPart>> parts = new ArrayList<>();
+            try {
+                while (parts.size() < concurrency
+                       && parts.size() < list.size()) {
+                    final String locator = list.get(parts.size());
+                    parts.add(resource.batch(
+                        () -> resource.readPart(locator)));
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    final BatchPart part;
+                    try {
+                        part = parts.get(i).get();
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    } catch (final ExecutionException ee) {
+                        throw new IOException(ee.getCause());
+                    }
+                    if (parts.size() < list.size()) {
+                        final String locator = list.get(parts.size());
+                        parts.add(resource.batch(
+                            () -> resource.readPart(locator)));
+                    }
+                    try {
+                        output.write(partHeader(boundary, part));
+                        if (part.spool != null) {
+                            Files.copy(part.spool, output);
+                        }
+                    } finally {
+                        resource.deletePart(part);
+                    }
+                }
+                output.write(("\r\n--" + boundary + "--\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            } finally {
+                for (final Future<BatchPart> part : parts) {
+                    try {
+                        resource.deletePart(part.get());
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } catch (final ExecutionException ee) {
+                        // nothing staged
+                    }
+                }
+            }
+        };
+
+        return Response.ok(entity, MULTIPART_MIXED + "; boundary=" + boundary)
+            .build();
+    }
+
+
+    private static byte[] partHeader(final String boundary,
+                                     final BatchPart part) {
+
+        final StringBuilder builder = new StringBuilder()
+            .append("\r\n--").append(boundary).append("\r\n")
+            .append(HttpHeaders.CONTENT_TYPE).append(": ")
+            .append(MediaType.APPLICATION_OCTET_STREAM).append("\r\n")
+            .append(FileFrontConstants.HEADER_LOCATOR).append(": ")
+            .append(part.locator).append("\r\n")
+            .append(FileFrontConstants.HEADER_STATUS).append(": ")
+            .append(part.status).append("\r\n");
+        if (part.pathName != null) {
+            builder.append(FileFrontConstants.HEADER_PATH_NAME).append(": ")
+                .append(part.pathName).append("\r\n");
+        }
+        builder.append(HttpHeaders.CONTENT_LENGTH).append(": ")
+            .append(part.length).append("\r\n\r\n");
+
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Writes every regular file entry of a tar archive, as it arrives, with
+     * the entry name as the locator. Entries are written in parallel on the
+     * {@link BackingExecutor}, if bound, and at most the concurrency of them
+     * are staged or being written at any time; small entries are held in
+     * memory and larger ones spooled. The response lists a
+     * {@code <status> <locator> <size>} line for each entry in archive order
+     * followed by a summary line with the throughput. An entry with a
+     * reserved locator, or beyond the maximum number of entries, is not
+     * written and listed with {@code 400}, and so is an entry cut short by the
+     * end of the archive, which ends the listing.
+     * The archive is teed into a staging buffer, when needed, and forwarded to
+     * each sibling in a single request.
+     *
+     * @param entity the archive.
+     * @param distribute distribute flag
+     *
+     * @return a response.
+     *
+     * @see FileFrontProperties#BATCH_CONCURRENCY
+     * @see FileFrontProperties#BATCH_MAXIMUM
+     */
+    @Consumes(APPLICATION_X_TAR)
+    @Produces(MediaType.TEXT_PLAIN)
+    @POST
+    @Path("write")
+    public Response updateMultiple(
+        final InputStream entity,
+        @QueryParam("distribute") @DefaultValue("true")
+        final boolean distribute) {
+
+        logger.trace("updateMultiple({}, {})", entity, distribute);
+
+        final long started = System.currentTimeMillis();
+        final long maximum = maximum();
+        final int concurrency = (int) Math.max(1L, concurrency());
+        logger.trace("concurrency: {}", concurrency);
+
+        final URI baseUri = resource.getUriInfo().getBaseUri();
+        final boolean replay = distribute
+                               && resource.getFileFronts().stream().anyMatch(
+                                   fileFront -> fileFront.isAbsolute()
+                                                && !baseUri.equals(fileFront));
+        logger.trace("replay: {}", replay);
+
+        final List<BatchEntry> entries = new ArrayList<>();
+        final List<Future<Integer>> statuses = new ArrayList<>();
+        // entries staged or being written
+        final Semaphore window = new Semaphore(concurrency);
+        StagingFiles.Buffer archive = null;
+        try {
+            InputStream input = entity;
+            if (replay) {
+                archive = resource.buffer();
+                final OutputStream tee = archive;
+                input = new FilterInputStream(entity) {
+
+
+                    @Override
+                    public int read() throws IOException {
+
+                        final int b = super.read();
+                        if (b != -1) {
+                            tee.write(b);
+                        }
+                        return b;
+                    }
+
+
+                    @Override
+                    public int read(final byte[] b, final int off,
+                                    final int len)
+                        throws IOException {
+
+                        final int read = super.read(b, off, len);
+                        if (read > 0) {
+                            tee.write(b, off, read);
+                        }
+                        return read;
+                    }
+
+
+                    @Override
+                    public void close() throws IOException {
+
+                        tee.close();
+                    }
+
+
+                };
+            }
+            try {
+                final TarReader reader = new TarReader(input);
+                for (TarReader.Entry next; (next = reader.next()) != null;) {
+                    String locator = next.getName();
+                    while (locator.startsWith("./")
+                           || locator.startsWith("/")) {
+                        locator = locator.substring(
+                            locator.startsWith("/") ? 1 : 2);
+                    }
+                    if (locator.isEmpty()) {
+                        continue;
+                    }
+                    final BatchEntry batchEntry
+                        = new BatchEntry(locator, next.getSize());
+                    // earlier ones may have been written already
+                    if (entries.size() >= maximum
+                        || AbstractLocatorsResource.isReserved(locator)) {
+                        entries.add(batchEntry);
+                        statuses.add(CompletableFuture.completedFuture(
+                            Response.Status.BAD_REQUEST.getStatusCode()));
+                        continue;
+                    }
+                    window.acquireUninterruptibly();
+                    try {
+                        stage(reader, batchEntry);
+                    } catch (final EOFException eofe) { // the archive ended
+                        window.release();
+                        logger.warn("not writing {}: {}", locator,
+                                    eofe.getMessage());
+                        entries.add(batchEntry);
+                        statuses.add(CompletableFuture.completedFuture(
+                            Response.Status.BAD_REQUEST.getStatusCode()));
+                        break;
+                    } catch (final IOException ioe) {
+                        window.release();
+                        throw ioe;
+                    }
+                    entries.add(batchEntry);
+                    statuses.add(resource.batch(() -> {
+                        try {
+                            return resource.writeEntry(batchEntry);
+                        } finally {
+                            resource.unstage(batchEntry);
+                            window.release();
+                        }
+                    }));
+                }
+                // drain the end-of-archive blocks for the tee
+                final byte[] trailer = new byte[TarReader.BLOCK_SIZE];
+                while (input.read(trailer) != -1) {
+                }
+            } finally {
+                input.close(); // closes the tee, if any
+            }
+        } catch (final IOException ioe) {
+            final String message = "failed to read archive";
+            logger.error(message, ioe);
+            throw new WebApplicationException(
+                message, ioe, Response.Status.BAD_REQUEST);
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        long bytes = 0L;
+        int failures = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            int status;
+            try {
+                status = statuses.get(i).get();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                status = Response.Status.SERVICE_UNAVAILABLE.getStatusCode();
+            } catch (final ExecutionException ee) {
+                status = Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+            }
+            final BatchEntry batchEntry = entries.get(i);
+            if (status == Response.Status.NO_CONTENT.getStatusCode()) {
+                bytes += batchEntry.size;
+            } else {
+                failures++;
+            }
+            builder.append(status).append(' ').append(batchEntry.locator)
+                .append(' ').append(batchEntry.size).append('\n');
+        }
+        final long millis = Math.max(1L, System.currentTimeMillis() - started);
+        builder.append("# entries: ").append(entries.size())
+            .append(", failures: ").append(failures)
+            .append(", bytes: ").append(bytes)
+            .append(", millis: ").append(millis)
+            .append(", bytes/s: ").append(bytes * 1000L / millis)
+            .append('\n');
+        logger.trace("summary: {}", builder.substring(
+                     builder.lastIndexOf("# ")));
+
+        if (archive != null) {
+            resource.distribute(
+                "POST", singletonMap("distribute", Boolean.FALSE.toString()),
+                resource.siblings((List<URI>) null), archive, null, null,
+                (int) Math.min(Integer.MAX_VALUE,
+                               2000L + archive.getLength() / 1024L),
+                Integer.MAX_VALUE);
+        }
+
+        return Response.ok(builder.toString()).build();
+    }
+
+
+    private void stage(final TarReader reader, final BatchEntry batchEntry)
+        throws IOException {
+
+        final byte[] buffer = new byte[8192];
+        if (batchEntry.size <= BATCH_MEMORY_ENTRY) {
+            final byte[] bytes = new byte[(int) batchEntry.size];
+            int filled = 0;
+            for (int read; filled < bytes.length
+                           && (read = reader.read(
+                               bytes, filled, bytes.length - filled)) != -1;) {
+                filled += read;
+            }
+            if (filled < batchEntry.size) {
+                throw new EOFException(
+                    "truncated entry: " + batchEntry.locator);
+            }
+            batchEntry.bytes = bytes;
+            return;
+        }
+        batchEntry.spool = resource.spool("batch");
+        try (OutputStream output = Files.newOutputStream(batchEntry.spool)) {
+            long copied = 0L;
+            for (int read; (read = reader.read(buffer, 0, buffer.length))
+                           != -1;) {
+                output.write(buffer, 0, read);
+                copied += read;
+            }
+            if (copied < batchEntry.size) {
+                throw new EOFException(
+                    "truncated entry: " + batchEntry.locator);
+            }
+        } catch (final IOException ioe) {
+            resource.unstage(batchEntry);
+            throw ioe;
+        }
+    }
+
+
+    private static void awaitQuietly(final Future<?> future) {
+
+        try {
+            future.get();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException ee) {
+            // never completed exceptionally
+        }
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final AbstractLocatorsResource resource;
+
+
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Block signatures and deltas in the manner of rsync. A receiver describes
+ * its copy with a weak rolling checksum and a strong hash for each block, and
+ * a sender describes its file as blocks of the receiver's copy and literal
+ * bytes. A delta ends with the SHA-256 digest of the file it describes.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class BlockDelta {
+
+
+    static final int MINIMUM_BLOCK = 1024;
+
+
+    static final int MAXIMUM_BLOCK = 65536;
+
+
+    private static final int MAXIMUM_LITERAL = 65536;
+
+
+    private static final String STRONG_ALGORITHM = "MD5";
+
+
+    private static final int STRONG_LENGTH = 16;
+
+
+    private static final byte COPY = 'C';
+
+
+    private static final byte LITERAL = 'L';
+
+
+    private static final byte END = 'E';
+
+
+    /**
+     * Signatures of a copy.
+     */
+    static final class Signatures {
+
+
+        private Signatures(final int blockSize, final long length) {
+
+            super();
+
+            this.blockSize = blockSize;
+            this.length = length;
+
+            final int count = (int) ((length + blockSize - 1) / blockSize);
+            weaks = new int[count];
+            strongs = new byte[count][];
+        }
+
+
+        private int length(final int block) {
+
+            return (int) Math.min(blockSize,
+                                  length - (long) block * blockSize);
+        }
+
+
+        private final int blockSize;
+
+
+        private final long length;
+
+
+        private final int[] weaks;
+
+
+        private final byte[][] strongs;
+
+
+    }
+
+
+    /**
+     * Returns the block size for a copy of specified length.
+     *
+     * @param length the length of the copy.
+     *
+     * @return the block size; a power of two close to the square root of
+     * {@code length}.
+     */
+    static int blockSize(final long length) {
+
+        final int root = (int) Math.min(MAXIMUM_BLOCK, Math.sqrt(length));
+
+        return Math.max(MINIMUM_BLOCK,
+                        Integer.highestOneBit(Math.max(1, root)));
+    }
+
+
+    static int weak(final byte[] bytes, final int offset, final int length) {
+
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            a += bytes[offset + i] & 0xFF;
+            b += (length - i) * (bytes[offset + i] & 0xFF);
+        }
+
+        return (b & 0xFFFF) << 16 | (a & 0xFFFF);
+    }
+
+
+    /**
+     * Writes signatures of a copy.
+     *
+     * @param input the copy.
+     * @param length the length of the copy.
+     * @param output the stream to write signatures to.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static void signatures(final InputStream input, final long length,
+                           final OutputStream output)
+        throws IOException {
+
+        final int blockSize = blockSize(length);
+        final DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(blockSize);
+        data.writeLong(length);
+
+        final MessageDigest strong = newStrong();
+        final byte[] block = new byte[blockSize];
+        for (long remaining = length; remaining > 0L;) {
+            final int read = (int) Math.min(blockSize, remaining);
+            readFully(input, block, read);
+            data.writeInt(weak(block, 0, read));
+            strong.update(block, 0, read);
+            data.write(strong.digest());
+            remaining -= read;
+        }
+        data.flush();
+    }
+
+
+    /**
+     * Reads signatures written by
+     * {@link #signatures(InputStream, long, OutputStream)}.
+     *
+     * @param input the stream to read.
+     *
+     * @return signatures.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static Signatures readSignatures(final InputStream input)
+        throws IOException {
+
+        final DataInputStream data = new DataInputStream(input);
+        final int blockSize = data.readInt();
+        final long length = data.readLong();
+        if (blockSize < MINIMUM_BLOCK || blockSize > MAXIMUM_BLOCK
+            || length < 0L
+            || length / blockSize >= Integer.MAX_VALUE) {
+            throw new IOException("invalid signatures: " + blockSize + ", "
+                                  + length);
+        }
+
+        final Signatures signatures = new Signatures(blockSize, length);
+        for (int i = 0; i < signatures.weaks.length; i++) {
+            signatures.weaks[i] = data.readInt();
+            signatures.strongs[i] = new byte[STRONG_LENGTH];
+            data.readFully(signatures.strongs[i]);
+        }
+
+        return signatures;
+    }
+
+
+    /**
+     * Writes a delta of a source against the copy of specified signatures.
+     *
+     * @param source the source.
+     * @param signatures the signatures of the copy.
+     * @param output the stream to write the delta to.
+     *
+     * @return the number of literal bytes.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long delta(final InputStream source, final Signatures signatures,
+                      final OutputStream output)
+        throws IOException {
+
+        final Map<Integer, List<Integer>> index = new HashMap<>();
+        for (int i = 0; i < signatures.weaks.length; i++) {
+            if (signatures.length(i) == signatures.blockSize) {
+                index.computeIfAbsent(signatures.weaks[i],
+                                      k -> new ArrayList<>(1)).add(i);
+            }
+        }
+
+        return new Encoder(source, signatures, index, output).encode();
+    }
+
+
+    /**
+     * Applies a delta to a copy.
+     *
+     * @param copy the copy.
+     * @param delta the delta.
+     * @param output the stream to write the result to.
+     *
+     * @return the number of bytes written.
+     *
+     * @throws IOException if an I/O error occurs or the result does not match
+     * the digest of the delta.
+     */
+    static long apply(final FileChannel copy, final InputStream delta,
+                      final OutputStream output)
+        throws IOException {
+
+        final DataInputStream data = new DataInputStream(delta);
+        final int blockSize = data.readInt();
+        if (blockSize < MINIMUM_BLOCK || blockSize > MAXIMUM_BLOCK) {
+            throw new IOException("invalid block size: " + blockSize);
+        }
+
+        final MessageDigest whole = FileValidators.newDigest();
+        final byte[] buffer = new byte[Math.max(blockSize, MAXIMUM_LITERAL)];
+        long written = 0L;
+        while (true) {
+            final byte instruction = data.readByte();
+            switch (instruction) {
+                case COPY: {
+                    final long first = (long) data.readInt() * blockSize;
+                    final long last = Math.min(
+                        copy.size(), first + (long) data.readInt() * blockSize);
+                    if (first < 0L || first >= last) {
+                        throw new IOException("blocks out of range");
+                    }
+                    for (long position = first; position < last;) {
+                        final ByteBuffer dst = ByteBuffer.wrap(
+                            buffer, 0, (int) Math.min(buffer.length,
+                                                      last - position));
+                        while (dst.hasRemaining()) {
+                            if (copy.read(dst, position + dst.position())
+                                == -1) {
+                                throw new EOFException();
+                            }
+                        }
+                        output.write(buffer, 0, dst.position());
+                        whole.update(buffer, 0, dst.position());
+                        position += dst.position();
+                        written += dst.position();
+                    }
+                    break;
+                }
+                case LITERAL: {
+                    final int length = data.readInt();
+                    if (length < 0 || length > MAXIMUM_LITERAL) {
+                        throw new IOException("invalid literal: " + length);
+                    }
+                    data.readFully(buffer, 0, length);
+                    output.write(buffer, 0, length);
+                    whole.update(buffer, 0, length);
+                    written += length;
+                    break;
+                }
+                case END: {
+                    final byte[] expected
+                        = new byte[whole.getDigestLength()];
+                    data.readFully(expected);
+                    if (!MessageDigest.isEqual(expected, whole.digest())) {
+                        throw new IOException("digest mismatch");
+                    }
+                    output.flush();
+                    return written;
+                }
+                default:
+                    throw new IOException(
+                        "unknown instruction: " + instruction);
+            }
+        }
+    }
+
+
+    private static MessageDigest newStrong() {
+
+        try {
+            return MessageDigest.getInstance(STRONG_ALGORITHM);
+        } catch (final NoSuchAlgorithmException nsae) {
+            throw new RuntimeException(nsae); // mandatory algorithm
+        }
+    }
+
+
+    private static void readFully(final InputStream input, final byte[] bytes,
+                                  final int length)
+        throws IOException {
+
+        for (int offset = 0; offset < length;) {
+            final int read = input.read(bytes, offset, length - offset);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+
+    /**
+     * Rolls a block-sized window over a source and writes instructions.
+     */
+    private static final class Encoder {
+
+
+        private Encoder(final InputStream source, final Signatures signatures,
+                        final Map<Integer, List<Integer>> index,
+                        final OutputStream output) {
+
+            super();
+
+            this.source = source;
+            this.signatures = signatures;
+            this.index = index;
+            this.data = new DataOutputStream(output);
+
+            window = new byte[signatures.blockSize];
+        }
+
+
+        private long encode() throws IOException {
+
+            final int blockSize = signatures.blockSize;
+            data.writeInt(blockSize);
+
+            int filled = fill();
+            while (filled == blockSize) {
+                int weak = weak(window, 0, blockSize);
+                int start = 0;
+                int matched;
+                while ((matched = match(weak, start)) == -1) {
+                    final int next = next();
+                    if (next == -1) {
+                        break;
+                    }
+                    final int out = window[start] & 0xFF;
+                    literal(window[start]);
+                    window[start] = (byte) next;
+                    start = (start + 1) % blockSize;
+                    final int a = ((weak & 0xFFFF) - out + next) & 0xFFFF;
+                    final int b = ((weak >>> 16) - blockSize * out + a)
+                                  & 0xFFFF;
+                    weak = b << 16 | a;
+                }
+                if (matched == -1) { // the end of the source
+                    for (int i = 0; i < blockSize; i++) {
+                        literal(window[(start + i) % blockSize]);
+                    }
+                    filled = 0;
+                    break;
+                }
+                copy(matched);
+                filled = fill();
+            }
+            if (filled > 0) { // may be the last block of the copy
+                final int last = signatures.weaks.length - 1;
+                if (last >= 0 && signatures.length(last) == filled
+                    && signatures.weaks[last] == weak(window, 0, filled)
+                    && MessageDigest.isEqual(signatures.strongs[last],
+                                             strong(0, filled))) {
+                    copy(last);
+                } else {
+                    for (int i = 0; i < filled; i++) {
+                        literal(window[i]);
+                    }
+                }
+            }
+
+            flush();
+            data.writeByte(END);
+            data.write(whole.digest());
+            data.flush();
+
+            return literals;
+        }
+
+
+        private int match(final int weak, final int start) {
+
+            final List<Integer> candidates = index.get(weak);
+            if (candidates == null) {
+                return -1;
+            }
+            final byte[] hash = strong(start, signatures.blockSize);
+            if (runCount > 0 && candidates.contains(runStart + runCount)
+                && MessageDigest.isEqual(
+                    signatures.strongs[runStart + runCount], hash)) {
+                return runStart + runCount; // keeps the run
+            }
+            for (final int candidate : candidates) {
+                if (MessageDigest.isEqual(signatures.strongs[candidate],
+                                          hash)) {
+                    return candidate;
+                }
+            }
+
+            return -1;
+        }
+
+
+        private byte[] strong(final int start, final int length) {
+
+            if (start + length <= window.length) {
+                strong.update(window, start, length);
+            } else {
+                strong.update(window, start, window.length - start);
+                strong.update(window, 0, start + length - window.length);
+            }
+
+            return strong.digest();
+        }
+
+
+        private int fill() throws IOException {
+
+            int filled = 0;
+            for (int next; filled < window.length && (next = next()) != -1;) {
+                window[filled++] = (byte) next;
+            }
+
+            return filled;
+        }
+
+
+        private int next() throws IOException {
+
+            if (position == limit) {
+                limit = source.read(buffer);
+                if (limit == -1) {
+                    limit = 0;
+                    position = 0;
+                    return -1;
+                }
+                whole.update(buffer, 0, limit);
+                position = 0;
+            }
+
+            return buffer[position++] & 0xFF;
+        }
+
+
+        private void copy(final int block) throws IOException {
+
+            flushLiteral();
+            if (runCount > 0 && block == runStart + runCount) {
+                runCount++;
+                return;
+            }
+            flushRun();
+            runStart = block;
+            runCount = 1;
+        }
+
+
+        private void literal(final byte b) throws IOException {
+
+            flushRun();
+            if (literalLength == literal.length) {
+                flushLiteral();
+            }
+            literal[literalLength++] = b;
+            literals++;
+        }
+
+
+        private void flush() throws IOException {
+
+            flushRun();
+            flushLiteral();
+        }
+
+
+        private void flushRun() throws IOException {
+
+            if (runCount > 0) {
+                data.writeByte(COPY);
+                data.writeInt(runStart);
+                data.writeInt(runCount);
+                runCount = 0;
+            }
+        }
+
+
+        private void flushLiteral() throws IOException {
+
+            if (literalLength > 0) {
+                data.writeByte(LITERAL);
+                data.writeInt(literalLength);
+                data.write(literal, 0, literalLength);
+                literalLength = 0;
+            }
+        }
+
+
+        private final InputStream source;
+
+
+        private final Signatures signatures;
+
+
+        private final Map<Integer, List<Integer>> index;
+
+
+        private final DataOutputStream data;
+
+
+        private final byte[] window;
+
+
+        private final byte[] buffer
+            = new byte[FileFrontChannels.BUFFER_CAPACITY];
+
+
+        private int position;
+
+
+        private int limit;
+
+
+        private final byte[] literal = new byte[MAXIMUM_LITERAL];
+
+
+        private int literalLength;
+
+
+        private long literals;
+
+
+        private int runStart;
+
+
+        private int runCount;
+
+
+        private final MessageDigest strong = newStrong();
+
+
+        private final MessageDigest whole = FileValidators.newDigest();
+
+
+    }
+
+
+    private BlockDelta() {
+
+        super();
+    }
+
+
+}
+
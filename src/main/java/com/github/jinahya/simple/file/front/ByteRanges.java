@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+
+/**
+ * Byte ranges of the HTTP {@code Range} header.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class ByteRanges {
+
+
+    /**
+     * The maximum number of ranges honored in a single request.
+     */
+    static final int MAXIMUM_RANGES = 64;
+
+
+    static final String BYTES_UNIT = "bytes";
+
+
+    /**
+     * A writer writing a part of a representation.
+     */
+    @FunctionalInterface
+    interface RangeWriter {
+
+
+        void write(long first, long last, OutputStream output)
+            throws IOException;
+
+
+    }
+
+
+    /**
+     * Parses specified {@code Range} header value against specified length.
+     *
+     * @param range the header value.
+     * @param length the length of the representation.
+     *
+     * @return a list of satisfiable {@code [first, last]} pairs, an empty list
+     * if no range is satisfiable, or {@code null} if {@code range} is not a
+     * valid byte range set and should be ignored.
+     */
+    static List<long[]> parse(final String range, final long length) {
+
+        if (range == null) {
+            return null;
+        }
+
+        final String value = range.trim();
+        if (!value.startsWith(BYTES_UNIT + "=")) {
+            return null;
+        }
+
+        final String[] specs
+            = value.substring(BYTES_UNIT.length() + 1).split(",");
+        if (specs.length > MAXIMUM_RANGES) {
+            return null;
+        }
+
+        final List<long[]> ranges = new ArrayList<>(specs.length);
+        for (final String spec : specs) {
+            final String trimmed = spec.trim();
+            final int hyphen = trimmed.indexOf('-');
+            if (hyphen == -1) {
+                return null;
+            }
+            final String firstPart = trimmed.substring(0, hyphen).trim();
+            final String lastPart = trimmed.substring(hyphen + 1).trim();
+            try {
+                if (firstPart.isEmpty()) { // suffix-byte-range-spec
+                    final long suffix = Long.parseLong(lastPart);
+                    if (suffix < 0L) {
+                        return null;
+                    }
+                    if (suffix > 0L && length > 0L) {
+                        ranges.add(new long[]{
+                            Math.max(0L, length - suffix), length - 1L});
+                    }
+                    continue;
+                }
+                final long first = Long.parseLong(firstPart);
+                final long last = lastPart.isEmpty()
+                                  ? Long.MAX_VALUE : Long.parseLong(lastPart);
+                if (first < 0L || last < first) {
+                    return null;
+                }
+                if (first < length) {
+                    ranges.add(new long[]{first, Math.min(last, length - 1L)});
+                }
+            } catch (final NumberFormatException nfe) {
+                return null;
+            }
+        }
+
+        return ranges;
+    }
+
+
+    /**
+     * Formats a {@code Content-Range} header value.
+     *
+     * @param first the first byte position.
+     * @param last the last byte position.
+     * @param length the length of the representation.
+     *
+     * @return a header value.
+     */
+    static String contentRange(final long first, final long last,
+                               final long length) {
+
+        return BYTES_UNIT + " " + first + "-" + last + "/" + length;
+    }
+
+
+    /**
+     * Formats a {@code Content-Range} header value for an unsatisfiable range.
+     *
+     * @param length the length of the representation.
+     *
+     * @return a header value.
+     */
+    static String contentRange(final long length) {
+
+        return BYTES_UNIT + " */" + length;
+    }
+
+
+    /**
+     * Returns a new boundary for a {@code multipart/byteranges} body.
+     *
+     * @return a new boundary.
+     */
+    static String boundary() {
+
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+
+    /**
+     * Writes a {@code multipart/byteranges} body.
+     *
+     * @param ranges the ranges.
+     * @param length the length of the representation.
+     * @param boundary the boundary.
+     * @param contentType the content type of each part.
+     * @param writer a writer writing each range.
+     * @param output the stream to write to.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static void writeMultipart(final List<long[]> ranges, final long length,
+                               final String boundary, final String contentType,
+                               final RangeWriter writer,
+                               final OutputStream output)
+        throws IOException {
+
+        for (final long[] range : ranges) {
+            output.write(partHeader(range[0], range[1], length, boundary,
+                                    contentType));
+            writer.write(range[0], range[1], output);
+        }
+        output.write(closeDelimiter(boundary));
+    }
+
+
+    private static byte[] partHeader(final long first, final long last,
+                                     final long length, final String boundary,
+                                     final String contentType) {
+
+        return ("\r\n--" + boundary + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Range: " + contentRange(first, last, length)
+                + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    private static byte[] closeDelimiter(final String boundary) {
+
+        return ("\r\n--" + boundary + "--\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    private ByteRanges() {
+
+        super();
+    }
+
+
+}
+
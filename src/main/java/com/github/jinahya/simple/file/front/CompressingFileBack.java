@@ -0,0 +1,950 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.FileBack;
+import com.github.jinahya.simple.file.back.FileBackException;
+import com.github.jinahya.simple.file.back.FileContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A file back compressing files at rest. Files written through this back are
+ * stored as independently deflated blocks followed by an index of block
+ * offsets so that a file read on a seekable channel is exposed as a seekable
+ * channel, and byte ranges inflate only the blocks they cover. Files not
+ * starting with the format signature, such as those written before this back
+ * is in place, are read as they are. Bind an instance, wrapping the actual
+ * file back, with {@link Backing}.
+ *
+ * <pre>
+ * bind(new CompressingFileBack(fileBack))
+ *     .to(FileBack.class).qualifiedBy(backing);
+ * </pre>
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class CompressingFileBack implements FileBack {
+
+
+    /**
+     * The default number of bytes in each block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 65536;
+
+
+    /**
+     * The maximum number of bytes in each block. A file whose header claims
+     * more is rejected as corrupt rather than allocated for.
+     */
+    public static final int MAXIMUM_BLOCK_SIZE = 16 * 1024 * 1024;
+
+
+    static final byte[] MAGIC = {
+        (byte) 0x89, 'S', 'F', 'B', 'Z', '\r', '\n', 1};
+
+
+    static final int HEADER = MAGIC.length + Integer.BYTES;
+
+
+    static final int FOOTER = Long.BYTES + Long.BYTES + MAGIC.length;
+
+
+    private static final byte STORED = 0;
+
+
+    private static final byte DEFLATED = 1;
+
+
+    private static final byte END = -1;
+
+
+    private static final int BLOCK_HEADER = 1 + Integer.BYTES;
+
+
+    /**
+     * A channel writing blocks to a target channel.
+     */
+    static final class Writer implements WritableByteChannel {
+
+
+        Writer(final WritableByteChannel target, final int blockSize,
+               final int level)
+            throws IOException {
+
+            super();
+
+            this.target = target;
+            block = new byte[blockSize];
+            buffer = new byte[blockSize];
+            deflater = new Deflater(level, true);
+
+            final ByteBuffer header
+                = ByteBuffer.allocate(HEADER).put(MAGIC).putInt(blockSize);
+            header.flip();
+            emit(header);
+        }
+
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+
+            final int written = src.remaining();
+            while (src.hasRemaining()) {
+                final int count
+                    = Math.min(src.remaining(), block.length - filled);
+                src.get(block, filled, count);
+                filled += count;
+                if (filled == block.length) {
+                    block();
+                }
+            }
+            length += written;
+
+            return written;
+        }
+
+
+        @Override
+        public boolean isOpen() {
+
+            return open;
+        }
+
+
+        /**
+         * Writes the last block, the index and the footer.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+
+            if (!open) {
+                return;
+            }
+            open = false;
+
+            try {
+                if (filled > 0) {
+                    block();
+                }
+                emit(ByteBuffer.wrap(new byte[]{END}));
+                final long indexOffset = position;
+                final ByteBuffer index = ByteBuffer.allocate(
+                    Long.BYTES * Math.max(1, Math.min(count, 1024)));
+                for (int i = 0; i < count; i++) {
+                    if (!index.hasRemaining()) {
+                        index.flip();
+                        emit(index);
+                        index.clear();
+                    }
+                    index.putLong(offsets[i]);
+                }
+                index.flip();
+                emit(index);
+                final ByteBuffer footer = ByteBuffer.allocate(FOOTER)
+                    .putLong(indexOffset).putLong(length).put(MAGIC);
+                footer.flip();
+                emit(footer);
+            } finally {
+                deflater.end();
+            }
+        }
+
+
+        /**
+         * Discards this writer without writing the rest of the format.
+         */
+        void abort() {
+
+            if (open) {
+                open = false;
+                deflater.end();
+            }
+        }
+
+
+        long getLength() {
+
+            return length;
+        }
+
+
+        private void block() throws IOException {
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = position;
+
+            deflater.reset();
+            deflater.setInput(block, 0, filled);
+            deflater.finish();
+            int deflated = 0;
+            while (!deflater.finished() && deflated < buffer.length) {
+                deflated += deflater.deflate(
+                    buffer, deflated, buffer.length - deflated);
+            }
+
+            final boolean shrunk = deflater.finished() && deflated < filled;
+            final byte method = shrunk ? DEFLATED : STORED;
+            final int stored = shrunk ? deflated : filled;
+            final ByteBuffer header
+                = ByteBuffer.allocate(BLOCK_HEADER).put(method).putInt(stored);
+            header.flip();
+            emit(header);
+            emit(ByteBuffer.wrap(shrunk ? buffer : block, 0, stored));
+            filled = 0;
+        }
+
+
+        private void emit(final ByteBuffer buffer) throws IOException {
+
+            while (buffer.hasRemaining()) {
+                position += target.write(buffer);
+            }
+        }
+
+
+        private final WritableByteChannel target;
+
+
+        private final byte[] block;
+
+
+        private final byte[] buffer;
+
+
+        private final Deflater deflater;
+
+
+        private int filled;
+
+
+        private long[] offsets = new long[16];
+
+
+        private int count;
+
+
+        private long position;
+
+
+        private long length;
+
+
+        private boolean open = true;
+
+
+    }
+
+
+    /**
+     * A seekable, read-only view of blocks on a seekable source channel.
+     */
+    static final class SeekableReader implements SeekableByteChannel {
+
+
+        SeekableReader(final SeekableByteChannel source) throws IOException {
+
+            super();
+
+            this.source = source;
+
+            final long size = source.size();
+            final ByteBuffer footer = read(size - FOOTER, FOOTER);
+            final long indexOffset = footer.getLong();
+            length = footer.getLong();
+            if (!magic(footer) || indexOffset < HEADER
+                || indexOffset > size - FOOTER
+                || (size - FOOTER - indexOffset) % Long.BYTES != 0L) {
+                throw new IOException("corrupt footer");
+            }
+
+            final ByteBuffer header = read(0L, HEADER);
+            header.position(MAGIC.length);
+            blockSize = header.getInt();
+            if (blockSize <= 0 || blockSize > MAXIMUM_BLOCK_SIZE) {
+                throw new IOException("corrupt header");
+            }
+
+            final long count = (size - FOOTER - indexOffset) / Long.BYTES;
+            if (count > Integer.MAX_VALUE / Long.BYTES
+                || count != (length + blockSize - 1) / blockSize) {
+                throw new IOException("corrupt index");
+            }
+            offsets = new long[(int) count];
+            read(indexOffset, (int) count * Long.BYTES).asLongBuffer()
+                .get(offsets);
+
+            raw = new byte[blockSize];
+            stored = new byte[blockSize];
+        }
+
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (position >= length) {
+                return -1;
+            }
+
+            load((int) (position / blockSize));
+            final int offset = (int) (position % blockSize);
+            final int count = Math.min(dst.remaining(), loaded - offset);
+            dst.put(raw, offset, count);
+            position += count;
+
+            return count;
+        }
+
+
+        @Override
+        public int write(final ByteBuffer src) {
+
+            throw new NonWritableChannelException();
+        }
+
+
+        @Override
+        public long position() {
+
+            return position;
+        }
+
+
+        @Override
+        public SeekableByteChannel position(final long newPosition) {
+
+            if (newPosition < 0L) {
+                throw new IllegalArgumentException(
+                    "newPosition(" + newPosition + ") < 0L");
+            }
+            position = newPosition;
+
+            return this;
+        }
+
+
+        @Override
+        public long size() {
+
+            return length;
+        }
+
+
+        @Override
+        public SeekableByteChannel truncate(final long size) {
+
+            throw new NonWritableChannelException();
+        }
+
+
+        @Override
+        public boolean isOpen() {
+
+            return open;
+        }
+
+
+        /**
+         * Closes this view. The source channel is left open.
+         */
+        @Override
+        public void close() {
+
+            if (open) {
+                open = false;
+                inflater.end();
+            }
+        }
+
+
+        private void load(final int index) throws IOException {
+
+            if (index == current) {
+                return;
+            }
+
+            final ByteBuffer header = read(offsets[index], BLOCK_HEADER);
+            final byte method = header.get();
+            final int size = header.getInt();
+            if (size < 0 || size > stored.length) {
+                throw new IOException("corrupt block: " + index);
+            }
+            source.position(offsets[index] + BLOCK_HEADER);
+            fill(source, ByteBuffer.wrap(stored, 0, size));
+
+            current = -1;
+            loaded = inflate(inflater, method, stored, size, raw);
+            if (loaded != Math.min(blockSize,
+                                   length - (long) index * blockSize)) {
+                throw new IOException("corrupt block: " + index);
+            }
+            current = index;
+        }
+
+
+        private ByteBuffer read(final long position, final int size)
+            throws IOException {
+
+            if (position < 0L) {
+                throw new IOException("corrupt position: " + position);
+            }
+            source.position(position);
+            final ByteBuffer buffer = ByteBuffer.allocate(size);
+            fill(source, buffer);
+            buffer.flip();
+
+            return buffer;
+        }
+
+
+        private final SeekableByteChannel source;
+
+
+        private final long length;
+
+
+        private final int blockSize;
+
+
+        private final long[] offsets;
+
+
+        private final byte[] raw;
+
+
+        private final byte[] stored;
+
+
+        private final Inflater inflater = new Inflater(true);
+
+
+        private int current = -1;
+
+
+        private int loaded;
+
+
+        private long position;
+
+
+        private boolean open = true;
+
+
+    }
+
+
+    /**
+     * A sequential view of blocks on a source channel whose signature is
+     * already consumed.
+     */
+    static final class SequentialReader implements ReadableByteChannel {
+
+
+        SequentialReader(final ReadableByteChannel source)
+            throws IOException {
+
+            super();
+
+            this.source = source;
+
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            fill(source, header);
+            header.flip();
+            final int blockSize = header.getInt();
+            if (blockSize <= 0 || blockSize > MAXIMUM_BLOCK_SIZE) {
+                throw new IOException("corrupt header");
+            }
+            raw = new byte[blockSize];
+            stored = new byte[blockSize];
+        }
+
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+
+            while (offset == loaded) {
+                if (ended) {
+                    return -1;
+                }
+                next();
+            }
+
+            final int count = Math.min(dst.remaining(), loaded - offset);
+            dst.put(raw, offset, count);
+            offset += count;
+            inflated += count;
+
+            return count;
+        }
+
+
+        long getInflated() {
+
+            return inflated;
+        }
+
+
+        @Override
+        public boolean isOpen() {
+
+            return open;
+        }
+
+
+        /**
+         * Closes this view. The source channel is left open.
+         */
+        @Override
+        public void close() {
+
+            if (open) {
+                open = false;
+                inflater.end();
+            }
+        }
+
+
+        private void next() throws IOException {
+
+            final ByteBuffer method = ByteBuffer.allocate(1);
+            fill(source, method);
+            if (method.get(0) == END) {
+                ended = true;
+                offset = loaded = 0;
+                return;
+            }
+            final ByteBuffer size = ByteBuffer.allocate(Integer.BYTES);
+            fill(source, size);
+            final int stored = size.getInt(0);
+            if (stored < 0 || stored > this.stored.length) {
+                throw new IOException("corrupt block");
+            }
+            fill(source, ByteBuffer.wrap(this.stored, 0, stored));
+
+            offset = loaded = 0;
+            loaded = inflate(inflater, method.get(0), this.stored, stored,
+                             raw);
+        }
+
+
+        private final ReadableByteChannel source;
+
+
+        private final byte[] raw;
+
+
+        private final byte[] stored;
+
+
+        private final Inflater inflater = new Inflater(true);
+
+
+        private int offset;
+
+
+        private int loaded;
+
+
+        private long inflated;
+
+
+        private boolean ended;
+
+
+        private boolean open = true;
+
+
+    }
+
+
+    /**
+     * A channel reading some bytes already read before the rest of a source
+     * channel.
+     */
+    private static final class Prefixed implements ReadableByteChannel {
+
+
+        private Prefixed(final ByteBuffer prefix,
+                         final ReadableByteChannel source) {
+
+            super();
+
+            this.prefix = prefix;
+            this.source = source;
+        }
+
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+
+            if (!prefix.hasRemaining()) {
+                return source.read(dst);
+            }
+
+            final int count = Math.min(dst.remaining(), prefix.remaining());
+            final ByteBuffer slice = prefix.duplicate();
+            slice.limit(slice.position() + count);
+            dst.put(slice);
+            prefix.position(prefix.position() + count);
+
+            return count;
+        }
+
+
+        @Override
+        public boolean isOpen() {
+
+            return source.isOpen();
+        }
+
+
+        @Override
+        public void close() {
+
+            // the source channel is left open
+        }
+
+
+        private final ByteBuffer prefix;
+
+
+        private final ReadableByteChannel source;
+
+
+    }
+
+
+    private static boolean magic(final ByteBuffer buffer) {
+
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (final byte b : MAGIC) {
+            if (buffer.get() != b) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private static void fill(final ReadableByteChannel source,
+                             final ByteBuffer buffer)
+        throws IOException {
+
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) == -1) {
+                throw new IOException("unexpected end of blocks");
+            }
+        }
+    }
+
+
+    private static int inflate(final Inflater inflater, final byte method,
+                               final byte[] stored, final int size,
+                               final byte[] raw)
+        throws IOException {
+
+        if (method == STORED) {
+            System.arraycopy(stored, 0, raw, 0, size);
+            return size;
+        }
+        if (method != DEFLATED) {
+            throw new IOException("unknown block method: " + method);
+        }
+
+        inflater.reset();
+        inflater.setInput(stored, 0, size);
+        int inflated = 0;
+        try {
+            while (!inflater.finished()) {
+                final int count
+                    = inflater.inflate(raw, inflated, raw.length - inflated);
+                if (count == 0 && (inflater.needsInput()
+                                   || inflater.needsDictionary()
+                                   || inflated == raw.length)) {
+                    throw new IOException("corrupt block");
+                }
+                inflated += count;
+            }
+        } catch (final DataFormatException dfe) {
+            throw new IOException("corrupt block", dfe);
+        }
+
+        return inflated;
+    }
+
+
+    /**
+     * Opens a view of specified source channel, as it is or inflated.
+     *
+     * @param source the source channel.
+     *
+     * @return a view of the source channel.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static ReadableByteChannel open(final ReadableByteChannel source)
+        throws IOException {
+
+        if (source instanceof SeekableByteChannel) {
+            final SeekableByteChannel seekable = (SeekableByteChannel) source;
+            if (seekable.size() < HEADER + FOOTER) {
+                return source;
+            }
+            final long position = seekable.position();
+            final ByteBuffer signature = ByteBuffer.allocate(MAGIC.length);
+            seekable.position(0L);
+            fill(seekable, signature);
+            signature.flip();
+            if (!magic(signature)) {
+                seekable.position(position);
+                return source;
+            }
+            return new SeekableReader(seekable);
+        }
+
+        final ByteBuffer signature = ByteBuffer.allocate(MAGIC.length);
+        while (signature.hasRemaining() && source.read(signature) != -1) {
+            // filling
+        }
+        signature.flip();
+        if (signature.remaining() == MAGIC.length
+            && magic(signature.duplicate())) {
+            return new SequentialReader(source);
+        }
+
+        return new Prefixed(signature, source);
+    }
+
+
+    /**
+     * Creates a new instance compressing with the default block size and
+     * compression level.
+     *
+     * @param delegate the file back storing compressed files.
+     */
+    public CompressingFileBack(final FileBack delegate) {
+
+        this(delegate, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param delegate the file back storing compressed files.
+     * @param blockSize the number of bytes in each block.
+     * @param level the compression level; {@link Deflater#NO_COMPRESSION}
+     * stores new files in the block format without compressing.
+     */
+    public CompressingFileBack(final FileBack delegate, final int blockSize,
+                               final int level) {
+
+        super();
+
+        if (delegate == null) {
+            throw new NullPointerException("null delegate");
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException(
+                "blockSize(" + blockSize + ") <= 0");
+        }
+        if (blockSize > MAXIMUM_BLOCK_SIZE) {
+            throw new IllegalArgumentException(
+                "blockSize(" + blockSize + ") > " + MAXIMUM_BLOCK_SIZE);
+        }
+
+        this.delegate = delegate;
+        this.blockSize = blockSize;
+        this.level = level;
+    }
+
+
+    @Override
+    public void operate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileOperation fileOperation
+            = fileContext.fileOperationSupplier() == null
+              ? null : fileContext.fileOperationSupplier().get();
+        logger.trace("fileOperation: {}", fileOperation);
+
+        if (fileOperation == FileOperation.READ
+            && fileContext.sourceChannelConsumer() != null) {
+            read(fileContext);
+            return;
+        }
+
+        if (fileOperation == FileOperation.WRITE
+            && fileContext.targetChannelConsumer() != null) {
+            write(fileContext);
+            return;
+        }
+
+        delegate.operate(fileContext); // copies keep their format
+    }
+
+
+    private void read(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final Consumer<ReadableByteChannel> sourceChannelConsumer
+            = fileContext.sourceChannelConsumer();
+        final Consumer<Long> sourceCopiedConsumer
+            = fileContext.sourceCopiedConsumer();
+
+        final Long[] read_ = new Long[1];
+        fileContext.sourceChannelConsumer(sourceChannel -> {
+            final ReadableByteChannel view;
+            try {
+                view = open(sourceChannel);
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            logger.trace("view: {}", view);
+            if (view == sourceChannel) {
+                sourceChannelConsumer.accept(sourceChannel);
+                return;
+            }
+            try {
+                sourceChannelConsumer.accept(view);
+                if (view instanceof SeekableReader) {
+                    read_[0] = ((SeekableReader) view).size();
+                } else if (view instanceof SequentialReader) {
+                    read_[0] = ((SequentialReader) view).getInflated();
+                }
+            } finally {
+                try {
+                    view.close();
+                } catch (final IOException ioe) {
+                    logger.warn("failed to close view", ioe);
+                }
+            }
+        });
+        if (sourceCopiedConsumer != null) {
+            fileContext.sourceCopiedConsumer(sourceCopied -> {
+                sourceCopiedConsumer.accept(
+                    read_[0] == null ? sourceCopied : read_[0]);
+            });
+        }
+
+        try {
+            delegate.operate(fileContext);
+        } catch (final UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } finally {
+            fileContext.sourceChannelConsumer(sourceChannelConsumer);
+            fileContext.sourceCopiedConsumer(sourceCopiedConsumer);
+        }
+    }
+
+
+    private void write(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final Consumer<WritableByteChannel> targetChannelConsumer
+            = fileContext.targetChannelConsumer();
+        final Consumer<Long> targetCopiedConsumer
+            = fileContext.targetCopiedConsumer();
+
+        final Long[] written_ = new Long[1];
+        fileContext.targetChannelConsumer(targetChannel -> {
+            final Writer writer;
+            try {
+                writer = new Writer(targetChannel, blockSize, level);
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            try {
+                targetChannelConsumer.accept(writer);
+                writer.close();
+            } catch (final IOException ioe) {
+                writer.abort();
+                throw new UncheckedIOException(ioe);
+            } catch (final RuntimeException re) {
+                writer.abort();
+                throw re;
+            }
+            written_[0] = writer.getLength();
+            logger.trace("written: {}", written_[0]);
+        });
+        if (targetCopiedConsumer != null) {
+            fileContext.targetCopiedConsumer(targetCopied -> {
+                targetCopiedConsumer.accept(
+                    written_[0] == null ? targetCopied : written_[0]);
+            });
+        }
+
+        try {
+            delegate.operate(fileContext);
+        } catch (final UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } finally {
+            fileContext.targetChannelConsumer(targetChannelConsumer);
+            fileContext.targetCopiedConsumer(targetCopiedConsumer);
+        }
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final FileBack delegate;
+
+
+    private final int blockSize;
+
+
+    private final int level;
+
+
+}
+
@@ -0,0 +1,784 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.StreamingOutput;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Content codings negotiated with {@code Accept-Encoding}. A file read with an
+ * acceptable coding is compressed while being served and the compressed
+ * variant is spooled, in the same pass, into a bounded directory so that
+ * following reads are served without compressing again. Files smaller than
+ * the minimum are never compressed and files not shrinking enough are
+ * remembered and served as they are.
+ * Variants are evicted in least-recently-used order. Bind this class as a
+ * singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#ENCODING_DIRECTORY
+ * @see FileFrontProperties#ENCODING_CAPACITY
+ * @see FileFrontProperties#ENCODING_MINIMUM
+ */
+@Singleton
+public class ContentEncodings {
+
+
+    /**
+     * The {@code gzip} content coding.
+     */
+    public static final String GZIP = "gzip";
+
+
+    /**
+     * The {@code deflate} content coding.
+     */
+    public static final String DEFLATE = "deflate";
+
+
+    /**
+     * The default byte budget of variants.
+     */
+    public static final long DEFAULT_CAPACITY = 268435456L;
+
+
+    /**
+     * The default minimum size of a file served encoded.
+     */
+    public static final long DEFAULT_MINIMUM = 1024L;
+
+
+    /**
+     * The maximum ratio of an encoded length to the original length for the
+     * encoding to be worth.
+     */
+    static final double RATIO = .9d;
+
+
+    /**
+     * The maximum number of variants, including those not worth encoding.
+     */
+    static final int MAXIMUM_VARIANTS = 65536;
+
+
+    private static final String PREFIX = "variant";
+
+
+    /**
+     * A variant of a file. A variant acquired must be released.
+     */
+    public static final class Variant {
+
+
+        private Variant(final Map.Entry<ByteBuffer, String> name,
+                        final Path path, final long length) {
+
+            super();
+
+            this.name = name;
+            this.path = path;
+            this.length = length;
+        }
+
+
+        /**
+         * Returns the content coding of this variant.
+         *
+         * @return the content coding.
+         */
+        public String getEncoding() {
+
+            return name.getValue();
+        }
+
+
+        /**
+         * Tells whether the file is worth encoding. A file not worth encoding
+         * should be served as it is.
+         *
+         * @return {@code true} if encoded; {@code false} otherwise.
+         */
+        public boolean isEncoded() {
+
+            return path != null;
+        }
+
+
+        /**
+         * Returns the length of the encoded file.
+         *
+         * @return the length.
+         */
+        public long getLength() {
+
+            return length;
+        }
+
+
+        private final Map.Entry<ByteBuffer, String> name;
+
+
+        private final Path path;
+
+
+        private final long length;
+
+
+        private boolean removed;
+
+
+        private int references;
+
+
+    }
+
+
+    /**
+     * Returns the content coding preferred by specified
+     * {@code Accept-Encoding} header value.
+     *
+     * @param acceptEncoding the header value; may be {@code null}.
+     *
+     * @return {@link #GZIP}, {@link #DEFLATE} or {@code null} if neither is
+     * acceptable.
+     */
+    static String negotiate(final String acceptEncoding) {
+
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        double gzip = -1d;
+        double deflate = -1d;
+        double any = -1d;
+        for (final String element : acceptEncoding.split(",")) {
+            final String[] parts = element.split(";");
+            double quality = 1d;
+            for (int i = 1; i < parts.length; i++) {
+                final String parameter
+                    = parts[i].trim().toLowerCase(Locale.ENGLISH);
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(
+                            parameter.substring(2).trim());
+                    } catch (final NumberFormatException nfe) {
+                        quality = 0d;
+                    }
+                }
+            }
+            switch (parts[0].trim().toLowerCase(Locale.ENGLISH)) {
+                case GZIP:
+                case "x-gzip":
+                    gzip = Math.max(gzip, quality);
+                    break;
+                case DEFLATE:
+                    deflate = Math.max(deflate, quality);
+                    break;
+                case "*":
+                    any = Math.max(any, quality);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (gzip < 0d) {
+            gzip = any;
+        }
+        if (deflate < 0d) {
+            deflate = any;
+        }
+
+        if (gzip <= 0d && deflate <= 0d) {
+            return null;
+        }
+
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+
+    /**
+     * Wraps specified stream with an encoder of specified content coding.
+     *
+     * @param encoding the content coding.
+     * @param output the stream to wrap.
+     *
+     * @return an encoding stream.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static OutputStream encoder(final String encoding,
+                                final OutputStream output)
+        throws IOException {
+
+        switch (encoding) {
+            case GZIP:
+                return new GZIPOutputStream(
+                    output, FileFrontChannels.BUFFER_CAPACITY);
+            case DEFLATE:
+                return new DeflaterOutputStream(output);
+            default:
+                throw new IllegalArgumentException(
+                    "unsupported encoding: " + encoding);
+        }
+    }
+
+
+    /**
+     * Wraps specified stream with a decoder of specified content coding.
+     *
+     * @param encoding the content coding; {@code null} or {@code identity}
+     * for none.
+     * @param input the stream to wrap.
+     *
+     * @return a decoding stream.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalArgumentException if the coding is not supported.
+     */
+    static InputStream decoder(final String encoding, final InputStream input)
+        throws IOException {
+
+        if (encoding == null) {
+            return input;
+        }
+
+        switch (encoding.trim().toLowerCase(Locale.ENGLISH)) {
+            case "":
+            case "identity":
+                return input;
+            case GZIP:
+            case "x-gzip":
+                return new GZIPInputStream(
+                    input, FileFrontChannels.BUFFER_CAPACITY);
+            case DEFLATE:
+                return new InflaterInputStream(input);
+            default:
+                throw new IllegalArgumentException(
+                    "unsupported encoding: " + encoding);
+        }
+    }
+
+
+    /**
+     * Encodes specified file into a temporary file.
+     *
+     * @param identity the file to encode.
+     * @param encoding the content coding.
+     *
+     * @return the encoded file, which the caller should delete, or
+     * {@code null} if not worth encoding.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static Path encode(final Path identity, final String encoding)
+        throws IOException {
+
+        final Path encoded = Files.createTempFile(PREFIX, null);
+        try {
+            try (OutputStream output = encoder(
+                encoding, Files.newOutputStream(encoded))) {
+                Files.copy(identity, output);
+            }
+            if (Files.size(encoded) < Files.size(identity) * RATIO) {
+                return encoded;
+            }
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(encoded);
+            throw e;
+        }
+
+        Files.deleteIfExists(encoded);
+        return null;
+    }
+
+
+    @PostConstruct
+    private void constructed() {
+
+        final String directory = FileFrontProperties.getString(
+            configuration, FileFrontProperties.ENCODING_DIRECTORY, null);
+        final long capacity = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.ENCODING_CAPACITY,
+            DEFAULT_CAPACITY);
+        final long minimum = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.ENCODING_MINIMUM,
+            DEFAULT_MINIMUM);
+
+        start(directory == null ? null : Paths.get(directory), capacity,
+              minimum);
+    }
+
+
+    @PreDestroy
+    private void destroying() {
+
+        stop();
+    }
+
+
+    /**
+     * Starts this instance.
+     *
+     * @param directory the directory of variants; {@code null} for a new
+     * temporary directory owned by this instance.
+     * @param capacity the byte budget of variants.
+     * @param minimum the minimum size of a file served encoded.
+     */
+    void start(final Path directory, final long capacity,
+               final long minimum) {
+
+        this.capacity = capacity;
+        this.minimum = minimum;
+
+        final Path parent = Paths.get(System.getProperty("java.io.tmpdir"),
+                                      "simple-file-front");
+        try {
+            if (directory == null) { // shared by nobody else
+                Files.createDirectories(parent);
+                this.directory = Files.createTempDirectory(parent, PREFIX);
+                temporary = true;
+            } else {
+                this.directory = Files.createDirectories(directory);
+                try (DirectoryStream<Path> stale
+                    = Files.newDirectoryStream(directory, PREFIX + "*")) {
+                    for (final Path path : stale) { // left by a previous run
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+        } catch (final IOException ioe) {
+            logger.error("failed to prepare directory: " + directory, ioe);
+            if (this.directory == null) {
+                this.directory = Paths.get(
+                    System.getProperty("java.io.tmpdir"));
+            }
+        }
+        logger.debug("directory: {}, capacity: {}, minimum: {}",
+                     this.directory, capacity, minimum);
+    }
+
+
+    synchronized void stop() {
+
+        for (final Variant variant : new ArrayList<>(variants.values())) {
+            remove(variant);
+        }
+
+        if (temporary) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (final IOException ioe) { // variants still being read
+                logger.warn("failed to delete " + directory, ioe);
+            }
+        }
+    }
+
+
+    /**
+     * Acquires the variant of specified file in specified content coding.
+     *
+     * @param key the locator key.
+     * @param encoding the content coding.
+     *
+     * @return the variant or {@code null} if not known yet.
+     */
+    public synchronized Variant acquire(final ByteBuffer key,
+                                        final String encoding) {
+
+        final Variant variant
+            = variants.get(new SimpleImmutableEntry<>(key, encoding));
+        if (variant == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        variant.references++;
+
+        return variant;
+    }
+
+
+    /**
+     * Releases specified variant acquired.
+     *
+     * @param variant the variant.
+     */
+    public synchronized void release(final Variant variant) {
+
+        if (--variant.references == 0 && variant.removed) {
+            delete(variant.path);
+        }
+    }
+
+
+    /**
+     * Writes the body of specified variant acquired.
+     *
+     * @param variant the variant.
+     * @param output the stream to write to.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(final Variant variant, final OutputStream output)
+        throws IOException {
+
+        Files.copy(variant.path, output);
+    }
+
+
+    /**
+     * Tells whether a file of specified length may be worth encoding. A file
+     * smaller than the minimum should be served as it is.
+     *
+     * @param length the length of the file.
+     *
+     * @return {@code true} if the file may be worth encoding.
+     */
+    public boolean isWorth(final long length) {
+
+        return length >= minimum;
+    }
+
+
+    /**
+     * Returns an output encoding specified output of a file while spooling
+     * the encoded bytes as the variant of the file.
+     *
+     * @param key the locator key.
+     * @param encoding the content coding.
+     * @param identity the output of the file as it is.
+     *
+     * @return an encoding output.
+     */
+    public StreamingOutput encode(final ByteBuffer key, final String encoding,
+                                  final StreamingOutput identity) {
+
+        final ByteBuffer copied = copy(key);
+        final long generation = generation();
+
+        return output -> {
+            final Path spool = Files.createTempFile(directory, PREFIX, null);
+            final long[] length_ = new long[1];
+            try {
+                try (OutputStream spooled = new BufferedOutputStream(
+                    Files.newOutputStream(spool),
+                    FileFrontChannels.BUFFER_CAPACITY);
+                     OutputStream encoder = encoder(
+                         encoding, new Tee(output, spooled))) {
+                    identity.write(new FilterOutputStream(encoder) {
+
+                        @Override
+                        public void write(final int b) throws IOException {
+                            out.write(b);
+                            length_[0]++;
+                        }
+
+
+                        @Override
+                        public void write(final byte[] b, final int off,
+                                          final int len)
+                            throws IOException {
+                            out.write(b, off, len);
+                            length_[0] += len;
+                        }
+
+
+                        @Override
+                        public void close() throws IOException {
+                            flush(); // finished by the encoder
+                        }
+
+                    });
+                }
+            } catch (final IOException | RuntimeException e) {
+                delete(spool);
+                throw e;
+            }
+            put(copied, encoding, spool, length_[0], generation);
+        };
+    }
+
+
+    /**
+     * Returns current generation which is incremented by each invalidation.
+     *
+     * @return current generation.
+     */
+    public synchronized long generation() {
+
+        return generation;
+    }
+
+
+    /**
+     * Removes the variants of specified file.
+     *
+     * @param key the locator key.
+     */
+    public synchronized void invalidate(final ByteBuffer key) {
+
+        generation++;
+
+        for (final String encoding : new String[]{GZIP, DEFLATE}) {
+            final Variant variant
+                = variants.get(new SimpleImmutableEntry<>(key, encoding));
+            if (variant != null) {
+                remove(variant);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the number of hits.
+     *
+     * @return the number of hits.
+     */
+    public synchronized long getHits() {
+
+        return hits;
+    }
+
+
+    /**
+     * Returns the number of misses.
+     *
+     * @return the number of misses.
+     */
+    public synchronized long getMisses() {
+
+        return misses;
+    }
+
+
+    /**
+     * Returns the number of bytes held by variants.
+     *
+     * @return the number of bytes held.
+     */
+    public synchronized long getSize() {
+
+        return size;
+    }
+
+
+    private void put(final ByteBuffer key, final String encoding,
+                     final Path spool, final long identity,
+                     final long generation) {
+
+        final long length;
+        try {
+            length = Files.size(spool);
+        } catch (final IOException ioe) {
+            logger.warn("failed to size " + spool, ioe);
+            delete(spool);
+            return;
+        }
+        final boolean worth = identity >= minimum && length < identity * RATIO;
+        logger.trace("identity: {}, encoded: {}, worth: {}", identity, length,
+                     worth);
+        if (!worth) {
+            delete(spool);
+        }
+
+        synchronized (this) {
+            final Map.Entry<ByteBuffer, String> name
+                = new SimpleImmutableEntry<>(key, encoding);
+            if (generation != this.generation || variants.containsKey(name)) {
+                if (worth) {
+                    delete(spool);
+                }
+                return;
+            }
+            final Variant variant = worth
+                                    ? new Variant(name, spool, length)
+                                    : new Variant(name, null, 0L);
+            variants.put(name, variant);
+            size += variant.length;
+            final Iterator<Variant> eldest = variants.values().iterator();
+            while (size > capacity || variants.size() > MAXIMUM_VARIANTS) {
+                final Variant victim = eldest.next();
+                eldest.remove();
+                size -= victim.length;
+                victim.removed = true;
+                if (victim.references == 0) {
+                    delete(victim.path);
+                }
+            }
+        }
+    }
+
+
+    private void remove(final Variant variant) {
+
+        if (variants.remove(variant.name, variant)) {
+            size -= variant.length;
+        }
+        variant.removed = true;
+        if (variant.references == 0) {
+            delete(variant.path);
+        }
+    }
+
+
+    private void delete(final Path path) {
+
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException ioe) {
+            logger.warn("failed to delete " + path, ioe);
+        }
+    }
+
+
+    private static ByteBuffer copy(final ByteBuffer key) {
+
+        final ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+        copy.put(key.duplicate()).flip();
+
+        return copy.asReadOnlyBuffer();
+    }
+
+
+    /**
+     * An output stream writing to two streams. Closing this stream closes
+     * neither.
+     */
+    private static final class Tee extends OutputStream {
+
+
+        private Tee(final OutputStream first, final OutputStream second) {
+
+            super();
+
+            this.first = first;
+            this.second = second;
+        }
+
+
+        @Override
+        public void write(final int b) throws IOException {
+
+            first.write(b);
+            second.write(b);
+        }
+
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+
+        @Override
+        public void flush() throws IOException {
+
+            first.flush();
+            second.flush();
+        }
+
+
+        @Override
+        public void close() throws IOException {
+
+            flush();
+        }
+
+
+        private final OutputStream first;
+
+
+        private final OutputStream second;
+
+
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private Path directory;
+
+
+    private boolean temporary;
+
+
+    private long capacity = DEFAULT_CAPACITY;
+
+
+    private long minimum = DEFAULT_MINIMUM;
+
+
+    private final Map<Map.Entry<ByteBuffer, String>, Variant> variants
+        = new LinkedHashMap<>(16, .75f, true);
+
+
+    private long size;
+
+
+    private long generation;
+
+
+    private long hits;
+
+
+    private long misses;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static java.lang.invoke.MethodHandles.lookup;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A bounded index of content digests to locators holding them. A file whose
+ * digest is known is stored as a copy of the holder instead of being written
+ * from the request entity, and siblings are asked to do the same before the
+ * content is sent to them. This saves transferring duplicate contents only;
+ * each copy is stored in full unless the file back implements copies as
+ * references. A directly ingested upload is written before its digest is
+ * known, so it is never stored as a copy, though siblings are still asked for
+ * one. Entries are evicted in least-recently-used order. Bind this class as a
+ * singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#CONTENT_INDEX_CAPACITY
+ */
+@Singleton
+public class ContentIndex {
+
+
+    /**
+     * The default maximum number of indexed files.
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+
+
+    @PostConstruct
+    private void constructed() {
+
+        capacity = (int) FileFrontProperties.getLong(
+            configuration, FileFrontProperties.CONTENT_INDEX_CAPACITY,
+            DEFAULT_CAPACITY);
+        logger.trace("capacity: {}", capacity);
+    }
+
+
+    /**
+     * Returns a locator holding specified content.
+     *
+     * @param digest the content digest.
+     *
+     * @return a locator; {@code null} if unknown.
+     */
+    public String holder(final byte[] digest) {
+
+        synchronized (digests) {
+            final String locator = holders.get(FileValidators.hex(digest));
+            if (locator == null
+                || !Arrays.equals(digests.get(locator), digest)) {
+                return null; // overwritten, deleted or evicted
+            }
+            hits.incrementAndGet();
+            return locator;
+        }
+    }
+
+
+    /**
+     * Returns the digest of the content of specified file.
+     *
+     * @param locator the file locator.
+     *
+     * @return the digest; {@code null} if unknown.
+     */
+    public byte[] digest(final String locator) {
+
+        synchronized (digests) {
+            return digests.get(locator);
+        }
+    }
+
+
+    /**
+     * Records that specified file holds specified content.
+     *
+     * @param locator the file locator.
+     * @param digest the content digest.
+     */
+    public void put(final String locator, final byte[] digest) {
+
+        synchronized (digests) {
+            digests.put(locator, digest);
+            holders.put(FileValidators.hex(digest), locator);
+        }
+    }
+
+
+    /**
+     * Forgets specified file.
+     *
+     * @param locator the file locator.
+     */
+    public void remove(final String locator) {
+
+        synchronized (digests) {
+            digests.remove(locator);
+        }
+    }
+
+
+    /**
+     * Returns the number of times a holder is found.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+
+        return hits.get();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private int capacity = DEFAULT_CAPACITY;
+
+
+    private final Map<String, byte[]> digests
+        = new LinkedHashMap<String, byte[]>(16, .75f, true) {
+
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry(
+                final Map.Entry<String, byte[]> eldest) {
+
+                return size() > capacity;
+            }
+
+
+        };
+
+
+    private final Map<String, String> holders
+        = new LinkedHashMap<String, String>(16, .75f, true) {
+
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry(
+                final Map.Entry<String, String> eldest) {
+
+                return size() > capacity;
+            }
+
+
+        };
+
+
+    private final AtomicLong hits = new AtomicLong();
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.front.AbstractLocatorsResource.BatchEntry;
+import com.github.jinahya.simple.file.front.AbstractLocatorsResource.BatchPart;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Updates files with deltas against their current contents, under
+ * {@code _/delta} of a {@link AbstractLocatorsResource}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see AbstractLocatorsResource#deltaResource()
+ * @see SignaturesResource
+ */
+public class DeltaResource {
+
+
+    DeltaResource(final AbstractLocatorsResource resource) {
+
+        super();
+
+        this.resource = resource;
+    }
+
+
+    /**
+     * Applies a delta to a file on the {@link BackingExecutor}, if bound,
+     * and resumes specified response with the result of
+     * {@link #updateDelta(java.lang.String, java.io.InputStream)}.
+     *
+     * @param locator the file locator.
+     * @param entity the delta.
+     * @param asyncResponse the response to resume.
+     */
+    @Consumes(AbstractLocatorsResource.APPLICATION_X_DELTA)
+    @POST
+    @Path("{locator: .+}")
+    public void updateDelta(
+        @PathParam("locator") final String locator,
+        final InputStream entity,
+        @Suspended final AsyncResponse asyncResponse) {
+
+        resource.resume(asyncResponse, () -> updateDelta(locator, entity));
+    }
+
+
+    /**
+     * Updates a file with a delta against its current content. The result
+     * is verified against the digest ending the delta before being written.
+     * The update is not distributed.
+     *
+     * @param locator the file locator.
+     * @param entity the delta.
+     *
+     * @return a response.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public Response updateDelta(final String locator,
+                                final InputStream entity)
+        throws IOException {
+
+        logger.trace("updateDelta({}, {})", locator, entity);
+
+        final Response routed = resource.partition(locator, null);
+        if (routed != null) {
+            return routed;
+        }
+
+        final BatchPart part = resource.readPart(locator);
+        if (part.status != Response.Status.OK.getStatusCode()) {
+            throw new WebApplicationException(part.status);
+        }
+
+        final BatchEntry batchEntry;
+        try {
+            final java.nio.file.Path spool = resource.spool("delta");
+            try (FileChannel copy = FileChannel.open(
+                part.spool, StandardOpenOption.READ);
+                 OutputStream output = new BufferedOutputStream(
+                     Files.newOutputStream(spool))) {
+                batchEntry = new BatchEntry(
+                    locator, BlockDelta.apply(copy, entity, output));
+            } catch (final IOException ioe) {
+                resource.unspool(spool);
+                final String message = "failed to apply delta";
+                logger.warn(message, ioe);
+                throw new WebApplicationException(
+                    message, ioe, Response.Status.CONFLICT);
+            }
+            batchEntry.spool = spool;
+        } finally {
+            resource.deletePart(part);
+        }
+
+        resource.introduce();
+        try {
+            final int status = resource.writeEntry(batchEntry);
+            if (status != Response.Status.NO_CONTENT.getStatusCode()) {
+                throw new WebApplicationException(status);
+            }
+        } finally {
+            resource.unstage(batchEntry);
+        }
+
+        return Response.noContent().build();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final AbstractLocatorsResource resource;
+
+
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A bounded cache of small, hot files kept in direct buffers outside the Java
+ * heap. Bodies are stored in fixed size pages carved from lazily allocated
+ * slabs. A small window admits every new entry and its victims compete for
+ * the main region by their estimated frequencies, in the manner of W-TinyLFU.
+ * Bind this class as a singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#CACHE_CAPACITY
+ * @see FileFrontProperties#CACHE_MAXIMUM_ENTRY
+ */
+@Singleton
+public class FileCache {
+
+
+    /**
+     * The default byte budget.
+     */
+    public static final long DEFAULT_CAPACITY = 67108864L;
+
+
+    /**
+     * The default maximum size of a cached file.
+     */
+    public static final long DEFAULT_MAXIMUM_ENTRY = 1048576L;
+
+
+    static final int PAGE_SIZE = 8192;
+
+
+    static final int PAGES_PER_SLAB = 512;
+
+
+    /**
+     * A cached file. An entry acquired must be released.
+     */
+    public static final class Entry {
+
+
+        private Entry(final ByteBuffer key, final long length) {
+
+            super();
+
+            this.key = key;
+            this.length = length;
+            pages = new int[Math.max(
+                1, (int) ((length + PAGE_SIZE - 1) / PAGE_SIZE))];
+        }
+
+
+        /**
+         * Returns the length of the cached file.
+         *
+         * @return the length.
+         */
+        public long getLength() {
+
+            return length;
+        }
+
+
+        private final ByteBuffer key;
+
+
+        private final long length;
+
+
+        private final int[] pages;
+
+
+        private boolean allocated;
+
+
+        private boolean ready;
+
+
+        private boolean removed;
+
+
+        private int references;
+
+
+    }
+
+
+    @PostConstruct
+    private void constructed() {
+
+        final long capacity = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.CACHE_CAPACITY,
+            DEFAULT_CAPACITY);
+        maximumEntry = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.CACHE_MAXIMUM_ENTRY,
+            DEFAULT_MAXIMUM_ENTRY);
+        logger.trace("capacity: {}, maximumEntry: {}", capacity,
+                     maximumEntry);
+
+        final int pageCount
+            = (int) Math.min(Integer.MAX_VALUE, capacity / PAGE_SIZE);
+        windowPages = Math.max(1, pageCount / 100);
+        mainPages = Math.max(0, pageCount - windowPages);
+        slabs = new ByteBuffer[(pageCount + PAGES_PER_SLAB - 1)
+                               / PAGES_PER_SLAB];
+        freePages = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) { // lower pages first
+            freePages[freeCount++] = pageCount - 1 - i;
+        }
+        sketch = new FrequencySketch(pageCount);
+    }
+
+
+    /**
+     * Acquires the entry for specified key.
+     *
+     * @param key the locator key.
+     *
+     * @return the entry or {@code null} if not cached.
+     */
+    public synchronized Entry acquire(final ByteBuffer key) {
+
+        sketch.increment(key.hashCode());
+
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = main.get(key);
+        }
+        if (entry == null || !entry.ready) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        entry.references++;
+
+        return entry;
+    }
+
+
+    /**
+     * Releases specified entry acquired.
+     *
+     * @param entry the entry.
+     */
+    public synchronized void release(final Entry entry) {
+
+        if (--entry.references == 0 && entry.removed) {
+            free(entry);
+        }
+    }
+
+
+    /**
+     * Writes the body of specified entry acquired.
+     *
+     * @param entry the entry.
+     * @param output the stream to write to.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(final Entry entry, final OutputStream output)
+        throws IOException {
+
+        final WritableByteChannel channel = Channels.newChannel(output);
+        long remaining = entry.length;
+        for (final int page : entry.pages) {
+            final ByteBuffer buffer = page(page, remaining);
+            remaining -= buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+
+    /**
+     * Returns current generation which is incremented by each invalidation.
+     * Callers capture it before reading a file from the file back and pass it
+     * to {@link #put(ByteBuffer, Path, long)}.
+     *
+     * @return current generation.
+     */
+    public synchronized long generation() {
+
+        return generation;
+    }
+
+
+    /**
+     * Offers the content of specified file for caching.
+     *
+     * @param key the locator key.
+     * @param path the file holding the content.
+     * @param generation the generation captured before the content was read.
+     *
+     * @return {@code true} if cached; {@code false} otherwise.
+     */
+    public boolean put(final ByteBuffer key, final Path path,
+                       final long generation) {
+
+        try (FileChannel channel = FileChannel.open(
+            path, StandardOpenOption.READ)) {
+            return put(key, channel, channel.size(), generation);
+        } catch (final IOException ioe) {
+            logger.warn("failed to cache " + path, ioe);
+            return false;
+        }
+    }
+
+
+    /**
+     * Offers the content read from specified channel for caching.
+     *
+     * @param key the locator key.
+     * @param channel the channel to read the content from.
+     * @param length the length of the content.
+     * @param generation the generation captured before the content was read.
+     *
+     * @return {@code true} if cached; {@code false} otherwise.
+     */
+    public boolean put(final ByteBuffer key, final ReadableByteChannel channel,
+                       final long length, final long generation) {
+
+        Entry entry = null;
+        try {
+            if (length > maximumEntry) {
+                return false;
+            }
+            synchronized (this) {
+                if (generation != this.generation || window.containsKey(key)
+                    || main.containsKey(key)) {
+                    return false;
+                }
+                entry = new Entry(copy(key), length);
+                if (entry.pages.length > mainPages) {
+                    return false;
+                }
+                window.put(entry.key, entry);
+                windowUsed += entry.pages.length;
+                while (windowUsed > windowPages) {
+                    final Iterator<Entry> eldest
+                        = window.values().iterator();
+                    final Entry candidate = eldest.next();
+                    eldest.remove();
+                    windowUsed -= candidate.pages.length;
+                    admit(candidate);
+                }
+                if (entry.removed || freeCount < entry.pages.length) {
+                    remove(entry);
+                    return false;
+                }
+                for (int i = 0; i < entry.pages.length; i++) {
+                    entry.pages[i] = freePages[--freeCount];
+                }
+                entry.allocated = true;
+                entry.references++; // pinned while filling
+            }
+            long remaining = length;
+            for (final int page : entry.pages) {
+                final ByteBuffer buffer = page(page, remaining);
+                remaining -= buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) == -1) {
+                        throw new IOException("unexpected end of content");
+                    }
+                }
+            }
+            synchronized (this) {
+                if (generation != this.generation) {
+                    remove(entry);
+                }
+                entry.ready = !entry.removed;
+                release(entry);
+                return entry.ready;
+            }
+        } catch (final IOException ioe) {
+            logger.warn("failed to cache", ioe);
+            if (entry != null && entry.allocated) { // pinned while filling
+                synchronized (this) {
+                    remove(entry);
+                    release(entry);
+                }
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * Removes the entry for specified key.
+     *
+     * @param key the locator key.
+     */
+    public synchronized void invalidate(final ByteBuffer key) {
+
+        generation++;
+
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = main.get(key);
+        }
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+
+    /**
+     * Returns the number of hits.
+     *
+     * @return the number of hits.
+     */
+    public synchronized long getHits() {
+
+        return hits;
+    }
+
+
+    /**
+     * Returns the number of misses.
+     *
+     * @return the number of misses.
+     */
+    public synchronized long getMisses() {
+
+        return misses;
+    }
+
+
+    /**
+     * Returns the number of entries evicted or rejected by the policy.
+     *
+     * @return the number of evictions.
+     */
+    public synchronized long getEvictions() {
+
+        return evictions;
+    }
+
+
+    /**
+     * Returns the number of bytes held by cached entries.
+     *
+     * @return the number of bytes held.
+     */
+    public synchronized long getSize() {
+
+        return (long) (windowUsed + mainUsed) * PAGE_SIZE;
+    }
+
+
+    private void admit(final Entry candidate) {
+
+        while (mainUsed + candidate.pages.length > mainPages) {
+            final Entry victim = main.values().iterator().next();
+            if (sketch.frequency(candidate.key.hashCode())
+                <= sketch.frequency(victim.key.hashCode())) {
+                evictions++;
+                candidate.removed = true;
+                if (candidate.references == 0) {
+                    free(candidate);
+                }
+                return;
+            }
+            evictions++;
+            remove(victim);
+        }
+        main.put(candidate.key, candidate);
+        mainUsed += candidate.pages.length;
+    }
+
+
+    private void remove(final Entry entry) {
+
+        if (window.remove(entry.key, entry)) {
+            windowUsed -= entry.pages.length;
+        } else if (main.remove(entry.key, entry)) {
+            mainUsed -= entry.pages.length;
+        }
+        entry.removed = true;
+        if (entry.references == 0) {
+            free(entry);
+        }
+    }
+
+
+    private void free(final Entry entry) {
+
+        if (!entry.allocated) {
+            return;
+        }
+        entry.allocated = false;
+        for (final int page : entry.pages) {
+            freePages[freeCount++] = page;
+        }
+    }
+
+
+    private ByteBuffer page(final int page, final long remaining) {
+
+        ByteBuffer slab;
+        synchronized (this) {
+            slab = slabs[page / PAGES_PER_SLAB];
+            if (slab == null) {
+                slab = ByteBuffer.allocateDirect(PAGE_SIZE * PAGES_PER_SLAB);
+                slabs[page / PAGES_PER_SLAB] = slab;
+                logger.trace("slab allocated: {}", page / PAGES_PER_SLAB);
+            }
+        }
+
+        final ByteBuffer buffer = slab.duplicate();
+        final int offset = (page % PAGES_PER_SLAB) * PAGE_SIZE;
+        buffer.limit(offset + (int) Math.min(PAGE_SIZE, remaining))
+            .position(offset);
+
+        return buffer;
+    }
+
+
+    private static ByteBuffer copy(final ByteBuffer key) {
+
+        final ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+        copy.put(key.duplicate()).flip();
+
+        return copy.asReadOnlyBuffer();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private long maximumEntry = DEFAULT_MAXIMUM_ENTRY;
+
+
+    private int windowPages;
+
+
+    private int mainPages;
+
+
+    private ByteBuffer[] slabs;
+
+
+    private int[] freePages;
+
+
+    private int freeCount;
+
+
+    private FrequencySketch sketch;
+
+
+    private final Map<ByteBuffer, Entry> window
+        = new LinkedHashMap<>(16, .75f, true);
+
+
+    private final Map<ByteBuffer, Entry> main
+        = new LinkedHashMap<>(16, .75f, true);
+
+
+    private int windowUsed;
+
+
+    private int mainUsed;
+
+
+    private long generation;
+
+
+    private long hits;
+
+
+    private long misses;
+
+
+    private long evictions;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
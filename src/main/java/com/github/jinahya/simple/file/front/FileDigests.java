@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+
+/**
+ * Instance digests exchanged in {@value FileFrontConstants#HEADER_DIGEST}
+ * headers, in the manner of RFC 3230, as comma separated pairs of algorithms
+ * and base64 encoded values. {@value #CRC32C} is computed for every file
+ * written and {@value #SHA_256} when needed.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class FileDigests {
+
+
+    /**
+     * The algorithm name of CRC-32C, whose value is encoded in four bytes in
+     * big-endian.
+     */
+    static final String CRC32C = "crc32c";
+
+
+    /**
+     * The algorithm name of SHA-256.
+     */
+    static final String SHA_256 = "sha-256";
+
+
+    /**
+     * A table driven CRC-32C, processing eight bytes at a time, for runtimes
+     * without {@code java.util.zip.CRC32C}.
+     */
+    static final class Crc32c implements Checksum {
+
+
+        private static final int POLYNOMIAL = 0x82F63B78; // reversed
+
+
+        private static final int[][] TABLES = new int[8][256];
+
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int crc = i;
+                for (int j = 0; j < 8; j++) {
+                    crc = (crc & 1) == 0
+                          ? crc >>> 1 : (crc >>> 1) ^ POLYNOMIAL;
+                }
+                TABLES[0][i] = crc;
+            }
+            for (int k = 1; k < 8; k++) {
+                for (int i = 0; i < 256; i++) {
+                    final int previous = TABLES[k - 1][i];
+                    TABLES[k][i]
+                        = (previous >>> 8) ^ TABLES[0][previous & 0xFF];
+                }
+            }
+        }
+
+
+        @Override
+        public void update(final int b) {
+
+            crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xFF];
+        }
+
+
+        @Override
+        public void update(final byte[] b, int off, int len) {
+
+            final int[] t0 = TABLES[0];
+            final int[] t1 = TABLES[1];
+            final int[] t2 = TABLES[2];
+            final int[] t3 = TABLES[3];
+            final int[] t4 = TABLES[4];
+            final int[] t5 = TABLES[5];
+            final int[] t6 = TABLES[6];
+            final int[] t7 = TABLES[7];
+
+            int c = crc;
+            while (len >= 8) {
+                c ^= (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8
+                     | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+                c = t7[c & 0xFF] ^ t6[(c >>> 8) & 0xFF]
+                    ^ t5[(c >>> 16) & 0xFF] ^ t4[c >>> 24]
+                    ^ t3[b[off + 4] & 0xFF] ^ t2[b[off + 5] & 0xFF]
+                    ^ t1[b[off + 6] & 0xFF] ^ t0[b[off + 7] & 0xFF];
+                off += 8;
+                len -= 8;
+            }
+            while (len-- > 0) {
+                c = (c >>> 8) ^ t0[(c ^ b[off++]) & 0xFF];
+            }
+            crc = c;
+        }
+
+
+        @Override
+        public long getValue() {
+
+            return ~crc & 0xFFFFFFFFL;
+        }
+
+
+        @Override
+        public void reset() {
+
+            crc = 0xFFFFFFFF;
+        }
+
+
+        private int crc = 0xFFFFFFFF;
+
+
+    }
+
+
+    /**
+     * Returns a new CRC-32C checksum; the intrinsic one of the runtime if
+     * available.
+     *
+     * @return a new checksum.
+     */
+    static Checksum newChecksum() {
+
+        if (INTRINSIC != null) {
+            try {
+                return (Checksum) INTRINSIC.getConstructor().newInstance();
+            } catch (final ReflectiveOperationException roe) {
+                // falls through
+            }
+        }
+
+        return new Crc32c();
+    }
+
+
+    /**
+     * Formats a header value.
+     *
+     * @param checksum the CRC-32C value.
+     * @param digest the SHA-256 digest; {@code null} if not computed.
+     *
+     * @return a header value.
+     */
+    static String format(final long checksum, final byte[] digest) {
+
+        final Base64.Encoder encoder = Base64.getEncoder();
+        final StringBuilder builder = new StringBuilder(CRC32C).append('=')
+            .append(encoder.encodeToString(
+                ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum)
+                .array()));
+        if (digest != null) {
+            builder.append(", ").append(SHA_256).append('=')
+                .append(encoder.encodeToString(digest));
+        }
+
+        return builder.toString();
+    }
+
+
+    /**
+     * Parses a header value. Algorithms other than {@value #CRC32C} and
+     * {@value #SHA_256} are ignored.
+     *
+     * @param value the header value; may be {@code null}.
+     *
+     * @return a map of algorithm names to values.
+     *
+     * @throws IllegalArgumentException if the value is malformed.
+     */
+    static Map<String, byte[]> parse(final String value) {
+
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, byte[]> digests = new HashMap<>();
+        for (final String element : value.split(",")) {
+            final int index = element.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException(
+                    "malformed digest: " + element);
+            }
+            final String algorithm = element.substring(0, index).trim()
+                .toLowerCase(Locale.ENGLISH);
+            if (!CRC32C.equals(algorithm) && !SHA_256.equals(algorithm)) {
+                continue;
+            }
+            final byte[] decoded = Base64.getDecoder().decode(
+                element.substring(index + 1).trim());
+            if (decoded.length != (CRC32C.equals(algorithm) ? 4 : 32)) {
+                throw new IllegalArgumentException(
+                    "malformed digest: " + element);
+            }
+            digests.put(algorithm, decoded);
+        }
+
+        return digests;
+    }
+
+
+    /**
+     * Checks specified digests claimed against those computed.
+     *
+     * @param claimed the digests claimed.
+     * @param checksum the CRC-32C value computed.
+     * @param digest the SHA-256 digest computed; {@code null} if not
+     * computed.
+     *
+     * @return the name of the first algorithm mismatched; {@code null} if all
+     * claimed and computed match.
+     */
+    static String mismatched(final Map<String, byte[]> claimed,
+                             final long checksum, final byte[] digest) {
+
+        final byte[] crc32c = claimed.get(CRC32C);
+        if (crc32c != null && ByteBuffer.wrap(crc32c).getInt()
+                              != (int) checksum) {
+            return CRC32C;
+        }
+
+        final byte[] sha256 = claimed.get(SHA_256);
+        if (sha256 != null && digest != null
+            && !Arrays.equals(sha256, digest)) {
+            return SHA_256;
+        }
+
+        return null;
+    }
+
+
+    private static final Class<?> INTRINSIC;
+
+
+    static {
+        Class<?> intrinsic = null;
+        try {
+            intrinsic = Class.forName("java.util.zip.CRC32C");
+        } catch (final ClassNotFoundException cnfe) {
+            // prior to Java 9
+        }
+        INTRINSIC = intrinsic;
+    }
+
+
+    private FileDigests() {
+
+        super();
+    }
+
+
+}
+
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * Channel utilities.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class FileFrontChannels {
+
+
+    static final int BUFFER_CAPACITY = 65536;
+
+
+    /**
+     * Copies all remaining bytes from specified channel to specified stream.
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)} is used
+     * when {@code source} is a {@link FileChannel}.
+     *
+     * @param source the source channel.
+     * @param target the target stream.
+     *
+     * @return the number of bytes copied.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long copy(final ReadableByteChannel source,
+                     final OutputStream target)
+        throws IOException {
+
+        return copy(source, Channels.newChannel(target));
+    }
+
+
+    /**
+     * Copies all remaining bytes from specified source channel to specified
+     * target channel.
+     *
+     * @param source the source channel.
+     * @param target the target channel.
+     *
+     * @return the number of bytes copied.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long copy(final ReadableByteChannel source,
+                     final WritableByteChannel target)
+        throws IOException {
+
+        if (source instanceof FileChannel) {
+            final FileChannel channel = (FileChannel) source;
+            final long position = channel.position();
+            final long size = channel.size();
+            long copied = 0L;
+            while (position + copied < size) {
+                final long transferred = channel.transferTo(
+                    position + copied, size - position - copied, target);
+                if (transferred <= 0L) { // truncated meanwhile
+                    break;
+                }
+                copied += transferred;
+            }
+            channel.position(position + copied);
+            return copied;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_CAPACITY);
+        long copied = 0L;
+        while (source.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                copied += target.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        return copied;
+    }
+
+
+    /**
+     * Copies all bytes from specified source channel to specified target
+     * channel while writing the same bytes to specified branch channel. Bytes
+     * move through a single buffer of {@value #BUFFER_CAPACITY} bytes.
+     *
+     * @param source the source channel.
+     * @param target the target channel.
+     * @param branch the branch channel; {@code null} for no branch.
+     *
+     * @return the number of bytes copied to {@code target}.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long copy(final ReadableByteChannel source,
+                     final WritableByteChannel target,
+                     final WritableByteChannel branch)
+        throws IOException {
+
+        if (branch == null) {
+            return copy(source, target);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_CAPACITY);
+        long copied = 0L;
+        while (source.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                copied += target.write(buffer);
+            }
+            buffer.rewind();
+            while (buffer.hasRemaining()) {
+                branch.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        return copied;
+    }
+
+
+    /**
+     * Copies a region of specified source channel to specified target channel.
+     *
+     * @param source the source channel.
+     * @param position the position of the first byte to copy.
+     * @param count the number of bytes to copy.
+     * @param target the target channel.
+     *
+     * @return the number of bytes copied.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long copy(final SeekableByteChannel source, final long position,
+                     final long count, final WritableByteChannel target)
+        throws IOException {
+
+        if (source instanceof FileChannel) {
+            final FileChannel channel = (FileChannel) source;
+            long copied = 0L;
+            while (copied < count) {
+                final long transferred = channel.transferTo(
+                    position + copied, count - copied, target);
+                if (transferred <= 0L) {
+                    break;
+                }
+                copied += transferred;
+            }
+            return copied;
+        }
+
+        source.position(position);
+        final ByteBuffer buffer = ByteBuffer.allocate(
+            (int) Math.min(BUFFER_CAPACITY, Math.max(count, 1L)));
+        long copied = 0L;
+        while (copied < count) {
+            buffer.clear();
+            if (count - copied < buffer.capacity()) {
+                buffer.limit((int) (count - copied));
+            }
+            if (source.read(buffer) == -1) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                copied += target.write(buffer);
+            }
+        }
+
+        return copied;
+    }
+
+
+    private FileFrontChannels() {
+
+        super();
+    }
+
+
+}
+
@@ -36,6 +36,24 @@ public final class FileFrontConstants {
         = "File-Front-Target-Copied";
 
 
+    public static final String HEADER_LOCATOR = "File-Front-Locator";
+
+
+    public static final String HEADER_STATUS = "File-Front-Status";
+
+
+    public static final String HEADER_ACKNOWLEDGED = "File-Front-Acknowledged";
+
+
+    public static final String HEADER_FORWARDED = "File-Front-Forwarded";
+
+
+    /**
+     * The header carrying instance digests of files written and read.
+     */
+    public static final String HEADER_DIGEST = "Digest";
+
+
     private FileFrontConstants() {
 
         super();
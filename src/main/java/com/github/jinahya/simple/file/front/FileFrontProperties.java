@@ -0,0 +1,480 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import javax.ws.rs.core.Configuration;
+
+
+/**
+ * Names of configuration properties recognized by file front resources. Each
+ * property can be set with {@code ResourceConfig#property(String, Object)} or
+ * as a servlet init parameter.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public final class FileFrontProperties {
+
+
+    /**
+     * A property for streaming reads. When {@code true}, the source channel
+     * from the file back is piped directly into the response instead of being
+     * staged in a temporary file. Streaming reads need a bound
+     * {@link BackingExecutor}, which runs the file back while the response is
+     * written; reads are staged without one. The default value is
+     * {@code false}.
+     */
+    public static final String STREAMING_READ
+        = "simple.file.front.read.streaming";
+
+
+    /**
+     * A property for fallback reads. When {@code true}, a file missing locally
+     * is read from siblings, hedging slow ones, and written back into the
+     * local back in background. Requests from siblings, signed with
+     * {@link #SIBLING_SECRET}, never fall back so that a miss on every front
+     * does not loop among them; fallback reads are therefore disabled unless
+     * the secret is configured. The default value is {@code false}.
+     */
+    public static final String READ_FALLBACK
+        = "simple.file.front.read.fallback";
+
+
+    /**
+     * A property for the delay, in milliseconds, before a fallback read asks
+     * another sibling. The default value is
+     * {@value AbstractLocatorsResource#DEFAULT_READ_HEDGE_DELAY}.
+     */
+    public static final String READ_HEDGE_DELAY
+        = "simple.file.front.read.hedgeDelay";
+
+
+    /**
+     * A property for direct ingest. When {@code true}, a request entity is
+     * copied into the target channel as it arrives instead of being spooled
+     * into a temporary file first. The entity is still teed into a temporary
+     * file when it must be replayed to siblings. A request claiming digests
+     * of its entity is always spooled so that a mismatch never reaches the
+     * target. The default value is {@code false}.
+     */
+    public static final String DIRECT_INGEST
+        = "simple.file.front.update.direct";
+
+
+    /**
+     * A property for the maximum number of pooled connections kept for each
+     * sibling by {@link SiblingClients}. The default value is
+     * {@value SiblingClients#DEFAULT_MAX_CONNECTIONS}.
+     */
+    public static final String SIBLING_MAX_CONNECTIONS
+        = "simple.file.front.sibling.maxConnections";
+
+
+    /**
+     * A property for the connect timeout, in milliseconds, of clients to
+     * siblings. The default value is
+     * {@value SiblingClients#DEFAULT_CONNECT_TIMEOUT}.
+     */
+    public static final String SIBLING_CONNECT_TIMEOUT
+        = "simple.file.front.sibling.connectTimeout";
+
+
+    /**
+     * A property for the read timeout, in milliseconds, of clients
+     * distributing to siblings. The default value is
+     * {@value SiblingClients#DEFAULT_READ_TIMEOUT}.
+     */
+    public static final String SIBLING_READ_TIMEOUT
+        = "simple.file.front.sibling.readTimeout";
+
+
+    /**
+     * A property for the secret shared by all fronts to sign requests among
+     * them with {@link SiblingSigner}. A
+     * {@value FileFrontConstants#HEADER_FORWARDED} header, which makes a front
+     * serve a request locally, is trusted only if signed with this secret.
+     * There is no default value; without it, the header is never trusted.
+     */
+    public static final String SIBLING_SECRET
+        = "simple.file.front.sibling.secret";
+
+
+    /**
+     * A property for the journal directory of {@link ReplicationQueue}.
+     * Entries found in the directory are resumed at start, so the directory
+     * must be on durable storage and must not be shared with another front.
+     * There is no default value; the queue fails to construct without it.
+     */
+    public static final String REPLICATION_DIRECTORY
+        = "simple.file.front.replication.directory";
+
+
+    /**
+     * A property for the initial retry backoff of {@link ReplicationQueue} in
+     * milliseconds. The default value is
+     * {@value ReplicationQueue#DEFAULT_INITIAL_BACKOFF}.
+     */
+    public static final String REPLICATION_INITIAL_BACKOFF
+        = "simple.file.front.replication.initialBackoff";
+
+
+    /**
+     * A property for the maximum retry backoff of {@link ReplicationQueue} in
+     * milliseconds. The default value is
+     * {@value ReplicationQueue#DEFAULT_MAXIMUM_BACKOFF}.
+     */
+    public static final String REPLICATION_MAXIMUM_BACKOFF
+        = "simple.file.front.replication.maximumBackoff";
+
+
+    /**
+     * A property for the number of attempts {@link ReplicationQueue} makes to
+     * deliver an entry before setting it aside as a dead letter. A value less
+     * than {@code 1} retries forever. The default value is
+     * {@value ReplicationQueue#DEFAULT_MAXIMUM_ATTEMPTS}.
+     */
+    public static final String REPLICATION_MAXIMUM_ATTEMPTS
+        = "simple.file.front.replication.maximumAttempts";
+
+
+    /**
+     * A property for distributing updated files as deltas. When {@code true},
+     * each sibling is asked for block signatures of its copy and sent only
+     * the blocks changed. Siblings without a copy are sent the whole file.
+     * The default value is {@code false}.
+     */
+    public static final String REPLICATION_DELTA
+        = "simple.file.front.replication.delta";
+
+
+    /**
+     * A property for the minimum size, in bytes, of a file distributed as
+     * deltas. The default value is
+     * {@value AbstractLocatorsResource#DEFAULT_DELTA_MINIMUM}.
+     */
+    public static final String REPLICATION_DELTA_MINIMUM
+        = "simple.file.front.replication.deltaMinimum";
+
+
+    /**
+     * A property for compressing files sent to siblings. When {@code true},
+     * each distributed file is compressed once with {@code gzip} and sent
+     * with a {@code Content-Encoding} header unless it does not shrink. Every
+     * sibling must be able to decode it. The default value is {@code false}.
+     */
+    public static final String REPLICATION_COMPRESSION
+        = "simple.file.front.replication.compression";
+
+
+    /**
+     * A property for computing SHA-256 digests of all files written. When
+     * {@code true}, the digest is returned with the CRC-32C in the
+     * {@value FileFrontConstants#HEADER_DIGEST} header even if no validators,
+     * anti-entropy or content index needs it. The default value is
+     * {@code false}.
+     */
+    public static final String DIGEST_SHA256
+        = "simple.file.front.digest.sha256";
+
+
+    /**
+     * A property for the maximum number of validators cached by
+     * {@link FileValidators}. The default value is
+     * {@value FileValidators#DEFAULT_CAPACITY}.
+     */
+    public static final String VALIDATORS_CAPACITY
+        = "simple.file.front.validators.capacity";
+
+
+    /**
+     * A property for the byte budget of {@link FileCache}. The default value is
+     * {@value FileCache#DEFAULT_CAPACITY}.
+     */
+    public static final String CACHE_CAPACITY
+        = "simple.file.front.cache.capacity";
+
+
+    /**
+     * A property for the maximum size of a file cached by {@link FileCache}.
+     * The default value is {@value FileCache#DEFAULT_MAXIMUM_ENTRY}.
+     */
+    public static final String CACHE_MAXIMUM_ENTRY
+        = "simple.file.front.cache.maximumEntry";
+
+
+    /**
+     * A property for the cap on total bytes mapped by {@link FileMappings}.
+     * The default value is {@value FileMappings#DEFAULT_CAPACITY}.
+     */
+    public static final String MAPPING_CAPACITY
+        = "simple.file.front.mapping.capacity";
+
+
+    /**
+     * A property for the minimum size of a file mapped by
+     * {@link FileMappings}. Smaller files are copied as usual. The default
+     * value is {@value FileMappings#DEFAULT_MINIMUM}.
+     */
+    public static final String MAPPING_MINIMUM
+        = "simple.file.front.mapping.minimum";
+
+
+    /**
+     * A property for the number of files read in parallel by a batch read. The
+     * default value is
+     * {@value AbstractLocatorsResource#DEFAULT_BATCH_CONCURRENCY}.
+     */
+    public static final String BATCH_CONCURRENCY
+        = "simple.file.front.batch.concurrency";
+
+
+    /**
+     * A property for the maximum number of locators in a batch request. The
+     * default value is {@value AbstractLocatorsResource#DEFAULT_BATCH_MAXIMUM}.
+     */
+    public static final String BATCH_MAXIMUM
+        = "simple.file.front.batch.maximum";
+
+
+    /**
+     * A property for the maximum number of threads of the
+     * {@link BackingExecutor}. The default value is
+     * {@value BackingExecutor#DEFAULT_THREADS}.
+     */
+    public static final String BACKING_THREADS
+        = "simple.file.front.backing.threads";
+
+
+    /**
+     * A property for the number of operations waiting for a thread of the
+     * {@link BackingExecutor}, or in progress in the virtual mode, before
+     * further requests are rejected with {@code 503}. The default value is
+     * {@value BackingExecutor#DEFAULT_QUEUE}.
+     */
+    public static final String BACKING_QUEUE
+        = "simple.file.front.backing.queue";
+
+
+    /**
+     * A property for running operations of the {@link BackingExecutor} on
+     * virtual threads. Ignored, with a warning, on runtimes without virtual
+     * threads. The default value is {@code false}.
+     */
+    public static final String BACKING_VIRTUAL
+        = "simple.file.front.backing.virtual";
+
+
+    /**
+     * A property for the number of fronts owning each locator when a
+     * {@link Partitioner} is bound. The default value is
+     * {@value Partitioner#DEFAULT_REPLICAS}.
+     */
+    public static final String PARTITION_REPLICAS
+        = "simple.file.front.partition.replicas";
+
+
+    /**
+     * A property for redirecting, with {@code 307}, requests for locators
+     * owned by other fronts instead of forwarding them. The default value is
+     * {@code false}.
+     */
+    public static final String PARTITION_REDIRECT
+        = "simple.file.front.partition.redirect";
+
+
+    /**
+     * A property for the maximum number of files indexed by
+     * {@link ContentIndex}. The default value is
+     * {@value ContentIndex#DEFAULT_CAPACITY}.
+     */
+    public static final String CONTENT_INDEX_CAPACITY
+        = "simple.file.front.contentIndex.capacity";
+
+
+    /**
+     * A property for the index directory of {@link AntiEntropy}. The default
+     * value is {@code simple-file-front/index} under {@code java.io.tmpdir}.
+     */
+    public static final String ANTI_ENTROPY_DIRECTORY
+        = "simple.file.front.antiEntropy.directory";
+
+
+    /**
+     * A property for the interval, in milliseconds, between synchronizations
+     * of {@link AntiEntropy} with siblings. The default value is
+     * {@value AntiEntropy#DEFAULT_INTERVAL}.
+     */
+    public static final String ANTI_ENTROPY_INTERVAL
+        = "simple.file.front.antiEntropy.interval";
+
+
+    /**
+     * A property for the directory of variants kept by
+     * {@link ContentEncodings}. Variants left in the directory by a previous
+     * run are deleted at start, so the directory must not be shared with
+     * another front. When absent, a new temporary directory under
+     * {@code simple-file-front} in {@code java.io.tmpdir} is used and removed
+     * at stop.
+     */
+    public static final String ENCODING_DIRECTORY
+        = "simple.file.front.encoding.directory";
+
+
+    /**
+     * A property for the byte budget of variants kept by
+     * {@link ContentEncodings}. The default value is
+     * {@value ContentEncodings#DEFAULT_CAPACITY}.
+     */
+    public static final String ENCODING_CAPACITY
+        = "simple.file.front.encoding.capacity";
+
+
+    /**
+     * A property for the minimum size, in bytes, of a file served encoded.
+     * The default value is {@value ContentEncodings#DEFAULT_MINIMUM}.
+     */
+    public static final String ENCODING_MINIMUM
+        = "simple.file.front.encoding.minimum";
+
+
+    /**
+     * A property for the directory of files staged by {@link StagingFiles}.
+     * Files left in the directory by a previous run are deleted at start, so
+     * the directory must not be shared with another front. When absent, a new
+     * temporary directory under {@code simple-file-front} in
+     * {@code java.io.tmpdir} is used and removed at stop.
+     */
+    public static final String STAGING_DIRECTORY
+        = "simple.file.front.staging.directory";
+
+
+    /**
+     * A property for the number of idle files kept for reuse by
+     * {@link StagingFiles}. The default value is
+     * {@value StagingFiles#DEFAULT_POOL}.
+     */
+    public static final String STAGING_POOL
+        = "simple.file.front.staging.pool";
+
+
+    /**
+     * A property for the maximum size of a body kept in memory by
+     * {@link StagingFiles}. Larger bodies are spilled into files. The default
+     * value is {@value StagingFiles#DEFAULT_THRESHOLD}.
+     */
+    public static final String STAGING_THRESHOLD
+        = "simple.file.front.staging.threshold";
+
+
+    /**
+     * A property for the byte budget of memory pooled by
+     * {@link StagingFiles}. Bodies are spilled into files while the budget is
+     * exhausted. The default value is {@value StagingFiles#DEFAULT_MEMORY}.
+     */
+    public static final String STAGING_MEMORY
+        = "simple.file.front.staging.memory";
+
+
+    /**
+     * Returns the value of specified property as a boolean.
+     *
+     * @param configuration the configuration; may be {@code null}.
+     * @param name the property name.
+     * @param defaultValue the value to return when the property is not set.
+     *
+     * @return the property value or {@code defaultValue}.
+     */
+    static boolean getBoolean(final Configuration configuration,
+                              final String name, final boolean defaultValue) {
+
+        final Object value = getValue(configuration, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+
+        return Boolean.parseBoolean(value.toString().trim());
+    }
+
+
+    /**
+     * Returns the value of specified property as a long.
+     *
+     * @param configuration the configuration; may be {@code null}.
+     * @param name the property name.
+     * @param defaultValue the value to return when the property is not set.
+     *
+     * @return the property value or {@code defaultValue}.
+     */
+    static long getLong(final Configuration configuration, final String name,
+                        final long defaultValue) {
+
+        final Object value = getValue(configuration, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        return Long.parseLong(value.toString().trim());
+    }
+
+
+    /**
+     * Returns the value of specified property as a string.
+     *
+     * @param configuration the configuration; may be {@code null}.
+     * @param name the property name.
+     * @param defaultValue the value to return when the property is not set.
+     *
+     * @return the property value or {@code defaultValue}.
+     */
+    static String getString(final Configuration configuration,
+                            final String name, final String defaultValue) {
+
+        final Object value = getValue(configuration, name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        return value.toString();
+    }
+
+
+    private static Object getValue(final Configuration configuration,
+                                   final String name) {
+
+        if (configuration == null) {
+            return null;
+        }
+
+        return configuration.getProperty(name);
+    }
+
+
+    private FileFrontProperties() {
+
+        super();
+    }
+
+
+}
+
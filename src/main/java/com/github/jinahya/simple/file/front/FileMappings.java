@@ -0,0 +1,434 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A registry of read-only memory mappings over snapshots of backing files,
+ * shared by concurrent reads. A backing file is copied into a snapshot which
+ * is mapped, so that a write in progress on the backing file never shows
+ * through a mapping. Mappings are reference counted and unmapped once they
+ * are invalidated, or released to stay under the cap on mapped bytes, and no
+ * longer in use. Bind this class as a singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#MAPPING_CAPACITY
+ * @see FileFrontProperties#MAPPING_MINIMUM
+ */
+@Singleton
+public class FileMappings {
+
+
+    /**
+     * The default cap on total mapped bytes.
+     */
+    public static final long DEFAULT_CAPACITY = 1073741824L;
+
+
+    /**
+     * The default minimum size of a file to map.
+     */
+    public static final long DEFAULT_MINIMUM = 1048576L;
+
+
+    private static final String PREFIX = "mapping";
+
+
+    /**
+     * A mapped file. A mapping acquired must be released.
+     */
+    public static final class Mapping {
+
+
+        private Mapping(final ByteBuffer key, final MappedByteBuffer buffer) {
+
+            super();
+
+            this.key = key;
+            this.buffer = buffer;
+        }
+
+
+        /**
+         * Returns the size of the mapped file.
+         *
+         * @return the size.
+         */
+        public long getSize() {
+
+            return buffer.capacity();
+        }
+
+
+        private final ByteBuffer key;
+
+
+        private final MappedByteBuffer buffer;
+
+
+        private boolean removed;
+
+
+        private int references;
+
+
+    }
+
+
+    /**
+     * Unmaps specified buffer eagerly. The buffer is left to the garbage
+     * collector if no cleaner is accessible.
+     *
+     * @param buffer the buffer to unmap.
+     */
+    static void unmap(final MappedByteBuffer buffer) {
+
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod(
+                    "invokeCleaner", ByteBuffer.class);
+            } catch (final NoSuchMethodException nsme) { // Java 8
+                final Method cleanerMethod
+                    = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return;
+            }
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            getLogger(FileMappings.class).debug(
+                "failed to unmap; left to gc", e);
+        }
+    }
+
+
+    @PostConstruct
+    private void constructed() {
+
+        capacity = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.MAPPING_CAPACITY,
+            DEFAULT_CAPACITY);
+        minimum = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.MAPPING_MINIMUM,
+            DEFAULT_MINIMUM);
+        logger.trace("capacity: {}, minimum: {}", capacity, minimum);
+    }
+
+
+    @PreDestroy
+    private synchronized void destroying() {
+
+        for (final Iterator<Mapping> i = mappings.values().iterator();
+             i.hasNext();) {
+            final Mapping mapping = i.next();
+            i.remove();
+            remove(mapping);
+        }
+    }
+
+
+    /**
+     * Acquires the mapping for specified key.
+     *
+     * @param key the locator key.
+     *
+     * @return the mapping or {@code null} if not mapped.
+     */
+    public synchronized Mapping acquire(final ByteBuffer key) {
+
+        final Mapping mapping = mappings.get(key);
+        if (mapping == null) {
+            return null;
+        }
+
+        mapping.references++;
+
+        return mapping;
+    }
+
+
+    /**
+     * Maps a snapshot of specified channel, if eligible, and acquires the
+     * mapping. The position of the channel is not changed.
+     *
+     * @param key the locator key.
+     * @param channel the channel to map.
+     * @param generation the generation captured before the channel was
+     * opened.
+     *
+     * @return the acquired mapping or {@code null} if the channel is not
+     * eligible for mapping, or has been written while copied.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public Mapping map(final ByteBuffer key, final FileChannel channel,
+                       final long generation)
+        throws IOException {
+
+        final long size = channel.size();
+        if (size < minimum || size > Integer.MAX_VALUE || size > capacity) {
+            return null;
+        }
+
+        final MappedByteBuffer buffer = snapshot(channel, size);
+        if (buffer == null) {
+            logger.debug("not mapped; written while copied");
+            return null;
+        }
+        logger.trace("mapped: {}", buffer);
+
+        synchronized (this) {
+            if (generation != this.generation) {
+                unmap(buffer);
+                return null;
+            }
+            final Mapping previous = mappings.remove(key);
+            if (previous != null) {
+                remove(previous);
+            }
+            final Iterator<Mapping> eldest = mappings.values().iterator();
+            while (mapped + size > capacity && eldest.hasNext()) {
+                final Mapping mapping = eldest.next();
+                eldest.remove();
+                remove(mapping);
+            }
+            if (mapped + size > capacity) { // still in use
+                unmap(buffer);
+                return null;
+            }
+            final Mapping mapping = new Mapping(copy(key), buffer);
+            mappings.put(mapping.key, mapping);
+            mapped += size;
+            mapping.references++;
+            return mapping;
+        }
+    }
+
+
+    /**
+     * Releases specified mapping acquired.
+     *
+     * @param mapping the mapping.
+     */
+    public synchronized void release(final Mapping mapping) {
+
+        if (--mapping.references == 0 && mapping.removed) {
+            unmap(mapping);
+        }
+    }
+
+
+    /**
+     * Writes the content of specified mapping acquired.
+     *
+     * @param mapping the mapping.
+     * @param output the stream to write to.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(final Mapping mapping, final OutputStream output)
+        throws IOException {
+
+        final ByteBuffer buffer = mapping.buffer.duplicate();
+        final WritableByteChannel channel = Channels.newChannel(output);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (final InternalError ie) { // truncated behind the mapping
+            throw new IOException("failed to read mapped file", ie);
+        }
+    }
+
+
+    /**
+     * Tells whether specified mapping acquired is still the current one for
+     * its key, i.e. neither invalidated nor evicted.
+     *
+     * @param mapping the mapping.
+     *
+     * @return {@code true} if current; {@code false} otherwise.
+     */
+    public synchronized boolean isCurrent(final Mapping mapping) {
+
+        return !mapping.removed;
+    }
+
+
+    /**
+     * Returns current generation which is incremented by each invalidation.
+     *
+     * @return current generation.
+     */
+    public synchronized long generation() {
+
+        return generation;
+    }
+
+
+    /**
+     * Removes the mapping for specified key. The mapping is unmapped when no
+     * longer in use and a following read maps the file again.
+     *
+     * @param key the locator key.
+     */
+    public synchronized void invalidate(final ByteBuffer key) {
+
+        generation++;
+
+        final Mapping mapping = mappings.remove(key);
+        if (mapping != null) {
+            remove(mapping);
+        }
+    }
+
+
+    /**
+     * Returns the total number of bytes mapped, including mappings removed but
+     * still in use.
+     *
+     * @return the number of bytes mapped.
+     */
+    public synchronized long getMapped() {
+
+        return mapped;
+    }
+
+
+    private void remove(final Mapping mapping) {
+
+        mapping.removed = true;
+        if (mapping.references == 0) {
+            unmap(mapping);
+        }
+    }
+
+
+    private void unmap(final Mapping mapping) {
+
+        mapped -= mapping.buffer.capacity();
+        logger.trace("unmapping: {}", mapping.buffer);
+        unmap(mapping.buffer);
+    }
+
+
+    /**
+     * Copies specified channel into a new snapshot file and maps the
+     * snapshot. The snapshot is deleted once closed and lives as long as the
+     * mapping.
+     *
+     * @return the mapped snapshot or {@code null} if the size of
+     * {@code channel} changed while copied.
+     */
+    private static MappedByteBuffer snapshot(final FileChannel channel,
+                                             final long size)
+        throws IOException {
+
+        final Path path = Files.createTempFile(PREFIX, null);
+        final FileChannel snapshot;
+        try {
+            snapshot = FileChannel.open(
+                path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (final IOException ioe) {
+            Files.deleteIfExists(path);
+            throw ioe;
+        }
+        try {
+            for (long position = 0L; position < size;) {
+                final long transferred = channel.transferTo(
+                    position, size - position, snapshot);
+                if (transferred <= 0L) { // truncated
+                    return null;
+                }
+                position += transferred;
+            }
+            if (channel.size() != size) {
+                return null;
+            }
+            return snapshot.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+
+    private static ByteBuffer copy(final ByteBuffer key) {
+
+        final ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+        copy.put(key.duplicate()).flip();
+
+        return copy.asReadOnlyBuffer();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private long capacity = DEFAULT_CAPACITY;
+
+
+    private long minimum = DEFAULT_MINIMUM;
+
+
+    private final Map<ByteBuffer, Mapping> mappings
+        = new LinkedHashMap<>(16, .75f, true);
+
+
+    private long mapped;
+
+
+    private long generation;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
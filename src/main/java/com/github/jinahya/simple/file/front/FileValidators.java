@@ -0,0 +1,284 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A bounded cache of validators computed when files are written. Entries are
+ * keyed by locator keys and evicted in least-recently-used order. Bind this
+ * class as a singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#VALIDATORS_CAPACITY
+ */
+@Singleton
+public class FileValidators {
+
+
+    /**
+     * The default maximum number of cached validators.
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+
+
+    /**
+     * The message digest algorithm for entity tags.
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+
+    /**
+     * Validators of a file.
+     */
+    public static class Validator {
+
+
+        /**
+         * Creates a new instance.
+         *
+         * @param digest the content digest.
+         * @param lastModified the last modified time in milliseconds.
+         */
+        public Validator(final byte[] digest, final long lastModified) {
+
+            this(digest, null, lastModified);
+        }
+
+
+        /**
+         * Creates a new instance.
+         *
+         * @param digest the content digest.
+         * @param checksum the CRC-32C of the content; {@code null} if
+         * unknown.
+         * @param lastModified the last modified time in milliseconds.
+         */
+        public Validator(final byte[] digest, final Long checksum,
+                         final long lastModified) {
+
+            super();
+
+            this.digest = digest.clone();
+            this.checksum = checksum;
+            this.entityTag = new EntityTag(hex(digest));
+            this.lastModified = lastModified / 1000L * 1000L; // HTTP-date
+        }
+
+
+        @Override
+        public String toString() {
+
+            return super.toString() + "?entityTag=" + entityTag
+                   + "&checksum=" + checksum
+                   + "&lastModified=" + lastModified;
+        }
+
+
+        /**
+         * Returns the content digest.
+         *
+         * @return the content digest.
+         */
+        public byte[] getDigest() {
+
+            return digest.clone();
+        }
+
+
+        /**
+         * Returns the CRC-32C of the content.
+         *
+         * @return the CRC-32C or {@code null} if unknown.
+         */
+        public Long getChecksum() {
+
+            return checksum;
+        }
+
+
+        /**
+         * Returns the strong entity tag.
+         *
+         * @return the entity tag.
+         */
+        public EntityTag getEntityTag() {
+
+            return entityTag;
+        }
+
+
+        /**
+         * Returns the last modified date truncated to seconds.
+         *
+         * @return the last modified date.
+         */
+        public Date getLastModified() {
+
+            return new Date(lastModified);
+        }
+
+
+        private final byte[] digest;
+
+
+        private final Long checksum;
+
+
+        private final EntityTag entityTag;
+
+
+        private final long lastModified;
+
+
+    }
+
+
+    /**
+     * Returns a new message digest for computing entity tags.
+     *
+     * @return a new message digest.
+     */
+    public static MessageDigest newDigest() {
+
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (final NoSuchAlgorithmException nsae) {
+            throw new RuntimeException(nsae); // mandatory algorithm
+        }
+    }
+
+
+    static String hex(final byte[] bytes) {
+
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0x0F, 16))
+                .append(Character.forDigit(b & 0x0F, 16));
+        }
+
+        return builder.toString();
+    }
+
+
+    @PostConstruct
+    private void constructed() {
+
+        capacity = (int) FileFrontProperties.getLong(
+            configuration, FileFrontProperties.VALIDATORS_CAPACITY,
+            DEFAULT_CAPACITY);
+        logger.trace("capacity: {}", capacity);
+    }
+
+
+    /**
+     * Returns the validator for specified key.
+     *
+     * @param key the locator key.
+     *
+     * @return the validator or {@code null} if unknown.
+     */
+    public Validator get(final ByteBuffer key) {
+
+        synchronized (validators) {
+            return validators.get(key);
+        }
+    }
+
+
+    /**
+     * Associates a validator with specified key.
+     *
+     * @param key the locator key.
+     * @param validator the validator.
+     */
+    public void put(final ByteBuffer key, final Validator validator) {
+
+        synchronized (validators) {
+            validators.put(copy(key), validator);
+        }
+    }
+
+
+    /**
+     * Removes the validator for specified key.
+     *
+     * @param key the locator key.
+     */
+    public void invalidate(final ByteBuffer key) {
+
+        synchronized (validators) {
+            validators.remove(key);
+        }
+    }
+
+
+    private static ByteBuffer copy(final ByteBuffer key) {
+
+        final ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+        copy.put(key.duplicate()).flip();
+
+        return copy.asReadOnlyBuffer();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private int capacity = DEFAULT_CAPACITY;
+
+
+    private final Map<ByteBuffer, Validator> validators
+        = new LinkedHashMap<ByteBuffer, Validator>(16, .75f, true) {
+
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry(
+                final Map.Entry<ByteBuffer, Validator> eldest) {
+
+                return size() > capacity;
+            }
+
+
+        };
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
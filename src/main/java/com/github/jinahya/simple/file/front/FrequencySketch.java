@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+/**
+ * A count-min sketch of 4-bit counters estimating access frequencies. All
+ * counters are halved periodically so that old popularity fades. Not thread
+ * safe.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class FrequencySketch {
+
+
+    static final int DEPTH = 4;
+
+
+    static final int MAXIMUM_FREQUENCY = 15;
+
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L
+    };
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param expected the expected number of distinct elements.
+     */
+    FrequencySketch(final int expected) {
+
+        super();
+
+        int width = 16;
+        while (width < expected && width < (1 << 24)) {
+            width <<= 1;
+        }
+        this.width = width;
+        table = new byte[DEPTH * width];
+        sampleSize = 10 * width;
+    }
+
+
+    /**
+     * Increments the frequency of specified element.
+     *
+     * @param hash the hash of the element.
+     */
+    void increment(final int hash) {
+
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            final int index = index(hash, row);
+            if (table[index] < MAXIMUM_FREQUENCY) {
+                table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+
+    /**
+     * Returns the estimated frequency of specified element.
+     *
+     * @param hash the hash of the element.
+     *
+     * @return the estimated frequency between {@code 0} and
+     * {@value #MAXIMUM_FREQUENCY}.
+     */
+    int frequency(final int hash) {
+
+        int frequency = MAXIMUM_FREQUENCY;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, table[index(hash, row)]);
+        }
+
+        return frequency;
+    }
+
+
+    private int index(final int hash, final int row) {
+
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+
+        return row * width + ((int) h & (width - 1));
+    }
+
+
+    private void reset() {
+
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        additions >>>= 1;
+    }
+
+
+    private final int width;
+
+
+    private final byte[] table;
+
+
+    private final int sampleSize;
+
+
+    private int additions;
+
+
+}
+
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static java.lang.invoke.MethodHandles.lookup;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Places each locator on a fixed number of fronts with rendezvous hashing.
+ * Each front is scored with a hash of the locator key and the front URI, and
+ * the highest scoring fronts own the locator; adding or removing a front
+ * moves only the locators it wins or owned. Every front must be configured
+ * with the same sibling URIs. Bind this class as a singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#PARTITION_REPLICAS
+ * @see FileFrontProperties#PARTITION_REDIRECT
+ */
+@Singleton
+public class Partitioner {
+
+
+    /**
+     * The default number of fronts owning each locator.
+     */
+    public static final int DEFAULT_REPLICAS = 2;
+
+
+    /**
+     * Returns the fronts owning specified key, the best first.
+     *
+     * @param key the locator key.
+     * @param fileFronts all fronts.
+     * @param replicas the number of owners.
+     *
+     * @return the owners.
+     */
+    static List<URI> owners(final ByteBuffer key, final List<URI> fileFronts,
+                            final int replicas) {
+
+        final List<URI> owners = new ArrayList<>(replicas);
+        final List<Long> scores = new ArrayList<>(replicas);
+        for (final URI fileFront : fileFronts) {
+            if (!fileFront.isAbsolute()) {
+                continue;
+            }
+            final long score = score(key, fileFront);
+            int index = owners.size();
+            while (index > 0 && Long.compareUnsigned(
+                score, scores.get(index - 1)) > 0) {
+                index--;
+            }
+            if (index < replicas) {
+                owners.add(index, fileFront);
+                scores.add(index, score);
+                if (owners.size() > replicas) {
+                    owners.remove(replicas);
+                    scores.remove(replicas);
+                }
+            }
+        }
+
+        return owners;
+    }
+
+
+    /**
+     * Scores specified front for specified key with 64-bit FNV-1a followed
+     * by the MurmurHash3 finalizer.
+     */
+    static long score(final ByteBuffer key, final URI fileFront) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = key.position(); i < key.limit(); i++) {
+            hash ^= key.get(i) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        for (final byte b
+             : fileFront.toString().getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+
+    @PostConstruct
+    private void constructed() {
+
+        replicas = (int) Math.max(1L, FileFrontProperties.getLong(
+            configuration, FileFrontProperties.PARTITION_REPLICAS,
+            DEFAULT_REPLICAS));
+        redirect = FileFrontProperties.getBoolean(
+            configuration, FileFrontProperties.PARTITION_REDIRECT, false);
+        logger.trace("replicas: {}, redirect: {}", replicas, redirect);
+    }
+
+
+    /**
+     * Returns the fronts owning specified key, the best first.
+     *
+     * @param key the locator key.
+     * @param fileFronts all fronts including the current one.
+     *
+     * @return the owners.
+     */
+    public List<URI> owners(final ByteBuffer key, final List<URI> fileFronts) {
+
+        return owners(key, fileFronts, replicas);
+    }
+
+
+    /**
+     * Returns whether requests for locators owned by others are redirected
+     * rather than forwarded.
+     *
+     * @return {@code true} for redirects; {@code false} for forwarding.
+     */
+    public boolean isRedirect() {
+
+        return redirect;
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private int replicas = DEFAULT_REPLICAS;
+
+
+    private boolean redirect;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.FileBackException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Coalesces concurrent reads of the same locator into a single fetch. The
+ * first request starts a fetch spooling the file into a temporary file and
+ * every request, including the first, tails the spool as it grows. Bind this
+ * class as a singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+@Singleton
+public class ReadCoalescer {
+
+
+    /**
+     * A fetch filling a flight.
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+
+
+        /**
+         * Fetches a file into specified flight with
+         * {@link Flight#write(ReadableByteChannel)}.
+         *
+         * @param flight the flight.
+         *
+         * @throws IOException if an I/O error occurs.
+         * @throws FileBackException if a file back error occurs.
+         */
+        void fetch(Flight flight) throws IOException, FileBackException;
+
+
+    }
+
+
+    /**
+     * A single fetch shared by concurrent reads. A flight joined must be
+     * released.
+     */
+    public static final class Flight {
+
+
+        private Flight(final Path spool) {
+
+            super();
+
+            this.spool = spool;
+        }
+
+
+        /**
+         * Copies specified channel into the spool, waking up readers for each
+         * chunk.
+         *
+         * @param source the channel to copy.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        public void write(final ReadableByteChannel source)
+            throws IOException {
+
+            try (FileChannel target = FileChannel.open(
+                spool, StandardOpenOption.WRITE)) {
+                synchronized (this) {
+                    if (source instanceof SeekableByteChannel) {
+                        final SeekableByteChannel seekable
+                            = (SeekableByteChannel) source;
+                        length = seekable.size() - seekable.position();
+                    }
+                    started = true;
+                    notifyAll();
+                }
+                final ByteBuffer buffer
+                    = ByteBuffer.allocate(FileFrontChannels.BUFFER_CAPACITY);
+                while (source.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    synchronized (this) {
+                        written = target.position();
+                        notifyAll();
+                    }
+                    buffer.clear();
+                }
+            }
+        }
+
+
+        /**
+         * Waits until the file is found or the fetch completes.
+         *
+         * @return {@code true} if the file is found; {@code false} if not.
+         *
+         * @throws IOException if the fetch failed before the file was found.
+         */
+        public synchronized boolean await() throws IOException {
+
+            while (!started && !done) {
+                try {
+                    wait();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (!started && failure != null) {
+                throw new IOException("failed to fetch", failure);
+            }
+
+            return started;
+        }
+
+
+        /**
+         * Copies the spool to specified stream, following the fetch until it
+         * completes.
+         *
+         * @param output the stream to write to.
+         *
+         * @throws IOException if an I/O error occurs or the fetch failed.
+         */
+        public void transfer(final OutputStream output) throws IOException {
+
+            final WritableByteChannel target = Channels.newChannel(output);
+            try (FileChannel source = FileChannel.open(
+                spool, StandardOpenOption.READ)) {
+                long position = 0L;
+                while (true) {
+                    final long available;
+                    synchronized (this) {
+                        while (written <= position && !done) {
+                            try {
+                                wait();
+                            } catch (final InterruptedException ie) {
+                                Thread.currentThread().interrupt();
+                                throw new InterruptedIOException();
+                            }
+                        }
+                        if (written <= position) {
+                            if (failure != null) {
+                                throw new IOException(
+                                    "failed to fetch", failure);
+                            }
+                            return;
+                        }
+                        available = written;
+                    }
+                    while (position < available) {
+                        position += source.transferTo(
+                            position, available - position, target);
+                    }
+                }
+            }
+        }
+
+
+        /**
+         * Returns the length of the file.
+         *
+         * @return the length or {@code -1} if unknown.
+         */
+        public synchronized long getLength() {
+
+            return length;
+        }
+
+
+        /**
+         * Returns the path name of the file.
+         *
+         * @return the path name or {@code null} if not known yet.
+         */
+        public synchronized String getPathName() {
+
+            return pathName;
+        }
+
+
+        /**
+         * Replaces the path name of the file.
+         *
+         * @param pathName new path name.
+         */
+        public synchronized void setPathName(final String pathName) {
+
+            this.pathName = pathName;
+        }
+
+
+        /**
+         * Releases this flight. The spool is deleted when the fetch is
+         * complete and every participant released.
+         */
+        public void release() {
+
+            final boolean delete;
+            synchronized (this) {
+                delete = --participants == 0 && done;
+            }
+            if (delete) {
+                delete();
+            }
+        }
+
+
+        Path getSpool() {
+
+            return spool;
+        }
+
+
+        private void complete(final Exception failure) {
+
+            final boolean delete;
+            synchronized (this) {
+                this.failure = failure;
+                done = true;
+                notifyAll();
+                delete = participants == 0;
+            }
+            if (delete) {
+                delete();
+            }
+        }
+
+
+        private void delete() {
+
+            try {
+                Files.deleteIfExists(spool);
+            } catch (final IOException ioe) {
+                getLogger(ReadCoalescer.class).error(
+                    "failed to delete spool: " + spool, ioe);
+            }
+        }
+
+
+        private final Path spool;
+
+
+        private int participants = 1;
+
+
+        private long length = -1L;
+
+
+        private long written;
+
+
+        private String pathName;
+
+
+        private boolean started;
+
+
+        private boolean done;
+
+
+        private Exception failure;
+
+
+    }
+
+
+    @PreDestroy
+    private void destroying() {
+
+        fetchers.shutdownNow();
+    }
+
+
+    /**
+     * Joins the flight for specified key, starting a new one with specified
+     * fetcher if none is in progress.
+     *
+     * @param key the locator key.
+     * @param fetcher the fetcher for a new flight.
+     *
+     * @return the flight joined.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public Flight join(final ByteBuffer key, final Fetcher fetcher)
+        throws IOException {
+
+        final Flight flight;
+        synchronized (flights) {
+            final Flight existing = flights.get(key);
+            if (existing != null) {
+                synchronized (existing) {
+                    existing.participants++;
+                }
+                coalesced.incrementAndGet();
+                return existing;
+            }
+            flight = new Flight(Files.createTempFile("coalesced", null));
+            flights.put(key, flight);
+        }
+        fetches.incrementAndGet();
+        logger.trace("fetching {} into {}", key, flight.spool);
+
+        fetchers.execute(() -> {
+            Exception failure = null;
+            try {
+                fetcher.fetch(flight);
+            } catch (IOException | FileBackException | RuntimeException e) {
+                logger.error("failed to fetch into " + flight.spool, e);
+                failure = e;
+            } finally {
+                synchronized (flights) {
+                    flights.remove(key, flight);
+                }
+                flight.complete(failure);
+            }
+        });
+
+        return flight;
+    }
+
+
+    /**
+     * Returns the number of fetches started.
+     *
+     * @return the number of fetches.
+     */
+    public long getFetches() {
+
+        return fetches.get();
+    }
+
+
+    /**
+     * Returns the number of reads served by fetches started by others.
+     *
+     * @return the number of coalesced reads.
+     */
+    public long getCoalesced() {
+
+        return coalesced.get();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final Map<ByteBuffer, Flight> flights = new HashMap<>();
+
+
+    private final AtomicLong fetches = new AtomicLong();
+
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+
+    private final ExecutorService fetchers = Executors.newCachedThreadPool(
+        runnable -> {
+            final Thread thread = new Thread(runnable, "coalescing");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+
+}
+
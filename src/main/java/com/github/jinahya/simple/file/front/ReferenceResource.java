@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static java.lang.invoke.MethodHandles.lookup;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Stores files as references to contents held by other files, under
+ * {@code _/reference} of a {@link AbstractLocatorsResource}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see AbstractLocatorsResource#referenceResource()
+ */
+public class ReferenceResource {
+
+
+    ReferenceResource(final AbstractLocatorsResource resource) {
+
+        super();
+
+        this.resource = resource;
+    }
+
+
+    /**
+     * Stores a file as a reference to the content with specified digest on
+     * the {@link BackingExecutor}, if bound, and resumes specified response
+     * with the result of
+     * {@link #referenceSingle(java.lang.String, java.lang.String)}.
+     *
+     * @param locator the file locator.
+     * @param digest the content digest in hexadecimal.
+     * @param asyncResponse the response to resume.
+     */
+    @POST
+    @Path("{locator: .+}")
+    public void referenceSingle(
+        @PathParam("locator") final String locator,
+        @QueryParam("digest") final String digest,
+        @Suspended final AsyncResponse asyncResponse) {
+
+        resource.resume(asyncResponse, () -> referenceSingle(locator, digest));
+    }
+
+
+    /**
+     * Stores a file as a reference to a file holding the content with
+     * specified digest. Siblings ask this before sending a content. The
+     * reference is not distributed.
+     *
+     * @param locator the file locator.
+     * @param digest the content digest in hexadecimal.
+     *
+     * @return a response.
+     *
+     * @throws ForbiddenException if the request is not from a sibling.
+     * @throws NotFoundException if no file holds the content.
+     */
+    public Response referenceSingle(final String locator,
+                                    final String digest) {
+
+        logger.trace("referenceSingle({}, {})", locator, digest);
+
+        if (!resource.forwarded()) {
+            throw new ForbiddenException("not from a sibling");
+        }
+
+        AbstractLocatorsResource.writable(locator);
+
+        final Response routed = resource.partition(locator, null);
+        if (routed != null) {
+            return routed;
+        }
+
+        final ContentIndex contentIndex = resource.getContentIndex();
+        if (contentIndex == null) {
+            throw new NotFoundException("no content index");
+        }
+        if (digest == null || !digest.matches("[0-9a-fA-F]{64}")) {
+            throw new BadRequestException("invalid digest: " + digest);
+        }
+        final byte[] bytes = AntiEntropy.unhex(digest);
+
+        final String holder = contentIndex.holder(bytes);
+        logger.trace("holder: {}", holder);
+        if (holder == null
+            || (!holder.equals(locator)
+                && !resource.reference(holder, locator, bytes))) {
+            throw new NotFoundException("no content for digest: " + digest);
+        }
+
+        resource.introduce();
+        resource.written(locator, bytes);
+
+        return Response.noContent().build();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final AbstractLocatorsResource resource;
+
+
+}
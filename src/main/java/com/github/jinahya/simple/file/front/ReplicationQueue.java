@@ -0,0 +1,877 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.glassfish.jersey.client.ClientProperties;
+import org.jvnet.hk2.annotations.Optional;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A durable queue for distributing operations to siblings in background.
+ * Each appended operation is written to an on-disk journal, one entry per
+ * sibling, before {@link #append(URI, String, String, Map, Path, MediaType)}
+ * returns. A dedicated worker for each sibling delivers its entries in order
+ * and retries failed deliveries with an exponential backoff. Each entry
+ * carries a {@link #ticket() ticket} and an entry older than the last write
+ * delivered for the same path is dropped rather than delivered. An entry
+ * rejected with a status not worth retrying is dropped and an entry failing
+ * too many times is set aside, with a {@code .dead} suffix, so that it does
+ * not hold back the others. An operation sent to siblings directly is
+ * {@link #hold(List, String, String, Map, Path, MediaType, long) held} in the
+ * journal while in flight, {@link #release(URI, String, long) released} to
+ * the worker when its sending failed and removed when
+ * {@link #delivered(URI, String, long) delivered}. Entries left in the
+ * journal, held or not, are resumed when an instance is constructed. Bind
+ * this class as a singleton and configure a durable journal directory for
+ * each front; the directory must not be shared with another front.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#REPLICATION_DIRECTORY
+ */
+@Singleton
+public class ReplicationQueue {
+
+
+    /**
+     * The default initial backoff in milliseconds.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 1000L;
+
+
+    /**
+     * The default maximum backoff in milliseconds.
+     */
+    public static final long DEFAULT_MAXIMUM_BACKOFF = 300000L;
+
+
+    /**
+     * The default maximum number of delivery attempts for an entry.
+     */
+    public static final int DEFAULT_MAXIMUM_ATTEMPTS = 32;
+
+
+    private static final String ENTRY_SUFFIX = ".entry";
+
+
+    private static final String PAYLOAD_SUFFIX = ".payload";
+
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+
+    private static final String DEAD_SUFFIX = ".dead";
+
+
+    private static final String SIBLING = "sibling";
+
+
+    private static final String METHOD = "method";
+
+
+    private static final String PATH = "path";
+
+
+    private static final String CONTENT_TYPE = "contentType";
+
+
+    private static final String QUERY_PREFIX = "query.";
+
+
+    private static final String TICKET = "ticket";
+
+
+    private static final int DELIVERED_CAPACITY = 65536;
+
+
+    @PostConstruct
+    private void constructed() {
+
+        final String directory = FileFrontProperties.getString(
+            configuration, FileFrontProperties.REPLICATION_DIRECTORY, null);
+        if (directory == null) { // resumed entries belong to this front only
+            throw new IllegalStateException(
+                "no journal directory configured with "
+                + FileFrontProperties.REPLICATION_DIRECTORY);
+        }
+        logger.debug("journal directory: {}", directory);
+
+        final long initialBackoff = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.REPLICATION_INITIAL_BACKOFF,
+            DEFAULT_INITIAL_BACKOFF);
+        final long maximumBackoff = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.REPLICATION_MAXIMUM_BACKOFF,
+            DEFAULT_MAXIMUM_BACKOFF);
+        final int maximumAttempts = (int) FileFrontProperties.getLong(
+            configuration, FileFrontProperties.REPLICATION_MAXIMUM_ATTEMPTS,
+            DEFAULT_MAXIMUM_ATTEMPTS);
+
+        start(Paths.get(directory), initialBackoff, maximumBackoff,
+              maximumAttempts);
+    }
+
+
+    @PreDestroy
+    private void destroying() {
+
+        stop();
+    }
+
+
+    void start(final Path directory, final long initialBackoff,
+               final long maximumBackoff, final int maximumAttempts) {
+
+        this.directory = directory;
+        this.initialBackoff = initialBackoff;
+        this.maximumBackoff = maximumBackoff;
+        this.maximumAttempts = maximumAttempts;
+
+        if (siblingClients == null) {
+            client = ClientBuilder.newClient()
+                .property(ClientProperties.CONNECT_TIMEOUT,
+                          (int) FileFrontProperties.getLong(
+                              configuration,
+                              FileFrontProperties.SIBLING_CONNECT_TIMEOUT,
+                              SiblingClients.DEFAULT_CONNECT_TIMEOUT))
+                .property(ClientProperties.READ_TIMEOUT,
+                          (int) FileFrontProperties.getLong(
+                              configuration,
+                              FileFrontProperties.SIBLING_READ_TIMEOUT,
+                              SiblingClients.DEFAULT_READ_TIMEOUT));
+            final SiblingSigner signer = SiblingSigner.of(configuration);
+            if (signer != null) {
+                client.register(signer);
+            }
+        }
+
+        try {
+            Files.createDirectories(directory);
+            resume();
+        } catch (final IOException ioe) {
+            logger.error("failed to resume journal: " + directory, ioe);
+        }
+    }
+
+
+    void stop() {
+
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(10L, TimeUnit.SECONDS);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (client != null) {
+            client.close();
+        }
+    }
+
+
+    private void resume() throws IOException {
+
+        final List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(directory)) {
+            for (final Path path : stream) {
+                final String name = path.getFileName().toString();
+                if (name.endsWith(ENTRY_SUFFIX)) {
+                    entries.add(path);
+                } else if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                } else if (name.endsWith(PAYLOAD_SUFFIX)) {
+                    final String prefix = name.substring(
+                        0, name.length() - PAYLOAD_SUFFIX.length());
+                    if (!Files.exists(directory.resolve(prefix + ENTRY_SUFFIX))
+                        && !Files.exists(directory.resolve(
+                            prefix + DEAD_SUFFIX))) { // never committed
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+        }
+        Collections.sort(entries);
+
+        for (final Path entry : entries) {
+            final Properties properties = load(entry);
+            final URI fileFront = URI.create(properties.getProperty(SIBLING));
+            logger.debug("resuming {} for {}", entry, fileFront);
+            lane(fileFront).entries.add(entry);
+        }
+    }
+
+
+    /**
+     * Appends an operation to the journal for each sibling other than
+     * {@code baseUri}.
+     *
+     * @param baseUri the base URI of the current front.
+     * @param method the HTTP method.
+     * @param path the request path relative to a sibling URI.
+     * @param queryParameters query parameters.
+     * @param entity a file whose content is the request entity; {@code null}
+     * for no entity.
+     * @param contentType the content type of {@code entity}.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void append(final URI baseUri, final String method,
+                       final String path,
+                       final Map<String, String> queryParameters,
+                       final Path entity, final MediaType contentType)
+        throws IOException {
+
+        final long ticket = ticket();
+        Path staged = null;
+        if (entity != null) {
+            staged = directory.resolve(nextName() + PAYLOAD_SUFFIX
+                                       + TEMP_SUFFIX);
+            copy(entity, staged);
+        }
+        try {
+            for (final URI fileFront : fileFronts) {
+                if (!fileFront.isAbsolute()) {
+                    logger.warn("not an absolute uri: {}", fileFront);
+                    continue;
+                }
+                if (fileFront.equals(baseUri)) {
+                    continue;
+                }
+                final Path entry = journal(
+                    fileFront, method, path, queryParameters, staged,
+                    contentType, ticket, true);
+                lane(fileFront).entries.add(entry);
+            }
+        } finally {
+            if (staged != null) {
+                Files.deleteIfExists(staged);
+            }
+        }
+    }
+
+
+    /**
+     * Appends an operation to the journal for specified sibling only.
+     *
+     * @param fileFront the sibling.
+     * @param method the HTTP method.
+     * @param path the request path relative to a sibling URI.
+     * @param queryParameters query parameters.
+     * @param entity a file whose content is the request entity; {@code null}
+     * for no entity.
+     * @param contentType the content type of {@code entity}.
+     * @param ticket the ticket taken for the operation.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @see #ticket()
+     */
+    public void appendTo(final URI fileFront, final String method,
+                         final String path,
+                         final Map<String, String> queryParameters,
+                         final Path entity, final MediaType contentType,
+                         final long ticket)
+        throws IOException {
+
+        final Path entry = journal(fileFront, method, path, queryParameters,
+                                   entity, contentType, ticket, false);
+        lane(fileFront).entries.add(entry);
+    }
+
+
+    /**
+     * Journals an operation for each of specified siblings before it is sent
+     * to them directly. Held entries are not delivered by this queue unless
+     * {@link #release(URI, String, long) released}, and are removed once the
+     * operation, or a newer one for the same path, is
+     * {@link #delivered(URI, String, long) delivered}. Held entries left by a
+     * crash are resumed like any other.
+     *
+     * @param fileFronts the siblings to which the operation is sent.
+     * @param method the HTTP method.
+     * @param path the request path relative to a sibling URI.
+     * @param queryParameters query parameters.
+     * @param entity a file whose content is the request entity; {@code null}
+     * for no entity.
+     * @param contentType the content type of {@code entity}.
+     * @param ticket the ticket taken for the operation.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @see #ticket()
+     */
+    public void hold(final List<URI> fileFronts, final String method,
+                     final String path,
+                     final Map<String, String> queryParameters,
+                     final Path entity, final MediaType contentType,
+                     final long ticket)
+        throws IOException {
+
+        Path staged = null;
+        if (entity != null) {
+            staged = directory.resolve(nextName() + PAYLOAD_SUFFIX
+                                       + TEMP_SUFFIX);
+            copy(entity, staged);
+        }
+        try {
+            for (final URI fileFront : fileFronts) {
+                final Path entry = journal(
+                    fileFront, method, path, queryParameters, staged,
+                    contentType, ticket, true);
+                synchronized (held) {
+                    held.computeIfAbsent(fileFront + " " + path,
+                                         k -> new TreeMap<>())
+                        .put(ticket, entry);
+                }
+            }
+        } finally {
+            if (staged != null) {
+                Files.deleteIfExists(staged);
+            }
+        }
+    }
+
+
+    /**
+     * Hands a held entry whose direct sending failed over to the worker of
+     * specified sibling. Nothing happens if the entry has been removed by a
+     * newer delivery.
+     *
+     * @param fileFront the sibling.
+     * @param path the request path relative to a sibling URI.
+     * @param ticket the ticket of the operation.
+     *
+     * @see #hold(List, String, String, Map, Path, MediaType, long)
+     */
+    public void release(final URI fileFront, final String path,
+                        final long ticket) {
+
+        final Path entry;
+        synchronized (held) {
+            final String key = fileFront + " " + path;
+            final NavigableMap<Long, Path> tickets = held.get(key);
+            entry = tickets == null ? null : tickets.remove(ticket);
+            if (tickets != null && tickets.isEmpty()) {
+                held.remove(key);
+            }
+        }
+        if (entry != null) {
+            logger.trace("released: {}", entry);
+            lane(fileFront).entries.add(entry);
+        }
+    }
+
+
+    private Path journal(final URI fileFront, final String method,
+                         final String path,
+                         final Map<String, String> queryParameters,
+                         final Path entity, final MediaType contentType,
+                         final long ticket, final boolean staged)
+        throws IOException {
+
+        final String name = nextName();
+        if (entity != null) {
+            final Path payload = directory.resolve(name + PAYLOAD_SUFFIX);
+            if (staged) {
+                link(entity, payload);
+            } else {
+                copy(entity, payload);
+            }
+        }
+        final Properties properties = new Properties();
+        properties.setProperty(SIBLING, fileFront.toString());
+        properties.setProperty(METHOD, method);
+        properties.setProperty(PATH, path);
+        properties.setProperty(TICKET, Long.toString(ticket));
+        if (contentType != null) {
+            properties.setProperty(CONTENT_TYPE, contentType.toString());
+        }
+        queryParameters.forEach((key, value) -> properties.setProperty(
+            QUERY_PREFIX + key, value));
+        final Path entry = directory.resolve(name + ENTRY_SUFFIX);
+        store(properties, entry);
+        logger.trace("journaled: {}", entry);
+
+        return entry;
+    }
+
+
+    /**
+     * Takes a new ticket for an operation to be distributed. Tickets increase
+     * monotonically, also across restarts.
+     *
+     * @return a new ticket.
+     */
+    public long ticket() {
+
+        return tickets.updateAndGet(
+            last -> Math.max(last + 1L, System.currentTimeMillis() * 1000L));
+    }
+
+
+    /**
+     * Records that an operation has been delivered to specified sibling
+     * directly. Held entries for the same path up to {@code ticket} are
+     * removed and entries with older tickets are dropped afterwards.
+     *
+     * @param fileFront the sibling.
+     * @param path the request path relative to a sibling URI.
+     * @param ticket the ticket of the operation.
+     */
+    public void delivered(final URI fileFront, final String path,
+                          final long ticket) {
+
+        final String key = fileFront + " " + path;
+        synchronized (delivered) {
+            delivered.merge(key, ticket, Math::max);
+        }
+
+        final List<Path> removed = new ArrayList<>();
+        synchronized (held) {
+            final NavigableMap<Long, Path> tickets = held.get(key);
+            if (tickets != null) {
+                final Map<Long, Path> older = tickets.headMap(ticket, true);
+                removed.addAll(older.values());
+                older.clear();
+                if (tickets.isEmpty()) {
+                    held.remove(key);
+                }
+            }
+        }
+        for (final Path entry : removed) {
+            try {
+                remove(entry);
+            } catch (final IOException ioe) {
+                logger.error("failed to remove " + entry, ioe);
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether specified sibling has entries not delivered yet. An
+     * operation for such a sibling should be appended with
+     * {@link #appendTo(URI, String, String, Map, Path, MediaType, long)}
+     * rather than sent directly so that it is not overwritten by an older
+     * one.
+     *
+     * @param fileFront the sibling.
+     *
+     * @return {@code true} if {@code fileFront} has pending entries.
+     */
+    public boolean isPending(final URI fileFront) {
+
+        final Lane lane = lanes.get(fileFront);
+
+        return lane != null
+               && (!lane.entries.isEmpty() || lane.current != null);
+    }
+
+
+    /**
+     * Returns the number of entries not delivered yet, including held ones.
+     *
+     * @return the number of pending entries.
+     */
+    public int getPending() {
+
+        final int holding;
+        synchronized (held) {
+            holding = held.values().stream().mapToInt(Map::size).sum();
+        }
+
+        return holding + lanes.values().stream().mapToInt(
+            lane -> lane.entries.size() + (lane.current == null ? 0 : 1))
+            .sum();
+    }
+
+
+    private String nextName() {
+
+        return String.format("%013d%06d", System.currentTimeMillis(),
+                             sequence.getAndIncrement() % 1000000L);
+    }
+
+
+    private Lane lane(final URI fileFront) {
+
+        return lanes.computeIfAbsent(fileFront, k -> {
+            final Lane lane = new Lane(k);
+            workers.submit(lane);
+            return lane;
+        });
+    }
+
+
+    private boolean deliver(final URI fileFront, final Path entry)
+        throws IOException {
+
+        final Properties properties = load(entry);
+        final Path payload = payload(entry);
+
+        final String path = properties.getProperty(PATH);
+        final long ticket = Long.parseLong(
+            properties.getProperty(TICKET, "-1"));
+        final Long latest;
+        synchronized (delivered) {
+            latest = delivered.get(fileFront + " " + path);
+        }
+        if (latest != null && ticket < latest) {
+            logger.debug("dropping {} superseded for {}", entry, fileFront);
+            return true;
+        }
+
+        WebTarget target = (siblingClients != null
+                            ? siblingClients.client(fileFront) : client)
+            .target(fileFront).path(path);
+        for (final String key : properties.stringPropertyNames()) {
+            if (key.startsWith(QUERY_PREFIX)) {
+                target = target.queryParam(
+                    key.substring(QUERY_PREFIX.length()),
+                    properties.getProperty(key));
+            }
+        }
+        logger.trace("target.uri: {}", target.getUri());
+
+        final String method = properties.getProperty(METHOD);
+        final Response response;
+        if (Files.exists(payload)) {
+            response = target.request().method(method, Entity.entity(
+                payload.toFile(), MediaType.valueOf(properties.getProperty(
+                        CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM)))
+            );
+        } else {
+            response = target.request().method(method);
+        }
+        try {
+            final int status = response.getStatus();
+            logger.trace("response.status: {}", status);
+            if (status >= 500 || status == 408 || status == 429) {
+                return false;
+            }
+            if (status >= 400) {
+                logger.warn("dropping {} rejected by {} with {}", entry,
+                            fileFront, status);
+            } else if (ticket >= 0L) {
+                delivered(fileFront, path, ticket);
+            }
+            return true;
+        } finally {
+            response.close();
+        }
+    }
+
+
+    private void remove(final Path entry) throws IOException {
+
+        Files.deleteIfExists(entry);
+        Files.deleteIfExists(payload(entry));
+    }
+
+
+    /**
+     * Sets aside specified entry, with its payload kept, so that it is not
+     * resumed.
+     */
+    private void bury(final Path entry) throws IOException {
+
+        final String name = entry.getFileName().toString();
+        Files.move(entry, entry.resolveSibling(
+                   name.substring(0, name.length() - ENTRY_SUFFIX.length())
+                   + DEAD_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        sync(entry.getParent());
+    }
+
+
+    private static Path payload(final Path entry) {
+
+        final String name = entry.getFileName().toString();
+
+        return entry.resolveSibling(
+            name.substring(0, name.length() - ENTRY_SUFFIX.length())
+            + PAYLOAD_SUFFIX);
+    }
+
+
+    private static void copy(final Path source, final Path target)
+        throws IOException {
+
+        final Path temp = target.resolveSibling(
+            target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(
+            temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            Files.copy(source, Channels.newOutputStream(channel));
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private static void link(final Path existing, final Path link)
+        throws IOException {
+
+        try {
+            Files.createLink(link, existing);
+        } catch (final UnsupportedOperationException | IOException e) {
+            copy(existing, link);
+        }
+    }
+
+
+    private static Properties load(final Path entry) throws IOException {
+
+        final Properties properties = new Properties();
+        try (InputStream stream = Files.newInputStream(entry)) {
+            properties.load(stream);
+        }
+
+        return properties;
+    }
+
+
+    private static void store(final Properties properties, final Path entry)
+        throws IOException {
+
+        final Path temp = entry.resolveSibling(
+            entry.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(
+            temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            final OutputStream stream = Channels.newOutputStream(channel);
+            properties.store(stream, null);
+            stream.flush();
+            channel.force(true);
+        }
+        Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+        sync(entry.getParent()); // the move commits the entry
+    }
+
+
+    /**
+     * Flushes specified directory so that renames in it survive a crash.
+     */
+    private static void sync(final Path directory) {
+
+        try (FileChannel channel = FileChannel.open(
+            directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (final UnsupportedOperationException | IOException e) {
+            // directories can't be opened, or forced, on some platforms
+        }
+    }
+
+
+    /**
+     * A worker delivering entries for a single sibling in order.
+     */
+    private class Lane implements Runnable {
+
+
+        private Lane(final URI fileFront) {
+
+            super();
+
+            this.fileFront = fileFront;
+        }
+
+
+        @Override
+        public void run() {
+
+            long backoff = initialBackoff;
+            while (!Thread.currentThread().isInterrupted()) {
+                final Path entry;
+                try {
+                    entry = current = entries.take();
+                } catch (final InterruptedException ie) {
+                    return;
+                }
+                for (int attempts = 1; true; attempts++) {
+                    boolean delivered = false;
+                    try {
+                        delivered = deliver(fileFront, entry);
+                    } catch (final IOException | ProcessingException e) {
+                        logger.warn("failed to deliver {} to {}: {}", entry,
+                                    fileFront, e.toString());
+                    }
+                    if (!delivered && maximumAttempts > 0
+                        && attempts >= maximumAttempts) {
+                        logger.error("giving up {} to {} after {} attempts",
+                                     entry, fileFront, attempts);
+                        try {
+                            bury(entry);
+                        } catch (final IOException ioe) {
+                            logger.error("failed to bury " + entry, ioe);
+                        }
+                        backoff = initialBackoff;
+                        current = null;
+                        break;
+                    }
+                    if (delivered) {
+                        try {
+                            remove(entry);
+                        } catch (final IOException ioe) {
+                            logger.error("failed to remove " + entry, ioe);
+                        }
+                        backoff = initialBackoff;
+                        current = null;
+                        break;
+                    }
+                    logger.debug("retrying {} to {} in {} ms", entry,
+                                 fileFront, backoff);
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (final InterruptedException ie) {
+                        return; // the entry stays in the journal
+                    }
+                    backoff = Math.min(backoff * 2L, maximumBackoff);
+                }
+            }
+        }
+
+
+        private final URI fileFront;
+
+
+        private final BlockingQueue<Path> entries
+            = new LinkedBlockingQueue<>();
+
+
+        private volatile Path current;
+
+
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final ConcurrentMap<URI, Lane> lanes = new ConcurrentHashMap<>();
+
+
+    private final ExecutorService workers = Executors.newCachedThreadPool(
+        runnable -> {
+            final Thread thread = new Thread(runnable, "replication");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+
+    private final AtomicLong sequence = new AtomicLong();
+
+
+    private final AtomicLong tickets = new AtomicLong();
+
+
+    private final Map<String, Long> delivered
+        = new LinkedHashMap<String, Long>(16, .75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry(
+                final Map.Entry<String, Long> eldest) {
+
+                return size() > DELIVERED_CAPACITY;
+            }
+
+        };
+
+
+    /**
+     * Entries being sent directly, by sibling and path, then by ticket.
+     */
+    private final Map<String, NavigableMap<Long, Path>> held = new HashMap<>();
+
+
+    private Path directory;
+
+
+    private long initialBackoff;
+
+
+    private long maximumBackoff;
+
+
+    private int maximumAttempts;
+
+
+    private Client client;
+
+
+    @Inject
+    @Siblings
+    private List<URI> fileFronts;
+
+
+    @Inject
+    @Optional
+    private SiblingClients siblingClients;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
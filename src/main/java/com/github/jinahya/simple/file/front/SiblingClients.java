@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static java.lang.invoke.MethodHandles.lookup;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Long-lived, pooled clients for distributing to siblings. One client, backed
+ * by its own keep-alive connection pool, is kept for each sibling URI and all
+ * clients are closed when this instance is destroyed. Bind this class as a
+ * singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#SIBLING_MAX_CONNECTIONS
+ * @see FileFrontProperties#SIBLING_CONNECT_TIMEOUT
+ * @see FileFrontProperties#SIBLING_READ_TIMEOUT
+ */
+@Singleton
+public class SiblingClients {
+
+
+    /**
+     * The default value for the maximum number of connections per sibling.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+
+    /**
+     * The default value for the connect timeout in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 1000;
+
+
+    /**
+     * The default value for the read timeout in milliseconds.
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 2000;
+
+
+    @PostConstruct
+    private void constructed() {
+
+        logger.trace("fileFronts: {}", fileFronts);
+
+        if (fileFronts != null) {
+            fileFronts.stream().filter(URI::isAbsolute).forEach(this::client);
+        }
+    }
+
+
+    @PreDestroy
+    private void destroying() {
+
+        clients.forEach((fileFront, client) -> {
+            try {
+                client.close();
+                logger.trace("client closed: {}", fileFront);
+            } catch (final RuntimeException re) {
+                logger.error("failed to close client for " + fileFront, re);
+            }
+        });
+        clients.clear();
+    }
+
+
+    /**
+     * Returns the client for specified sibling. A new pooled client is created
+     * if no client exists for the sibling yet.
+     *
+     * @param fileFront the sibling URI.
+     *
+     * @return the client for {@code fileFront}.
+     */
+    public Client client(final URI fileFront) {
+
+        return clients.computeIfAbsent(fileFront, this::newClient);
+    }
+
+
+    private Client newClient(final URI fileFront) {
+
+        final int maxConnections = (int) FileFrontProperties.getLong(
+            configuration, FileFrontProperties.SIBLING_MAX_CONNECTIONS,
+            DEFAULT_MAX_CONNECTIONS);
+        logger.trace("maxConnections: {}", maxConnections);
+        final int connectTimeout = (int) FileFrontProperties.getLong(
+            configuration, FileFrontProperties.SIBLING_CONNECT_TIMEOUT,
+            DEFAULT_CONNECT_TIMEOUT);
+        final int readTimeout = (int) FileFrontProperties.getLong(
+            configuration, FileFrontProperties.SIBLING_READ_TIMEOUT,
+            DEFAULT_READ_TIMEOUT);
+        logger.trace("connectTimeout: {}, readTimeout: {}", connectTimeout,
+                     readTimeout);
+
+        final PoolingHttpClientConnectionManager connectionManager
+            = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        final ClientConfig clientConfig = new ClientConfig()
+            .connectorProvider(new ApacheConnectorProvider())
+            .property(ApacheClientProperties.CONNECTION_MANAGER,
+                      connectionManager)
+            .property(ClientProperties.REQUEST_ENTITY_PROCESSING,
+                      RequestEntityProcessing.CHUNKED)
+            .property(ClientProperties.CONNECT_TIMEOUT, connectTimeout)
+            .property(ClientProperties.READ_TIMEOUT, readTimeout);
+
+        final SiblingSigner signer = SiblingSigner.of(configuration);
+        if (signer != null) {
+            clientConfig.register(signer);
+        }
+
+        final Client client = ClientBuilder.newClient(clientConfig);
+        logger.trace("client created for {}: {}", fileFront, client);
+
+        return client;
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final ConcurrentMap<URI, Client> clients
+        = new ConcurrentHashMap<>();
+
+
+    @Inject
+    @Siblings
+    private List<URI> fileFronts;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.Configuration;
+
+
+/**
+ * Signs requests from a front to its siblings. Each request gets a
+ * {@value FileFrontConstants#HEADER_FORWARDED} header carrying an HMAC-SHA256
+ * of its method and path keyed with the secret shared by all fronts, so that
+ * the header, which skips partition routing and read fallbacks, is trusted
+ * from siblings only. Register an instance on each client to siblings.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#SIBLING_SECRET
+ */
+public class SiblingSigner implements ClientRequestFilter {
+
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+
+    /**
+     * Returns a signer for the secret configured in specified configuration.
+     *
+     * @param configuration the configuration; may be {@code null}.
+     *
+     * @return a signer; {@code null} if no secret is configured.
+     */
+    public static SiblingSigner of(final Configuration configuration) {
+
+        final String secret = FileFrontProperties.getString(
+            configuration, FileFrontProperties.SIBLING_SECRET, null);
+
+        return secret == null ? null : new SiblingSigner(secret);
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param secret the secret shared by all fronts.
+     */
+    public SiblingSigner(final String secret) {
+
+        super();
+
+        if (secret == null) {
+            throw new NullPointerException("null secret");
+        }
+
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8),
+                                ALGORITHM);
+    }
+
+
+    @Override
+    public void filter(final ClientRequestContext requestContext) {
+
+        requestContext.getHeaders().putSingle(
+            FileFrontConstants.HEADER_FORWARDED,
+            sign(requestContext.getMethod(),
+                 requestContext.getUri().getRawPath()));
+    }
+
+
+    /**
+     * Returns the signature of a request with specified method and path.
+     *
+     * @param method the request method.
+     * @param path the raw request path.
+     *
+     * @return the signature in hex.
+     */
+    public String sign(final String method, final String path) {
+
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return FileValidators.hex(mac.doFinal(
+                (method + " " + path).getBytes(StandardCharsets.UTF_8)));
+        } catch (final GeneralSecurityException gse) {
+            throw new IllegalStateException(gse);
+        }
+    }
+
+
+    /**
+     * Checks specified signature of a request with specified method and path.
+     *
+     * @param signature the signature; may be {@code null}.
+     * @param method the request method.
+     * @param path the raw request path.
+     *
+     * @return {@code true} if the signature is valid; {@code false}
+     * otherwise.
+     */
+    public boolean verify(final String signature, final String method,
+                          final String path) {
+
+        return signature != null && MessageDigest.isEqual(
+            signature.getBytes(StandardCharsets.US_ASCII),
+            sign(method, path).getBytes(StandardCharsets.US_ASCII));
+    }
+
+
+    private final SecretKeySpec key;
+
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.front.AbstractLocatorsResource.BatchPart;
+import java.io.IOException;
+import java.io.InputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.file.Files;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Reads block signatures of files, under {@code _/signatures} of a
+ * {@link AbstractLocatorsResource}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see AbstractLocatorsResource#signaturesResource()
+ * @see DeltaResource
+ */
+public class SignaturesResource {
+
+
+    SignaturesResource(final AbstractLocatorsResource resource) {
+
+        super();
+
+        this.resource = resource;
+    }
+
+
+    /**
+     * Reads block signatures of a file on the {@link BackingExecutor}, if
+     * bound, and resumes specified response with the result of
+     * {@link #readSignatures(java.lang.String)}.
+     *
+     * @param locator the file locator.
+     * @param asyncResponse the response to resume.
+     */
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @GET
+    @Path("{locator: .+}")
+    public void readSignatures(
+        @PathParam("locator") final String locator,
+        @Suspended final AsyncResponse asyncResponse) {
+
+        resource.resume(asyncResponse, () -> readSignatures(locator));
+    }
+
+
+    /**
+     * Reads block signatures of a file. Siblings ask this to send an updated
+     * content as a delta.
+     *
+     * @param locator the file locator.
+     *
+     * @return a response.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public Response readSignatures(final String locator) throws IOException {
+
+        logger.trace("readSignatures({})", locator);
+
+        final Response routed = resource.partition(locator, null);
+        if (routed != null) {
+            return routed;
+        }
+
+        final BatchPart part = resource.readPart(locator);
+        if (part.status != Response.Status.OK.getStatusCode()) {
+            throw new WebApplicationException(part.status);
+        }
+
+        return Response.ok((StreamingOutput) output -> {
+            try (InputStream input = Files.newInputStream(part.spool)) {
+                BlockDelta.signatures(input, part.length, output);
+            } finally {
+                resource.deletePart(part);
+            }
+        }).build();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final AbstractLocatorsResource resource;
+
+
+}
@@ -0,0 +1,823 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Files staging request and response bodies. Files are acquired only when a
+ * body is actually staged, from a configurable directory which may be placed
+ * on a fast device such as a {@code tmpfs}, and released files are truncated
+ * and kept in a bounded pool for following requests. Files left by a previous
+ * run are deleted on start. Bodies up to a threshold are kept in pooled
+ * memory by {@link Buffer}s and spilled into files only when they grow over
+ * it. Bind this class as a singleton.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see FileFrontProperties#STAGING_DIRECTORY
+ * @see FileFrontProperties#STAGING_POOL
+ * @see FileFrontProperties#STAGING_THRESHOLD
+ * @see FileFrontProperties#STAGING_MEMORY
+ */
+@Singleton
+public class StagingFiles {
+
+
+    /**
+     * The default number of idle files kept for reuse.
+     */
+    public static final int DEFAULT_POOL = 16;
+
+
+    /**
+     * The default maximum size of a body kept in memory.
+     */
+    public static final long DEFAULT_THRESHOLD = 65536L;
+
+
+    /**
+     * The default byte budget of pooled memory.
+     */
+    public static final long DEFAULT_MEMORY = 16777216L;
+
+
+    static final String PREFIX = "staging";
+
+
+    static final int CHUNK_SIZE = 8192;
+
+
+    /**
+     * A body staged in pooled memory while not larger than the threshold and
+     * spilled into a staging file once it grows over, or once the pooled
+     * memory runs out. A buffer is written once, closed and then replayed any
+     * number of times, concurrently. A buffer must be released once, and once
+     * more for each time it is retained.
+     */
+    public static final class Buffer extends OutputStream {
+
+
+        private Buffer(final StagingFiles stagingFiles, final Path path,
+                       final long length) {
+
+            super();
+
+            this.stagingFiles = stagingFiles;
+            this.path = path;
+            this.length = length;
+            owned = path == null;
+            closed = path != null;
+        }
+
+
+        @Override
+        public void write(final int b) throws IOException {
+
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+
+        @Override
+        public synchronized void write(final byte[] b, int off, int len)
+            throws IOException {
+
+            if (closed) {
+                throw new IOException("closed");
+            }
+
+            if (path == null) {
+                final long threshold
+                    = stagingFiles == null ? 0L : stagingFiles.threshold;
+                if (length + len <= threshold) {
+                    while (len > 0) {
+                        final int offset = (int) (length % CHUNK_SIZE);
+                        if (offset == 0) {
+                            final byte[] chunk = stagingFiles.allocate();
+                            if (chunk == null) { // out of memory budget
+                                break;
+                            }
+                            chunks.add(chunk);
+                        }
+                        final int count = Math.min(len, CHUNK_SIZE - offset);
+                        System.arraycopy(b, off, chunks.get(chunks.size() - 1),
+                                         offset, count);
+                        off += count;
+                        len -= count;
+                        length += count;
+                    }
+                    if (len == 0) {
+                        return;
+                    }
+                }
+                spill();
+            }
+
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            length += len;
+        }
+
+
+        /**
+         * Closes this buffer for writing.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+
+            closed = true;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+
+        /**
+         * Returns the file holding the body, spilling the body first if it is
+         * in memory. The memory of a closed buffer is kept, so replays in
+         * progress are not disturbed.
+         *
+         * @return the file holding the body.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        public synchronized Path spill() throws IOException {
+
+            if (path != null) {
+                return path;
+            }
+
+            path = stagingFiles == null
+                   ? Files.createTempFile(PREFIX, null)
+                   : stagingFiles.acquire();
+            channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+            long remaining = length;
+            for (final byte[] chunk : chunks) {
+                final ByteBuffer buffer = ByteBuffer.wrap(
+                    chunk, 0, (int) Math.min(CHUNK_SIZE, remaining));
+                remaining -= buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            if (stagingFiles != null) {
+                stagingFiles.spilled(closed ? null : chunks);
+            }
+            if (closed) {
+                channel.close();
+                channel = null;
+            } else { // no replay yet
+                chunks.clear();
+            }
+
+            return path;
+        }
+
+
+        /**
+         * Tells whether the body is held in a file.
+         *
+         * @return {@code true} if spilled; {@code false} if in memory.
+         */
+        public synchronized boolean isSpilled() {
+
+            return path != null;
+        }
+
+
+        /**
+         * Returns the file holding the body.
+         *
+         * @return the file or {@code null} if the body is in memory.
+         */
+        public synchronized Path getPath() {
+
+            return path;
+        }
+
+
+        /**
+         * Tells whether this buffer owns its memory or file, which is then
+         * kept until this buffer is released.
+         *
+         * @return {@code true} if owned; {@code false} otherwise.
+         */
+        public synchronized boolean isOwned() {
+
+            return owned;
+        }
+
+
+        /**
+         * Returns the number of bytes written.
+         *
+         * @return the length of the body.
+         */
+        public synchronized long getLength() {
+
+            return length;
+        }
+
+
+        /**
+         * Writes the body to specified stream.
+         *
+         * @param output the stream to write to.
+         *
+         * @return the number of bytes written.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        public long writeTo(final OutputStream output) throws IOException {
+
+            final List<byte[]> chunks_;
+            final Path path_;
+            final long length_;
+            synchronized (this) {
+                chunks_ = new ArrayList<>(chunks);
+                path_ = path;
+                length_ = length;
+            }
+
+            if (chunks_.isEmpty() && path_ != null) {
+                return Files.copy(path_, output);
+            }
+
+            long remaining = length_;
+            for (final byte[] chunk : chunks_) {
+                final int count = (int) Math.min(CHUNK_SIZE, remaining);
+                output.write(chunk, 0, count);
+                remaining -= count;
+            }
+
+            return length_;
+        }
+
+
+        /**
+         * Opens a stream replaying the body.
+         *
+         * @return a new input stream.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        public InputStream newInputStream() throws IOException {
+
+            final List<InputStream> streams = new ArrayList<>();
+            synchronized (this) {
+                if (chunks.isEmpty() && path != null) {
+                    return Files.newInputStream(path);
+                }
+                long remaining = length;
+                for (final byte[] chunk : chunks) {
+                    final int count = (int) Math.min(CHUNK_SIZE, remaining);
+                    streams.add(new ByteArrayInputStream(chunk, 0, count));
+                    remaining -= count;
+                }
+            }
+
+            return new SequenceInputStream(Collections.enumeration(streams));
+        }
+
+
+        /**
+         * Retains this buffer for another release.
+         *
+         * @return this buffer.
+         */
+        public synchronized Buffer retain() {
+
+            references++;
+
+            return this;
+        }
+
+
+        /**
+         * Releases this buffer. Pooled memory and the file, if spilled, are
+         * returned when released as many times as acquired and retained.
+         */
+        public void release() {
+
+            final List<byte[]> freed;
+            final Path released;
+            synchronized (this) {
+                if (references == 0 || --references > 0) {
+                    return;
+                }
+                closed = true;
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (final IOException ioe) {
+                        // not to be read anymore
+                    }
+                    channel = null;
+                }
+                freed = new ArrayList<>(chunks);
+                chunks.clear();
+                released = owned ? path : null;
+            }
+
+            if (stagingFiles != null) {
+                stagingFiles.free(freed);
+            }
+            if (released == null) {
+                return;
+            }
+            if (stagingFiles != null) {
+                stagingFiles.release(released);
+                return;
+            }
+            try {
+                Files.deleteIfExists(released);
+            } catch (final IOException ioe) {
+                getLogger(lookup().lookupClass()).error(
+                    "failed to delete " + released, ioe);
+            }
+        }
+
+
+        private final StagingFiles stagingFiles;
+
+
+        private final List<byte[]> chunks = new ArrayList<>();
+
+
+        private Path path;
+
+
+        private boolean owned;
+
+
+        private FileChannel channel;
+
+
+        private long length;
+
+
+        private boolean closed;
+
+
+        private int references = 1;
+
+
+    }
+
+
+    /**
+     * Returns a new buffer which spills into a temporary file on the first
+     * write, for resources with no instance of this class bound.
+     *
+     * @return a new buffer.
+     */
+    static Buffer unpooled() {
+
+        return new Buffer(null, null, 0L);
+    }
+
+
+    /**
+     * Returns a buffer over specified file owned by the caller.
+     *
+     * @param path the file.
+     *
+     * @return a closed buffer which never deletes {@code path}.
+     */
+    static Buffer of(final Path path) {
+
+        return new Buffer(null, path, path.toFile().length());
+    }
+
+
+    /**
+     * Returns a buffer over specified file which is deleted when the buffer
+     * is released.
+     *
+     * @param path the file.
+     *
+     * @return a closed buffer owning {@code path}.
+     */
+    static Buffer owning(final Path path) {
+
+        final Buffer buffer = of(path);
+        buffer.owned = true;
+
+        return buffer;
+    }
+
+
+    @PostConstruct
+    private void constructed() {
+
+        final String directory = FileFrontProperties.getString(
+            configuration, FileFrontProperties.STAGING_DIRECTORY, null);
+        final int pool = (int) Math.max(0L, Math.min(
+            Integer.MAX_VALUE, FileFrontProperties.getLong(
+                configuration, FileFrontProperties.STAGING_POOL,
+                DEFAULT_POOL)));
+        final long threshold = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.STAGING_THRESHOLD,
+            DEFAULT_THRESHOLD);
+        final long memory = FileFrontProperties.getLong(
+            configuration, FileFrontProperties.STAGING_MEMORY, DEFAULT_MEMORY);
+        logger.debug("directory: {}, pool: {}, threshold: {}, memory: {}",
+                     directory, pool, threshold, memory);
+
+        start(directory == null ? null : Paths.get(directory), pool,
+              threshold, memory);
+    }
+
+
+    @PreDestroy
+    private void destroying() {
+
+        stop();
+    }
+
+
+    /**
+     * Starts this instance.
+     *
+     * @param directory the directory of staging files; {@code null} for a new
+     * temporary directory owned by this instance.
+     * @param pool the number of idle files kept.
+     * @param threshold the length up to which a body is kept in memory.
+     * @param memory the byte budget of bodies kept in memory.
+     */
+    void start(final Path directory, final int pool, final long threshold,
+               final long memory) {
+
+        this.pool = pool;
+        this.threshold = threshold;
+        this.memory = memory;
+
+        final Path parent = Paths.get(System.getProperty("java.io.tmpdir"),
+                                      "simple-file-front");
+        try {
+            if (directory == null) { // shared by nobody else
+                Files.createDirectories(parent);
+                this.directory = Files.createTempDirectory(parent, PREFIX);
+                temporary = true;
+            } else {
+                this.directory = Files.createDirectories(directory);
+                try (DirectoryStream<Path> orphans
+                    = Files.newDirectoryStream(directory, PREFIX + "*")) {
+                    for (final Path path : orphans) { // left by a previous run
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+            synchronized (this) {
+                while (idle.size() < pool) {
+                    idle.push(Files.createTempFile(
+                        this.directory, PREFIX, null));
+                }
+            }
+        } catch (final IOException ioe) {
+            logger.error("failed to prepare directory: " + directory, ioe);
+            if (this.directory == null) {
+                this.directory = Paths.get(
+                    System.getProperty("java.io.tmpdir"));
+            }
+        }
+    }
+
+
+    void stop() {
+
+        final Set<Path> paths = new HashSet<>();
+        synchronized (this) {
+            paths.addAll(idle);
+            paths.addAll(acquired);
+            idle.clear();
+            acquired.clear();
+        }
+        paths.forEach(this::delete);
+
+        if (temporary) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (final IOException ioe) { // buffers still retained
+                logger.warn("failed to delete " + directory, ioe);
+            }
+        }
+    }
+
+
+    /**
+     * Returns a new buffer for staging a body.
+     *
+     * @return a new buffer which must be released.
+     */
+    public Buffer buffer() {
+
+        return new Buffer(this, null, 0L);
+    }
+
+
+    /**
+     * Acquires an empty file. An idle file is reused if any; a new file is
+     * created otherwise. Writers should truncate, rather than replace, the
+     * file so that it can be reused.
+     *
+     * @return an empty file which must be released.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public Path acquire() throws IOException {
+
+        synchronized (this) {
+            final Path path = idle.poll();
+            if (path != null) {
+                reused++;
+                acquired.add(path);
+                return path;
+            }
+        }
+
+        final Path path = Files.createTempFile(directory, PREFIX, null);
+        synchronized (this) {
+            created++;
+            acquired.add(path);
+        }
+
+        return path;
+    }
+
+
+    /**
+     * Releases specified file. The file is truncated and kept for reuse while
+     * the pool is not full, and deleted otherwise. Releasing a file not
+     * acquired, or released already, does nothing.
+     *
+     * @param path the file acquired.
+     */
+    public void release(final Path path) {
+
+        final boolean reusable;
+        synchronized (this) {
+            if (!acquired.remove(path)) {
+                return;
+            }
+            reusable = idle.size() < pool;
+        }
+
+        if (reusable) {
+            try {
+                FileChannel.open(path, StandardOpenOption.WRITE,
+                                 StandardOpenOption.TRUNCATE_EXISTING)
+                    .close(); // truncated
+                synchronized (this) {
+                    if (idle.size() < pool) {
+                        idle.push(path);
+                        return;
+                    }
+                }
+            } catch (final IOException ioe) {
+                logger.warn("failed to truncate " + path, ioe);
+            }
+        }
+
+        delete(path);
+    }
+
+
+    /**
+     * Returns the number of files acquired and not released yet.
+     *
+     * @return the number of files in use.
+     */
+    public synchronized int getFilesInUse() {
+
+        return acquired.size();
+    }
+
+
+    /**
+     * Returns the number of bytes written in files acquired and not released
+     * yet.
+     *
+     * @return the number of bytes in use.
+     */
+    public long getBytesInUse() {
+
+        final Set<Path> paths;
+        synchronized (this) {
+            paths = new HashSet<>(acquired);
+        }
+
+        long bytes = 0L;
+        for (final Path path : paths) {
+            try {
+                bytes += Files.size(path);
+            } catch (final IOException ioe) {
+                // released meanwhile
+            }
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Returns the number of bytes of pooled memory held by buffers not
+     * released yet.
+     *
+     * @return the number of bytes in memory.
+     */
+    public synchronized long getMemoryInUse() {
+
+        return (long) held * CHUNK_SIZE;
+    }
+
+
+    /**
+     * Returns the number of buffers spilled into files.
+     *
+     * @return the number of spills.
+     */
+    public synchronized long getSpills() {
+
+        return spills;
+    }
+
+
+    /**
+     * Returns the number of idle files kept for reuse.
+     *
+     * @return the number of idle files.
+     */
+    public synchronized int getIdle() {
+
+        return idle.size();
+    }
+
+
+    /**
+     * Returns the number of acquisitions served with idle files.
+     *
+     * @return the number of reuses.
+     */
+    public synchronized long getReused() {
+
+        return reused;
+    }
+
+
+    /**
+     * Returns the number of acquisitions which created new files.
+     *
+     * @return the number of files created.
+     */
+    public synchronized long getCreated() {
+
+        return created;
+    }
+
+
+    /**
+     * Takes a chunk from the pool.
+     *
+     * @return a chunk or {@code null} if the memory budget is exhausted.
+     */
+    private synchronized byte[] allocate() {
+
+        byte[] chunk = free.poll();
+        if (chunk == null) {
+            if ((long) (held + 1) * CHUNK_SIZE > memory) {
+                return null;
+            }
+            chunk = new byte[CHUNK_SIZE];
+        }
+        held++;
+
+        return chunk;
+    }
+
+
+    private synchronized void free(final List<byte[]> chunks) {
+
+        chunks.forEach(free::push);
+        held -= chunks.size();
+    }
+
+
+    private synchronized void spilled(final List<byte[]> chunks) {
+
+        spills++;
+        if (chunks != null) {
+            free(chunks);
+        }
+    }
+
+
+    private void delete(final Path path) {
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException ioe) {
+            logger.error("failed to delete " + path, ioe);
+        }
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private Path directory;
+
+
+    private boolean temporary;
+
+
+    private int pool = DEFAULT_POOL;
+
+
+    private final Deque<Path> idle = new ArrayDeque<>();
+
+
+    private final Set<Path> acquired = new HashSet<>();
+
+
+    private long threshold = DEFAULT_THRESHOLD;
+
+
+    private long memory = DEFAULT_MEMORY;
+
+
+    /**
+     * Chunks not held by any buffer.
+     */
+    private final Deque<byte[]> free = new ArrayDeque<>();
+
+
+    /**
+     * The number of chunks held by buffers.
+     */
+    private int held;
+
+
+    private long spills;
+
+
+    private long reused;
+
+
+    private long created;
+
+
+    @Context
+    private Configuration configuration;
+
+
+}
+
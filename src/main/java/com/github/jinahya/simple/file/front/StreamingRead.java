@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.FileBack;
+import com.github.jinahya.simple.file.back.FileBackException;
+import com.github.jinahya.simple.file.back.FileContext;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.ws.rs.core.StreamingOutput;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A read piping the source channel of a file back directly into a response.
+ * The file back is operated on a thread handed off by the
+ * {@link BackingExecutor}, which holds the source channel open until the
+ * entity has been written, so a miss is known before the response is built.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class StreamingRead {
+
+
+    /**
+     * Milliseconds the source channel is held open for the entity to start
+     * being written.
+     */
+    static final long WRITE_TIMEOUT = 60000L;
+
+
+    /**
+     * Operates specified file back, with a {@code READ} operation set on
+     * specified context, and waits for its source channel.
+     *
+     * @param fileBack the file back.
+     * @param fileContext the file context.
+     * @param backingExecutor the executor to hand the operation off to.
+     *
+     * @return a new read; {@code null} if the file back supplied no source
+     * channel.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     * @throws RejectedExecutionException if the executor is saturated.
+     */
+    static StreamingRead open(final FileBack fileBack,
+                              final FileContext fileContext,
+                              final BackingExecutor backingExecutor)
+        throws IOException, FileBackException {
+
+        final StreamingRead read = new StreamingRead();
+        fileContext.sourceChannelConsumer(read::hold);
+
+        backingExecutor.handOff(() -> {
+            try {
+                fileBack.operate(fileContext);
+            } catch (final IOException | FileBackException
+                               | RuntimeException e) {
+                if (!read.opened.completeExceptionally(e)) {
+                    read.logger.error("failed to operate file back", e);
+                }
+            }
+            read.opened.complete(null); // supplied no source channel
+        });
+
+        try {
+            read.sourceChannel = read.opened.get();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            read.release();
+            throw new InterruptedIOException();
+        } catch (final ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof FileBackException) {
+                throw (FileBackException) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+
+        return read.sourceChannel == null ? null : read;
+    }
+
+
+    private StreamingRead() {
+
+        super();
+    }
+
+
+    /**
+     * Holds specified source channel open until the entity has been written
+     * or is known never to be.
+     */
+    private void hold(final ReadableByteChannel sourceChannel) {
+
+        logger.trace("holding source channel: {}", sourceChannel);
+        opened.complete(sourceChannel);
+        try {
+            if (writing.get(WRITE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                written.get();
+            }
+        } catch (final TimeoutException te) {
+            if (writing.complete(Boolean.FALSE)) {
+                logger.warn("entity not written in time");
+                return;
+            }
+            try {
+                written.get();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException ee) {
+                // never completed exceptionally
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException ee) {
+            // never completed exceptionally
+        }
+    }
+
+
+    /**
+     * Releases the source channel for an entity never to be written, e.g. of
+     * a {@code HEAD} request.
+     */
+    void release() {
+
+        writing.complete(Boolean.FALSE);
+    }
+
+
+    /**
+     * Returns the number of bytes remaining in a seekable source channel.
+     *
+     * @return the number of bytes remaining; {@code null} if unknown.
+     */
+    Long getLength() {
+
+        if (!(sourceChannel instanceof SeekableByteChannel)) {
+            return null;
+        }
+
+        final SeekableByteChannel seekable
+            = (SeekableByteChannel) sourceChannel;
+        try {
+            return seekable.size() - seekable.position();
+        } catch (final IOException ioe) {
+            logger.warn("failed to get size of source channel", ioe);
+            return null;
+        }
+    }
+
+
+    /**
+     * Returns an entity copying the source channel.
+     *
+     * @return an entity.
+     */
+    StreamingOutput entity() {
+
+        return output -> {
+            if (!writing.complete(Boolean.TRUE)) {
+                throw new IOException("source channel already closed");
+            }
+            try {
+                final long sourceCopied
+                    = FileFrontChannels.copy(sourceChannel, output);
+                logger.trace("source copied: {}", sourceCopied);
+            } finally {
+                written.complete(null);
+            }
+        };
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final CompletableFuture<ReadableByteChannel> opened
+        = new CompletableFuture<>();
+
+
+    /**
+     * {@code true} once the entity is being written; {@code false} if it
+     * never will be.
+     */
+    private final CompletableFuture<Boolean> writing
+        = new CompletableFuture<>();
+
+
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+
+    private ReadableByteChannel sourceChannel;
+
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static java.lang.invoke.MethodHandles.lookup;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Exposes the anti-entropy tree of the current front to its siblings, under
+ * {@code _/sync} of a {@link AbstractLocatorsResource}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see AbstractLocatorsResource#syncResource()
+ */
+public class SyncResource {
+
+
+    SyncResource(final AbstractLocatorsResource resource) {
+
+        super();
+
+        this.resource = resource;
+    }
+
+
+    /**
+     * Reads hashes of the anti-entropy tree of the current front, one
+     * hexadecimal line each.
+     *
+     * @param level the tree level; {@code 0} for the root, {@code 1} for
+     * inner nodes and {@code 2} for buckets.
+     * @param node the inner node whose buckets are read at level {@code 2}.
+     *
+     * @return a response.
+     *
+     * @see AntiEntropy#tree(int, int)
+     */
+    @Produces(MediaType.TEXT_PLAIN)
+    @GET
+    @Path("tree")
+    public Response readTree(
+        @QueryParam("level") @DefaultValue("0") final int level,
+        @QueryParam("node") @DefaultValue("0") final int node) {
+
+        logger.trace("readTree({}, {})", level, node);
+
+        final AntiEntropy antiEntropy = antiEntropy();
+
+        try {
+            return Response.ok(antiEntropy.tree(level, node)).build();
+        } catch (final IllegalArgumentException iae) {
+            throw new BadRequestException(iae.getMessage());
+        }
+    }
+
+
+    /**
+     * Reads entries of a bucket of the anti-entropy tree of the current
+     * front.
+     *
+     * @param bucket the bucket.
+     *
+     * @return a response.
+     *
+     * @see AntiEntropy#bucket(int)
+     */
+    @Produces(MediaType.TEXT_PLAIN)
+    @GET
+    @Path("bucket/{bucket: [0-9]+}")
+    public Response readBucket(@PathParam("bucket") final int bucket) {
+
+        logger.trace("readBucket({})", bucket);
+
+        final AntiEntropy antiEntropy = antiEntropy();
+
+        try {
+            return Response.ok(antiEntropy.bucket(bucket)).build();
+        } catch (final IllegalArgumentException iae) {
+            throw new BadRequestException(iae.getMessage());
+        }
+    }
+
+
+    /**
+     * Returns the anti-entropy of the current front, introduced to its
+     * siblings.
+     *
+     * @throws NotFoundException if no anti-entropy is bound.
+     */
+    private AntiEntropy antiEntropy() {
+
+        final AntiEntropy antiEntropy = resource.getAntiEntropy();
+        if (antiEntropy == null) {
+            throw new NotFoundException("no anti-entropy");
+        }
+        resource.introduce();
+
+        return antiEntropy;
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final AbstractLocatorsResource resource;
+
+
+}
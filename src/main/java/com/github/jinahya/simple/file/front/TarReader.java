@@ -0,0 +1,363 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * A reader reading regular file entries of a tar stream as they arrive.
+ * Supports ustar prefixes, GNU long names and pax paths; other entry types
+ * are skipped.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class TarReader {
+
+
+    static final int BLOCK_SIZE = 512;
+
+
+    /**
+     * A regular file entry.
+     */
+    static final class Entry {
+
+
+        private Entry(final String name, final long size) {
+
+            super();
+
+            this.name = name;
+            this.size = size;
+        }
+
+
+        String getName() {
+
+            return name;
+        }
+
+
+        long getSize() {
+
+            return size;
+        }
+
+
+        private final String name;
+
+
+        private final long size;
+
+
+    }
+
+
+    TarReader(final InputStream input) {
+
+        super();
+
+        this.input = input;
+    }
+
+
+    /**
+     * Skips the rest of the current entry and reads the next regular file
+     * entry.
+     *
+     * @return the next entry or {@code null} at the end of the archive.
+     *
+     * @throws IOException if an I/O error occurs or the archive is malformed.
+     */
+    Entry next() throws IOException {
+
+        skip(remaining + padding);
+        remaining = 0L;
+        padding = 0L;
+
+        String longName = null;
+        while (true) {
+            if (!readBlock()) {
+                return null;
+            }
+            if (zeros()) {
+                return null; // end-of-archive
+            }
+            verify();
+            final long size = size();
+            final byte type = block[156];
+            final long pad = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+            if (type == 'L' || type == 'x') {
+                final byte[] data = readFully(size);
+                skip(pad);
+                if (type == 'L') {
+                    longName = cstring(data, 0, data.length);
+                } else {
+                    final String path = paxPath(data);
+                    if (path != null) {
+                        longName = path;
+                    }
+                }
+                continue;
+            }
+            if (type != '0' && type != 0 && type != '7') {
+                skip(size + pad); // directories, links, globals, ...
+                longName = null;
+                continue;
+            }
+            String name = longName;
+            if (name == null) {
+                name = cstring(block, 0, 100);
+                if (cstring(block, 257, 5).equals("ustar")) {
+                    final String prefix = cstring(block, 345, 155);
+                    if (!prefix.isEmpty()) {
+                        name = prefix + "/" + name;
+                    }
+                }
+            }
+            remaining = size;
+            padding = pad;
+            return new Entry(name, size);
+        }
+    }
+
+
+    /**
+     * Reads the content of the current entry.
+     *
+     * @param buffer the buffer.
+     * @param offset the offset in the buffer.
+     * @param length the maximum number of bytes to read.
+     *
+     * @return the number of bytes read or {@code -1} at the end of the
+     * entry.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    int read(final byte[] buffer, final int offset, final int length)
+        throws IOException {
+
+        if (remaining == 0L) {
+            return -1;
+        }
+
+        final int read = input.read(
+            buffer, offset, (int) Math.min(length, remaining));
+        if (read == -1) {
+            throw new EOFException("unexpected end of archive");
+        }
+        remaining -= read;
+
+        return read;
+    }
+
+
+    private boolean readBlock() throws IOException {
+
+        int filled = 0;
+        while (filled < BLOCK_SIZE) {
+            final int read = input.read(block, filled, BLOCK_SIZE - filled);
+            if (read == -1) {
+                if (filled == 0) {
+                    return false;
+                }
+                throw new EOFException("truncated header");
+            }
+            filled += read;
+        }
+
+        return true;
+    }
+
+
+    private byte[] readFully(final long size) throws IOException {
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("extended header too large: " + size);
+        }
+
+        final byte[] data = new byte[(int) size];
+        int filled = 0;
+        while (filled < data.length) {
+            final int read = input.read(data, filled, data.length - filled);
+            if (read == -1) {
+                throw new EOFException("truncated extended header");
+            }
+            filled += read;
+        }
+
+        return data;
+    }
+
+
+    private void skip(long count) throws IOException {
+
+        // reads, rather than skips, so that wrapping streams see every byte
+        while (count > 0L) {
+            final int read = input.read(
+                scratch, 0, (int) Math.min(scratch.length, count));
+            if (read == -1) {
+                throw new EOFException("unexpected end of archive");
+            }
+            count -= read;
+        }
+    }
+
+
+    private boolean zeros() {
+
+        for (final byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private void verify() throws IOException {
+
+        long unsigned = 0L;
+        long signed = 0L; // some old archivers
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            unsigned += i >= 148 && i < 156 ? ' ' : block[i] & 0xFF;
+            signed += i >= 148 && i < 156 ? ' ' : block[i];
+        }
+        final long checksum = octal(148, 8);
+        if (checksum != unsigned && checksum != signed) {
+            throw new IOException("invalid header checksum");
+        }
+    }
+
+
+    private long size() throws IOException {
+
+        if ((block[124] & 0x80) != 0) { // GNU base-256
+            long size = 0L;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (block[i] & 0xFF);
+            }
+            return size;
+        }
+
+        return octal(124, 12);
+    }
+
+
+    private long octal(final int offset, final int length) throws IOException {
+
+        long value = 0L;
+        for (int i = offset; i < offset + length; i++) {
+            final byte b = block[i];
+            if (b == 0 || b == ' ') {
+                if (value == 0L) {
+                    continue; // leading
+                }
+                break;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("invalid octal field at " + offset);
+            }
+            value = (value << 3) + (b - '0');
+        }
+
+        return value;
+    }
+
+
+    private static String cstring(final byte[] bytes, final int offset,
+                                  final int length) {
+
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+
+    private static String paxPath(final byte[] data) throws IOException {
+
+        String path = null;
+        int position = 0;
+        while (position < data.length) {
+            final int space = indexOf(data, position, (byte) ' ');
+            if (space == -1) {
+                break;
+            }
+            final int length;
+            try {
+                length = Integer.parseInt(new String(
+                    data, position, space - position,
+                    StandardCharsets.US_ASCII));
+            } catch (final NumberFormatException nfe) {
+                throw new IOException("invalid pax record", nfe);
+            }
+            if (length <= 0 || position + length > data.length) {
+                throw new IOException("invalid pax record length: " + length);
+            }
+            final String keyValue = new String(
+                data, space + 1, position + length - space - 2,
+                StandardCharsets.UTF_8);
+            if (keyValue.startsWith("path=")) {
+                path = keyValue.substring(5);
+            }
+            position += length;
+        }
+
+        return path;
+    }
+
+
+    private static int indexOf(final byte[] data, final int from,
+                               final byte b) {
+
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+
+    private final InputStream input;
+
+
+    private final byte[] block = new byte[BLOCK_SIZE];
+
+
+    private final byte[] scratch = new byte[8192];
+
+
+    private long remaining;
+
+
+    private long padding;
+
+
+}
+
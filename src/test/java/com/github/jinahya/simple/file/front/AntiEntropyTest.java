@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class AntiEntropyTest {
+
+
+    @Test
+    public void bucket() {
+
+        final int[] counts = new int[AntiEntropy.BUCKETS];
+        for (int i = 0; i < AntiEntropy.BUCKETS * 16; i++) {
+            counts[AntiEntropy.bucket("locator/" + i)]++;
+        }
+
+        int empty = 0;
+        for (final int count : counts) {
+            if (count == 0) {
+                empty++;
+            }
+        }
+        assertTrue(empty < AntiEntropy.BUCKETS / 100, "empty: " + empty);
+    }
+
+
+    @Test
+    public void hash() {
+
+        final byte[] digest = FileValidators.newDigest().digest(new byte[1]);
+
+        final Map<String, AntiEntropy.Record> local = new TreeMap<>();
+        local.put("a", new AntiEntropy.Record(digest, 1L));
+        local.put("b", new AntiEntropy.Record(null, 2L));
+
+        final Map<String, AntiEntropy.Record> remote = new TreeMap<>();
+        remote.put("b", new AntiEntropy.Record(null, 3L));
+        remote.put("a", new AntiEntropy.Record(digest.clone(), 4L));
+        assertEquals(AntiEntropy.hash(remote), AntiEntropy.hash(local),
+                     "modification times must not matter");
+
+        remote.put("b", new AntiEntropy.Record(digest, 3L));
+        assertFalse(Arrays.equals(
+            AntiEntropy.hash(remote), AntiEntropy.hash(local)));
+    }
+
+
+}
+
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static java.lang.invoke.MethodHandles.lookup;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.SkipException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class BackingExecutorTest {
+
+
+    private static final int OPERATIONS = 64;
+
+
+    private static final int THREADS = 4;
+
+
+    /**
+     * Milliseconds each benchmarked operation blocks.
+     */
+    private static final long BLOCKING = 50L;
+
+
+    @DataProvider
+    private static Object[][] modes() {
+
+        return new Object[][]{{false}, {true}};
+    }
+
+
+    @Test
+    public void executeRejected() throws InterruptedException {
+
+        final BackingExecutor executor = new BackingExecutor();
+        executor.start(1, 1, false);
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final Runnable blocking = () -> {
+                try {
+                    latch.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            executor.execute(blocking); // running
+            executor.execute(blocking); // queued
+            try {
+                executor.execute(blocking);
+                fail("not rejected");
+            } catch (final RejectedExecutionException ree) {
+            }
+            latch.countDown();
+        } finally {
+            executor.stop();
+        }
+    }
+
+
+    @Test
+    public void handOffRejected() throws InterruptedException {
+
+        final BackingExecutor executor = new BackingExecutor();
+        executor.start(1, 1, false);
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final CountDownLatch handed = new CountDownLatch(1);
+            executor.execute(() -> { // an operation waiting for its part
+                executor.handOff(() -> {
+                    try {
+                        latch.await();
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                handed.countDown();
+            });
+            assertTrue(handed.await(10L, TimeUnit.SECONDS)); // not queued
+            try {
+                executor.handOff(() -> {
+                });
+                fail("not rejected");
+            } catch (final RejectedExecutionException ree) {
+            }
+            latch.countDown();
+        } finally {
+            executor.stop();
+        }
+    }
+
+
+    /**
+     * Checks that platform threads run at most {@link #THREADS} blocking
+     * operations at once while virtual threads run all of them at once.
+     *
+     * @param virtual the mode.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test(dataProvider = "modes")
+    public void parallelism(final boolean virtual)
+        throws InterruptedException {
+
+        if (virtual && BackingExecutor.newVirtualExecutor() == null) {
+            throw new SkipException("no virtual threads");
+        }
+
+        final int parallelism = virtual ? OPERATIONS : THREADS;
+        final BackingExecutor executor = new BackingExecutor();
+        executor.start(THREADS, OPERATIONS, virtual);
+        try {
+            final CountDownLatch started = new CountDownLatch(parallelism);
+            final CountDownLatch finished = new CountDownLatch(OPERATIONS);
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maximum = new AtomicInteger();
+            for (int i = 0; i < OPERATIONS; i++) {
+                executor.execute(() -> {
+                    maximum.accumulateAndGet(running.incrementAndGet(),
+                                             Math::max);
+                    try {
+                        started.countDown();
+                        started.await(10L, TimeUnit.SECONDS); // blocking i/o
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                        finished.countDown();
+                    }
+                });
+            }
+            assertTrue(finished.await(1L, TimeUnit.MINUTES));
+            assertEquals(maximum.get(), parallelism);
+        } finally {
+            executor.stop();
+        }
+    }
+
+
+    /**
+     * Runs {@link #OPERATIONS} operations, each blocking for
+     * {@link #BLOCKING} milliseconds, and returns the elapsed milliseconds.
+     */
+    private static long elapsed(final boolean virtual)
+        throws InterruptedException {
+
+        final BackingExecutor executor = new BackingExecutor();
+        executor.start(THREADS, OPERATIONS, virtual);
+        try {
+            final CountDownLatch finished = new CountDownLatch(OPERATIONS);
+            final long started = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                executor.execute(() -> {
+                    try {
+                        Thread.sleep(BLOCKING); // blocking i/o
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+            }
+            assertTrue(finished.await(1L, TimeUnit.MINUTES));
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        } finally {
+            executor.stop();
+        }
+    }
+
+
+    /**
+     * Compares the time platform threads and virtual threads take to run the
+     * same blocking operations. Platform threads take about
+     * {@code OPERATIONS / THREADS} rounds while virtual threads take about
+     * one.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void benchmark() throws InterruptedException {
+
+        if (BackingExecutor.newVirtualExecutor() == null) {
+            throw new SkipException("no virtual threads");
+        }
+
+        elapsed(false); // warm up
+        elapsed(true);
+
+        final long platform = elapsed(false);
+        final long virtual = elapsed(true);
+        logger.info("{} operations blocking {} ms; platform({}): {} ms,"
+                    + " virtual: {} ms", OPERATIONS, BLOCKING, THREADS,
+                    platform, virtual);
+        assertTrue(platform >= BLOCKING * OPERATIONS / THREADS,
+                   "platform: " + platform);
+        assertTrue(virtual < platform / 2L,
+                   "platform: " + platform + ", virtual: " + virtual);
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+}
+
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class BlockDeltaTest {
+
+
+    private static byte[] random(final int length, final long seed) {
+
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+
+        return bytes;
+    }
+
+
+    private static byte[] concat(final byte[]... arrays) {
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (final byte[] array : arrays) {
+            output.write(array, 0, array.length);
+        }
+
+        return output.toByteArray();
+    }
+
+
+    @DataProvider
+    public Object[][] changes() {
+
+        final byte[] copy = random(1000000, 0L);
+        final byte[] tail = random(5000, 1L);
+        final int half = copy.length / 2;
+
+        return new Object[][]{
+            {"identical", copy, copy, 0},
+            {"appended", copy, concat(copy, tail), 5000 + 1024},
+            {"inserted", copy,
+             concat(Arrays.copyOf(copy, half), tail,
+                    Arrays.copyOfRange(copy, half, copy.length)),
+             5000 + 1024},
+            {"empty", new byte[0], tail, 5000},
+            {"short", tail, copy, copy.length}
+        };
+    }
+
+
+    @Test(dataProvider = "changes")
+    public void roundTrip(final String name, final byte[] copy,
+                          final byte[] source, final int maximumLiterals)
+        throws IOException {
+
+        final ByteArrayOutputStream signatures = new ByteArrayOutputStream();
+        BlockDelta.signatures(new ByteArrayInputStream(copy), copy.length,
+                              signatures);
+
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        final long literals = BlockDelta.delta(
+            new ByteArrayInputStream(source),
+            BlockDelta.readSignatures(
+                new ByteArrayInputStream(signatures.toByteArray())),
+            delta);
+        assertTrue(literals <= maximumLiterals, name + ": " + literals);
+
+        final Path path = Files.createTempFile("copy", null);
+        try {
+            Files.write(path, copy);
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            try (FileChannel channel
+                = FileChannel.open(path, StandardOpenOption.READ)) {
+                assertEquals(BlockDelta.apply(
+                    channel, new ByteArrayInputStream(delta.toByteArray()),
+                    result), source.length);
+            }
+            assertEquals(result.toByteArray(), source, name);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+
+    @Test(expectedExceptions = IOException.class)
+    public void applyMismatched() throws IOException {
+
+        final byte[] copy = random(100000, 2L);
+
+        final ByteArrayOutputStream signatures = new ByteArrayOutputStream();
+        BlockDelta.signatures(new ByteArrayInputStream(copy), copy.length,
+                              signatures);
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        BlockDelta.delta(new ByteArrayInputStream(copy),
+                         BlockDelta.readSignatures(new ByteArrayInputStream(
+                             signatures.toByteArray())),
+                         delta);
+
+        copy[copy.length / 2]++; // the copy changed meanwhile
+        final Path path = Files.createTempFile("copy", null);
+        try {
+            Files.write(path, copy);
+            try (FileChannel channel
+                = FileChannel.open(path, StandardOpenOption.READ)) {
+                BlockDelta.apply(
+                    channel, new ByteArrayInputStream(delta.toByteArray()),
+                    new ByteArrayOutputStream());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+
+}
+
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ByteRangesTest {
+
+
+    @Test
+    public void parse() {
+
+        List<long[]> ranges = ByteRanges.parse("bytes=0-499", 1000L);
+        assertEquals(ranges.size(), 1);
+        assertEquals(ranges.get(0), new long[]{0L, 499L});
+
+        ranges = ByteRanges.parse("bytes=500-", 1000L);
+        assertEquals(ranges.get(0), new long[]{500L, 999L});
+
+        ranges = ByteRanges.parse("bytes=-200", 1000L);
+        assertEquals(ranges.get(0), new long[]{800L, 999L});
+
+        ranges = ByteRanges.parse("bytes=900-1999", 1000L);
+        assertEquals(ranges.get(0), new long[]{900L, 999L});
+
+        ranges = ByteRanges.parse("bytes=0-0, -1", 1000L);
+        assertEquals(ranges.size(), 2);
+        assertEquals(ranges.get(1), new long[]{999L, 999L});
+    }
+
+
+    @Test
+    public void parseUnsatisfiable() {
+
+        assertTrue(ByteRanges.parse("bytes=1000-", 1000L).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=-0", 1000L).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=0-", 0L).isEmpty());
+    }
+
+
+    @Test
+    public void parseInvalid() {
+
+        assertNull(ByteRanges.parse(null, 1000L));
+        assertNull(ByteRanges.parse("items=0-1", 1000L));
+        assertNull(ByteRanges.parse("bytes=5-2", 1000L));
+        assertNull(ByteRanges.parse("bytes=a-b", 1000L));
+        assertNull(ByteRanges.parse("bytes=1", 1000L));
+    }
+
+
+    @Test
+    public void writeMultipart() throws IOException {
+
+        final byte[] data = "0123456789".getBytes("US-ASCII");
+        final List<long[]> ranges = ByteRanges.parse("bytes=0-1,8-", 10L);
+        final String boundary = ByteRanges.boundary();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteRanges.writeMultipart(
+            ranges, 10L, boundary, "text/plain",
+            (first, last, o) -> o.write(
+                data, (int) first, (int) (last - first + 1L)),
+            output);
+
+        final String body = output.toString("US-ASCII");
+        assertTrue(body.contains("Content-Range: bytes 0-1/10\r\n\r\n01"));
+        assertTrue(body.contains("Content-Range: bytes 8-9/10\r\n\r\n89"));
+        assertTrue(body.endsWith("\r\n--" + boundary + "--\r\n"));
+    }
+
+
+}
+
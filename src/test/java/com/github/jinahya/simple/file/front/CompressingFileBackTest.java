@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.DefaultFileContext;
+import com.github.jinahya.simple.file.back.FileBack;
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import com.github.jinahya.simple.file.back.FileBackException;
+import com.github.jinahya.simple.file.back.FileContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class CompressingFileBackTest {
+
+
+    /**
+     * A file back storing a single file.
+     */
+    private static class SingleFileBack implements FileBack {
+
+
+        private SingleFileBack(final Path path, final boolean seekable) {
+
+            super();
+
+            this.path = path;
+            this.seekable = seekable;
+        }
+
+
+        @Override
+        public void operate(final FileContext fileContext)
+            throws IOException, FileBackException {
+
+            switch (fileContext.fileOperationSupplier().get()) {
+                case READ:
+                    try (FileChannel channel = FileChannel.open(
+                        path, StandardOpenOption.READ)) {
+                        fileContext.sourceChannelConsumer().accept(
+                            seekable ? channel : Channels.newChannel(
+                                Channels.newInputStream(channel)));
+                        fileContext.sourceCopiedConsumer().accept(
+                            channel.size());
+                    }
+                    break;
+                case WRITE:
+                    try (FileChannel channel = FileChannel.open(
+                        path, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                        fileContext.targetChannelConsumer().accept(channel);
+                        fileContext.targetCopiedConsumer().accept(
+                            channel.size());
+                    }
+                    break;
+                default:
+                    throw new FileBackException("unsupported");
+            }
+        }
+
+
+        private final Path path;
+
+
+        private final boolean seekable;
+
+
+    }
+
+
+    private static byte[] text(final int lines) {
+
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            builder.append("{\"index\": ").append(i).append("}\n");
+        }
+
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    private static byte[] random(final int length, final long seed) {
+
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+
+        return bytes;
+    }
+
+
+    @BeforeMethod
+    public void createPath() throws IOException {
+
+        path = Files.createTempFile("compressed", null);
+    }
+
+
+    @AfterMethod
+    public void deletePath() throws IOException {
+
+        Files.delete(path);
+    }
+
+
+    private long write(final FileBack fileBack, final byte[] bytes)
+        throws IOException, FileBackException {
+
+        final Long[] copied_ = new Long[1];
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        fileContext.targetChannelConsumer(targetChannel -> {
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    targetChannel.write(buffer);
+                }
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+        fileContext.targetCopiedConsumer(copied -> copied_[0] = copied);
+        fileBack.operate(fileContext);
+
+        return copied_[0];
+    }
+
+
+    private byte[] read(final FileBack fileBack)
+        throws IOException, FileBackException {
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final Long[] copied_ = new Long[1];
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+        fileContext.sourceChannelConsumer(sourceChannel -> {
+            try {
+                FileFrontChannels.copy(sourceChannel, output);
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+        fileContext.sourceCopiedConsumer(copied -> copied_[0] = copied);
+        fileBack.operate(fileContext);
+        assertEquals(copied_[0].longValue(), output.size());
+
+        return output.toByteArray();
+    }
+
+
+    @DataProvider
+    public Object[][] contents() {
+
+        return new Object[][]{
+            {"empty", new byte[0]},
+            {"one", new byte[]{1}},
+            {"text", text(100000)},
+            {"random", random(200000, 0L)},
+            {"aligned", random(CompressingFileBack.DEFAULT_BLOCK_SIZE * 2, 1L)}
+        };
+    }
+
+
+    @Test(dataProvider = "contents")
+    public void roundTrip(final String name, final byte[] bytes)
+        throws IOException, FileBackException {
+
+        for (final boolean seekable : new boolean[]{true, false}) {
+            final FileBack fileBack = new CompressingFileBack(
+                new SingleFileBack(path, seekable));
+            assertEquals(write(fileBack, bytes), bytes.length, name);
+            assertEquals(read(fileBack), bytes, name + ", " + seekable);
+        }
+    }
+
+
+    @Test
+    public void compressed() throws IOException, FileBackException {
+
+        final byte[] bytes = text(100000);
+        write(new CompressingFileBack(new SingleFileBack(path, true)), bytes);
+
+        assertTrue(Files.size(path) * 3L < bytes.length,
+                   "size: " + Files.size(path) + "/" + bytes.length);
+    }
+
+
+    @Test
+    public void positioned() throws IOException, FileBackException {
+
+        final byte[] bytes = text(100000);
+        write(new CompressingFileBack(new SingleFileBack(path, true)), bytes);
+
+        final Random random = new Random(2L);
+        try (FileChannel channel = FileChannel.open(
+            path, StandardOpenOption.READ);
+             SeekableByteChannel view
+             = (SeekableByteChannel) CompressingFileBack.open(channel)) {
+            assertEquals(view.size(), bytes.length);
+            for (int i = 0; i < 100; i++) {
+                final int position = random.nextInt(bytes.length);
+                final ByteBuffer buffer = ByteBuffer.allocate(Math.min(
+                    100000, bytes.length - position));
+                view.position(position);
+                while (buffer.hasRemaining() && view.read(buffer) != -1) {
+                    // reading
+                }
+                assertEquals(buffer.array(), Arrays.copyOfRange(
+                    bytes, position, position + buffer.capacity()));
+            }
+        }
+    }
+
+
+    @Test
+    public void uncompressed() throws IOException, FileBackException {
+
+        final byte[] bytes = random(100000, 3L);
+        Files.write(path, bytes); // written before compressing
+
+        for (final boolean seekable : new boolean[]{true, false}) {
+            assertEquals(read(new CompressingFileBack(
+                new SingleFileBack(path, seekable))), bytes);
+        }
+    }
+
+
+    @Test
+    public void oversizedBlock() throws IOException, FileBackException {
+
+        write(new CompressingFileBack(new SingleFileBack(path, true)),
+              text(1000));
+        try (FileChannel channel = FileChannel.open(
+            path, StandardOpenOption.WRITE)) { // a hostile header
+            channel.write(ByteBuffer.allocate(Integer.BYTES)
+                .putInt(0, Integer.MAX_VALUE),
+                          CompressingFileBack.MAGIC.length);
+        }
+
+        for (final boolean seekable : new boolean[]{true, false}) {
+            try {
+                read(new CompressingFileBack(
+                    new SingleFileBack(path, seekable)));
+                fail("read: " + seekable);
+            } catch (final IOException ioe) {
+                assertEquals(ioe.getMessage(), "corrupt header");
+            }
+        }
+    }
+
+
+    private Path path;
+
+
+}
+
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ContentEncodingsTest {
+
+
+    @DataProvider
+    public Object[][] acceptEncodings() {
+
+        return new Object[][]{
+            {null, null},
+            {"", null},
+            {"identity", null},
+            {"gzip", ContentEncodings.GZIP},
+            {"x-gzip", ContentEncodings.GZIP},
+            {"deflate", ContentEncodings.DEFLATE},
+            {"gzip, deflate", ContentEncodings.GZIP},
+            {"gzip;q=0.5, deflate", ContentEncodings.DEFLATE},
+            {"GZIP;Q=0.8, br", ContentEncodings.GZIP},
+            {"*", ContentEncodings.GZIP},
+            {"*;q=0.5, gzip;q=0", ContentEncodings.DEFLATE},
+            {"gzip;q=0, deflate;q=0", null},
+            {"br, zstd", null}
+        };
+    }
+
+
+    @Test(dataProvider = "acceptEncodings")
+    public void negotiate(final String acceptEncoding, final String expected) {
+
+        assertEquals(ContentEncodings.negotiate(acceptEncoding), expected,
+                     String.valueOf(acceptEncoding));
+    }
+
+
+    @Test
+    public void roundTrip() throws IOException {
+
+        final byte[] bytes = new byte[100000];
+        new Random(0L).nextBytes(bytes);
+
+        for (final String encoding : new String[]{
+            ContentEncodings.GZIP, ContentEncodings.DEFLATE}) {
+            final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (OutputStream output
+                = ContentEncodings.encoder(encoding, encoded)) {
+                output.write(bytes);
+            }
+            final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            try (InputStream input = ContentEncodings.decoder(
+                encoding, new ByteArrayInputStream(encoded.toByteArray()))) {
+                final byte[] buffer = new byte[8192];
+                for (int r; (r = input.read(buffer)) != -1;) {
+                    decoded.write(buffer, 0, r);
+                }
+            }
+            assertEquals(decoded.toByteArray(), bytes, encoding);
+        }
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void decoderUnsupported() throws IOException {
+
+        ContentEncodings.decoder("br", new ByteArrayInputStream(new byte[0]));
+    }
+
+
+    @Test
+    public void encode() throws IOException {
+
+        final Path text = Files.createTempFile("text", null);
+        final Path random = Files.createTempFile("random", null);
+        try {
+            final StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                builder.append("{\"index\": ").append(i).append("}\n");
+            }
+            Files.write(text, builder.toString()
+                        .getBytes(StandardCharsets.US_ASCII));
+            final Path encoded
+                = ContentEncodings.encode(text, ContentEncodings.GZIP);
+            assertNotNull(encoded);
+            Files.delete(encoded);
+
+            final byte[] bytes = new byte[100000];
+            new Random(1L).nextBytes(bytes);
+            Files.write(random, bytes);
+            assertNull(ContentEncodings.encode(random, ContentEncodings.GZIP),
+                       "random bytes must not be worth encoding");
+        } finally {
+            Files.delete(text);
+            Files.delete(random);
+        }
+    }
+
+
+    @Test
+    public void worth() {
+
+        final ContentEncodings contentEncodings = new ContentEncodings();
+        assertFalse(contentEncodings.isWorth(5L));
+        assertFalse(contentEncodings.isWorth(
+            ContentEncodings.DEFAULT_MINIMUM - 1L));
+        assertTrue(contentEncodings.isWorth(ContentEncodings.DEFAULT_MINIMUM));
+    }
+
+
+    @Test
+    public void isolated() throws IOException {
+
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("{\"index\": ").append(i).append("}\n");
+        }
+        final byte[] bytes = builder.toString()
+            .getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer key = ByteBuffer.wrap(new byte[]{1});
+
+        final ContentEncodings first = new ContentEncodings();
+        first.start(null, ContentEncodings.DEFAULT_CAPACITY, 0L);
+        try {
+            first.encode(key, ContentEncodings.GZIP,
+                         output -> output.write(bytes))
+                .write(new ByteArrayOutputStream());
+
+            final ContentEncodings second = new ContentEncodings();
+            second.start(null, ContentEncodings.DEFAULT_CAPACITY, 0L);
+            second.stop();
+
+            final ContentEncodings.Variant variant
+                = first.acquire(key, ContentEncodings.GZIP);
+            assertNotNull(variant);
+            assertTrue(variant.isEncoded());
+            final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try {
+                first.write(variant, encoded); // not deleted by the second
+            } finally {
+                first.release(variant);
+            }
+            assertEquals(encoded.size(), variant.getLength());
+        } finally {
+            first.stop();
+        }
+    }
+
+
+}
+
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.FileBack;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Checksum;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTestNg.ContainerPerClassTest;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests a front ingesting request entities directly with two siblings,
+ * {@code a} and {@code b}, served by a single HTTP server which records each
+ * request as {@code <method> <path> <digest>} along with its entity.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class DirectIngestLocatorsResourceTest extends ContainerPerClassTest {
+
+
+    @BeforeMethod
+    public void reset() throws IOException {
+
+        synchronized (requests) {
+            requests.clear();
+            entities.clear();
+        }
+        fileBack.clear();
+    }
+
+
+    @AfterClass(alwaysRun = true)
+    public void stopSiblings() throws IOException {
+
+        server.stop(0);
+        executor.shutdownNow();
+        fileBack.delete();
+    }
+
+
+    private void handle(final HttpExchange exchange) throws IOException {
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream stream = exchange.getRequestBody()) {
+            final byte[] buffer = new byte[1024];
+            for (int read; (read = stream.read(buffer)) != -1;) {
+                body.write(buffer, 0, read);
+            }
+        }
+        synchronized (requests) {
+            requests.add(exchange.getRequestMethod() + " "
+                         + exchange.getRequestURI().getPath() + " "
+                         + exchange.getRequestHeaders().getFirst(
+                             FileFrontConstants.HEADER_DIGEST));
+            entities.put(exchange.getRequestURI().getPath(),
+                         body.toByteArray());
+        }
+        exchange.sendResponseHeaders(204, -1L);
+        exchange.close();
+    }
+
+
+    private Path path(final String locator) {
+
+        return fileBack.path(AbstractLocatorsResource.key(locator));
+    }
+
+
+    private Response put(final String locator, final byte[] bytes) {
+
+        return target("locators").path(locator)
+            .queryParam("consistency", "ALL").request()
+            .put(Entity.entity(bytes, MediaType.APPLICATION_OCTET_STREAM));
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void updateIngested() throws Exception {
+
+        final byte[] content = new byte[65536 * 3 + 1];
+        new Random().nextBytes(content);
+        final Checksum checksum = FileDigests.newChecksum();
+        checksum.update(content, 0, content.length);
+        final String digests = FileDigests.format(
+            checksum.getValue(), FileValidators.newDigest().digest(content));
+
+        final Response response = put("i", content);
+        assertEquals(response.getStatus(), 204);
+        assertEquals(response.getHeaderString(
+            FileFrontConstants.HEADER_DIGEST), digests);
+        assertTrue(Arrays.equals(Files.readAllBytes(path("i")), content));
+
+        // replayed to siblings from the tee with the same digests
+        synchronized (requests) {
+            assertEquals(requests.size(), 2, "requests: " + requests);
+            for (final String sibling : Arrays.asList("/a/", "/b/")) {
+                assertTrue(requests.contains(
+                    "PUT " + sibling + "locators/i " + digests),
+                           "requests: " + requests);
+                assertTrue(Arrays.equals(
+                    entities.get(sibling + "locators/i"), content));
+            }
+        }
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void updateTruncated() throws Exception {
+
+        fileBack.setWriteLimit(1024L);
+
+        final byte[] content = new byte[4096];
+        new Random().nextBytes(content);
+        assertEquals(put("t", content).getStatus(), 500);
+
+        // neither left partially written nor replayed
+        assertFalse(Files.exists(path("t")));
+        assertEquals(target("locators/t").request().get().getStatus(), 404);
+        synchronized (requests) {
+            assertTrue(requests.isEmpty(), "requests: " + requests);
+        }
+    }
+
+
+    @Override
+    protected Application configure() {
+
+        try {
+            fileBack = new DirectoryFileBack(); // before any initializer
+            server = HttpServer.create(
+                new InetSocketAddress("localhost", 0), 0);
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        final String base = "http://localhost:" + server.getAddress().getPort();
+        final List<URI> siblings = Arrays.asList(
+            URI.create(base + "/a/"), URI.create(base + "/b/"));
+
+        final ResourceConfig resourceConfig = new ResourceConfig();
+        resourceConfig.property(FileFrontProperties.DIRECT_INGEST, true);
+        resourceConfig.property(FileFrontProperties.DIGEST_SHA256, true);
+
+        resourceConfig.register(LocatorsResource.class);
+        resourceConfig.register(new AbstractBinder() {
+
+            @Override
+            protected void configure() {
+                bind(fileBack).to(FileBack.class)
+                    .qualifiedBy(new BackingLiteral());
+                bind(siblings).to(new TypeLiteral<List<URI>>() {
+                })
+                    .qualifiedBy(new SiblingsLiteral());
+            }
+
+        });
+
+        return resourceConfig;
+    }
+
+
+    private DirectoryFileBack fileBack;
+
+
+    private HttpServer server;
+
+
+    private ExecutorService executor;
+
+
+    private final List<String> requests = new ArrayList<>();
+
+
+    /**
+     * Entities by request paths; guarded by {@link #requests}.
+     */
+    private final Map<String, byte[]> entities = new HashMap<>();
+
+
+}
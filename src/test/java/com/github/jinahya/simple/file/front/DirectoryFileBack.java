@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.FileBack;
+import com.github.jinahya.simple.file.back.FileBackException;
+import com.github.jinahya.simple.file.back.FileContext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A file back storing each file in a directory under the hexadecimal form of
+ * its key. Reads and copies are counted, reads may be delayed and writes may
+ * be failed past a limit.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class DirectoryFileBack implements FileBack {
+
+
+    public DirectoryFileBack() throws IOException {
+
+        super();
+
+        directory = Files.createTempDirectory("back");
+    }
+
+
+    @Override
+    public void operate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        switch (fileContext.fileOperationSupplier().get()) {
+            case READ: {
+                final Path path = path(fileContext.sourceKeySupplier().get());
+                if (!Files.isRegularFile(path)) {
+                    return;
+                }
+                reads.incrementAndGet();
+                if (readDelay > 0L) {
+                    try {
+                        Thread.sleep(readDelay);
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (fileContext.pathNameConsumer() != null) {
+                    fileContext.pathNameConsumer().accept(path.toString());
+                }
+                try (FileChannel channel = FileChannel.open(
+                    path, StandardOpenOption.READ)) {
+                    if (fileContext.sourceChannelConsumer() != null) {
+                        fileContext.sourceChannelConsumer().accept(channel);
+                    }
+                    if (fileContext.sourceCopiedConsumer() != null) {
+                        fileContext.sourceCopiedConsumer().accept(
+                            channel.size());
+                    }
+                }
+                break;
+            }
+            case WRITE: {
+                final Path path = path(fileContext.targetKeySupplier().get());
+                try (FileChannel channel = FileChannel.open(
+                    path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                    fileContext.targetChannelConsumer().accept(
+                        writeLimit > 0L ? limited(channel, writeLimit)
+                        : channel);
+                    if (fileContext.targetCopiedConsumer() != null) {
+                        fileContext.targetCopiedConsumer().accept(
+                            channel.size());
+                    }
+                }
+                break;
+            }
+            case DELETE:
+                Files.deleteIfExists(
+                    path(fileContext.targetKeySupplier().get()));
+                break;
+            case COPY: {
+                final Path source = path(fileContext.sourceKeySupplier().get());
+                if (!Files.isRegularFile(source)) {
+                    return;
+                }
+                copies.incrementAndGet();
+                final Path target = path(fileContext.targetKeySupplier().get());
+                Files.copy(source, target,
+                           StandardCopyOption.REPLACE_EXISTING);
+                if (fileContext.sourceCopiedConsumer() != null) {
+                    fileContext.sourceCopiedConsumer().accept(
+                        Files.size(source));
+                }
+                if (fileContext.targetCopiedConsumer() != null) {
+                    fileContext.targetCopiedConsumer().accept(
+                        Files.size(target));
+                }
+                break;
+            }
+            default:
+                throw new FileBackException("unsupported");
+        }
+    }
+
+
+    /**
+     * Returns a channel failing writes past specified number of bytes.
+     */
+    private static WritableByteChannel limited(
+        final WritableByteChannel channel, final long limit) {
+
+        return new WritableByteChannel() {
+
+            @Override
+            public int write(final ByteBuffer src) throws IOException {
+                if (written + src.remaining() > limit) {
+                    throw new IOException("write limit exceeded");
+                }
+                final int w = channel.write(src);
+                written += w;
+                return w;
+            }
+
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+
+
+            private long written;
+
+        };
+    }
+
+
+    /**
+     * Returns the path of the file for specified key.
+     *
+     * @param key the key.
+     *
+     * @return the path.
+     */
+    public Path path(final ByteBuffer key) {
+
+        final ByteBuffer duplicate = key.duplicate();
+        final StringBuilder builder = new StringBuilder();
+        while (duplicate.hasRemaining()) {
+            builder.append(String.format("%02x", duplicate.get() & 0xFF));
+        }
+
+        return directory.resolve(builder.toString());
+    }
+
+
+    /**
+     * Deletes all files and resets the read count, the copy count, the read
+     * delay and the write limit.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void clear() throws IOException {
+
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(directory)) {
+            for (final Path path : stream) {
+                Files.delete(path);
+            }
+        }
+        reads.set(0);
+        copies.set(0);
+        readDelay = 0L;
+        writeLimit = 0L;
+    }
+
+
+    /**
+     * Deletes all files and the directory.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void delete() throws IOException {
+
+        clear();
+        Files.delete(directory);
+    }
+
+
+    public int getReads() {
+
+        return reads.get();
+    }
+
+
+    public int getCopies() {
+
+        return copies.get();
+    }
+
+
+    public void setReadDelay(final long readDelay) {
+
+        this.readDelay = readDelay;
+    }
+
+
+    /**
+     * Sets the number of bytes past which writes fail; {@code 0} for no
+     * limit.
+     *
+     * @param writeLimit the write limit.
+     */
+    public void setWriteLimit(final long writeLimit) {
+
+        this.writeLimit = writeLimit;
+    }
+
+
+    private final Path directory;
+
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+
+    private final AtomicInteger copies = new AtomicInteger();
+
+
+    private volatile long readDelay;
+
+
+    private volatile long writeLimit;
+
+
+}
+
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Checksum;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class FileDigestsTest {
+
+
+    @Test
+    public void crc32c() {
+
+        final byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+        final Checksum checksum = new FileDigests.Crc32c();
+        checksum.update(check, 0, check.length);
+        assertEquals(checksum.getValue(), 0xE3069283L);
+
+        checksum.reset();
+        for (final byte b : check) {
+            checksum.update(b);
+        }
+        assertEquals(checksum.getValue(), 0xE3069283L);
+    }
+
+
+    @Test
+    public void crc32cAgainstRuntime() {
+
+        final Random random = new Random(0L);
+        for (int i = 0; i < 100; i++) {
+            final byte[] bytes = new byte[random.nextInt(1000)];
+            random.nextBytes(bytes);
+            final int offset = bytes.length == 0
+                               ? 0 : random.nextInt(bytes.length);
+            final Checksum expected = FileDigests.newChecksum();
+            final Checksum actual = new FileDigests.Crc32c();
+            expected.update(bytes, offset, bytes.length - offset);
+            actual.update(bytes, offset, bytes.length - offset);
+            assertEquals(actual.getValue(), expected.getValue());
+        }
+    }
+
+
+    @Test
+    public void formatAndParse() {
+
+        final byte[] digest = FileValidators.newDigest().digest(new byte[1]);
+        final String value = FileDigests.format(0xE3069283L, digest);
+        assertTrue(value.startsWith("crc32c=4waSgw=="), value);
+
+        final Map<String, byte[]> parsed
+            = FileDigests.parse(value + ", MD5=HUXZLQLMuI/KZ5KDcJPcOA==");
+        assertEquals(parsed.size(), 2);
+        assertNull(FileDigests.mismatched(parsed, 0xE3069283L, digest));
+        assertNull(FileDigests.mismatched(parsed, 0xE3069283L, null));
+        assertEquals(FileDigests.mismatched(parsed, 0L, digest),
+                     FileDigests.CRC32C);
+        assertEquals(FileDigests.mismatched(parsed, 0xE3069283L, new byte[32]),
+                     FileDigests.SHA_256);
+
+        assertTrue(FileDigests.parse(null).isEmpty());
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void parseMalformed() {
+
+        FileDigests.parse("crc32c=AAAA");
+    }
+
+
+}
+
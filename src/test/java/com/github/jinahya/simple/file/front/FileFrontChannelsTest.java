@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class FileFrontChannelsTest {
+
+
+    @Test(timeOut = 10000L)
+    public void truncated() throws IOException {
+
+        final Path path = Files.createTempFile("truncated", null);
+        try {
+            Files.write(path, new byte[1048576]);
+            try (FileChannel source = FileChannel.open(
+                path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final long[] written = new long[1];
+                final WritableByteChannel target = new WritableByteChannel() {
+
+                    @Override
+                    public int write(final ByteBuffer src) throws IOException {
+                        if (written[0] == 0L) {
+                            source.truncate(16L); // by a concurrent writer
+                        }
+                        final int remaining = src.remaining();
+                        src.position(src.limit());
+                        written[0] += remaining;
+                        return remaining;
+                    }
+
+
+                    @Override
+                    public boolean isOpen() {
+                        return true;
+                    }
+
+
+                    @Override
+                    public void close() {
+                    }
+
+                };
+                final long copied = FileFrontChannels.copy(source, target);
+                assertTrue(copied < 1048576L, "copied: " + copied);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+
+}
+
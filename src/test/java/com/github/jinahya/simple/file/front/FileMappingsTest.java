@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class FileMappingsTest {
+
+
+    private static ByteBuffer key(final String locator) {
+
+        return ByteBuffer.wrap(locator.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    @Test
+    public void snapshot() throws IOException {
+
+        final byte[] bytes = new byte[(int) FileMappings.DEFAULT_MINIMUM];
+        new Random().nextBytes(bytes);
+        final Path path = Files.createTempFile("mapped", null);
+        try {
+            Files.write(path, bytes);
+            final FileMappings fileMappings = new FileMappings();
+            final FileMappings.Mapping mapping;
+            try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                mapping = fileMappings.map(
+                    key("a"), channel, fileMappings.generation());
+                assertNotNull(mapping);
+                assertEquals(channel.position(), 0L);
+                channel.write(ByteBuffer.allocate(1024), 0L); // in place
+                channel.truncate(1024L);
+            }
+            assertEquals(mapping.getSize(), bytes.length);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            fileMappings.write(mapping, output);
+            assertEquals(output.toByteArray(), bytes);
+            assertTrue(fileMappings.isCurrent(mapping));
+
+            fileMappings.invalidate(key("a"));
+            assertFalse(fileMappings.isCurrent(mapping));
+            fileMappings.release(mapping);
+            assertEquals(fileMappings.getMapped(), 0L);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+
+    @Test
+    public void invalidated() throws IOException {
+
+        final Path path = Files.createTempFile("mapped", null);
+        try {
+            Files.write(path, new byte[(int) FileMappings.DEFAULT_MINIMUM]);
+            final FileMappings fileMappings = new FileMappings();
+            final long generation = fileMappings.generation();
+            fileMappings.invalidate(key("a")); // written while opened
+            try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.READ)) {
+                assertNull(fileMappings.map(key("a"), channel, generation));
+            }
+            assertNull(fileMappings.acquire(key("a")));
+            assertEquals(fileMappings.getMapped(), 0L);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+
+}
+
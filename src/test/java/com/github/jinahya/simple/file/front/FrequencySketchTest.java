@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class FrequencySketchTest {
+
+
+    @Test
+    public void increment() {
+
+        final FrequencySketch sketch = new FrequencySketch(1024);
+        assertEquals(sketch.frequency(1), 0);
+
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(1);
+        }
+        assertTrue(sketch.frequency(1) >= 5);
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(2);
+        }
+        assertEquals(sketch.frequency(2), FrequencySketch.MAXIMUM_FREQUENCY);
+    }
+
+
+    @Test
+    public void reset() {
+
+        final FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(1);
+        }
+        assertEquals(sketch.frequency(1), FrequencySketch.MAXIMUM_FREQUENCY);
+
+        for (int i = 0; i < 1000; i++) { // ages every counter
+            sketch.increment(i + 2);
+        }
+        assertTrue(sketch.frequency(1) < FrequencySketch.MAXIMUM_FREQUENCY);
+    }
+
+
+}
+
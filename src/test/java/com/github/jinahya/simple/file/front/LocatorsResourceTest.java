@@ -18,16 +18,50 @@
 package com.github.jinahya.simple.file.front;
 
 
+import com.github.jinahya.simple.file.back.FileBack;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import static java.lang.invoke.MethodHandles.lookup;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Checksum;
+import java.util.zip.GZIPInputStream;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
+import javax.inject.Singleton;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Application;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.StatusType;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTestNg.ContainerPerClassTest;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
 
 
 /**
@@ -41,7 +75,93 @@ public class LocatorsResourceTest extends ContainerPerClassTest {
         = getLogger(lookup().lookupClass().getName());
 
 
-    //@Test
+    /**
+     * The maximum size of files cached; larger ones are mapped.
+     */
+    private static final long MAXIMUM_CACHED = 65536L;
+
+
+    /**
+     * The maximum number of locators in a batch request.
+     */
+    private static final int BATCH_MAXIMUM = 4;
+
+
+    private static final String SECRET = "secret";
+
+
+    private static String hex(final byte[] bytes) {
+
+        final StringBuilder builder = new StringBuilder();
+        for (final byte b : bytes) {
+            builder.append(String.format("%02x", b & 0xFF));
+        }
+
+        return builder.toString();
+    }
+
+
+    @BeforeMethod
+    public void clear() throws IOException {
+
+        fileBack.clear();
+    }
+
+
+    @AfterClass(alwaysRun = true)
+    public void delete() throws IOException {
+
+        fileBack.delete();
+    }
+
+
+    private Response put(final String locator, final byte[] bytes) {
+
+        return target().path("locators").path(locator).request()
+            .put(Entity.entity(bytes, MediaType.APPLICATION_OCTET_STREAM));
+    }
+
+
+    private Response put(final String locator, final String content) {
+
+        return put(locator, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    private Path path(final String locator) {
+
+        return fileBack.path(AbstractLocatorsResource.key(locator));
+    }
+
+
+    /**
+     * Reads the content of specified locator directly from the back.
+     */
+    private String stored(final String locator) throws IOException {
+
+        return new String(Files.readAllBytes(path(locator)),
+                          StandardCharsets.UTF_8);
+    }
+
+
+    private Response reference(final String locator, final String content,
+                               final boolean signed) throws Exception {
+
+        final WebTarget target = target("locators/_/reference").path(locator)
+            .queryParam("digest", hex(MessageDigest.getInstance("SHA-256")
+                .digest(content.getBytes(StandardCharsets.UTF_8))));
+        final Invocation.Builder builder = target.request();
+        if (signed) {
+            builder.header(FileFrontConstants.HEADER_FORWARDED,
+                           new SiblingSigner(SECRET).sign(
+                               "POST", target.getUri().getRawPath()));
+        }
+
+        return builder.post(null);
+    }
+
+
+    @Test
     public void updateSingle() {
 
         //logger.log(Level.FINE, "target.uri: {0}", target().getUri().toString());
@@ -52,6 +172,499 @@ public class LocatorsResourceTest extends ContainerPerClassTest {
             .put(Entity.entity(new byte[0], MediaType.APPLICATION_OCTET_STREAM));
         final StatusType statusInfo = response.getStatusInfo();
         //logger.log(Level.FINE, "statusInfo: {}", statusInfo);
+        assertEquals(statusInfo.getStatusCode(), 204);
+    }
+
+
+    @Test
+    public void updateDigested() throws IOException {
+
+        put("v", "original").close();
+
+        final byte[] changed = "changed".getBytes(StandardCharsets.UTF_8);
+        final Checksum checksum = FileDigests.newChecksum();
+        checksum.update(changed, 0, changed.length);
+        final String digests = FileDigests.format(
+            checksum.getValue(), FileValidators.newDigest().digest(changed));
+
+        // rejected before the target is written
+        for (final String claimed : Arrays.asList(
+            FileDigests.format(checksum.getValue() ^ 1L, null),
+            FileDigests.format(checksum.getValue(),
+                               FileValidators.newDigest().digest(
+                                   "other".getBytes(StandardCharsets.UTF_8))),
+            "sha-256=!")) {
+            final Response rejected = target("locators/v").request()
+                .header(FileFrontConstants.HEADER_DIGEST, claimed)
+                .put(Entity.entity(changed,
+                                   MediaType.APPLICATION_OCTET_STREAM));
+            assertEquals(rejected.getStatus(), 400, claimed);
+            rejected.close();
+            assertEquals(stored("v"), "original", claimed);
+        }
+
+        final Response accepted = target("locators/v").request()
+            .header(FileFrontConstants.HEADER_DIGEST, digests)
+            .put(Entity.entity(changed, MediaType.APPLICATION_OCTET_STREAM));
+        assertEquals(accepted.getStatus(), 204);
+        assertEquals(accepted.getHeaderString(
+            FileFrontConstants.HEADER_DIGEST), digests);
+        assertEquals(stored("v"), "changed");
+    }
+
+
+    @Test
+    public void readSingle() {
+
+        assertEquals(put("a/b", "hello").getStatus(), 204);
+
+        final Response found = target("locators/a/b").request().get();
+        assertEquals(found.getStatus(), 200);
+        assertEquals(found.readEntity(String.class), "hello");
+
+        assertEquals(target("locators/a/b").request().delete().getStatus(),
+                     204);
+        assertEquals(target("locators/a/b").request().get().getStatus(), 404);
+    }
+
+
+    @Test
+    public void readConditional() throws Exception {
+
+        put("e", "0123456789").close();
+
+        final Response full = target("locators/e").request().get();
+        assertEquals(full.getStatus(), 200);
+        assertEquals(full.readEntity(String.class), "0123456789");
+        final EntityTag entityTag = full.getEntityTag();
+        assertEquals(entityTag.getValue(), hex(
+                     MessageDigest.getInstance(FileValidators.DIGEST_ALGORITHM)
+                     .digest("0123456789".getBytes(StandardCharsets.UTF_8))));
+        assertFalse(entityTag.isWeak());
+        final String lastModified
+            = full.getHeaderString(HttpHeaders.LAST_MODIFIED);
+
+        final int reads = fileBack.getReads();
+        assertEquals(target("locators/e").request()
+                     .header(HttpHeaders.IF_NONE_MATCH, entityTag).get()
+                     .getStatus(), 304);
+        assertEquals(target("locators/e").request()
+                     .header(HttpHeaders.IF_MODIFIED_SINCE, lastModified).get()
+                     .getStatus(), 304);
+        assertEquals(fileBack.getReads(), reads); // back not touched
+        assertEquals(target("locators/e").request()
+                     .header(HttpHeaders.IF_NONE_MATCH, "\"other\"").get()
+                     .getStatus(), 200);
+
+        put("e", "changed").close();
+        final Response updated = target("locators/e").request()
+            .header(HttpHeaders.IF_NONE_MATCH, entityTag).get();
+        assertEquals(updated.getStatus(), 200);
+        assertEquals(updated.readEntity(String.class), "changed");
+
+        target("locators/e").request().delete().close();
+        assertEquals(target("locators/e").request()
+                     .header(HttpHeaders.IF_NONE_MATCH, entityTag).get()
+                     .getStatus(), 404);
+    }
+
+
+    @Test
+    public void readRanges() {
+
+        put("g", "0123456789").close();
+
+        final Response single = target("locators/g").request()
+            .header("Range", "bytes=2-4").get();
+        assertEquals(single.getStatus(), 206);
+        assertEquals(single.getHeaderString("Content-Range"), "bytes 2-4/10");
+        assertEquals(single.readEntity(String.class), "234");
+
+        final Response unsatisfiable = target("locators/g").request()
+            .header("Range", "bytes=10-20").get();
+        assertEquals(unsatisfiable.getStatus(), 416);
+        assertEquals(unsatisfiable.getHeaderString("Content-Range"),
+                     "bytes */10");
+        unsatisfiable.close();
+
+        final Response multiple = target("locators/g").request()
+            .header("Range", "bytes=0-1,-2").get();
+        assertEquals(multiple.getStatus(), 206);
+        assertEquals(multiple.getMediaType().getType(), "multipart");
+        assertEquals(multiple.getMediaType().getSubtype(), "byteranges");
+        final String boundary
+            = multiple.getMediaType().getParameters().get("boundary");
+        assertEquals(multiple.readEntity(String.class),
+                     "\r\n--" + boundary + "\r\n"
+                     + "Content-Type: application/octet-stream\r\n"
+                     + "Content-Range: bytes 0-1/10\r\n\r\n01"
+                     + "\r\n--" + boundary + "\r\n"
+                     + "Content-Type: application/octet-stream\r\n"
+                     + "Content-Range: bytes 8-9/10\r\n\r\n89"
+                     + "\r\n--" + boundary + "--\r\n");
+
+        final Response full = target("locators/g").request().get();
+        final String entityTag = full.getHeaderString(HttpHeaders.ETAG);
+        full.close();
+        final Response matched = target("locators/g").request()
+            .header("Range", "bytes=2-4").header("If-Range", entityTag).get();
+        assertEquals(matched.getStatus(), 206);
+        assertEquals(matched.readEntity(String.class), "234");
+        final Response mismatched = target("locators/g").request()
+            .header("Range", "bytes=2-4").header("If-Range", "\"other\"")
+            .get();
+        assertEquals(mismatched.getStatus(), 200);
+        assertEquals(mismatched.getHeaderString("Content-Range"), null);
+        assertEquals(mismatched.readEntity(String.class), "0123456789");
+    }
+
+
+    @Test
+    public void readEncoded() throws IOException {
+
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < 8192) {
+            builder.append("compressible\n");
+        }
+        final String content = builder.toString();
+        put("z", content).close();
+
+        final Response encoded = target("locators/z").request()
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertEquals(encoded.getStatus(), 200);
+        assertEquals(encoded.getHeaderString(HttpHeaders.CONTENT_ENCODING),
+                     "gzip");
+        assertEquals(encoded.getHeaderString(HttpHeaders.VARY),
+                     HttpHeaders.ACCEPT_ENCODING);
+        assertTrue(encoded.getEntityTag().isWeak());
+        final byte[] bytes = encoded.readEntity(byte[].class);
+        assertTrue(bytes.length < content.length(), "length: " + bytes.length);
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (InputStream input = new GZIPInputStream(
+            new ByteArrayInputStream(bytes))) {
+            final byte[] buffer = new byte[1024];
+            for (int read; (read = input.read(buffer)) != -1;) {
+                decoded.write(buffer, 0, read);
+            }
+        }
+        assertEquals(new String(decoded.toByteArray(), StandardCharsets.UTF_8),
+                     content);
+
+        final Response identity = target("locators/z").request().get();
+        assertEquals(identity.getStatus(), 200);
+        assertEquals(identity.getHeaderString(HttpHeaders.CONTENT_ENCODING),
+                     null);
+        assertEquals(identity.getHeaderString(HttpHeaders.VARY),
+                     HttpHeaders.ACCEPT_ENCODING);
+        assertEquals(identity.readEntity(String.class), content);
+    }
+
+
+    @Test
+    public void readCached() {
+
+        put("c", "cached").close();
+        final int reads = fileBack.getReads();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(target("locators/c").request().get()
+                         .readEntity(String.class), "cached");
+        }
+        assertEquals(fileBack.getReads(), reads + 1);
+
+        put("c", "updated").close();
+        assertEquals(target("locators/c").request().get()
+                     .readEntity(String.class), "updated");
+        assertEquals(target("locators/c").request().get()
+                     .readEntity(String.class), "updated");
+        assertEquals(fileBack.getReads(), reads + 2);
+
+        target("locators/c").request().delete().close();
+        assertEquals(target("locators/c").request().get().getStatus(), 404);
+    }
+
+
+    @Test
+    public void readMapped() {
+
+        final byte[] bytes = new byte[(int) MAXIMUM_CACHED * 2];
+        new Random().nextBytes(bytes);
+        put("m", bytes).close();
+        final int reads = fileBack.getReads();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(target("locators/m").request().get()
+                         .readEntity(byte[].class), bytes);
+        }
+        assertEquals(fileBack.getReads(), reads + 1);
+
+        new Random().nextBytes(bytes);
+        put("m", bytes).close();
+        assertEquals(target("locators/m").request().get()
+                     .readEntity(byte[].class), bytes);
+        assertEquals(target("locators/m").request().get()
+                     .readEntity(byte[].class), bytes);
+        assertEquals(fileBack.getReads(), reads + 2);
+
+        target("locators/m").request().delete().close();
+        assertEquals(target("locators/m").request().get().getStatus(), 404);
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void readCoalesced() throws Exception {
+
+        put("hot", "hot").close();
+        final int reads = fileBack.getReads();
+        fileBack.setReadDelay(1000L);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(
+                    () -> target("locators/hot").request().get()
+                    .readEntity(String.class)));
+            }
+            for (final Future<String> future : futures) {
+                assertEquals(future.get(), "hot");
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(fileBack.getReads(), reads + 1);
+
+        assertEquals(target("locators/cold").request().get().getStatus(),
+                     404);
+    }
+
+
+    @Test
+    public void readMultiple() {
+
+        for (int i = 0; i < 3; i++) {
+            put("r" + i, "body-" + i).close();
+        }
+
+        final Response response = target("locators/_/batch/read").request()
+            .post(Entity.entity("r0\nr1\n\nmissing\nr2\n",
+                                MediaType.TEXT_PLAIN));
+        assertEquals(response.getStatus(), 200);
+        assertTrue(response.getMediaType().toString()
+            .startsWith("multipart/mixed"));
+        final String entity = response.readEntity(String.class);
+        int index = 0;
+        for (final String part : new String[]{
+            "r0\r\n" + FileFrontConstants.HEADER_STATUS + ": 200", "body-0",
+            "r1\r\n" + FileFrontConstants.HEADER_STATUS + ": 200", "body-1",
+            "missing\r\n" + FileFrontConstants.HEADER_STATUS + ": 404",
+            "r2\r\n" + FileFrontConstants.HEADER_STATUS + ": 200", "body-2"}) {
+            index = entity.indexOf(part, index);
+            assertTrue(index != -1, part + " in " + entity);
+        }
+
+        assertEquals(target("locators/_/batch/read").request()
+                     .post(Entity.entity("", MediaType.TEXT_PLAIN))
+                     .getStatus(), 200); // no parts
+        assertEquals(target("locators/r1").request().get()
+                     .readEntity(String.class), "body-1");
+    }
+
+
+    @Test
+    public void deleteMultiple() {
+
+        for (int i = 0; i < 3; i++) {
+            put("d" + i, "body-" + i).close();
+            target("locators/d" + i).request().get().close(); // cached
+        }
+
+        final Response response = target("locators/_/batch/delete")
+            .request()
+            .post(Entity.entity("d0\nd1\nd2\nnone\n", MediaType.TEXT_PLAIN));
+        assertEquals(response.getStatus(), 200);
+        assertEquals(response.readEntity(String.class),
+                     "204 d0\n204 d1\n204 d2\n204 none\n");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(target("locators/d" + i).request().get().getStatus(),
+                         404);
+        }
+    }
+
+
+    @Test
+    public void writeMultiple() throws IOException {
+
+        final byte[] large = new byte[(int) MAXIMUM_CACHED * 2];
+        new Random().nextBytes(large);
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        TarReaderTest.entry(archive, "t/", '5', new byte[0]);
+        TarReaderTest.entry(archive, "t/a", '0',
+                            "alpha".getBytes(StandardCharsets.UTF_8));
+        TarReaderTest.entry(archive, "_/r", '0',
+                            "reserved".getBytes(StandardCharsets.UTF_8));
+        TarReaderTest.entry(archive, "t/large", '0', large);
+        archive.write(new byte[TarReader.BLOCK_SIZE * 2]);
+
+        final Response response = target("locators/_/batch/write").request()
+            .post(Entity.entity(archive.toByteArray(), "application/x-tar"));
+        assertEquals(response.getStatus(), 200);
+        final String[] lines
+            = response.readEntity(String.class).split("\n");
+        assertEquals(lines.length, 4, Arrays.toString(lines));
+        assertEquals(lines[0], "204 t/a 5");
+        assertEquals(lines[1], "400 _/r 8");
+        assertEquals(lines[2], "204 t/large " + large.length);
+
+        assertEquals(target("locators/t/a").request().get()
+                     .readEntity(String.class), "alpha");
+        assertEquals(target("locators/t/large").request().get()
+                     .readEntity(byte[].class), large);
+        assertEquals(target("locators/_/r").request().get().getStatus(), 404);
+
+        assertEquals(target("locators/_/batch/write").request()
+                     .post(Entity.entity(new byte[]{1, 2, 3},
+                                         "application/x-tar"))
+                     .getStatus(), 400);
+    }
+
+
+    @Test
+    public void writeMultipleTruncated() throws IOException {
+
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        TarReaderTest.entry(archive, "u/ok", '0',
+                            "ok".getBytes(StandardCharsets.UTF_8));
+        final ByteArrayOutputStream cut = new ByteArrayOutputStream();
+        TarReaderTest.entry(cut, "u/cut", '0',
+                            "0123456789".getBytes(StandardCharsets.UTF_8));
+        archive.write(cut.toByteArray(), 0, TarReader.BLOCK_SIZE + 3);
+
+        final Response response = target("locators/_/batch/write").request()
+            .post(Entity.entity(archive.toByteArray(), "application/x-tar"));
+        assertEquals(response.getStatus(), 200);
+        final String[] lines
+            = response.readEntity(String.class).split("\n");
+        assertEquals(lines.length, 3, Arrays.toString(lines));
+        assertEquals(lines[0], "204 u/ok 2");
+        assertEquals(lines[1], "400 u/cut 10");
+        assertTrue(lines[2].contains("failures: 1"), lines[2]);
+
+        assertEquals(target("locators/u/ok").request().get()
+                     .readEntity(String.class), "ok");
+        assertEquals(target("locators/u/cut").request().get().getStatus(),
+                     404);
+    }
+
+
+    @Test
+    public void writeMultipleLimited() throws IOException {
+
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        for (int i = 0; i <= BATCH_MAXIMUM; i++) {
+            TarReaderTest.entry(archive, "l/" + i, '0',
+                                "l".getBytes(StandardCharsets.UTF_8));
+        }
+        archive.write(new byte[TarReader.BLOCK_SIZE * 2]);
+
+        final Response response = target("locators/_/batch/write").request()
+            .post(Entity.entity(archive.toByteArray(), "application/x-tar"));
+        assertEquals(response.getStatus(), 200);
+        final String[] lines
+            = response.readEntity(String.class).split("\n");
+        assertEquals(lines.length, BATCH_MAXIMUM + 2, Arrays.toString(lines));
+        for (int i = 0; i < BATCH_MAXIMUM; i++) {
+            assertEquals(lines[i], "204 l/" + i + " 1");
+        }
+        assertEquals(lines[BATCH_MAXIMUM], "400 l/" + BATCH_MAXIMUM + " 1");
+
+        assertEquals(target("locators/l/0").request().get().getStatus(), 200);
+        assertEquals(target("locators/l/" + BATCH_MAXIMUM).request().get()
+                     .getStatus(), 404);
+    }
+
+
+    @Test
+    public void updateReferenced() throws IOException {
+
+        assertEquals(put("r/holder", "shared").getStatus(), 204);
+        assertEquals(put("r/hit", "shared").getStatus(), 204);
+        assertEquals(fileBack.getCopies(), 1);
+        assertEquals(stored("r/hit"), "shared");
+
+        assertEquals(put("r/miss", "unshared").getStatus(), 204);
+        assertEquals(fileBack.getCopies(), 1);
+        assertEquals(stored("r/miss"), "unshared");
+    }
+
+
+    @Test
+    public void updateReferencedChanged() throws IOException {
+
+        assertEquals(put("o/holder", "original").getStatus(), 204);
+        Files.write(path("o/holder"), // behind the content index
+                    "overwritten".getBytes(StandardCharsets.UTF_8));
+        assertEquals(put("o/target", "original").getStatus(), 204);
+        assertEquals(fileBack.getCopies(), 1); // copied and found changed
+        assertEquals(stored("o/target"), "original");
+
+        Files.delete(path("o/target")); // the holder now
+        assertEquals(put("o/missing", "original").getStatus(), 204);
+        assertEquals(fileBack.getCopies(), 1);
+        assertEquals(stored("o/missing"), "original");
+    }
+
+
+    @Test
+    public void referenceSingle() throws Exception {
+
+        assertEquals(put("s/holder", "referenced").getStatus(), 204);
+
+        assertEquals(reference("s/target", "referenced", false).getStatus(),
+                     403);
+        assertFalse(Files.exists(path("s/target")));
+
+        assertEquals(reference("s/target", "referenced", true).getStatus(),
+                     204);
+        assertEquals(stored("s/target"), "referenced");
+
+        assertEquals(reference("s/unknown", "unknown", true).getStatus(),
+                     404);
+        assertFalse(Files.exists(path("s/unknown")));
+    }
+
+
+    @Test
+    public void updateDelta() throws IOException {
+
+        final Random random = new Random();
+        final byte[] original = new byte[65536 * 4];
+        random.nextBytes(original);
+        put("d", original).close();
+
+        final byte[] updated = Arrays.copyOf(original, original.length + 100);
+        updated[100000] ^= 1; // one byte changed and some appended
+
+        final Response signatures = target("locators/_/signatures/d")
+            .request().get();
+        assertEquals(signatures.getStatus(), 200);
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        final long literal = BlockDelta.delta(
+            new ByteArrayInputStream(updated),
+            BlockDelta.readSignatures(signatures.readEntity(InputStream.class)),
+            delta);
+        assertTrue(literal < updated.length / 2, "literal: " + literal);
+
+        final Entity<byte[]> entity = Entity.entity(
+            delta.toByteArray(), "application/x-simple-file-delta");
+        assertEquals(target("locators/_/delta/d").request().post(entity)
+                     .getStatus(), 204);
+        assertTrue(Arrays.equals(Files.readAllBytes(path("d")), updated));
+
+        // applied to another content, the result mismatches the digest
+        final byte[] other = new byte[original.length];
+        random.nextBytes(other);
+        put("d", other).close();
+        assertEquals(target("locators/_/delta/d").request().post(entity)
+                     .getStatus(), 409);
+        assertTrue(Arrays.equals(Files.readAllBytes(path("d")), other));
     }
 
 
@@ -61,13 +674,44 @@ public class LocatorsResourceTest extends ContainerPerClassTest {
         //logger.log(Level.FINE, "configure()");
         System.out.println("configure()");
 
+        try {
+            fileBack = new DirectoryFileBack(); // before any initializer
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
         final ResourceConfig resourceConfig = new ResourceConfig();
 
         resourceConfig.register(LocatorsResource.class);
+        resourceConfig.property(FileFrontProperties.CACHE_MAXIMUM_ENTRY,
+                                MAXIMUM_CACHED);
+        resourceConfig.property(FileFrontProperties.MAPPING_MINIMUM,
+                                MAXIMUM_CACHED + 1L);
+        resourceConfig.property(FileFrontProperties.BATCH_MAXIMUM,
+                                BATCH_MAXIMUM);
+        resourceConfig.property(FileFrontProperties.SIBLING_SECRET, SECRET);
         //resourceConfig.register(BackingBinder.class);
         //resourceConfig.register(SiblingsBinder.class);
-        resourceConfig.register(new BackingBinder());
-        resourceConfig.register(new SiblingsBinder());
+        resourceConfig.register(new AbstractBinder() {
+
+            @Override
+            protected void configure() {
+                bind(fileBack).to(FileBack.class)
+                    .qualifiedBy(new BackingLiteral());
+                bind(Collections.<URI>emptyList())
+                    .to(new TypeLiteral<List<URI>>() {
+                    })
+                    .qualifiedBy(new SiblingsLiteral());
+                bindAsContract(FileValidators.class).in(Singleton.class);
+                bindAsContract(FileCache.class).in(Singleton.class);
+                bindAsContract(FileMappings.class).in(Singleton.class);
+                bindAsContract(ReadCoalescer.class).in(Singleton.class);
+                bindAsContract(BackingExecutor.class).in(Singleton.class);
+                bindAsContract(ContentIndex.class).in(Singleton.class);
+                bindAsContract(ContentEncodings.class).in(Singleton.class);
+            }
+
+        });
 
         resourceConfig.getClasses().forEach(component -> {
             System.out.println("component: " + component);
@@ -77,5 +721,8 @@ public class LocatorsResourceTest extends ContainerPerClassTest {
     }
 
 
+    private DirectoryFileBack fileBack;
+
+
 }
 
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.FileBack;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.inject.Singleton;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTestNg.ContainerPerClassTest;
+import org.glassfish.jersey.test.TestProperties;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests a partitioned front with two siblings, {@code a} and {@code b},
+ * served by a single HTTP server which records each request as
+ * {@code <method> <path> <entity>}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class PartitionedLocatorsResourceTest extends ContainerPerClassTest {
+
+
+    private static final String SECRET = "secret";
+
+
+    @AfterClass(alwaysRun = true)
+    public void stopSiblings() throws IOException {
+
+        server.stop(0);
+        executor.shutdownNow();
+        fileBack.delete();
+    }
+
+
+    private void handle(final HttpExchange exchange) throws IOException {
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream stream = exchange.getRequestBody()) {
+            final byte[] buffer = new byte[1024];
+            for (int read; (read = stream.read(buffer)) != -1;) {
+                body.write(buffer, 0, read);
+            }
+        }
+        synchronized (requests) {
+            requests.add(exchange.getRequestMethod() + " "
+                         + exchange.getRequestURI().getPath() + " "
+                         + new String(body.toByteArray(),
+                                      StandardCharsets.UTF_8));
+        }
+        exchange.sendResponseHeaders(204, -1L);
+        exchange.close();
+    }
+
+
+    private List<URI> owners(final String locator) {
+
+        return Partitioner.owners(AbstractLocatorsResource.key(locator),
+                                  fileFronts, Partitioner.DEFAULT_REPLICAS);
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void deleteMultiple() throws Exception {
+
+        final URI self = getBaseUri();
+        final List<String> owned = new ArrayList<>();
+        final List<String> others = new ArrayList<>();
+        for (int i = 0; owned.size() < 2 || others.size() < 2; i++) {
+            final String locator = "p" + i;
+            (owners(locator).contains(self) ? owned : others).add(locator);
+        }
+        for (final String locator : owned) {
+            Files.write(fileBack.path(AbstractLocatorsResource.key(locator)),
+                        locator.getBytes(StandardCharsets.UTF_8));
+        }
+
+        final List<String> locators = new ArrayList<>(owned);
+        locators.addAll(others);
+        final StringBuilder entity = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (final String locator : locators) {
+            entity.append(locator).append('\n');
+            expected.append("204 ").append(locator).append('\n');
+        }
+        final Response response = target("locators/_/batch/delete").request()
+            .post(Entity.entity(entity.toString(), MediaType.TEXT_PLAIN));
+        assertEquals(response.getStatus(), 200);
+        assertEquals(response.readEntity(String.class), expected.toString());
+
+        for (final String locator : owned) {
+            assertFalse(Files.exists(
+                fileBack.path(AbstractLocatorsResource.key(locator))));
+        }
+
+        // owned ones are listed to the other owners only
+        final Map<String, List<String>> listed = new HashMap<>();
+        final List<String> deleted = new ArrayList<>();
+        synchronized (requests) {
+            for (final String request : requests) {
+                final String[] split = request.split(" ", 3);
+                if (split[0].equals("POST")) {
+                    listed.computeIfAbsent(split[1], k -> new ArrayList<>())
+                        .addAll(Arrays.asList(split[2].split("\n")));
+                } else if (split[0].equals("DELETE")) {
+                    deleted.add(request);
+                }
+            }
+        }
+        final Map<String, List<String>> listedExpected = new HashMap<>();
+        for (final String locator : owned) {
+            for (final URI owner : owners(locator)) {
+                if (!owner.equals(self)) {
+                    listedExpected.computeIfAbsent(
+                        owner.getPath() + "locators/_/batch/delete",
+                        k -> new ArrayList<>()).add(locator);
+                }
+            }
+        }
+        listed.values().forEach(Collections::sort);
+        listedExpected.values().forEach(Collections::sort);
+        assertEquals(listed, listedExpected);
+
+        // others are deleted on their first owners
+        final List<String> deletedExpected = new ArrayList<>();
+        for (final String locator : others) {
+            deletedExpected.add("DELETE " + owners(locator).get(0).getPath()
+                                + "locators/" + locator + " ");
+        }
+        Collections.sort(deleted);
+        Collections.sort(deletedExpected);
+        assertEquals(deleted, deletedExpected);
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void forwarded() throws Exception {
+
+        final URI self = getBaseUri();
+        String other = null;
+        for (int i = 0; other == null; i++) {
+            final String locator = "f" + i;
+            if (!owners(locator).contains(self)) {
+                other = locator;
+            }
+        }
+        final Path local
+            = fileBack.path(AbstractLocatorsResource.key(other));
+
+        // an unsigned header is ignored and the request is forwarded
+        target("locators/" + other).request()
+            .header(FileFrontConstants.HEADER_FORWARDED, self.toString())
+            .put(Entity.text("untrusted")).close();
+        assertFalse(Files.exists(local));
+        synchronized (requests) {
+            assertTrue(requests.contains(
+                "PUT " + owners(other).get(0).getPath() + "locators/" + other
+                + " untrusted"), "requests: " + requests);
+        }
+
+        // a signed one is served locally
+        final String signature = new SiblingSigner(SECRET).sign(
+            "PUT", self.getRawPath() + "locators/" + other);
+        final Response response = target("locators/" + other).request()
+            .header(FileFrontConstants.HEADER_FORWARDED, signature)
+            .put(Entity.text("trusted"));
+        response.close();
+        assertEquals(response.getStatusInfo().getFamily(),
+                     Response.Status.Family.SUCCESSFUL);
+        assertEquals(new String(Files.readAllBytes(local),
+                                StandardCharsets.UTF_8), "trusted");
+    }
+
+
+    @Override
+    protected Application configure() {
+
+        try {
+            fileBack = new DirectoryFileBack(); // before any initializer
+            server = HttpServer.create(
+                new InetSocketAddress("localhost", 0), 0);
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        final String base = "http://localhost:" + server.getAddress().getPort();
+        // getBaseUri() needs the container yet to be created
+        final URI self = UriBuilder.fromUri("http://localhost/").port(
+            Integer.getInteger(TestProperties.CONTAINER_PORT,
+                               TestProperties.DEFAULT_CONTAINER_PORT))
+            .build();
+        fileFronts = Arrays.asList(self, URI.create(base + "/a/"),
+                                   URI.create(base + "/b/"));
+
+        final ResourceConfig resourceConfig = new ResourceConfig();
+
+        resourceConfig.property(FileFrontProperties.SIBLING_SECRET, SECRET);
+        resourceConfig.register(LocatorsResource.class);
+        resourceConfig.register(new AbstractBinder() {
+
+            @Override
+            protected void configure() {
+                bind(fileBack).to(FileBack.class)
+                    .qualifiedBy(new BackingLiteral());
+                bind(fileFronts).to(new TypeLiteral<List<URI>>() {
+                })
+                    .qualifiedBy(new SiblingsLiteral());
+                bindAsContract(Partitioner.class).in(Singleton.class);
+                bindAsContract(BackingExecutor.class).in(Singleton.class);
+            }
+
+        });
+
+        return resourceConfig;
+    }
+
+
+    private DirectoryFileBack fileBack;
+
+
+    private HttpServer server;
+
+
+    private ExecutorService executor;
+
+
+    private List<URI> fileFronts;
+
+
+    private final List<String> requests = new ArrayList<>();
+
+
+}
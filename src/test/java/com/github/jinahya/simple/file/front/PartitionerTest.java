@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class PartitionerTest {
+
+
+    private static final int KEYS = 10000;
+
+
+    private static List<URI> fileFronts(final int count) {
+
+        final List<URI> fileFronts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            fileFronts.add(URI.create("http://front" + i + ":8080/"));
+        }
+
+        return fileFronts;
+    }
+
+
+    private static ByteBuffer key(final int i) {
+
+        return ByteBuffer.wrap(
+            ("locator/" + i).getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    @Test
+    public void owners() {
+
+        final List<URI> fileFronts = fileFronts(5);
+        final int[] owned = new int[fileFronts.size()];
+        for (int i = 0; i < KEYS; i++) {
+            final List<URI> owners = Partitioner.owners(key(i), fileFronts, 2);
+            assertEquals(owners.size(), 2);
+            assertTrue(!owners.get(0).equals(owners.get(1)));
+            assertEquals(Partitioner.owners(key(i), fileFronts, 2), owners);
+            owners.forEach(owner -> owned[fileFronts.indexOf(owner)]++);
+        }
+
+        final int expected = KEYS * 2 / fileFronts.size();
+        for (final int count : owned) { // roughly balanced
+            assertTrue(Math.abs(count - expected) < expected / 10,
+                       "owned: " + count);
+        }
+    }
+
+
+    @Test
+    public void ownersAfterAddition() {
+
+        final List<URI> before = fileFronts(4);
+        final List<URI> after = fileFronts(5);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            final URI previous = Partitioner.owners(key(i), before, 1).get(0);
+            final URI current = Partitioner.owners(key(i), after, 1).get(0);
+            if (!current.equals(previous)) {
+                assertEquals(current, after.get(4)); // only to the new one
+                moved++;
+            }
+        }
+
+        // about 1/N of the keys
+        assertTrue(Math.abs(moved - KEYS / 5) < KEYS / 50, "moved: " + moved);
+    }
+
+
+}
+
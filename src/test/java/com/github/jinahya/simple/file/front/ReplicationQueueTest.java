@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+import javax.ws.rs.core.MediaType;
+import static java.util.Collections.emptyMap;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ReplicationQueueTest {
+
+
+    private static void await(final BooleanSupplier condition)
+        throws InterruptedException {
+
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10L);
+        }
+    }
+
+
+    @BeforeMethod
+    public void start() throws IOException {
+
+        directory = Files.createTempDirectory("journal");
+        requests.clear();
+        millis.clear();
+        responder = request -> 204;
+        queue = null;
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream stream = exchange.getRequestBody()) {
+                final byte[] buffer = new byte[1024];
+                for (int read; (read = stream.read(buffer)) != -1;) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            final String request = exchange.getRequestMethod() + " "
+                                   + exchange.getRequestURI().getPath() + " "
+                                   + new String(body.toByteArray(),
+                                                StandardCharsets.UTF_8);
+            final int status = responder.applyAsInt(request);
+            synchronized (requests) {
+                requests.add(request);
+                millis.add(System.currentTimeMillis());
+            }
+            exchange.sendResponseHeaders(status, -1L);
+            exchange.close();
+        });
+        server.start();
+        sibling = URI.create(
+            "http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+
+    @AfterMethod
+    public void stop() throws IOException {
+
+        if (queue != null) {
+            queue.stop();
+        }
+        server.stop(0);
+
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(directory)) {
+            for (final Path path : stream) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+
+    private ReplicationQueue start(final long initialBackoff,
+                                   final long maximumBackoff,
+                                   final int maximumAttempts) {
+
+        queue = new ReplicationQueue();
+        queue.start(directory, initialBackoff, maximumBackoff,
+                    maximumAttempts);
+
+        return queue;
+    }
+
+
+    private void append(final String path, final String content)
+        throws IOException {
+
+        final Path entity = Files.createTempFile("entity", null);
+        try {
+            Files.write(entity, content.getBytes(StandardCharsets.UTF_8));
+            queue.appendTo(sibling, "PUT", path, emptyMap(), entity,
+                           MediaType.TEXT_PLAIN_TYPE, queue.ticket());
+        } finally {
+            Files.delete(entity);
+        }
+    }
+
+
+    private List<String> requests() {
+
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+
+    private List<String> journal() throws IOException {
+
+        final List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(directory)) {
+            for (final Path path : stream) {
+                final String name = path.getFileName().toString();
+                names.add(name.substring(name.lastIndexOf('.')));
+            }
+        }
+        Collections.sort(names);
+
+        return names;
+    }
+
+
+    @Test
+    public void ordered() throws Exception {
+
+        start(10L, 10L, 0);
+        for (int i = 0; i < 5; i++) {
+            append("p" + i, "v" + i);
+        }
+        await(() -> queue.getPending() == 0);
+
+        assertEquals(requests(), Arrays.asList(
+                     "PUT /p0 v0", "PUT /p1 v1", "PUT /p2 v2", "PUT /p3 v3",
+                     "PUT /p4 v4"));
+        assertEquals(journal(), Collections.emptyList());
+    }
+
+
+    @Test
+    public void backoff() throws Exception {
+
+        responder = request -> requests().size() < 2 ? 503 : 204;
+        start(100L, 150L, 0);
+        append("p", "v");
+        append("q", "w");
+        await(() -> queue.getPending() == 0);
+
+        assertEquals(requests(), Arrays.asList(
+                     "PUT /p v", "PUT /p v", "PUT /p v", "PUT /q w"));
+        final List<Long> times;
+        synchronized (requests) {
+            times = new ArrayList<>(millis);
+        }
+        assertTrue(times.get(1) - times.get(0) >= 100L);
+        assertTrue(times.get(2) - times.get(1) >= 150L); // doubled, capped
+    }
+
+
+    @Test
+    public void resumed() throws Exception {
+
+        responder = request -> 503;
+        start(50L, 50L, 0);
+        append("p", "v");
+        append("q", "w");
+        await(() -> !requests().isEmpty());
+        queue.stop();
+        assertEquals(journal(), Arrays.asList(
+                     ".entry", ".entry", ".payload", ".payload"));
+
+        synchronized (requests) {
+            requests.clear();
+        }
+        responder = request -> 204;
+        start(50L, 50L, 0);
+        await(() -> queue.getPending() == 0);
+
+        assertEquals(requests(), Arrays.asList("PUT /p v", "PUT /q w"));
+        assertEquals(journal(), Collections.emptyList());
+    }
+
+
+    @Test
+    public void buried() throws Exception {
+
+        responder = request -> request.contains("/stuck") ? 503 : 204;
+        start(10L, 10L, 3);
+        append("stuck", "v");
+        append("p", "w");
+        await(() -> queue.getPending() == 0);
+
+        assertEquals(requests(), Arrays.asList(
+                     "PUT /stuck v", "PUT /stuck v", "PUT /stuck v",
+                     "PUT /p w"));
+        assertEquals(journal(), Arrays.asList(".dead", ".payload"));
+
+        queue.stop();
+        start(10L, 10L, 3);
+        assertEquals(queue.getPending(), 0); // never resumed
+        assertEquals(journal(), Arrays.asList(".dead", ".payload"));
+    }
+
+
+    @Test
+    public void rejected() throws Exception {
+
+        responder = request -> request.contains("/gone") ? 404 : 204;
+        start(10L, 10L, 0);
+        append("gone", "v");
+        append("p", "w");
+        await(() -> queue.getPending() == 0);
+
+        assertEquals(requests(), Arrays.asList("PUT /gone v", "PUT /p w"));
+        assertEquals(journal(), Collections.emptyList());
+    }
+
+
+    @Test
+    public void superseded() throws Exception {
+
+        start(10L, 10L, 0);
+        final long older = queue.ticket();
+        final long newer = queue.ticket();
+        assertTrue(newer > older);
+        queue.delivered(sibling, "p", newer);
+
+        final Path entity = Files.createTempFile("entity", null);
+        try {
+            Files.write(entity, "old".getBytes(StandardCharsets.UTF_8));
+            queue.appendTo(sibling, "PUT", "p", emptyMap(), entity,
+                           MediaType.TEXT_PLAIN_TYPE, older);
+        } finally {
+            Files.delete(entity);
+        }
+        queue.appendTo(sibling, "DELETE", "q", emptyMap(), null, null,
+                       queue.ticket());
+        await(() -> queue.getPending() == 0);
+
+        assertEquals(requests(), Arrays.asList("DELETE /q "));
+        assertEquals(journal(), Collections.emptyList());
+    }
+
+
+    @Test
+    public void held() throws Exception {
+
+        start(10L, 10L, 0);
+        final long delivered = queue.ticket();
+        final long released = queue.ticket();
+        final Path entity = Files.createTempFile("entity", null);
+        try {
+            Files.write(entity, "v".getBytes(StandardCharsets.UTF_8));
+            queue.hold(Collections.singletonList(sibling), "PUT", "p",
+                       emptyMap(), entity, MediaType.TEXT_PLAIN_TYPE,
+                       delivered);
+            queue.hold(Collections.singletonList(sibling), "PUT", "q",
+                       emptyMap(), entity, MediaType.TEXT_PLAIN_TYPE,
+                       released);
+        } finally {
+            Files.delete(entity);
+        }
+        assertEquals(queue.getPending(), 2);
+        assertEquals(journal(), Arrays.asList(
+                     ".entry", ".entry", ".payload", ".payload"));
+        assertEquals(requests(), Collections.emptyList()); // not delivered
+
+        queue.delivered(sibling, "p", delivered);
+        assertEquals(queue.getPending(), 1);
+        queue.release(sibling, "q", released);
+        await(() -> queue.getPending() == 0);
+
+        assertEquals(requests(), Arrays.asList("PUT /q v"));
+        assertEquals(journal(), Collections.emptyList());
+    }
+
+
+    private Path directory;
+
+
+    private HttpServer server;
+
+
+    private URI sibling;
+
+
+    private volatile ToIntFunction<String> responder = request -> 204;
+
+
+    private final List<String> requests = new ArrayList<>();
+
+
+    private final List<Long> millis = new ArrayList<>();
+
+
+    private ReplicationQueue queue;
+
+
+}
+
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.FileBack;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.inject.Singleton;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTestNg.ContainerPerClassTest;
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests a front whose backing executor runs a single operation and queues
+ * another one.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class SaturatedLocatorsResourceTest extends ContainerPerClassTest {
+
+
+    @AfterClass(alwaysRun = true)
+    public void delete() throws IOException {
+
+        fileBack.delete();
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void readSingleSaturated() throws Exception {
+
+        assertEquals(target("locators/s").request()
+                     .put(Entity.entity("s".getBytes(StandardCharsets.UTF_8),
+                                        MediaType.APPLICATION_OCTET_STREAM))
+                     .getStatus(), 204);
+
+        fileBack.setReadDelay(1000L);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        final List<Response> responses = new ArrayList<>();
+        try {
+            final List<Future<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(
+                    () -> target("locators/s").request().get()));
+                Thread.sleep(100L); // in order
+            }
+            for (final Future<Response> future : futures) {
+                responses.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+            fileBack.setReadDelay(0L);
+        }
+
+        assertEquals(responses.get(0).readEntity(String.class), "s"); // run
+        assertEquals(responses.get(1).readEntity(String.class), "s"); // queued
+        assertEquals(responses.get(2).getStatus(), 503); // rejected
+        assertEquals(responses.get(2).getHeaderString(HttpHeaders.RETRY_AFTER),
+                     "1");
+
+        assertEquals(target("locators/s").request().get()
+                     .readEntity(String.class), "s");
+    }
+
+
+    @Override
+    protected Application configure() {
+
+        try {
+            fileBack = new DirectoryFileBack(); // before any initializer
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        final ResourceConfig resourceConfig = new ResourceConfig();
+
+        resourceConfig.register(LocatorsResource.class);
+        resourceConfig.property(FileFrontProperties.BACKING_THREADS, 1);
+        resourceConfig.property(FileFrontProperties.BACKING_QUEUE, 1);
+        resourceConfig.register(new AbstractBinder() {
+
+            @Override
+            protected void configure() {
+                bind(fileBack).to(FileBack.class)
+                    .qualifiedBy(new BackingLiteral());
+                bind(Collections.<URI>emptyList())
+                    .to(new TypeLiteral<List<URI>>() {
+                    })
+                    .qualifiedBy(new SiblingsLiteral());
+                bindAsContract(BackingExecutor.class).in(Singleton.class);
+            }
+
+        });
+
+        return resourceConfig;
+    }
+
+
+    private DirectoryFileBack fileBack;
+
+
+}
+
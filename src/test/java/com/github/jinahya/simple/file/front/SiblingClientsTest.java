@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Response;
+import org.glassfish.jersey.client.ClientProperties;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class SiblingClientsTest {
+
+
+    @Test(timeOut = 30000L)
+    public void client() throws Exception {
+
+        final Set<InetSocketAddress> remotes = new HashSet<>();
+        final HttpServer server = HttpServer.create(
+            new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream stream = exchange.getRequestBody()) {
+                final byte[] buffer = new byte[1024];
+                while (stream.read(buffer) != -1) {
+                    // discards
+                }
+            }
+            synchronized (remotes) {
+                remotes.add(exchange.getRemoteAddress());
+            }
+            exchange.sendResponseHeaders(204, -1L);
+            exchange.close();
+        });
+        server.start();
+        try {
+            final URI sibling = URI.create(
+                "http://localhost:" + server.getAddress().getPort() + "/a/");
+            final SiblingClients siblingClients = new SiblingClients();
+            final Client client = siblingClients.client(sibling);
+            try {
+                assertSame(siblingClients.client(sibling), client);
+                assertEquals(client.getConfiguration().getProperty(
+                    ClientProperties.CONNECT_TIMEOUT),
+                             SiblingClients.DEFAULT_CONNECT_TIMEOUT);
+                assertEquals(client.getConfiguration().getProperty(
+                    ClientProperties.READ_TIMEOUT),
+                             SiblingClients.DEFAULT_READ_TIMEOUT);
+                for (int i = 0; i < 10; i++) {
+                    final Response response = siblingClients.client(sibling)
+                        .target(sibling).path("locators/" + i).request()
+                        .delete();
+                    assertEquals(response.getStatus(), 204);
+                    response.close(); // returns the connection
+                }
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals(remotes.size(), 1, "connections: " + remotes);
+    }
+
+
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import com.github.jinahya.simple.file.back.FileBack;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import javax.inject.Singleton;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTestNg.ContainerPerClassTest;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests a front with two siblings, {@code a} and {@code b}, served by a
+ * single HTTP server which records each request as
+ * {@code <method> <path> <entity>}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class SiblingLocatorsResourceTest extends ContainerPerClassTest {
+
+
+    /**
+     * Milliseconds a stalled sibling takes to respond.
+     */
+    private static final long STALL = 5000L;
+
+
+    private static final String SECRET = "secret";
+
+
+    private static void await(final BooleanSupplier condition)
+        throws InterruptedException {
+
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10L);
+        }
+    }
+
+
+    private static int stall() {
+
+        try {
+            Thread.sleep(STALL);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        return 503;
+    }
+
+
+    @BeforeMethod
+    public void reset() throws Exception {
+
+        responder = request -> request.startsWith("GET ") ? 404 : 204;
+        await(() -> replicationQueue.getPending() == 0);
+        synchronized (requests) {
+            requests.clear();
+            remotes.clear();
+        }
+        fileBack.clear();
+    }
+
+
+    @AfterClass(alwaysRun = true)
+    public void stopSiblings() throws IOException {
+
+        replicationQueue.stop();
+        server.stop(0);
+        executor.shutdownNow();
+
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(journal)) {
+            for (final Path path : stream) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(journal);
+        fileBack.delete();
+    }
+
+
+    private void handle(final HttpExchange exchange) throws IOException {
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream stream = exchange.getRequestBody()) {
+            final byte[] buffer = new byte[1024];
+            for (int read; (read = stream.read(buffer)) != -1;) {
+                body.write(buffer, 0, read);
+            }
+        }
+        final String request = exchange.getRequestMethod() + " "
+                               + exchange.getRequestURI().getPath() + " "
+                               + new String(body.toByteArray(),
+                                            StandardCharsets.UTF_8);
+        synchronized (requests) {
+            requests.add(request);
+            remotes.add(exchange.getRemoteAddress());
+        }
+        final int status = responder.applyAsInt(request);
+        if (status == 200) {
+            final byte[] content = request.substring(
+                request.indexOf('/') + 1, request.indexOf('/') + 2)
+                .getBytes(StandardCharsets.UTF_8); // the sibling name
+            exchange.sendResponseHeaders(status, content.length);
+            try (OutputStream stream = exchange.getResponseBody()) {
+                stream.write(content);
+            }
+        } else {
+            exchange.sendResponseHeaders(status, -1L);
+        }
+        exchange.close();
+    }
+
+
+    private List<String> requests(final String prefix) {
+
+        synchronized (requests) {
+            return requests.stream()
+                .filter(request -> request.startsWith(prefix))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+
+    private Response put(final String locator, final String consistency,
+                         final String content) {
+
+        WebTarget target = target("locators").path(locator);
+        if (consistency != null) {
+            target = target.queryParam("consistency", consistency);
+        }
+
+        return target.request().put(Entity.entity(
+            content.getBytes(StandardCharsets.UTF_8),
+            MediaType.APPLICATION_OCTET_STREAM));
+    }
+
+
+    /**
+     * Reads specified locator as a sibling would; i.e. without falling back.
+     */
+    private Response get(final String locator) {
+
+        final WebTarget target = target("locators").path(locator);
+
+        return target.request()
+            .header(FileFrontConstants.HEADER_FORWARDED,
+                    new SiblingSigner(SECRET).sign(
+                        "GET", target.getUri().getRawPath()))
+            .get();
+    }
+
+
+    private Response delete(final String locator, final String consistency) {
+
+        return target("locators").path(locator)
+            .queryParam("consistency", consistency).request().delete();
+    }
+
+
+    private static String acknowledged(final Response response) {
+
+        return response.getHeaderString(
+            FileFrontConstants.HEADER_ACKNOWLEDGED);
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void updateConsistent() throws Exception {
+
+        final Response all = put("q", "ALL", "v");
+        assertEquals(all.getStatus(), 204);
+        assertEquals(acknowledged(all), "3");
+        assertEquals(requests("PUT"), Arrays.asList(
+                     "PUT /a/locators/q v", "PUT /b/locators/q v"));
+
+        assertEquals(put("q", "QUORUM", "v").getStatus(), 204);
+        assertEquals(put("q", "ONE", "v").getStatus(), 204);
+        assertEquals(put("q", "2", "v").getStatus(), 204);
+        assertEquals(put("q", "bogus", "v").getStatus(), 400);
+        assertEquals(put("q", "4", "v").getStatus(), 400);
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void updatePooled() throws Exception {
+
+        final int concurrency = 8;
+        final int rounds = 4;
+        final ExecutorService clients
+            = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (int round = 0; round < rounds; round++) {
+                final List<Future<Integer>> statuses = new ArrayList<>();
+                for (int i = 0; i < concurrency; i++) {
+                    final String locator = "p" + i;
+                    statuses.add(clients.submit(
+                        () -> put(locator, "ALL", "v").getStatus()));
+                }
+                for (final Future<Integer> status : statuses) {
+                    assertEquals(status.get().intValue(), 204);
+                }
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+
+        // at most one connection for each concurrent request to a sibling
+        assertEquals(requests("PUT").size(), 2 * concurrency * rounds);
+        synchronized (requests) {
+            assertTrue(remotes.size() <= 2 * concurrency,
+                       "connections: " + remotes.size());
+        }
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void updateUnavailable() throws Exception {
+
+        responder = request -> request.startsWith("PUT /b/") ? 503 : 204;
+
+        final Response all = put("u", "ALL", "v1");
+        assertEquals(all.getStatus(), 503);
+        assertEquals(acknowledged(all), "2");
+        final Response quorum = put("u", "QUORUM", "v2");
+        assertEquals(quorum.getStatus(), 204);
+        assertEquals(acknowledged(quorum), "2");
+        assertEquals(get("u").readEntity(String.class), "v2");
+
+        responder = request -> 204;
+        await(() -> replicationQueue.getPending() == 0);
+        final List<String> b = requests("PUT /b/");
+        assertEquals(b.get(b.size() - 1), "PUT /b/locators/u v2");
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void updateOrdered() throws Exception {
+
+        final int[] failures = new int[]{1};
+        responder = request -> {
+            if (request.startsWith("PUT /b/")) {
+                synchronized (failures) {
+                    if (failures[0]-- > 0) {
+                        return 503;
+                    }
+                }
+            }
+            return 204;
+        };
+
+        assertEquals(put("o", "ONE", "v1").getStatus(), 204);
+        assertEquals(put("o", "ONE", "v2").getStatus(), 204);
+        await(() -> replicationQueue.getPending() == 0
+                    && requests("PUT /b/").contains("PUT /b/locators/o v2"));
+
+        synchronized (requests) {
+            final List<String> b = requests.stream()
+                .filter(request -> request.startsWith("PUT /b/"))
+                .collect(Collectors.toList());
+            assertEquals(b.get(b.size() - 1), "PUT /b/locators/o v2");
+        }
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void updateResumed() throws Exception {
+
+        final CountDownLatch sending = new CountDownLatch(2);
+        responder = request -> {
+            if (request.startsWith("PUT ")) {
+                sending.countDown();
+                return stall();
+            }
+            return 204;
+        };
+
+        assertEquals(put("r", null, "v").getStatus(), 204);
+        sending.await();
+
+        // the front crashes while sending; only the journal is left
+        final Path crashed = Files.createTempDirectory("journal");
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(journal, "*.{entry,payload}")) {
+            for (final Path path : stream) {
+                Files.copy(path, crashed.resolve(path.getFileName()));
+            }
+        }
+        synchronized (requests) {
+            requests.clear();
+        }
+        responder = request -> 204;
+
+        final ReplicationQueue resumed = new ReplicationQueue();
+        try {
+            resumed.start(crashed, 50L, 50L, 0);
+            await(() -> resumed.getPending() == 0);
+        } finally {
+            resumed.stop();
+        }
+        assertEquals(requests("PUT"), Arrays.asList(
+                     "PUT /a/locators/r v", "PUT /b/locators/r v"));
+
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(crashed)) {
+            for (final Path path : stream) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(crashed);
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void readStreamingFallback() throws Exception {
+
+        responder = request -> request.startsWith("GET /a/")
+                               ? 200 : request.startsWith("GET ") ? 404 : 204;
+
+        final Response missed = target("locators/m").request().get();
+        assertEquals(missed.getStatus(), 200);
+        assertEquals(missed.readEntity(String.class), "a");
+
+        final Path repaired = fileBack.path(AbstractLocatorsResource.key("m"));
+        await(() -> repaired.toFile().length() == 1L); // written back
+        final Response streamed = get("m");
+        assertEquals(streamed.getStatus(), 200);
+        assertEquals(streamed.readEntity(String.class), "a");
+        assertEquals(get("n").getStatus(), 404);
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void deleteFailed() throws Exception {
+
+        put("h", null, "h").close();
+        responder = request -> request.startsWith("DELETE ") ? 503 : 204;
+
+        final Response response = delete("h", "ALL");
+        assertEquals(response.getStatus(), 503);
+        assertEquals(acknowledged(response), "1");
+
+        responder = request -> 204;
+        await(() -> replicationQueue.getPending() == 0);
+        assertTrue(requests("DELETE").size() >= 4); // failed and retried
+    }
+
+
+    @Test(timeOut = 30000L)
+    public void deleteStalled() throws Exception {
+
+        put("h", null, "h").close();
+        responder = request -> request.startsWith("DELETE /a/")
+                               ? stall() : 204;
+
+        final long started = System.currentTimeMillis();
+        final Response response = delete("h", "ALL");
+        assertTrue(System.currentTimeMillis() - started < STALL,
+                   "waited for a stalled sibling");
+        assertEquals(response.getStatus(), 503);
+        assertEquals(acknowledged(response), "2");
+    }
+
+
+    @Override
+    protected Application configure() {
+
+        try {
+            fileBack = new DirectoryFileBack(); // before any initializer
+            journal = Files.createTempDirectory("journal");
+            server = HttpServer.create(
+                new InetSocketAddress("localhost", 0), 0);
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor); // stalls only one request
+        server.createContext("/", this::handle);
+        server.start();
+        final String base = "http://localhost:" + server.getAddress().getPort();
+        final List<URI> siblings = Arrays.asList(
+            URI.create(base + "/a/"), URI.create(base + "/b/"));
+
+        replicationQueue = new ReplicationQueue();
+        replicationQueue.start(journal, 50L, 50L, 0);
+
+        final ResourceConfig resourceConfig = new ResourceConfig();
+        resourceConfig.property(FileFrontProperties.STREAMING_READ, true);
+        resourceConfig.property(FileFrontProperties.READ_FALLBACK, true);
+        resourceConfig.property(FileFrontProperties.SIBLING_SECRET, SECRET);
+
+        resourceConfig.register(LocatorsResource.class);
+        resourceConfig.register(new AbstractBinder() {
+
+            @Override
+            protected void configure() {
+                bind(fileBack).to(FileBack.class)
+                    .qualifiedBy(new BackingLiteral());
+                bind(siblings).to(new TypeLiteral<List<URI>>() {
+                })
+                    .qualifiedBy(new SiblingsLiteral());
+                bind(replicationQueue).to(ReplicationQueue.class);
+                bindAsContract(SiblingClients.class).in(Singleton.class);
+                bindAsContract(BackingExecutor.class).in(Singleton.class);
+            }
+
+        });
+
+        return resourceConfig;
+    }
+
+
+    private DirectoryFileBack fileBack;
+
+
+    private Path journal;
+
+
+    private HttpServer server;
+
+
+    private ExecutorService executor;
+
+
+    private ReplicationQueue replicationQueue;
+
+
+    private volatile ToIntFunction<String> responder;
+
+
+    private final List<String> requests = new ArrayList<>();
+
+
+    /**
+     * Remote addresses of connections to siblings; guarded by
+     * {@link #requests}.
+     */
+    private final Set<InetSocketAddress> remotes = new HashSet<>();
+
+
+}
+
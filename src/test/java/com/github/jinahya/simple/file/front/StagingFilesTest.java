@@ -0,0 +1,245 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class StagingFilesTest {
+
+
+    private static final long THRESHOLD = 65536L;
+
+
+    private static byte[] random(final int length) {
+
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+
+        return bytes;
+    }
+
+
+    private static byte[] replayed(final StagingFiles.Buffer buffer)
+        throws IOException {
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(buffer.writeTo(output), buffer.getLength());
+
+        final ByteArrayOutputStream input = new ByteArrayOutputStream();
+        try (InputStream stream = buffer.newInputStream()) {
+            final byte[] bytes = new byte[1000];
+            for (int read; (read = stream.read(bytes)) != -1;) {
+                input.write(bytes, 0, read);
+            }
+        }
+        assertEquals(input.toByteArray(), output.toByteArray());
+
+        return output.toByteArray();
+    }
+
+
+    @BeforeMethod
+    public void start() throws IOException {
+
+        directory = Files.createTempDirectory("staging");
+        Files.createFile(directory.resolve(StagingFiles.PREFIX + "orphan"));
+        stagingFiles = new StagingFiles();
+        stagingFiles.start(directory, 2, THRESHOLD, THRESHOLD * 2);
+    }
+
+
+    @AfterMethod
+    public void stop() throws IOException {
+
+        stagingFiles.stop();
+        Files.delete(directory);
+    }
+
+
+    @Test
+    public void started() throws IOException {
+
+        assertFalse(Files.exists(
+            directory.resolve(StagingFiles.PREFIX + "orphan")));
+        assertEquals(stagingFiles.getIdle(), 2);
+    }
+
+
+    @Test
+    public void inMemory() throws IOException {
+
+        for (final int length : new int[]{0, 1, StagingFiles.CHUNK_SIZE,
+                                          StagingFiles.CHUNK_SIZE + 1,
+                                          (int) THRESHOLD}) {
+            final byte[] bytes = random(length);
+            final StagingFiles.Buffer buffer = stagingFiles.buffer();
+            try (StagingFiles.Buffer output = buffer) {
+                output.write(bytes);
+            }
+            assertFalse(buffer.isSpilled(), "length: " + length);
+            assertEquals(replayed(buffer), bytes);
+            assertEquals(stagingFiles.getMemoryInUse(),
+                         (length + StagingFiles.CHUNK_SIZE - 1)
+                         / StagingFiles.CHUNK_SIZE * StagingFiles.CHUNK_SIZE);
+            buffer.release();
+            assertEquals(stagingFiles.getMemoryInUse(), 0L);
+        }
+        assertEquals(stagingFiles.getFilesInUse(), 0);
+        assertEquals(stagingFiles.getSpills(), 0L);
+    }
+
+
+    @Test
+    public void spilled() throws IOException {
+
+        final byte[] bytes = random((int) THRESHOLD * 3 + 1);
+        final StagingFiles.Buffer buffer = stagingFiles.buffer();
+        try (StagingFiles.Buffer output = buffer) {
+            for (int i = 0; i < bytes.length; i += 1000) {
+                output.write(bytes, i, Math.min(1000, bytes.length - i));
+            }
+        }
+        assertTrue(buffer.isSpilled());
+        assertEquals(stagingFiles.getMemoryInUse(), 0L);
+        assertEquals(stagingFiles.getFilesInUse(), 1);
+        assertEquals(stagingFiles.getBytesInUse(), bytes.length);
+        assertEquals(replayed(buffer), bytes);
+        assertEquals(Files.readAllBytes(buffer.getPath()), bytes);
+
+        buffer.release();
+        assertEquals(stagingFiles.getFilesInUse(), 0);
+        assertEquals(stagingFiles.getIdle(), 2);
+    }
+
+
+    @Test
+    public void exhausted() throws IOException {
+
+        final byte[] bytes = random((int) THRESHOLD);
+        final StagingFiles.Buffer first = stagingFiles.buffer();
+        final StagingFiles.Buffer second = stagingFiles.buffer();
+        final StagingFiles.Buffer third = stagingFiles.buffer();
+        for (final StagingFiles.Buffer buffer
+             : new StagingFiles.Buffer[]{first, second, third}) {
+            try (StagingFiles.Buffer output = buffer) {
+                output.write(bytes);
+            }
+            assertEquals(replayed(buffer), bytes);
+        }
+        assertFalse(first.isSpilled());
+        assertFalse(second.isSpilled());
+        assertTrue(third.isSpilled()); // out of memory budget
+
+        first.release();
+        second.release();
+        third.release();
+        assertEquals(stagingFiles.getMemoryInUse(), 0L);
+        assertEquals(stagingFiles.getFilesInUse(), 0);
+    }
+
+
+    @Test
+    public void retained() throws IOException {
+
+        final byte[] bytes = random(1000);
+        final StagingFiles.Buffer buffer = stagingFiles.buffer();
+        try (StagingFiles.Buffer output = buffer) {
+            output.write(bytes);
+        }
+        assertTrue(buffer.isOwned());
+        buffer.retain();
+
+        final Path path = buffer.spill(); // while replayed from memory
+        assertNotNull(path);
+        assertEquals(replayed(buffer), bytes);
+
+        buffer.release();
+        assertEquals(replayed(buffer), bytes);
+        assertEquals(stagingFiles.getFilesInUse(), 1);
+
+        buffer.release();
+        buffer.release(); // once too many
+        assertEquals(stagingFiles.getMemoryInUse(), 0L);
+        assertEquals(stagingFiles.getFilesInUse(), 0);
+    }
+
+
+    @Test
+    public void unpooled() throws IOException {
+
+        final byte[] bytes = random(1000);
+        final StagingFiles.Buffer buffer = StagingFiles.unpooled();
+        try (StagingFiles.Buffer output = buffer) {
+            output.write(bytes);
+        }
+        assertTrue(buffer.isSpilled());
+        assertEquals(replayed(buffer), bytes);
+
+        final Path path = buffer.getPath();
+        buffer.release();
+        assertFalse(Files.exists(path));
+    }
+
+
+    @Test
+    public void isolated() throws IOException {
+
+        final StagingFiles first = new StagingFiles();
+        first.start(null, 1, THRESHOLD, THRESHOLD);
+        try {
+            final Path path = first.acquire();
+
+            final StagingFiles second = new StagingFiles();
+            second.start(null, 1, THRESHOLD, THRESHOLD);
+            second.stop();
+            assertTrue(Files.exists(path)); // not deleted by the second
+
+            first.release(path);
+        } finally {
+            first.stop();
+        }
+    }
+
+
+    private Path directory;
+
+
+    private StagingFiles stagingFiles;
+
+
+}
+
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.front;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class TarReaderTest {
+
+
+    static void entry(final ByteArrayOutputStream archive,
+                      final String name, final char type,
+                      final byte[] data)
+        throws IOException {
+
+        final byte[] header = new byte[TarReader.BLOCK_SIZE];
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0,
+                         Math.min(100, nameBytes.length));
+        final byte[] size = String.format("%011o", data.length)
+            .getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII),
+                         0, header, 257, 8);
+        int sum = 0;
+        for (int i = 0; i < header.length; i++) {
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        final byte[] checksum = String.format("%06o\u0000 ", sum)
+            .getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(checksum, 0, header, 148, checksum.length);
+
+        archive.write(header);
+        archive.write(data);
+        archive.write(new byte[(TarReader.BLOCK_SIZE
+                                - data.length % TarReader.BLOCK_SIZE)
+                               % TarReader.BLOCK_SIZE]);
+    }
+
+
+    private static String read(final TarReader reader) throws IOException {
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[3];
+        for (int read; (read = reader.read(buffer, 0, buffer.length)) != -1;) {
+            output.write(buffer, 0, read);
+        }
+
+        return output.toString("UTF-8");
+    }
+
+
+    @Test
+    public void next() throws IOException {
+
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        entry(archive, "a/", '5', new byte[0]);
+        entry(archive, "a/b", '0', "hello".getBytes(StandardCharsets.UTF_8));
+        entry(archive, "././@LongLink", 'L',
+              "a/long\u0000".getBytes(StandardCharsets.UTF_8));
+        entry(archive, "a/lon", '0', "world".getBytes(StandardCharsets.UTF_8));
+        entry(archive, "PaxHeaders/c", 'x',
+              "14 path=a/pax\n".getBytes(StandardCharsets.UTF_8));
+        entry(archive, "a/c", '0', new byte[600]);
+        entry(archive, "a/skipped", '0', "unread".getBytes("UTF-8"));
+        archive.write(new byte[TarReader.BLOCK_SIZE * 2]);
+
+        final TarReader reader = new TarReader(
+            new ByteArrayInputStream(archive.toByteArray()));
+
+        TarReader.Entry entry = reader.next();
+        assertEquals(entry.getName(), "a/b");
+        assertEquals(read(reader), "hello");
+
+        entry = reader.next();
+        assertEquals(entry.getName(), "a/long");
+        assertEquals(read(reader), "world");
+
+        entry = reader.next();
+        assertEquals(entry.getName(), "a/pax");
+        assertEquals(entry.getSize(), 600L);
+        assertEquals(reader.read(new byte[1], 0, 1), 1); // partially read
+
+        entry = reader.next();
+        assertEquals(entry.getName(), "a/skipped");
+
+        assertNull(reader.next());
+    }
+
+
+    @Test(expectedExceptions = IOException.class)
+    public void nextInvalidChecksum() throws IOException {
+
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        entry(archive, "a", '0', new byte[1]);
+        final byte[] bytes = archive.toByteArray();
+        bytes[0] = 'b';
+
+        new TarReader(new ByteArrayInputStream(bytes)).next();
+    }
+
+
+}
+